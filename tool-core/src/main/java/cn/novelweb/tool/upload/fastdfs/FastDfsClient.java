@@ -1,32 +1,24 @@
 package cn.novelweb.tool.upload.fastdfs;
 
-import cn.hutool.core.io.FileUtil;
-import cn.hutool.core.io.IoUtil;
-import cn.hutool.core.thread.ThreadUtil;
-import cn.novelweb.tool.io.FileUtils;
 import cn.novelweb.tool.upload.fastdfs.callback.FastDfsUploadCompletionHandler;
-import cn.novelweb.tool.upload.fastdfs.client.DefaultStorageClient;
-import cn.novelweb.tool.upload.fastdfs.client.DefaultTrackerClient;
-import cn.novelweb.tool.upload.fastdfs.client.StorageClient;
-import cn.novelweb.tool.upload.fastdfs.client.TrackerClient;
+import cn.novelweb.tool.upload.fastdfs.client.*;
 import cn.novelweb.tool.upload.fastdfs.config.FastDfsConfig;
-import cn.novelweb.tool.upload.fastdfs.conn.Connection;
-import cn.novelweb.tool.upload.fastdfs.conn.DefaultCommandExecutor;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsException;
+import cn.novelweb.tool.upload.fastdfs.metrics.FastDfsMetrics;
 import cn.novelweb.tool.upload.fastdfs.model.FileInfo;
 import cn.novelweb.tool.upload.fastdfs.model.MateData;
-import cn.novelweb.tool.upload.fastdfs.model.StorageNode;
 import cn.novelweb.tool.upload.fastdfs.model.StorePath;
-import cn.novelweb.tool.upload.fastdfs.pool.ConnectionPool;
-import cn.novelweb.tool.upload.fastdfs.pool.PooledConnectionFactory;
+import cn.novelweb.tool.upload.fastdfs.model.UploadItem;
 import cn.novelweb.tool.upload.fastdfs.protocol.storage.callback.DownloadCallback;
-import cn.novelweb.tool.upload.fastdfs.utils.Log;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.response.FastDfsInputStream;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.pool2.impl.GenericKeyedObjectPoolConfig;
 
 import java.io.*;
-import java.util.Arrays;
-import java.util.HashSet;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * <p>FastDFS客户端工具</p>
@@ -37,10 +29,10 @@ import java.util.Set;
 @Slf4j
 public class FastDfsClient {
 
-    private static TrackerClient trackerClient;
-    private static StorageClient storageClient;
-
-    private static boolean isSuccessInit = false;
+    /**
+     * 默认客户端实例, 需要连接多个集群时直接创建{@link FastDfsClusterClient}
+     */
+    private static volatile FastDfsClusterClient defaultClient;
 
     /**
      * 指定配置文件进行初始化
@@ -52,26 +44,17 @@ public class FastDfsClient {
     }
 
     /**
-     * 初始化配置
+     * 初始化配置, 重复初始化时关闭之前的默认实例
      *
      * @param fastDfsConfig 配置信息
      */
     public static void init(FastDfsConfig fastDfsConfig) {
-        Log.debugLog = fastDfsConfig.getDebugLog();
-        PooledConnectionFactory pooledConnectionFactory = new PooledConnectionFactory(
-                fastDfsConfig.getSoTimeout(), fastDfsConfig.getConnectTimeout());
-        GenericKeyedObjectPoolConfig<Connection> conf = new GenericKeyedObjectPoolConfig<>();
-        conf.setMaxTotal(fastDfsConfig.getMaxTotal());
-        conf.setMaxTotalPerKey(fastDfsConfig.getMaxTotalPerKey());
-        conf.setMaxIdlePerKey(fastDfsConfig.getMaxIdlePerKey());
-        ConnectionPool connectionPool = new ConnectionPool(pooledConnectionFactory, conf);
-        String[] split = fastDfsConfig.getTrackerServers().split(",");
-        Set<String> trackerSet = new HashSet<>(split.length);
-        trackerSet.addAll(Arrays.asList(split));
-        DefaultCommandExecutor commandExecutor = new DefaultCommandExecutor(trackerSet, connectionPool);
-        trackerClient = new DefaultTrackerClient(commandExecutor);
-        storageClient = new DefaultStorageClient(commandExecutor, trackerClient);
-        isSuccessInit = true;
+        FastDfsClusterClient client = new FastDfsClusterClient(fastDfsConfig);
+        FastDfsClusterClient previous = defaultClient;
+        defaultClient = client;
+        if (null != previous) {
+            previous.close();
+        }
     }
 
     /**
@@ -84,11 +67,10 @@ public class FastDfsClient {
      * @return 返回存储文件的路径信息
      */
     public static StorePath uploader(InputStream stream, long length, String ext) {
-        StorageNode node = trackerClient.getStorageNode();
-        if (node == null) {
+        if (successInit()) {
             return null;
         }
-        return uploader(node.getGroupName(), stream, length, ext);
+        return defaultClient.uploader(stream, length, ext);
     }
 
     /**
@@ -105,7 +87,7 @@ public class FastDfsClient {
         if (successInit()) {
             return null;
         }
-        return storageClient.uploadFile(group, stream, length, ext);
+        return defaultClient.uploader(group, stream, length, ext);
     }
 
     /**
@@ -124,12 +106,37 @@ public class FastDfsClient {
         if (successInit()) {
             return;
         }
-        ThreadUtil.execAsync(() -> {
-            StorePath storePath = storageClient.uploadFile(group, stream, length, ext);
-            handler.complete(storePath);
+        asynchronousUpload(group, stream, length, ext).whenComplete((storePath, throwable) -> {
+            if (null == throwable) {
+                handler.complete(storePath);
+                return;
+            }
+            log.error("异步上传文件失败", throwable);
+            handler.failed(throwable instanceof CompletionException && null != throwable.getCause()
+                    ? throwable.getCause() : throwable);
         });
     }
 
+    /**
+     * 异步上传input流
+     * 自定义组名称
+     * 小文件通过非阻塞连接上传, 超过16MB的文件在客户端专用的有界线程池(fastdfs-async-blocking-)中使用阻塞连接上传(线程都忙且队列已满时由调用线程上传)
+     *
+     * @param group  组名称
+     * @param stream 文件输入流
+     * @param length 文件大小
+     * @param ext    文件扩展名
+     * @return 异步返回存储文件的路径信息, 上传失败时以异常完成
+     */
+    public static CompletableFuture<StorePath> asynchronousUpload(String group, InputStream stream, long length, String ext) {
+        if (successInit()) {
+            CompletableFuture<StorePath> future = new CompletableFuture<>();
+            future.completeExceptionally(new FastDfsException("请调用FastDfsClient.init()方法完成初始化设置"));
+            return future;
+        }
+        return defaultClient.asynchronousUpload(group, stream, length, ext);
+    }
+
     /**
      * 字符串上传
      * 自定义组名称
@@ -142,8 +149,10 @@ public class FastDfsClient {
      */
     public static StorePath characterStringUploader(String group, String str,
                                                     String ext, String charsetName) {
-        ByteArrayInputStream inputStream = IoUtil.toStream(str, charsetName);
-        return uploader(group, inputStream, inputStream.available(), ext);
+        if (successInit()) {
+            return null;
+        }
+        return defaultClient.characterStringUploader(group, str, ext, charsetName);
     }
 
     /**
@@ -156,11 +165,10 @@ public class FastDfsClient {
      * @return 返回存储文件的路径信息
      */
     public static StorePath characterStringUploader(String str, String ext) {
-        StorageNode node = trackerClient.getStorageNode();
-        if (node == null) {
+        if (successInit()) {
             return null;
         }
-        return characterStringUploader(node.getGroupName(), str, ext, "UTF-8");
+        return defaultClient.characterStringUploader(str, ext);
     }
 
     /**
@@ -171,18 +179,10 @@ public class FastDfsClient {
      * @return 返回存储文件的路径信息
      */
     public static StorePath uploader(File file) {
-        try {
-            InputStream stream = new FileInputStream(file.getAbsolutePath());
-            StorageNode node = trackerClient.getStorageNode();
-            if (node == null) {
-                return null;
-            }
-            return uploader(node.getGroupName(), stream, file.length(),
-                    FileUtil.extName(file.getAbsolutePath()));
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+        if (successInit()) {
+            return null;
         }
-        return null;
+        return defaultClient.uploader(file);
     }
 
     /**
@@ -194,14 +194,40 @@ public class FastDfsClient {
      * @return 返回存储文件的路径信息
      */
     public static StorePath uploader(String group, File file) {
-        try {
-            InputStream stream = new FileInputStream(file.getAbsolutePath());
-            return uploader(group, stream, file.length(),
-                    FileUtil.extName(file.getAbsolutePath()));
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+        if (successInit()) {
+            return null;
+        }
+        return defaultClient.uploader(group, file);
+    }
+
+    /**
+     * 批量上传文件
+     * 按剩余空间分散到组内所有可写的存储节点并行上传
+     *
+     * @param group 组名称, 为null时使用Tracker选择的组
+     * @param items 上传的文件
+     * @return 与items顺序一致的文件存储路径, 上传失败的为null
+     */
+    public static List<StorePath> uploadBatch(String group, List<UploadItem> items) {
+        if (successInit()) {
+            return null;
+        }
+        return defaultClient.uploadBatch(group, items);
+    }
+
+    /**
+     * 分块上传文件(支持断点续传)
+     * 上传中断后再次调用时从中断的位置继续上传
+     *
+     * @param group 组名称
+     * @param file  需要上传的文件
+     * @return 返回存储文件的路径信息
+     */
+    public static StorePath resumableUploader(String group, File file) {
+        if (successInit()) {
+            return null;
         }
-        return null;
+        return defaultClient.resumableUploader(group, file);
     }
 
     /**
@@ -216,7 +242,7 @@ public class FastDfsClient {
         if (successInit()) {
             return false;
         }
-        return storageClient.deleteFile(group, path);
+        return defaultClient.delete(group, path);
     }
 
     /**
@@ -229,8 +255,7 @@ public class FastDfsClient {
         if (successInit()) {
             return false;
         }
-        int i = fileId.indexOf("/");
-        return storageClient.deleteFile(fileId.substring(0, i), fileId.substring(i + 1));
+        return defaultClient.delete(fileId);
     }
 
     /**
@@ -244,7 +269,7 @@ public class FastDfsClient {
         if (successInit()) {
             return null;
         }
-        return storageClient.getMetadata(groupName, path);
+        return defaultClient.getMetadata(groupName, path);
     }
 
     /**
@@ -258,7 +283,7 @@ public class FastDfsClient {
         if (successInit()) {
             return null;
         }
-        return storageClient.queryFileInfo(groupName, path);
+        return defaultClient.queryFileInfo(groupName, path);
     }
 
     /**
@@ -273,7 +298,54 @@ public class FastDfsClient {
         if (successInit()) {
             return null;
         }
-        return storageClient.downloadFile(groupName, path, callback);
+        return defaultClient.downloadFile(groupName, path, callback);
+    }
+
+    /**
+     * 分段并行下载文件到本地
+     * 适用于大文件, 多个分段通过多个连接(文件有多个副本时从多个存储节点)同时下载
+     *
+     * @param groupName 组名称
+     * @param path      主文件路径
+     * @param file      本地文件
+     * @return 文件大小, 未初始化返回-1
+     */
+    public static long downloadFile(String groupName, String path, File file) {
+        if (successInit()) {
+            return -1;
+        }
+        return defaultClient.downloadFile(groupName, path, file);
+    }
+
+    /**
+     * 以输入流的方式下载文件
+     * 文件内容不会整体读入内存, 返回的输入流使用完必须关闭
+     *
+     * @param groupName 组名称
+     * @param path      主文件路径
+     * @return 文件内容的输入流, 未初始化返回null
+     */
+    public static FastDfsInputStream openStream(String groupName, String path) {
+        if (successInit()) {
+            return null;
+        }
+        return defaultClient.openStream(groupName, path);
+    }
+
+    /**
+     * 下载文件并写入通道
+     * 使用固定大小的缓冲区转发文件内容, 适合将文件直接输出到Servlet响应等场景
+     *
+     * @param groupName 组名称
+     * @param path      主文件路径
+     * @param channel   目标通道(如Channels.newChannel(response.getOutputStream()))
+     * @return 写入的字节数, 未初始化返回-1
+     */
+    public static long downloadFile(String groupName, String path, WritableByteChannel channel) {
+        if (successInit()) {
+            return -1;
+        }
+        return defaultClient.downloadFile(groupName, path, channel);
     }
 
     /**
@@ -288,11 +360,7 @@ public class FastDfsClient {
         if (successInit()) {
             return "";
         }
-        return storageClient.downloadFile(groupName, path, (InputStream inputStream) -> {
-            String string = FileUtils.inputStreamToString(inputStream);
-            inputStream.close();
-            return string;
-        });
+        return defaultClient.characterStringDownload(groupName, path);
     }
 
     /**
@@ -306,16 +374,45 @@ public class FastDfsClient {
         if (successInit()) {
             return "";
         }
-        int i = fileId.indexOf("/");
-        return characterStringDownload(fileId.substring(0, i), fileId.substring(i + 1));
+        return defaultClient.characterStringDownload(fileId);
+    }
+
+    /**
+     * 获取默认客户端实例, 未初始化时返回null
+     */
+    public static FastDfsClusterClient getDefaultClient() {
+        return defaultClient;
     }
 
     public static TrackerClient getTrackerClient() {
-        return trackerClient;
+        return null == defaultClient ? null : defaultClient.getTrackerClient();
     }
 
     public static StorageClient getStorageClient() {
-        return storageClient;
+        return null == defaultClient ? null : defaultClient.getStorageClient();
+    }
+
+    /**
+     * 获取监控指标, 未设置时返回{@link FastDfsMetrics#NOOP}
+     */
+    public static FastDfsMetrics getMetrics() {
+        return null == defaultClient ? FastDfsMetrics.NOOP : defaultClient.getMetrics();
+    }
+
+    public static ParallelDownloader getParallelDownloader() {
+        return null == defaultClient ? null : defaultClient.getParallelDownloader();
+    }
+
+    public static ChunkedFastDfsUploader getChunkedUploader() {
+        return null == defaultClient ? null : defaultClient.getChunkedUploader();
+    }
+
+    public static AsyncTrackerClient getAsyncTrackerClient() {
+        return null == defaultClient ? null : defaultClient.getAsyncTrackerClient();
+    }
+
+    public static AsyncStorageClient getAsyncStorageClient() {
+        return null == defaultClient ? null : defaultClient.getAsyncStorageClient();
     }
 
     /**
@@ -324,9 +421,10 @@ public class FastDfsClient {
      * @return 布尔值
      */
     private static boolean successInit() {
-        if (!isSuccessInit) {
+        if (null == defaultClient) {
             log.error("请调用FastDfsClient.init()方法完成初始化设置");
+            return true;
         }
-        return !isSuccessInit;
+        return false;
     }
 }
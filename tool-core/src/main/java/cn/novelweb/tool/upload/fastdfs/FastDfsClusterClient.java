@@ -0,0 +1,782 @@
+package cn.novelweb.tool.upload.fastdfs;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IoUtil;
+import cn.novelweb.tool.io.FileUtils;
+import cn.novelweb.tool.upload.fastdfs.client.*;
+import cn.novelweb.tool.upload.fastdfs.config.FastDfsConfig;
+import cn.novelweb.tool.upload.fastdfs.conn.Connection;
+import cn.novelweb.tool.upload.fastdfs.conn.Deadline;
+import cn.novelweb.tool.upload.fastdfs.conn.DefaultCommandExecutor;
+import cn.novelweb.tool.upload.fastdfs.conn.NioCommandExecutor;
+import cn.novelweb.tool.upload.fastdfs.dedup.DedupIndex;
+import cn.novelweb.tool.upload.fastdfs.dedup.LocalDedupIndex;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsIoException;
+import cn.novelweb.tool.upload.fastdfs.metrics.FastDfsMetrics;
+import cn.novelweb.tool.upload.fastdfs.model.FileInfo;
+import cn.novelweb.tool.upload.fastdfs.model.ImageUploadResult;
+import cn.novelweb.tool.upload.fastdfs.model.MateData;
+import cn.novelweb.tool.upload.fastdfs.model.StorageNode;
+import cn.novelweb.tool.upload.fastdfs.model.StorePath;
+import cn.novelweb.tool.upload.fastdfs.model.ThumbnailSize;
+import cn.novelweb.tool.upload.fastdfs.model.UploadItem;
+import cn.novelweb.tool.upload.fastdfs.pool.ConnectionPool;
+import cn.novelweb.tool.upload.fastdfs.pool.PooledConnectionFactory;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.callback.DownloadCallback;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.response.FastDfsInputStream;
+import cn.novelweb.tool.upload.fastdfs.utils.ExecutorUtils;
+import cn.novelweb.tool.upload.fastdfs.utils.FastDfsParamMapperUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.pool2.impl.GenericKeyedObjectPoolConfig;
+
+import java.io.*;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * <p>连接一个FastDFS集群的客户端实例</p>
+ * <p>每个实例拥有独立的连接池、命令执行器、路由缓存、文件缓存及监控指标, 同一个JVM中可以同时连接多个集群
+ * (如SSD热数据集群和HDD冷数据集群), 慢集群占满连接时不会影响其他集群的请求<br/>
+ * 实例线程安全, 通常每个集群创建一个并长期使用, 不再使用时调用{@link #close()}释放连接</p>
+ * <pre>
+ * FastDfsClusterClient hot = FastDfsClusterClient.builder()
+ *         .trackerServers("10.0.0.1:22122,10.0.0.2:22122")
+ *         .maxTotalPerKey(100)
+ *         .build();
+ * FastDfsClusterClient cold = new FastDfsClusterClient(FastDfsConfig.load("fastdfs-cold.properties"));
+ * </pre>
+ * <p>{@link FastDfsClient}的静态方法使用一个默认实例</p>
+ * <p>2026-10-18 20:40</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+@Slf4j
+public class FastDfsClusterClient implements Closeable {
+
+    /**
+     * 超过该大小的文件异步上传时仍使用阻塞连接, 避免整体读入内存(16MB)
+     */
+    private static final long ASYNC_IN_MEMORY_LIMIT = 16 * 1024 * 1024;
+
+    private final FastDfsConfig config;
+
+    private final ConnectionPool connectionPool;
+
+    private final DefaultCommandExecutor commandExecutor;
+
+    private final NioCommandExecutor nioCommandExecutor;
+
+    /**
+     * 异步客户端解析响应及编码请求的线程池
+     */
+    private final ExecutorService asyncExecutor;
+
+    /**
+     * 异步上传大文件时执行阻塞上传的线程池
+     */
+    private final ExecutorService blockingExecutor;
+
+    private final FastDfsMetrics metrics;
+
+    private final ClusterStateMonitor clusterStateMonitor;
+
+    private final TrackerClient trackerClient;
+
+    private final StorageClient storageClient;
+
+    private final ParallelDownloader parallelDownloader;
+
+    private final ChunkedFastDfsUploader chunkedUploader;
+
+    private final ThumbnailUploader thumbnailUploader;
+
+    /**
+     * 按配置文件创建的本地去重索引, 未开启去重或使用外部指定的索引时为null
+     */
+    private final LocalDedupIndex localDedupIndex;
+
+    private final AsyncTrackerClient asyncTrackerClient;
+
+    private final AsyncStorageClient asyncStorageClient;
+
+    /**
+     * 按配置创建客户端实例, 小于等于0的连接池及超时配置使用默认值
+     *
+     * @param config 配置信息
+     */
+    public FastDfsClusterClient(FastDfsConfig config) {
+        if (null == config || StringUtils.isBlank(config.getTrackerServers())) {
+            throw new IllegalArgumentException("Tracker Server服务器地址未配置");
+        }
+        this.config = config;
+        FastDfsConfig defaults = new FastDfsConfig();
+        // 预先解析请求/响应映射定义
+        FastDfsParamMapperUtils.warmUp();
+        // debug日志开关只作用于当前实例的命令执行器, 不修改全局设置
+        boolean debugLog = null == config.getDebugLog() || config.getDebugLog();
+        metrics = null == config.getMetrics() ? FastDfsMetrics.NOOP : config.getMetrics();
+        int soTimeout = positive(config.getSoTimeout(), defaults.getSoTimeout());
+        int connectTimeout = positive(config.getConnectTimeout(), defaults.getConnectTimeout());
+        // 先校验不占用资源的配置, 配置错误时不创建连接池及后台线程
+        List<ThumbnailSize> thumbnailSizes = ThumbnailSize.parse(config.getThumbnailSizes(), config.isThumbnailCrop());
+        boolean dedup = config.isDedup() || null != config.getDedupIndex();
+        // 引用计数只保存在内存中时重启后会误删共用的文件, 不允许不持久化的索引
+        if (dedup && null == config.getDedupIndex() && StringUtils.isBlank(config.getDedupIndexFile())) {
+            throw new IllegalArgumentException("开启去重上传时必须配置去重索引日志文件(fastdfs.dedup.indexFile)或指定去重索引");
+        }
+        // 创建过程中出现异常时释放已创建的连接池、后台线程及日志文件
+        ConnectionPool pool = null;
+        ClusterStateMonitor monitor = null;
+        LocalDedupIndex localIndex = null;
+        ExecutorService async = null;
+        ExecutorService blocking = null;
+        NioCommandExecutor nio = null;
+        try {
+            PooledConnectionFactory pooledConnectionFactory = new PooledConnectionFactory(soTimeout, connectTimeout);
+            pooledConnectionFactory.setMetrics(metrics);
+            GenericKeyedObjectPoolConfig<Connection> conf = new GenericKeyedObjectPoolConfig<>();
+            conf.setMaxTotal(positive(config.getMaxTotal(), defaults.getMaxTotal()));
+            conf.setMaxTotalPerKey(positive(config.getMaxTotalPerKey(), defaults.getMaxTotalPerKey()));
+            conf.setMaxIdlePerKey(positive(config.getMaxIdlePerKey(), defaults.getMaxIdlePerKey()));
+            conf.setTestOnBorrow(config.isTestOnBorrow());
+            pool = new ConnectionPool(pooledConnectionFactory, conf);
+            // 在后台并行验证空闲连接, 借出连接时不再需要验证
+            if (config.getValidateIdleSeconds() > 0) {
+                pool.startIdleValidation(config.getValidateIdleSeconds() * 1000L);
+            }
+            connectionPool = pool;
+            Set<String> trackerSet = new HashSet<>();
+            for (String tracker : StringUtils.split(config.getTrackerServers(), ",")) {
+                if (StringUtils.isNotBlank(tracker)) {
+                    trackerSet.add(tracker.trim());
+                }
+            }
+            commandExecutor = new DefaultCommandExecutor(trackerSet, connectionPool);
+            commandExecutor.setMetrics(metrics);
+            commandExecutor.setDebugLog(debugLog);
+            TrackerClient tracker = new DefaultTrackerClient(commandExecutor);
+            // 缓存Tracker返回的文件所在存储节点, 下载时不再每次先请求Tracker(上传存储节点默认不缓存)
+            if (config.getRouteCacheSeconds() > 0) {
+                tracker = new CachedTrackerClient(tracker, config.getRouteCacheSeconds() * 1000L,
+                        positive(config.getRouteCacheMaxEntries(), defaults.getRouteCacheMaxEntries()), config.isRouteCacheUpload());
+            }
+            // 定时查询集群状态, 上传时避开剩余空间不足及同步延迟过大的存储节点
+            if (config.getClusterPollSeconds() > 0) {
+                monitor = new ClusterStateMonitor(tracker, config.getClusterPollSeconds() * 1000L, metrics);
+                monitor.setMinFreePercent(Math.max(0, config.getClusterMinFreePercent()));
+                monitor.setMaxSyncLagSeconds(config.getClusterMaxSyncLagSeconds());
+                tracker = new SpaceAwareTrackerClient(tracker, monitor);
+            }
+            clusterStateMonitor = monitor;
+            trackerClient = tracker;
+            DefaultStorageClient defaultStorage = new DefaultStorageClient(commandExecutor, trackerClient);
+            // 读取请求超过P95耗时仍未返回时向另一个副本再发送一次请求
+            if (config.isReadHedge()) {
+                HedgedReader hedgedReader = new HedgedReader(trackerClient);
+                hedgedReader.setHedgeDelayMillis(positive(config.getReadHedgeDelayMs(), defaults.getReadHedgeDelayMs()));
+                hedgedReader.setMaxRetries(Math.max(0, config.getReadMaxRetries()));
+                hedgedReader.setRetryBackoffMillis(Math.max(0, config.getReadRetryBackoffMs()));
+                defaultStorage.setHedgedReader(hedgedReader);
+            }
+            StorageClient storage = defaultStorage;
+            // 在传输文件内容的同时计算CRC32, 与服务端记录的校验码比较
+            if (config.isCrcVerify()) {
+                CrcVerifyingStorageClient verifyingStorage = new CrcVerifyingStorageClient(storage);
+                verifyingStorage.setMaxRetries(Math.max(0, config.getCrcMaxRetries()));
+                storage = verifyingStorage;
+            }
+            // 缓存小文件内容及元数据, 重复读取时不再请求存储节点
+            if (config.getCacheMaxMb() > 0) {
+                storage = new CachedStorageClient(storage, config.getCacheMaxMb() * 1024L * 1024L,
+                        positive(config.getCacheMaxObjectKb(), defaults.getCacheMaxObjectKb()) * 1024,
+                        config.isCacheOffHeap(), config.getCacheTtlSeconds() * 1000L);
+            }
+            // 按文件内容去重上传, 相同内容只保存一份
+            if (dedup) {
+                DedupIndex dedupIndex = config.getDedupIndex();
+                if (null == dedupIndex) {
+                    localIndex = new LocalDedupIndex(new File(config.getDedupIndexFile()));
+                    dedupIndex = localIndex;
+                }
+                DedupStorageClient dedupStorage = new DedupStorageClient(storage, dedupIndex);
+                dedupStorage.setPreHashMaxBytes(Math.max(0, config.getDedupPreHashMaxKb()) * 1024);
+                storage = dedupStorage;
+            }
+            localDedupIndex = localIndex;
+            storageClient = storage;
+            parallelDownloader = new ParallelDownloader(commandExecutor, trackerClient);
+            chunkedUploader = new ChunkedFastDfsUploader(commandExecutor, trackerClient);
+            // 上传图片时解码一次生成全部尺寸的缩略图, 以管道模式上传为从文件
+            thumbnailUploader = new ThumbnailUploader(storageClient, commandExecutor, trackerClient);
+            thumbnailUploader.setSizes(thumbnailSizes);
+            // 异步客户端使用非阻塞连接, 解析响应及阻塞上传使用各自有上限的线程池, 不占用公共线程池
+            int asyncThreads = positive(config.getAsyncThreads(), Runtime.getRuntime().availableProcessors());
+            int asyncMaxRequests = positive(config.getAsyncMaxRequests(), defaults.getAsyncMaxRequests());
+            async = ExecutorUtils.newBoundedExecutor("fastdfs-async-", asyncThreads, asyncMaxRequests);
+            asyncExecutor = async;
+            blocking = ExecutorUtils.newBoundedExecutor("fastdfs-async-blocking-", asyncThreads, asyncMaxRequests);
+            blockingExecutor = blocking;
+            nio = new NioCommandExecutor(trackerSet, soTimeout, connectTimeout,
+                    positive(config.getNioMaxConnectionsPerKey(), defaults.getNioMaxConnectionsPerKey()),
+                    StandardCharsets.UTF_8, asyncExecutor);
+            nioCommandExecutor = nio;
+            nioCommandExecutor.setMaxResponseSize(positive(config.getNioMaxResponseMb(), defaults.getNioMaxResponseMb()) * 1024 * 1024);
+            nioCommandExecutor.setMetrics(metrics);
+            nioCommandExecutor.setDebugLog(debugLog);
+            asyncTrackerClient = new DefaultAsyncTrackerClient(nioCommandExecutor);
+            asyncStorageClient = new DefaultAsyncStorageClient(nioCommandExecutor, asyncTrackerClient, asyncExecutor, asyncMaxRequests);
+        } catch (RuntimeException | Error e) {
+            release(monitor, nio, async, blocking, pool, localIndex);
+            throw e;
+        }
+    }
+
+    /**
+     * 创建客户端实例构建器, 未设置的配置使用默认值
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 上传input流
+     * 获取默认的group
+     *
+     * @param stream 需要上传的文件输入流
+     * @param length 文件大小
+     * @param ext    文件扩展名
+     * @return 返回存储文件的路径信息
+     */
+    public StorePath uploader(InputStream stream, long length, String ext) {
+        StorageNode node = trackerClient.getStorageNode();
+        if (node == null) {
+            return null;
+        }
+        return uploader(node.getGroupName(), stream, length, ext);
+    }
+
+    /**
+     * 上传input流
+     * 自定义group名
+     *
+     * @param group  组名称
+     * @param stream 文件输入流
+     * @param length 文件大小
+     * @param ext    文件扩展名
+     * @return 返回存储文件的路径信息
+     */
+    public StorePath uploader(String group, InputStream stream, long length, String ext) {
+        return storageClient.uploadFile(group, stream, length, ext);
+    }
+
+    /**
+     * 异步上传input流
+     * 小文件通过非阻塞连接上传, 超过16MB的文件在客户端内部的线程池中使用阻塞连接上传(线程都忙且队列已满时由调用线程上传)
+     *
+     * @param group  组名称
+     * @param stream 文件输入流
+     * @param length 文件大小
+     * @param ext    文件扩展名
+     * @return 异步返回存储文件的路径信息, 上传失败时以异常完成
+     */
+    public CompletableFuture<StorePath> asynchronousUpload(String group, InputStream stream, long length, String ext) {
+        if (length > ASYNC_IN_MEMORY_LIMIT) {
+            return CompletableFuture.supplyAsync(() -> storageClient.uploadFile(group, stream, length, ext), blockingExecutor);
+        }
+        return asyncStorageClient.uploadFile(group, stream, length, ext);
+    }
+
+    /**
+     * 字符串上传
+     *
+     * @param group       自定义组名
+     * @param str         需要上传的字符串
+     * @param ext         文件的扩展名(如:json)
+     * @param charsetName 字符集(如:UTF-8)
+     * @return 返回存储文件的路径信息
+     */
+    public StorePath characterStringUploader(String group, String str, String ext, String charsetName) {
+        ByteArrayInputStream inputStream = IoUtil.toStream(str, charsetName);
+        return uploader(group, inputStream, inputStream.available(), ext);
+    }
+
+    /**
+     * 字符串上传
+     * 获取默认的使用group, 默认字符集UTF-8
+     *
+     * @param str 需要上传的字符串
+     * @param ext 文件的扩展名(如:json)
+     * @return 返回存储文件的路径信息
+     */
+    public StorePath characterStringUploader(String str, String ext) {
+        StorageNode node = trackerClient.getStorageNode();
+        if (node == null) {
+            return null;
+        }
+        return characterStringUploader(node.getGroupName(), str, ext, "UTF-8");
+    }
+
+    /**
+     * 直接上传文件
+     * 获取默认的group
+     *
+     * @param file 需要上传的文件
+     * @return 返回存储文件的路径信息
+     */
+    public StorePath uploader(File file) {
+        StorageNode node = trackerClient.getStorageNode();
+        if (node == null) {
+            return null;
+        }
+        return uploader(node.getGroupName(), file);
+    }
+
+    /**
+     * 直接上传文件
+     * 自定义组的名称
+     *
+     * @param group 组名称
+     * @param file  需要上传的文件
+     * @return 返回存储文件的路径信息
+     */
+    public StorePath uploader(String group, File file) {
+        if (!file.isFile()) {
+            log.error("上传的文件不存在: {}", file.getAbsolutePath());
+            return null;
+        }
+        // 文件内容通过FileChannel.transferTo直接发送到socket, 不经过用户态缓冲区
+        return storageClient.uploadFile(group, file, FileUtil.extName(file.getAbsolutePath()));
+    }
+
+    /**
+     * 批量上传文件
+     * 按剩余空间分散到组内所有可写的存储节点并行上传
+     *
+     * @param group 组名称, 为null时使用Tracker选择的组
+     * @param items 上传的文件
+     * @return 与items顺序一致的文件存储路径, 上传失败的为null
+     */
+    public List<StorePath> uploadBatch(String group, List<UploadItem> items) {
+        return storageClient.uploadBatch(group, items);
+    }
+
+    /**
+     * 分块上传文件(支持断点续传)
+     * 上传中断后再次调用时从中断的位置继续上传
+     *
+     * @param group 组名称
+     * @param file  需要上传的文件
+     * @return 返回存储文件的路径信息
+     */
+    public StorePath resumableUploader(String group, File file) {
+        return chunkedUploader.upload(group, file, FileUtil.extName(file.getAbsolutePath()));
+    }
+
+    /**
+     * 上传图片并生成配置的各尺寸缩略图(从文件)
+     * 原图只解码一次, 缩略图并行生成, 在原图所在存储节点的一个连接上以管道模式上传
+     *
+     * @param group  组名称, 为null时使用Tracker选择的组
+     * @param stream 图片输入流
+     * @param length 图片大小
+     * @param ext    图片扩展名
+     * @param sizes  缩略图尺寸, 为null时使用配置的尺寸
+     * @return 原图及缩略图的存储路径
+     */
+    public ImageUploadResult uploadImage(String group, InputStream stream, long length, String ext, List<ThumbnailSize> sizes) {
+        String groupName = null == group ? defaultGroup() : group;
+        if (null == groupName) {
+            return null;
+        }
+        return thumbnailUploader.upload(groupName, stream, length, ext, null == sizes ? thumbnailUploader.getSizes() : sizes);
+    }
+
+    /**
+     * 上传本地图片并生成配置的各尺寸缩略图(从文件), 原图通过零拷贝上传
+     *
+     * @param group 组名称, 为null时使用Tracker选择的组
+     * @param file  本地图片
+     * @return 原图及缩略图的存储路径
+     */
+    public ImageUploadResult uploadImage(String group, File file) {
+        if (!file.isFile()) {
+            log.error("上传的文件不存在: {}", file.getAbsolutePath());
+            return null;
+        }
+        String groupName = null == group ? defaultGroup() : group;
+        if (null == groupName) {
+            return null;
+        }
+        return thumbnailUploader.upload(groupName, file);
+    }
+
+    private String defaultGroup() {
+        StorageNode node = trackerClient.getStorageNode();
+        return null == node ? null : node.getGroupName();
+    }
+
+    /**
+     * 删除文件
+     *
+     * @param group 组名称
+     * @param path  主文件路径
+     * @return 返回是否删除成功的布尔值
+     */
+    public boolean delete(String group, String path) {
+        return storageClient.deleteFile(group, path);
+    }
+
+    /**
+     * 删除文件
+     *
+     * @param fileId 文件id(格式如:group1/M00/00/00/xxx.png)
+     * @return 返回是否删除成功的布尔值
+     */
+    public boolean delete(String fileId) {
+        int i = fileId.indexOf("/");
+        return storageClient.deleteFile(fileId.substring(0, i), fileId.substring(i + 1));
+    }
+
+    /**
+     * 获取文件元信息
+     *
+     * @param groupName 组名称
+     * @param path      主文件路径
+     * @return 获取文件元信息集合，不存在返回空集合
+     */
+    public Set<MateData> getMetadata(String groupName, String path) {
+        return storageClient.getMetadata(groupName, path);
+    }
+
+    /**
+     * 获取文件的信息
+     *
+     * @param groupName 组名称
+     * @param path      主文件路径
+     * @return 文件信息(不存在返回null)
+     */
+    public FileInfo queryFileInfo(String groupName, String path) {
+        return storageClient.queryFileInfo(groupName, path);
+    }
+
+    /**
+     * 下载整个文件
+     *
+     * @param groupName 组名称
+     * @param path      主文件路径
+     * @param callback  下载回调接口
+     * @return 下载回调接口返回结果
+     */
+    public <T> T downloadFile(String groupName, String path, DownloadCallback<T> callback) {
+        return storageClient.downloadFile(groupName, path, callback);
+    }
+
+    /**
+     * 分段并行下载文件到本地
+     *
+     * @param groupName 组名称
+     * @param path      主文件路径
+     * @param file      本地文件
+     * @return 文件大小
+     */
+    public long downloadFile(String groupName, String path, File file) {
+        return parallelDownloader.download(groupName, path, file);
+    }
+
+    /**
+     * 以输入流的方式下载文件, 返回的输入流使用完必须关闭
+     *
+     * @param groupName 组名称
+     * @param path      主文件路径
+     * @return 文件内容的输入流
+     */
+    public FastDfsInputStream openStream(String groupName, String path) {
+        return storageClient.openStream(groupName, path);
+    }
+
+    /**
+     * 下载文件并写入通道
+     *
+     * @param groupName 组名称
+     * @param path      主文件路径
+     * @param channel   目标通道(如Channels.newChannel(response.getOutputStream()))
+     * @return 写入的字节数
+     */
+    public long downloadFile(String groupName, String path, WritableByteChannel channel) {
+        try (FastDfsInputStream inputStream = storageClient.openStream(groupName, path)) {
+            return inputStream.transferTo(channel);
+        } catch (IOException e) {
+            // 超过截止时间或被取消时连接已中止
+            Deadline deadline = Deadline.current();
+            RuntimeException aborted = null == deadline ? null : deadline.failureIfAborted(groupName + "/" + path, e);
+            throw null == aborted ? new FastDfsIoException("下载文件写入通道异常", e) : aborted;
+        }
+    }
+
+    /**
+     * 字符串下载
+     *
+     * @param groupName 组名称
+     * @param path      主文件路径
+     * @return 返回文本数据
+     */
+    public String characterStringDownload(String groupName, String path) {
+        return storageClient.downloadFile(groupName, path, (InputStream inputStream) -> {
+            String string = FileUtils.inputStreamToString(inputStream);
+            inputStream.close();
+            return string;
+        });
+    }
+
+    /**
+     * 字符串下载
+     *
+     * @param fileId 文件id(格式如:group1/M00/00/00/xxx.png)
+     * @return 返回文本数据
+     */
+    public String characterStringDownload(String fileId) {
+        int i = fileId.indexOf("/");
+        return characterStringDownload(fileId.substring(0, i), fileId.substring(i + 1));
+    }
+
+    /**
+     * 关闭连接池及非阻塞连接
+     */
+    @Override
+    public void close() {
+        release(clusterStateMonitor, nioCommandExecutor, asyncExecutor, blockingExecutor, connectionPool, localDedupIndex);
+    }
+
+    /**
+     * 按创建的逆序释放资源, 为null的资源(未创建)跳过
+     */
+    private static void release(ClusterStateMonitor monitor, NioCommandExecutor nio, ExecutorService async,
+                                ExecutorService blocking, ConnectionPool pool, LocalDedupIndex localIndex) {
+        if (null != monitor) {
+            monitor.close();
+        }
+        if (null != nio) {
+            nio.close();
+        }
+        if (null != async) {
+            async.shutdown();
+        }
+        if (null != blocking) {
+            blocking.shutdown();
+        }
+        if (null != pool) {
+            pool.close();
+        }
+        // 关闭按配置文件创建的本地去重索引的日志文件
+        if (null != localIndex) {
+            localIndex.close();
+        }
+    }
+
+    public FastDfsConfig getConfig() {
+        return config;
+    }
+
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    public DefaultCommandExecutor getCommandExecutor() {
+        return commandExecutor;
+    }
+
+    public FastDfsMetrics getMetrics() {
+        return metrics;
+    }
+
+    public TrackerClient getTrackerClient() {
+        return trackerClient;
+    }
+
+    /**
+     * 获取集群容量监控, 未开启时返回null
+     */
+    public ClusterStateMonitor getClusterStateMonitor() {
+        return clusterStateMonitor;
+    }
+
+    public StorageClient getStorageClient() {
+        return storageClient;
+    }
+
+    public ParallelDownloader getParallelDownloader() {
+        return parallelDownloader;
+    }
+
+    public ChunkedFastDfsUploader getChunkedUploader() {
+        return chunkedUploader;
+    }
+
+    public ThumbnailUploader getThumbnailUploader() {
+        return thumbnailUploader;
+    }
+
+    public AsyncTrackerClient getAsyncTrackerClient() {
+        return asyncTrackerClient;
+    }
+
+    public AsyncStorageClient getAsyncStorageClient() {
+        return asyncStorageClient;
+    }
+
+    private static int positive(int value, int defaultValue) {
+        return value > 0 ? value : defaultValue;
+    }
+
+    /**
+     * 客户端实例构建器, 从默认配置开始设置
+     */
+    public static class Builder {
+
+        private final FastDfsConfig config = new FastDfsConfig();
+
+        private Builder() {
+        }
+
+        /**
+         * Tracker Server服务器地址, 格式 host:port(多个用“,”隔开)
+         */
+        public Builder trackerServers(String trackerServers) {
+            config.setTrackerServers(trackerServers);
+            return this;
+        }
+
+        public Builder soTimeout(int soTimeout) {
+            config.setSoTimeout(soTimeout);
+            return this;
+        }
+
+        public Builder connectTimeout(int connectTimeout) {
+            config.setConnectTimeout(connectTimeout);
+            return this;
+        }
+
+        public Builder maxTotal(int maxTotal) {
+            config.setMaxTotal(maxTotal);
+            return this;
+        }
+
+        public Builder maxTotalPerKey(int maxTotalPerKey) {
+            config.setMaxTotalPerKey(maxTotalPerKey);
+            return this;
+        }
+
+        public Builder maxIdlePerKey(int maxIdlePerKey) {
+            config.setMaxIdlePerKey(maxIdlePerKey);
+            return this;
+        }
+
+        public Builder testOnBorrow(boolean testOnBorrow) {
+            config.setTestOnBorrow(testOnBorrow);
+            return this;
+        }
+
+        public Builder validateIdleSeconds(int validateIdleSeconds) {
+            config.setValidateIdleSeconds(validateIdleSeconds);
+            return this;
+        }
+
+        public Builder routeCacheSeconds(int routeCacheSeconds) {
+            config.setRouteCacheSeconds(routeCacheSeconds);
+            return this;
+        }
+
+        /**
+         * 是否同时缓存上传存储节点(默认不缓存, 每次上传由Tracker选择存储节点)
+         */
+        public Builder routeCacheUpload(boolean routeCacheUpload) {
+            config.setRouteCacheUpload(routeCacheUpload);
+            return this;
+        }
+
+        /**
+         * 本地缓存最大占用内存(MB), 小于等于0时不缓存
+         */
+        public Builder cacheMaxMb(int cacheMaxMb) {
+            config.setCacheMaxMb(cacheMaxMb);
+            return this;
+        }
+
+        /**
+         * 下载文件及查询文件信息/元数据时是否从多个副本读取(对冲请求及重试)
+         */
+        public Builder readHedge(boolean readHedge) {
+            config.setReadHedge(readHedge);
+            return this;
+        }
+
+        /**
+         * 集群容量监控查询间隔(秒), 大于0时按集群状态选择上传存储节点
+         */
+        public Builder clusterPollSeconds(int clusterPollSeconds) {
+            config.setClusterPollSeconds(clusterPollSeconds);
+            return this;
+        }
+
+        /**
+         * 上传及下载整个文件时是否校验文件内容的CRC32
+         */
+        public Builder crcVerify(boolean crcVerify) {
+            config.setCrcVerify(crcVerify);
+            return this;
+        }
+
+        /**
+         * 按文件内容去重上传, 使用指定的去重索引(多个进程共用时需要存放在共享存储中)
+         */
+        public Builder dedup(DedupIndex dedupIndex) {
+            if (null == dedupIndex) {
+                throw new IllegalArgumentException("去重索引不能为null");
+            }
+            config.setDedup(true);
+            config.setDedupIndex(dedupIndex);
+            return this;
+        }
+
+        /**
+         * 按文件内容去重上传, 使用以指定文件为日志的{@link LocalDedupIndex}(只适用于单个进程)
+         */
+        public Builder dedup(String indexFile) {
+            if (StringUtils.isBlank(indexFile)) {
+                throw new IllegalArgumentException("去重索引日志文件不能为空");
+            }
+            config.setDedup(true);
+            config.setDedupIndexFile(indexFile);
+            return this;
+        }
+
+        /**
+         * 上传图片时生成的缩略图尺寸, 格式为 宽x高 或 前缀:宽x高, 多个用“,”隔开
+         */
+        public Builder thumbnailSizes(String thumbnailSizes) {
+            config.setThumbnailSizes(thumbnailSizes);
+            return this;
+        }
+
+        public Builder metrics(FastDfsMetrics metrics) {
+            config.setMetrics(metrics);
+            return this;
+        }
+
+        public Builder debugLog(boolean debugLog) {
+            config.setDebugLog(debugLog);
+            return this;
+        }
+
+        public FastDfsClusterClient build() {
+            return new FastDfsClusterClient(config);
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+package cn.novelweb.tool.upload.fastdfs.cache;
+
+/**
+ * <p>访问频率估计(Count-Min Sketch)</p>
+ * <p>每个计数器占4bit, 16个计数器打包在一个long中, 每个key在同一个long中占用4个计数器, 取最小值作为频率估计<br/>
+ * 累计记录次数达到表大小的10倍时所有计数器减半, 使频率随时间衰减, 过去的热点数据不会一直占据缓存</p>
+ * <p>2026-10-18 19:30</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+final class FrequencySketch {
+
+    /**
+     * 计数器最大值
+     */
+    private static final int MAX_COUNT = 15;
+
+    /**
+     * 计数器减半时清除每个计数器移入的最高位
+     */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /**
+     * 计算4个计数器位置的种子
+     */
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    private final long[] table;
+
+    private final int tableMask;
+
+    /**
+     * 计数器减半的周期
+     */
+    private final int sampleSize;
+
+    /**
+     * 当前周期内的记录次数
+     */
+    private int size;
+
+    /**
+     * @param maximumEntries 预计缓存的最大条目数
+     */
+    FrequencySketch(int maximumEntries) {
+        int capacity = Integer.highestOneBit(Math.max(16, Math.min(maximumEntries, 1 << 24)) - 1) << 1;
+        this.table = new long[capacity];
+        this.tableMask = capacity - 1;
+        this.sampleSize = 10 * capacity;
+    }
+
+    /**
+     * 估计访问频率(0-15)
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * 记录一次访问
+     */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++size >= sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 所有计数器减半
+     */
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size >>>= 1;
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return ((int) h) & tableMask;
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+}
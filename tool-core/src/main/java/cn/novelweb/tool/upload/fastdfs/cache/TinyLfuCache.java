@@ -0,0 +1,261 @@
+package cn.novelweb.tool.upload.fastdfs.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * <p>按容量(字节)限制的W-TinyLFU缓存</p>
+ * <p>1.新数据先进入占总容量1%的窗口区(LRU), 窗口区满时淘汰最久未访问的数据作为候选<br/>
+ * 2.主区(LRU)有空间时候选直接进入主区, 否则从主区最久未访问的数据开始选出足够容纳候选的数据比较访问频率({@link FrequencySketch}),
+ * 候选频率高于全部被选出的数据时淘汰这些数据, 否则丢弃候选<br/>
+ * 3.只访问一次的数据不会挤掉经常访问的数据, 突发的新热点数据也能通过窗口区进入缓存</p>
+ * <p>所有操作在同一把锁内完成, 适合条目较大、访问频率不极端的场景</p>
+ * <p>2026-10-18 19:30</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public class TinyLfuCache<K, V> {
+
+    /**
+     * 窗口区占总容量的比例
+     */
+    private static final int WINDOW_PERCENT = 1;
+
+    /**
+     * 窗口区(按访问顺序)
+     */
+    private final LinkedHashMap<K, Node<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * 主区(按访问顺序)
+     */
+    private final LinkedHashMap<K, Node<V>> main = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final FrequencySketch sketch;
+
+    /**
+     * 计算数据占用的容量
+     */
+    private final ToIntFunction<V> weigher;
+
+    /**
+     * 窗口区最大容量
+     */
+    private final long windowMaxWeight;
+
+    /**
+     * 主区最大容量
+     */
+    private final long mainMaxWeight;
+
+    /**
+     * 数据有效期(毫秒), 小于等于0时不过期
+     */
+    private final long ttlMillis;
+
+    private long windowWeight;
+
+    private long mainWeight;
+
+    private long hitCount;
+
+    private long missCount;
+
+    private long evictionCount;
+
+    /**
+     * @param maxWeight       最大容量
+     * @param expectedEntries 预计最大条目数(用于确定访问频率统计表的大小)
+     * @param ttlMillis       数据有效期(毫秒), 小于等于0时不过期
+     * @param weigher         计算数据占用的容量
+     */
+    public TinyLfuCache(long maxWeight, int expectedEntries, long ttlMillis, ToIntFunction<V> weigher) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("缓存容量必须大于0");
+        }
+        this.windowMaxWeight = Math.max(1, maxWeight * WINDOW_PERCENT / 100);
+        this.mainMaxWeight = Math.max(1, maxWeight - windowMaxWeight);
+        this.ttlMillis = ttlMillis;
+        this.weigher = weigher;
+        this.sketch = new FrequencySketch(expectedEntries);
+    }
+
+    /**
+     * 获取缓存数据, 同时记录一次访问
+     *
+     * @return 缓存数据, 不存在或已过期返回null
+     */
+    public synchronized V get(K key) {
+        sketch.increment(key);
+        Node<V> node = window.get(key);
+        if (null == node) {
+            node = main.get(key);
+        }
+        if (null == node) {
+            missCount++;
+            return null;
+        }
+        if (node.isExpired()) {
+            remove(key);
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return node.value;
+    }
+
+    /**
+     * 放入缓存, 超过主区容量的数据不缓存
+     */
+    public synchronized void put(K key, V value) {
+        remove(key);
+        int weight = weigher.applyAsInt(value);
+        if (weight > mainMaxWeight) {
+            return;
+        }
+        sketch.increment(key);
+        window.put(key, new Node<>(value, weight, ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : Long.MAX_VALUE));
+        windowWeight += weight;
+        evictFromWindow();
+    }
+
+    /**
+     * 删除缓存数据
+     */
+    public synchronized void invalidate(K key) {
+        remove(key);
+    }
+
+    /**
+     * 清空缓存
+     */
+    public synchronized void invalidateAll() {
+        window.clear();
+        main.clear();
+        windowWeight = 0;
+        mainWeight = 0;
+    }
+
+    /**
+     * 窗口区超出容量时将最久未访问的数据移入主区
+     */
+    private void evictFromWindow() {
+        Iterator<Map.Entry<K, Node<V>>> iterator = window.entrySet().iterator();
+        while (windowWeight > windowMaxWeight && iterator.hasNext()) {
+            Map.Entry<K, Node<V>> candidate = iterator.next();
+            iterator.remove();
+            windowWeight -= candidate.getValue().weight;
+            admit(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    /**
+     * 候选数据进入主区, 主区已满时从最久未访问的数据开始选出足够容纳候选的淘汰数据,
+     * 候选的访问频率高于全部淘汰数据时才淘汰并接纳候选, 否则丢弃候选, 主区数据保持不变
+     */
+    private void admit(K key, Node<V> candidate) {
+        if (candidate.isExpired()) {
+            return;
+        }
+        List<K> victims = new ArrayList<>();
+        long freedWeight = 0;
+        int victimFrequency = 0;
+        Iterator<Map.Entry<K, Node<V>>> iterator = main.entrySet().iterator();
+        while (mainWeight - freedWeight + candidate.weight > mainMaxWeight && iterator.hasNext()) {
+            Map.Entry<K, Node<V>> victim = iterator.next();
+            if (victim.getValue().isExpired()) {
+                // 已过期的数据直接移除, 不参与比较
+                iterator.remove();
+                mainWeight -= victim.getValue().weight;
+                evictionCount++;
+                continue;
+            }
+            victims.add(victim.getKey());
+            freedWeight += victim.getValue().weight;
+            victimFrequency = Math.max(victimFrequency, sketch.frequency(victim.getKey()));
+        }
+        if (!victims.isEmpty() && sketch.frequency(key) <= victimFrequency) {
+            evictionCount++;
+            return;
+        }
+        for (K victim : victims) {
+            mainWeight -= main.remove(victim).weight;
+            evictionCount++;
+        }
+        main.put(key, candidate);
+        mainWeight += candidate.weight;
+    }
+
+    private void remove(K key) {
+        Node<V> node = window.remove(key);
+        if (null != node) {
+            windowWeight -= node.weight;
+        }
+        node = main.remove(key);
+        if (null != node) {
+            mainWeight -= node.weight;
+        }
+    }
+
+    /**
+     * 获取命中次数
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * 获取未命中次数
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * 获取淘汰(包括未被主区接纳)的数据数量
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * 获取当前缓存的条目数
+     */
+    public synchronized int size() {
+        return window.size() + main.size();
+    }
+
+    /**
+     * 获取当前占用的容量
+     */
+    public synchronized long weight() {
+        return windowWeight + mainWeight;
+    }
+
+    /**
+     * 缓存的数据及其容量、过期时间
+     */
+    private static final class Node<V> {
+
+        private final V value;
+
+        private final int weight;
+
+        private final long expireTime;
+
+        private Node(V value, int weight, long expireTime) {
+            this.value = value;
+            this.weight = weight;
+            this.expireTime = expireTime;
+        }
+
+        private boolean isExpired() {
+            return expireTime != Long.MAX_VALUE && System.currentTimeMillis() >= expireTime;
+        }
+    }
+
+}
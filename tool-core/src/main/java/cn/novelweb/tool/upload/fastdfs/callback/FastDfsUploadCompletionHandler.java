@@ -17,4 +17,12 @@ public interface FastDfsUploadCompletionHandler {
      */
     void complete(StorePath storePath);
 
+    /**
+     * 异步上传失败后的回调方法(默认忽略, 异常已记录到日志)
+     *
+     * @param throwable 上传失败的原因
+     */
+    default void failed(Throwable throwable) {
+    }
+
 }
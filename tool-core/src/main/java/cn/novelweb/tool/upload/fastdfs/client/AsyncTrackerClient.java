@@ -0,0 +1,86 @@
+package cn.novelweb.tool.upload.fastdfs.client;
+
+import cn.novelweb.tool.upload.fastdfs.model.GroupState;
+import cn.novelweb.tool.upload.fastdfs.model.StorageNode;
+import cn.novelweb.tool.upload.fastdfs.model.StorageNodeInfo;
+import cn.novelweb.tool.upload.fastdfs.model.StorageState;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 目录服务(Tracker)异步客户端接口<br/>
+ * 所有方法立即返回, 失败时返回的CompletableFuture以异常完成
+ * <p>2026-10-18 11:02</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public interface AsyncTrackerClient {
+
+    /**
+     * 获取一个存储节点信息
+     *
+     * @return 存储节点信息
+     */
+    CompletableFuture<StorageNode> getStorageNode();
+
+    /**
+     * 根据组名称获取一个Group下面的一个存储节点名称
+     *
+     * @param groupName 组名称
+     * @return 存储节点信息
+     */
+    CompletableFuture<StorageNode> getStorageNode(String groupName);
+
+    /**
+     * 获取文件存储的源存储节信息
+     *
+     * @param groupName 组名称
+     * @param filename  文件路径
+     * @return 源存储节点信息
+     */
+    CompletableFuture<StorageNodeInfo> getFetchStorage(String groupName, String filename);
+
+    /**
+     * 获取文件存储的源存储节信息(toUpdate=true)
+     *
+     * @param groupName 组名称
+     * @param filename  文件路径
+     * @return 源存储节点信息
+     */
+    CompletableFuture<StorageNodeInfo> getFetchStorageAndUpdate(String groupName, String filename);
+
+    /**
+     * 获取存储组的状态
+     *
+     * @return 存储组状态集合，不存在返回空集合
+     */
+    CompletableFuture<List<GroupState>> getGroupStates();
+
+    /**
+     * 获取一个存储组里的所有存储服务节点状态信息
+     *
+     * @param groupName 组名称
+     * @return 存储节点状态信息集合，不存在返回空集合
+     */
+    CompletableFuture<List<StorageState>> getStorageStates(String groupName);
+
+    /**
+     * 获取一个存储组里的某个存储服务节点状态信息
+     *
+     * @param groupName 组名称
+     * @param storageIp 储服节点IP地址
+     * @return 存储节点状态信息，不存在返回null
+     */
+    CompletableFuture<StorageState> getStorageState(String groupName, String storageIp);
+
+    /**
+     * 把存储节点踢出到集群之外(此存储节点必须已关闭才能进行此操作，不然操作会失败)
+     *
+     * @param groupName 组名称
+     * @param storageIp 储服节点IP地址
+     * @return 操作完成
+     */
+    CompletableFuture<Void> deleteStorage(String groupName, String storageIp);
+
+}
@@ -0,0 +1,328 @@
+package cn.novelweb.tool.upload.fastdfs.client;
+
+import cn.novelweb.tool.upload.fastdfs.constant.StatusConstants;
+import cn.novelweb.tool.upload.fastdfs.conn.CommandExecutor;
+import cn.novelweb.tool.upload.fastdfs.conn.Deadline;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsCancelledException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsConnectException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsIoException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsServerException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsTimeoutException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsUnavailableException;
+import cn.novelweb.tool.upload.fastdfs.model.StorageNode;
+import cn.novelweb.tool.upload.fastdfs.model.StorageState;
+import cn.novelweb.tool.upload.fastdfs.model.StorePath;
+import cn.novelweb.tool.upload.fastdfs.model.UploadItem;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.UploadFileCommandAbstract;
+import cn.novelweb.tool.upload.fastdfs.utils.Log;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>批量上传文件, 分散到组内所有可写的存储节点</p>
+ * <p>1.向Tracker查询一次组内所有存储节点的状态, 只使用状态为ACTIVE的节点<br/>
+ * 2.按存储节点的剩余空间加权轮询(平滑加权轮询)为每个文件选择存储节点, 剩余空间越大分到的文件越多<br/>
+ * 3.每个存储节点同时上传的文件数不超过{@link #setConcurrencyPerNode(int)}, 存储节点连接失败时不再使用该节点,
+ * 文件换一个存储节点重试(输入流只在尚未发送任何数据时重试), 每个文件在每个存储节点上最多尝试一次</p>
+ * <p>2026-10-18 19:00</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+@Slf4j
+public class BatchUploader {
+
+    /**
+     * 默认每个存储节点同时上传的文件数
+     */
+    private static final int DEFAULT_CONCURRENCY_PER_NODE = 4;
+
+    private static final AtomicInteger THREAD_INDEX = new AtomicInteger();
+
+    private final CommandExecutor commandExecutor;
+
+    private final TrackerClient trackerClient;
+
+    /**
+     * 每个存储节点同时上传的文件数
+     */
+    private int concurrencyPerNode = DEFAULT_CONCURRENCY_PER_NODE;
+
+    /**
+     * 执行上传任务的线程池, 为null时使用内部共享的线程池
+     */
+    private Executor executor;
+
+    public BatchUploader(CommandExecutor commandExecutor, TrackerClient trackerClient) {
+        this.commandExecutor = commandExecutor;
+        this.trackerClient = trackerClient;
+    }
+
+    /**
+     * 批量上传文件
+     *
+     * @param groupName 组名称, 为null时使用Tracker选择的组
+     * @param items     上传的文件
+     * @return 与items顺序一致的文件存储路径, 上传失败的为null
+     */
+    public List<StorePath> upload(String groupName, List<UploadItem> items) {
+        if (items.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Batch batch = new Batch(items, getTargets(groupName));
+        int workers = (int) Math.max(1, Math.min(items.size(), (long) concurrencyPerNode * batch.targets.size()));
+        List<Future<?>> futures = new ArrayList<>(workers - 1);
+        Executor workerExecutor = null == executor ? UploadExecutor.EXECUTOR : executor;
+        for (int i = 1; i < workers; i++) {
+            // 工作线程使用调用线程的截止时间
+            FutureTask<Void> task = new FutureTask<>(Deadline.wrap(batch::work), null);
+            workerExecutor.execute(task);
+            futures.add(task);
+        }
+        // 调用线程也参与上传
+        batch.work();
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FastDfsIoException("批量上传被中断", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("批量上传异常", e.getCause());
+        }
+        Log.debug("批量上传完成, 文件数[{}], 失败数[{}], 存储节点{}", items.size(), batch.failures.get(), batch.targets);
+        return new ArrayList<>(Arrays.asList(batch.results));
+    }
+
+    /**
+     * 获取组内可写的存储节点, 查询失败或没有ACTIVE状态的节点时使用Tracker选择的存储节点
+     */
+    private List<Target> getTargets(String groupName) {
+        String group = groupName;
+        if (null == group) {
+            group = getStorageNode(null).getGroupName();
+        }
+        List<Target> targets = new ArrayList<>();
+        try {
+            for (StorageState state : trackerClient.getStorageStates(group)) {
+                if (state.getStatus() != StatusConstants.DFS_STORAGE_STATUS_ACTIVE) {
+                    continue;
+                }
+                StorageNode storageNode = new StorageNode(state.getIpAddr(), state.getStoragePort(), (byte) state.getCurrentWritePath());
+                storageNode.setGroupName(group);
+                targets.add(new Target(storageNode, Math.max(1, state.getFreeMb())));
+            }
+        } catch (RuntimeException e) {
+            Log.debug("获取存储节点状态失败 groupName=[{}], {}", group, e.getMessage());
+        }
+        if (targets.isEmpty()) {
+            targets.add(new Target(getStorageNode(group), 1));
+        }
+        return targets;
+    }
+
+    private StorageNode getStorageNode(String groupName) {
+        StorageNode storageNode = null == groupName ? trackerClient.getStorageNode() : trackerClient.getStorageNode(groupName);
+        if (null == storageNode) {
+            throw new FastDfsException("获取上传存储节点失败 groupName=[" + groupName + "]");
+        }
+        return storageNode;
+    }
+
+    /**
+     * 一次批量上传的状态
+     */
+    private class Batch {
+
+        private final List<UploadItem> items;
+
+        private final List<Target> targets;
+
+        private final StorePath[] results;
+
+        /**
+         * 下一个待上传的文件
+         */
+        private final AtomicInteger nextItem = new AtomicInteger();
+
+        /**
+         * 上传失败的文件数
+         */
+        private final AtomicInteger failures = new AtomicInteger();
+
+        private Batch(List<UploadItem> items, List<Target> targets) {
+            this.items = items;
+            this.targets = targets;
+            this.results = new StorePath[items.size()];
+        }
+
+        /**
+         * 按顺序领取文件上传, 直到全部完成
+         */
+        private void work() {
+            int index;
+            while ((index = nextItem.getAndIncrement()) < results.length && !Thread.currentThread().isInterrupted()) {
+                UploadItem item = items.get(index);
+                results[index] = upload(item);
+                if (null == results[index]) {
+                    failures.incrementAndGet();
+                }
+            }
+        }
+
+        /**
+         * 上传单个文件, 存储节点不可用时换一个尚未尝试过的节点重试, 最多尝试 存储节点数 次
+         *
+         * @return 文件存储路径, 上传失败返回null
+         */
+        private StorePath upload(UploadItem item) {
+            RuntimeException lastError = null;
+            List<Target> tried = new ArrayList<>(targets.size());
+            Target target = next(tried);
+            while (null != target) {
+                tried.add(target);
+                try {
+                    return upload(target, item);
+                } catch (FastDfsServerException | FastDfsTimeoutException | FastDfsCancelledException e) {
+                    // 服务端返回错误状态或请求已中止时重试没有意义
+                    lastError = e;
+                    break;
+                } catch (RuntimeException e) {
+                    lastError = e;
+                    if (e instanceof FastDfsUnavailableException) {
+                        target.available = false;
+                    }
+                    // 输入流已经发送的部分无法重新读取
+                    if (null == item.getFile() && !(e instanceof FastDfsConnectException)) {
+                        break;
+                    }
+                    Log.debug("上传文件失败, 换一个存储节点重试[{}], {}", target.storageNode, e.getMessage());
+                    target = tried.size() < targets.size() ? next(tried) : null;
+                }
+            }
+            log.error("批量上传文件失败: {}", item, lastError);
+            return null;
+        }
+
+        private StorePath upload(Target target, UploadItem item) {
+            StorageNode storageNode = target.storageNode;
+            UploadFileCommandAbstract command = null == item.getFile()
+                    ? new UploadFileCommandAbstract(storageNode.getStoreIndex(), item.getInputStream(), item.getFileExtName(), item.getFileSize(), false)
+                    : new UploadFileCommandAbstract(storageNode.getStoreIndex(), item.getFile(), 0, item.getFileExtName(), item.getFileSize(), false);
+            try {
+                target.permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new FastDfsIoException("批量上传被中断", e);
+            }
+            try {
+                return commandExecutor.execute(storageNode.getInetSocketAddress(), command);
+            } finally {
+                target.permits.release();
+            }
+        }
+
+        /**
+         * 平滑加权轮询选择下一个可用的存储节点
+         *
+         * @param exclude 排除的存储节点(已经尝试过的节点)
+         * @return 存储节点, 没有可用的节点时返回null
+         */
+        private Target next(List<Target> exclude) {
+            synchronized (targets) {
+                Target best = null;
+                long total = 0;
+                for (Target target : targets) {
+                    if (!target.available || exclude.contains(target)) {
+                        continue;
+                    }
+                    target.current += target.weight;
+                    total += target.weight;
+                    if (null == best || target.current > best.current) {
+                        best = target;
+                    }
+                }
+                if (null != best) {
+                    best.current -= total;
+                }
+                return best;
+            }
+        }
+    }
+
+    /**
+     * 上传的目标存储节点
+     */
+    private class Target {
+
+        private final StorageNode storageNode;
+
+        /**
+         * 权重(剩余空间MB)
+         */
+        private final long weight;
+
+        /**
+         * 平滑加权轮询的当前值
+         */
+        private long current;
+
+        /**
+         * 连接失败后不再使用
+         */
+        private volatile boolean available = true;
+
+        /**
+         * 限制同时上传的文件数
+         */
+        private final Semaphore permits = new Semaphore(concurrencyPerNode);
+
+        private Target(StorageNode storageNode, long weight) {
+            this.storageNode = storageNode;
+            this.weight = weight;
+        }
+
+        @Override
+        public String toString() {
+            return storageNode.getIp() + ":" + storageNode.getPort() + "(freeMb=" + weight + ", available=" + available + ")";
+        }
+    }
+
+    public int getConcurrencyPerNode() {
+        return concurrencyPerNode;
+    }
+
+    public void setConcurrencyPerNode(int concurrencyPerNode) {
+        if (concurrencyPerNode <= 0) {
+            throw new IllegalArgumentException("每个存储节点同时上传的文件数必须大于0");
+        }
+        this.concurrencyPerNode = concurrencyPerNode;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 默认共享的上传线程池(守护线程, 空闲60秒后回收)
+     */
+    private static class UploadExecutor {
+
+        private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "fastdfs-batch-upload-" + THREAD_INDEX.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+}
@@ -0,0 +1,561 @@
+package cn.novelweb.tool.upload.fastdfs.client;
+
+import cn.novelweb.tool.upload.fastdfs.cache.TinyLfuCache;
+import cn.novelweb.tool.upload.fastdfs.model.FileInfo;
+import cn.novelweb.tool.upload.fastdfs.model.MateData;
+import cn.novelweb.tool.upload.fastdfs.model.StorePath;
+import cn.novelweb.tool.upload.fastdfs.model.UploadItem;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.callback.DownloadCallback;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.response.FastDfsInputStream;
+import cn.novelweb.tool.upload.fastdfs.utils.IoUtils;
+import cn.novelweb.tool.upload.fastdfs.utils.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>带本地缓存的存储服务(Storage)客户端</p>
+ * <p>缓存小文件的内容、文件元数据及文件信息, 按占用的字节数限制缓存大小, 使用W-TinyLFU策略决定淘汰及接纳({@link TinyLfuCache})<br/>
+ * 文件内容可以存放在堆外内存(DirectByteBuffer), 减少大量缓存数据对GC的影响</p>
+ * <p>通过当前客户端删除、续传、修改、截断文件或修改元数据时使对应的缓存失效,
+ * 其他客户端的修改只能等待缓存过期</p>
+ * <p>2026-10-18 19:30</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public class CachedStorageClient implements StorageClient {
+
+    /**
+     * 每个缓存条目的额外开销估计(字节)
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    /**
+     * 估计缓存条目数时使用的平均大小(字节)
+     */
+    private static final int AVERAGE_ENTRY_SIZE = 4096;
+
+    private final StorageClient storageClient;
+
+    private final TinyLfuCache<String, Object> cache;
+
+    /**
+     * 缓存文件内容的最大文件大小(字节)
+     */
+    private final int maxObjectBytes;
+
+    /**
+     * 文件内容是否存放在堆外内存
+     */
+    private final boolean offHeap;
+
+    /**
+     * 缓存失效次数, 下载期间有缓存失效时不缓存下载结果, 避免缓存修改前的内容
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param storageClient  实际请求存储节点的客户端
+     * @param maxBytes       缓存最大占用字节数
+     * @param maxObjectBytes 缓存文件内容的最大文件大小(字节)
+     * @param offHeap        文件内容是否存放在堆外内存
+     * @param ttlMillis      缓存有效期(毫秒), 小于等于0时不过期
+     */
+    public CachedStorageClient(StorageClient storageClient, long maxBytes, int maxObjectBytes, boolean offHeap, long ttlMillis) {
+        this.storageClient = storageClient;
+        this.maxObjectBytes = maxObjectBytes;
+        this.offHeap = offHeap;
+        int expectedEntries = (int) Math.min(Integer.MAX_VALUE, Math.max(1024, maxBytes / AVERAGE_ENTRY_SIZE));
+        this.cache = new TinyLfuCache<>(maxBytes, expectedEntries, ttlMillis, CachedStorageClient::weigh);
+    }
+
+    @Override
+    public StorePath uploadFile(String groupName, InputStream inputStream, long fileSize, String fileExtName) {
+        return storageClient.uploadFile(groupName, inputStream, fileSize, fileExtName);
+    }
+
+    @Override
+    public StorePath uploadFile(String groupName, File file, String fileExtName) {
+        return storageClient.uploadFile(groupName, file, fileExtName);
+    }
+
+    @Override
+    public List<StorePath> uploadBatch(String groupName, List<UploadItem> items) {
+        return storageClient.uploadBatch(groupName, items);
+    }
+
+    @Override
+    public StorePath uploadSlaveFile(String groupName, String masterFilename, InputStream inputStream, long fileSize, String prefixName, String fileExtName) {
+        return storageClient.uploadSlaveFile(groupName, masterFilename, inputStream, fileSize, prefixName, fileExtName);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<MateData> getMetadata(String groupName, String path) {
+        String key = key(Kind.METADATA, groupName, path);
+        Set<MateData> metadata = (Set<MateData>) cache.get(key);
+        if (null == metadata) {
+            long version = invalidations.get();
+            metadata = storageClient.getMetadata(groupName, path);
+            // 获取失败时也返回空集合, 只缓存非空的元数据
+            if (null != metadata && !metadata.isEmpty()) {
+                putIfUnchanged(version, key, new HashSet<>(metadata));
+            }
+            return metadata;
+        }
+        return new HashSet<>(metadata);
+    }
+
+    @Override
+    public boolean overwriteMetadata(String groupName, String path, Set<MateData> metaDataSet) {
+        try {
+            return storageClient.overwriteMetadata(groupName, path, metaDataSet);
+        } finally {
+            invalidate(Kind.METADATA, groupName, path);
+        }
+    }
+
+    @Override
+    public boolean mergeMetadata(String groupName, String path, Set<MateData> metaDataSet) {
+        try {
+            return storageClient.mergeMetadata(groupName, path, metaDataSet);
+        } finally {
+            invalidate(Kind.METADATA, groupName, path);
+        }
+    }
+
+    @Override
+    public FileInfo queryFileInfo(String groupName, String path) {
+        String key = key(Kind.FILE_INFO, groupName, path);
+        FileInfo fileInfo = (FileInfo) cache.get(key);
+        if (null == fileInfo) {
+            long version = invalidations.get();
+            fileInfo = storageClient.queryFileInfo(groupName, path);
+            if (null != fileInfo) {
+                putIfUnchanged(version, key, fileInfo);
+            }
+        }
+        return fileInfo;
+    }
+
+    @Override
+    public boolean deleteFile(String groupName, String path) {
+        try {
+            return storageClient.deleteFile(groupName, path);
+        } finally {
+            invalidateFile(groupName, path);
+        }
+    }
+
+    @Override
+    public List<Boolean> deleteFiles(Collection<StorePath> storePaths) {
+        try {
+            return storageClient.deleteFiles(storePaths);
+        } finally {
+            for (StorePath storePath : storePaths) {
+                invalidateFile(storePath.getGroup(), storePath.getPath());
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Set<MateData>> getMetadata(Collection<StorePath> storePaths) {
+        List<Set<MateData>> results = new ArrayList<>(storePaths.size());
+        List<StorePath> misses = new ArrayList<>();
+        List<Integer> missIndexes = new ArrayList<>();
+        for (StorePath storePath : storePaths) {
+            Set<MateData> metadata = (Set<MateData>) cache.get(key(Kind.METADATA, storePath.getGroup(), storePath.getPath()));
+            if (null == metadata) {
+                misses.add(storePath);
+                missIndexes.add(results.size());
+            }
+            results.add(null == metadata ? null : new HashSet<>(metadata));
+        }
+        if (!misses.isEmpty()) {
+            long version = invalidations.get();
+            List<Set<MateData>> loaded = storageClient.getMetadata(misses);
+            for (int i = 0; i < misses.size(); i++) {
+                Set<MateData> metadata = loaded.get(i);
+                results.set(missIndexes.get(i), metadata);
+                if (null != metadata && !metadata.isEmpty()) {
+                    putIfUnchanged(version, key(Kind.METADATA, misses.get(i).getGroup(), misses.get(i).getPath()), new HashSet<>(metadata));
+                }
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public List<Boolean> mergeMetadata(Map<StorePath, Set<MateData>> metadata) {
+        try {
+            return storageClient.mergeMetadata(metadata);
+        } finally {
+            for (StorePath storePath : metadata.keySet()) {
+                invalidate(Kind.METADATA, storePath.getGroup(), storePath.getPath());
+            }
+        }
+    }
+
+    @Override
+    public List<FileInfo> queryFileInfo(Collection<StorePath> storePaths) {
+        List<FileInfo> results = new ArrayList<>(storePaths.size());
+        List<StorePath> misses = new ArrayList<>();
+        List<Integer> missIndexes = new ArrayList<>();
+        for (StorePath storePath : storePaths) {
+            FileInfo fileInfo = (FileInfo) cache.get(key(Kind.FILE_INFO, storePath.getGroup(), storePath.getPath()));
+            if (null == fileInfo) {
+                misses.add(storePath);
+                missIndexes.add(results.size());
+            }
+            results.add(fileInfo);
+        }
+        if (!misses.isEmpty()) {
+            long version = invalidations.get();
+            List<FileInfo> loaded = storageClient.queryFileInfo(misses);
+            for (int i = 0; i < misses.size(); i++) {
+                FileInfo fileInfo = loaded.get(i);
+                results.set(missIndexes.get(i), fileInfo);
+                if (null != fileInfo) {
+                    putIfUnchanged(version, key(Kind.FILE_INFO, misses.get(i).getGroup(), misses.get(i).getPath()), fileInfo);
+                }
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public <T> T downloadFile(String groupName, String path, DownloadCallback<T> callback) {
+        String key = key(Kind.CONTENT, groupName, path);
+        Content content = (Content) cache.get(key);
+        if (null != content) {
+            return receive(callback, content.newInputStream(0, content.length()));
+        }
+        long version = invalidations.get();
+        return storageClient.downloadFile(groupName, path, inputStream -> {
+            // 文件大小在响应报文头中, 小文件整体读入后缓存, 大文件直接交给回调
+            if (inputStream instanceof FastDfsInputStream && ((FastDfsInputStream) inputStream).getSize() <= maxObjectBytes) {
+                byte[] bytes = IoUtils.toByteArray(inputStream);
+                putIfUnchanged(version, key, offHeap ? new Content(ByteBuffer.allocateDirect(bytes.length).put(bytes)) : new Content(bytes));
+                return callback.receive(new ByteArrayInputStream(bytes));
+            }
+            return callback.receive(inputStream);
+        });
+    }
+
+    @Override
+    public <T> T downloadFile(String groupName, String path, long fileOffset, long fileSize, DownloadCallback<T> callback) {
+        Content content = getContent(groupName, path, fileOffset, fileSize);
+        if (null != content) {
+            return receive(callback, content.newInputStream((int) fileOffset, rangeLength(content, fileOffset, fileSize)));
+        }
+        return storageClient.downloadFile(groupName, path, fileOffset, fileSize, callback);
+    }
+
+    @Override
+    public FastDfsInputStream openStream(String groupName, String path) {
+        return openStream(groupName, path, 0, 0);
+    }
+
+    @Override
+    public FastDfsInputStream openStream(String groupName, String path, long fileOffset, long fileSize) {
+        Content content = getContent(groupName, path, fileOffset, fileSize);
+        if (null != content) {
+            int length = rangeLength(content, fileOffset, fileSize);
+            return new FastDfsInputStream(content.newInputStream((int) fileOffset, length), length);
+        }
+        return storageClient.openStream(groupName, path, fileOffset, fileSize);
+    }
+
+    @Override
+    public StorePath uploadFile(InputStream inputStream, long fileSize, String fileExtName, Set<MateData> metaDataSet) {
+        return storageClient.uploadFile(inputStream, fileSize, fileExtName, metaDataSet);
+    }
+
+    @Override
+    public StorePath uploadAppenderFile(String groupName, InputStream inputStream, long fileSize, String fileExtName) {
+        return storageClient.uploadAppenderFile(groupName, inputStream, fileSize, fileExtName);
+    }
+
+    @Override
+    public void appendFile(String groupName, String path, InputStream inputStream, long fileSize) {
+        try {
+            storageClient.appendFile(groupName, path, inputStream, fileSize);
+        } finally {
+            invalidateContent(groupName, path);
+        }
+    }
+
+    @Override
+    public void appendFile(String groupName, String path, File file, long filePosition, long fileSize) {
+        try {
+            storageClient.appendFile(groupName, path, file, filePosition, fileSize);
+        } finally {
+            invalidateContent(groupName, path);
+        }
+    }
+
+    @Override
+    public void modifyFile(String groupName, String path, InputStream inputStream, long fileSize, long fileOffset) {
+        try {
+            storageClient.modifyFile(groupName, path, inputStream, fileSize, fileOffset);
+        } finally {
+            invalidateContent(groupName, path);
+        }
+    }
+
+    @Override
+    public void modifyFile(String groupName, String path, File file, long filePosition, long fileSize, long fileOffset) {
+        try {
+            storageClient.modifyFile(groupName, path, file, filePosition, fileSize, fileOffset);
+        } finally {
+            invalidateContent(groupName, path);
+        }
+    }
+
+    @Override
+    public void truncateFile(String groupName, String path, long truncatedFileSize) {
+        try {
+            storageClient.truncateFile(groupName, path, truncatedFileSize);
+        } finally {
+            invalidateContent(groupName, path);
+        }
+    }
+
+    @Override
+    public void truncateFile(String groupName, String path) {
+        try {
+            storageClient.truncateFile(groupName, path);
+        } finally {
+            invalidateContent(groupName, path);
+        }
+    }
+
+    /**
+     * 清空所有缓存
+     */
+    public void clear() {
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * 获取缓存的文件内容, 请求的范围超出文件大小时返回null(由存储节点返回错误)
+     */
+    private Content getContent(String groupName, String path, long fileOffset, long fileSize) {
+        Content content = (Content) cache.get(key(Kind.CONTENT, groupName, path));
+        if (null == content || fileOffset < 0 || fileSize < 0 || fileOffset + fileSize > content.length()
+                || (fileSize == 0 && fileOffset > content.length())) {
+            return null;
+        }
+        return content;
+    }
+
+    /**
+     * 计算读取长度, fileSize为0时读取到文件末尾
+     */
+    private static int rangeLength(Content content, long fileOffset, long fileSize) {
+        return (int) (fileSize == 0 ? content.length() - fileOffset : fileSize);
+    }
+
+    private static <T> T receive(DownloadCallback<T> callback, InputStream inputStream) {
+        try {
+            return callback.receive(inputStream);
+        } catch (IOException e) {
+            throw new RuntimeException("读取缓存的文件内容异常", e);
+        }
+    }
+
+    /**
+     * 放入缓存, 读取期间有缓存失效时放弃
+     */
+    private void putIfUnchanged(long version, String key, Object value) {
+        if (invalidations.get() == version) {
+            cache.put(key, value);
+        }
+    }
+
+    private void invalidateContent(String groupName, String path) {
+        invalidations.incrementAndGet();
+        cache.invalidate(key(Kind.CONTENT, groupName, path));
+        cache.invalidate(key(Kind.FILE_INFO, groupName, path));
+        Log.debug("文件内容缓存失效 groupName=[{}], path=[{}]", groupName, path);
+    }
+
+    private void invalidateFile(String groupName, String path) {
+        invalidateContent(groupName, path);
+        cache.invalidate(key(Kind.METADATA, groupName, path));
+    }
+
+    private void invalidate(Kind kind, String groupName, String path) {
+        invalidations.incrementAndGet();
+        cache.invalidate(key(kind, groupName, path));
+    }
+
+    private static String key(Kind kind, String groupName, String path) {
+        return kind.prefix + groupName + '/' + path;
+    }
+
+    /**
+     * 估计缓存数据占用的字节数
+     */
+    @SuppressWarnings("unchecked")
+    private static int weigh(Object value) {
+        if (value instanceof Content) {
+            return ENTRY_OVERHEAD + ((Content) value).length();
+        }
+        if (value instanceof Set) {
+            int weight = ENTRY_OVERHEAD;
+            for (MateData mateData : (Set<MateData>) value) {
+                weight += ENTRY_OVERHEAD + 2 * (length(mateData.getName()) + length(mateData.getValue()));
+            }
+            return weight;
+        }
+        return ENTRY_OVERHEAD * 2;
+    }
+
+    private static int length(String str) {
+        return null == str ? 0 : str.length();
+    }
+
+    public StorageClient getStorageClient() {
+        return storageClient;
+    }
+
+    /**
+     * 获取缓存命中次数
+     */
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    /**
+     * 获取缓存未命中次数
+     */
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    /**
+     * 获取缓存淘汰次数
+     */
+    public long getEvictionCount() {
+        return cache.getEvictionCount();
+    }
+
+    /**
+     * 获取缓存占用的字节数(估计值)
+     */
+    public long getCachedBytes() {
+        return cache.weight();
+    }
+
+    /**
+     * 缓存数据的类型
+     */
+    private enum Kind {
+
+        /**
+         * 文件内容
+         */
+        CONTENT("C:"),
+
+        /**
+         * 文件元数据
+         */
+        METADATA("M:"),
+
+        /**
+         * 文件信息
+         */
+        FILE_INFO("I:");
+
+        private final String prefix;
+
+        Kind(String prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    /**
+     * 缓存的文件内容, 存放在堆内数组或堆外缓冲区中
+     */
+    private static final class Content {
+
+        private final byte[] bytes;
+
+        private final ByteBuffer buffer;
+
+        private Content(byte[] bytes) {
+            this.bytes = bytes;
+            this.buffer = null;
+        }
+
+        private Content(ByteBuffer buffer) {
+            this.bytes = null;
+            this.buffer = buffer;
+            buffer.flip();
+        }
+
+        private int length() {
+            return null != bytes ? bytes.length : buffer.limit();
+        }
+
+        private InputStream newInputStream(int offset, int length) {
+            if (null != bytes) {
+                return new ByteArrayInputStream(bytes, offset, length);
+            }
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(offset).limit(offset + length);
+            return new ByteBufferInputStream(slice);
+        }
+    }
+
+    /**
+     * 读取堆外缓冲区的输入流
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+}
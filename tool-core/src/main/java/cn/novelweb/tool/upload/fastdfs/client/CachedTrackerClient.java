@@ -0,0 +1,297 @@
+package cn.novelweb.tool.upload.fastdfs.client;
+
+import cn.novelweb.tool.upload.fastdfs.model.GroupState;
+import cn.novelweb.tool.upload.fastdfs.model.StorageNode;
+import cn.novelweb.tool.upload.fastdfs.model.StorageNodeInfo;
+import cn.novelweb.tool.upload.fastdfs.model.StorageState;
+import cn.novelweb.tool.upload.fastdfs.utils.Log;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * <p>带路由缓存的目录服务(Tracker)客户端</p>
+ * <p>缓存 组/文件路径 -> 文件所在存储节点(单个或全部) 的查询结果, 在有效期内不再请求Tracker,
+ * 存储节点访问失败时由{@link DefaultStorageClient}调用invalidate方法使对应的路由失效</p>
+ * <p>组 -> 上传存储节点 默认不缓存: 缓存期间同一个组的上传都发送到同一个存储节点及存储路径,
+ * 不再经过Tracker按每次上传进行的负载均衡及剩余空间检查, 需要时通过构造参数开启</p>
+ * <p>文件路由缓存超过最大条目数时先清理过期条目, 仍然超过时淘汰一批(最大条目数的1/10)条目, 不会整体清空使所有热点路由同时失效</p>
+ * <p>2026-10-18 16:10</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public class CachedTrackerClient implements TrackerClient {
+
+    /**
+     * 未指定组名称时获取的存储节点的缓存key
+     */
+    private static final String DEFAULT_GROUP_KEY = "";
+
+    /**
+     * 文件路由超过最大条目数时每次淘汰的比例(1/10)
+     */
+    private static final int EVICT_DIVISOR = 10;
+
+    private final TrackerClient trackerClient;
+
+    /**
+     * 路由有效期(毫秒)
+     */
+    private final long ttlMillis;
+
+    /**
+     * 文件路由最大缓存条目数
+     */
+    private final int maxEntries;
+
+    /**
+     * 是否缓存上传存储节点
+     */
+    private final boolean cacheStorageNode;
+
+    /**
+     * 组名称 -> 上传存储节点
+     */
+    private final ConcurrentMap<String, Route<StorageNode>> storageNodes = new ConcurrentHashMap<>();
+
+    /**
+     * 组名称/文件路径 -> 文件所在存储节点
+     */
+    private final ConcurrentMap<String, Route<StorageNodeInfo>> fetchStorages = new ConcurrentHashMap<>();
+
+    /**
+     * 组名称/文件路径 -> 存有文件的所有存储节点
+     */
+    private final ConcurrentMap<String, Route<List<StorageNodeInfo>>> fetchAllStorages = new ConcurrentHashMap<>();
+
+    /**
+     * 命中缓存次数
+     */
+    private final LongAdder hitCount = new LongAdder();
+
+    /**
+     * 未命中缓存(请求Tracker)次数
+     */
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * 只缓存文件路由, 上传存储节点每次请求Tracker
+     *
+     * @param trackerClient 实际请求Tracker的客户端
+     * @param ttlMillis     路由有效期(毫秒)
+     * @param maxEntries    文件路由最大缓存条目数
+     */
+    public CachedTrackerClient(TrackerClient trackerClient, long ttlMillis, int maxEntries) {
+        this(trackerClient, ttlMillis, maxEntries, false);
+    }
+
+    /**
+     * @param trackerClient    实际请求Tracker的客户端
+     * @param ttlMillis        路由有效期(毫秒)
+     * @param maxEntries       文件路由最大缓存条目数
+     * @param cacheStorageNode 是否缓存上传存储节点
+     */
+    public CachedTrackerClient(TrackerClient trackerClient, long ttlMillis, int maxEntries, boolean cacheStorageNode) {
+        this.trackerClient = trackerClient;
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+        this.cacheStorageNode = cacheStorageNode;
+    }
+
+    @Override
+    public StorageNode getStorageNode() {
+        return getStorageNode(DEFAULT_GROUP_KEY, trackerClient::getStorageNode);
+    }
+
+    @Override
+    public StorageNode getStorageNode(String groupName) {
+        if (null == groupName) {
+            return getStorageNode();
+        }
+        return getStorageNode(groupName, () -> trackerClient.getStorageNode(groupName));
+    }
+
+    @Override
+    public StorageNodeInfo getFetchStorage(String groupName, String filename) {
+        return getFetchStorage(fetchKey(false, groupName, filename), () -> trackerClient.getFetchStorage(groupName, filename));
+    }
+
+    @Override
+    public StorageNodeInfo getFetchStorageAndUpdate(String groupName, String filename) {
+        return getFetchStorage(fetchKey(true, groupName, filename), () -> trackerClient.getFetchStorageAndUpdate(groupName, filename));
+    }
+
+    @Override
+    public List<StorageNodeInfo> getFetchStorages(String groupName, String filename) {
+        List<StorageNodeInfo> storageNodes = getFetchRoute(fetchAllStorages, fetchKey(false, groupName, filename),
+                () -> trackerClient.getFetchStorages(groupName, filename));
+        // 调用方可能修改返回的集合
+        return null == storageNodes ? null : new ArrayList<>(storageNodes);
+    }
+
+    @Override
+    public List<GroupState> getGroupStates() {
+        return trackerClient.getGroupStates();
+    }
+
+    @Override
+    public List<StorageState> getStorageStates(String groupName) {
+        return trackerClient.getStorageStates(groupName);
+    }
+
+    @Override
+    public StorageState getStorageState(String groupName, String storageIp) {
+        return trackerClient.getStorageState(groupName, storageIp);
+    }
+
+    @Override
+    public boolean deleteStorage(String groupName, String storageIp) {
+        boolean deleted = trackerClient.deleteStorage(groupName, storageIp);
+        if (deleted) {
+            clear();
+        }
+        return deleted;
+    }
+
+    @Override
+    public void invalidateStorageNode(String groupName) {
+        if (null == groupName) {
+            storageNodes.remove(DEFAULT_GROUP_KEY);
+            return;
+        }
+        storageNodes.remove(groupName);
+        // 未指定组名称时缓存的存储节点属于同一个组时一并失效
+        Route<StorageNode> route = storageNodes.get(DEFAULT_GROUP_KEY);
+        if (null != route && groupName.equals(route.value.getGroupName())) {
+            storageNodes.remove(DEFAULT_GROUP_KEY, route);
+        }
+        Log.debug("上传路由失效 groupName=[{}]", groupName);
+    }
+
+    @Override
+    public void invalidateFetchStorage(String groupName, String filename) {
+        fetchStorages.remove(fetchKey(false, groupName, filename));
+        fetchStorages.remove(fetchKey(true, groupName, filename));
+        fetchAllStorages.remove(fetchKey(false, groupName, filename));
+        Log.debug("文件路由失效 groupName=[{}], filename=[{}]", groupName, filename);
+    }
+
+    /**
+     * 清空所有缓存的路由
+     */
+    public void clear() {
+        storageNodes.clear();
+        fetchStorages.clear();
+        fetchAllStorages.clear();
+    }
+
+    private StorageNode getStorageNode(String key, Supplier<StorageNode> loader) {
+        if (!cacheStorageNode) {
+            return loader.get();
+        }
+        long now = System.currentTimeMillis();
+        Route<StorageNode> route = storageNodes.get(key);
+        if (null != route && route.expireTime > now) {
+            hitCount.increment();
+            return route.value;
+        }
+        missCount.increment();
+        StorageNode storageNode = loader.get();
+        if (null != storageNode) {
+            storageNodes.put(key, new Route<>(storageNode, now + ttlMillis));
+        }
+        return storageNode;
+    }
+
+    private StorageNodeInfo getFetchStorage(String key, Supplier<StorageNodeInfo> loader) {
+        return getFetchRoute(fetchStorages, key, loader);
+    }
+
+    private <V> V getFetchRoute(ConcurrentMap<String, Route<V>> routes, String key, Supplier<V> loader) {
+        long now = System.currentTimeMillis();
+        Route<V> route = routes.get(key);
+        if (null != route && route.expireTime > now) {
+            hitCount.increment();
+            return route.value;
+        }
+        missCount.increment();
+        V value = loader.get();
+        if (null != value) {
+            if (routes.size() >= maxEntries) {
+                evict(routes, now);
+            }
+            routes.put(key, new Route<>(value, now + ttlMillis));
+        }
+        return value;
+    }
+
+    /**
+     * 清理过期的文件路由, 清理后仍然超过最大条目数时按哈希顺序(近似随机)淘汰最大条目数的1/10
+     */
+    private <V> void evict(ConcurrentMap<String, Route<V>> routes, long now) {
+        routes.values().removeIf(route -> route.expireTime <= now);
+        int excess = routes.size() - maxEntries + Math.max(1, maxEntries / EVICT_DIVISOR);
+        Iterator<Route<V>> iterator = routes.values().iterator();
+        while (excess-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 文件路由缓存key, 修改操作需要访问源存储节点, 与读取操作分开缓存
+     */
+    private static String fetchKey(boolean toUpdate, String groupName, String filename) {
+        return (toUpdate ? "U:" : "F:") + groupName + '/' + filename;
+    }
+
+    public boolean isCacheStorageNode() {
+        return cacheStorageNode;
+    }
+
+    public TrackerClient getTrackerClient() {
+        return trackerClient;
+    }
+
+    /**
+     * 获取命中缓存次数
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * 获取未命中缓存(请求Tracker)次数
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 获取当前缓存的路由数量
+     */
+    public int size() {
+        return storageNodes.size() + fetchStorages.size() + fetchAllStorages.size();
+    }
+
+    /**
+     * 缓存的路由及其过期时间
+     */
+    private static final class Route<V> {
+
+        private final V value;
+
+        private final long expireTime;
+
+        private Route(V value, long expireTime) {
+            this.value = value;
+            this.expireTime = expireTime;
+        }
+    }
+
+}
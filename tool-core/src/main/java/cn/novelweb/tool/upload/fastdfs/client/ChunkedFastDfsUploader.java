@@ -0,0 +1,390 @@
+package cn.novelweb.tool.upload.fastdfs.client;
+
+import cn.novelweb.tool.upload.fastdfs.constant.ErrorCodeConstants;
+import cn.novelweb.tool.upload.fastdfs.conn.CommandExecutor;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsConnectException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsIoException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsServerException;
+import cn.novelweb.tool.upload.fastdfs.model.StorageNode;
+import cn.novelweb.tool.upload.fastdfs.model.StorageNodeInfo;
+import cn.novelweb.tool.upload.fastdfs.model.StorePath;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.AppendFileCommandAbstract;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.DeleteFileCommandAbstract;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.QueryFileInfoCommandAbstract;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.UploadFileCommandAbstract;
+import cn.novelweb.tool.upload.fastdfs.utils.Log;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * <p>分块上传大文件(支持断点续传)</p>
+ * <p>1.以第一个分块创建续传类型(appender)文件, 之后按{@link #setChunkSize(long)}逐块追加<br/>
+ * 2.每个分块追加成功后将进度写入本地日志文件, 上传完成后删除日志文件<br/>
+ * 3.连接中断或进程退出后再次上传同一个文件时, 向源存储节点查询已上传的文件大小, 从该位置继续追加</p>
+ * <p>存储节点只允许在已有内容范围内修改续传文件(截断也不能扩大文件), 无法预先分配文件大小后并行修改各个分块,
+ * 因此分块按顺序追加, 分块内容通过FileChannel.transferTo零拷贝发送</p>
+ * <p>2026-10-18 18:10</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+@Slf4j
+public class ChunkedFastDfsUploader {
+
+    /**
+     * 默认分块大小(4MB)
+     */
+    private static final long DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * 默认连续失败的重试次数
+     */
+    private static final int DEFAULT_MAX_RETRIES = 3;
+
+    /**
+     * 日志文件扩展名
+     */
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    private final CommandExecutor commandExecutor;
+
+    private final TrackerClient trackerClient;
+
+    /**
+     * 分块大小
+     */
+    private long chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * 连续失败的重试次数
+     */
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+
+    /**
+     * 日志文件目录
+     */
+    private File journalDir = new File(System.getProperty("java.io.tmpdir"), "fastdfs-upload");
+
+    public ChunkedFastDfsUploader(CommandExecutor commandExecutor, TrackerClient trackerClient) {
+        this.commandExecutor = commandExecutor;
+        this.trackerClient = trackerClient;
+    }
+
+    /**
+     * 上传文件, 存在未完成的上传时从中断的位置继续
+     *
+     * @param groupName   组名称, 为null时由Tracker选择
+     * @param file        本地文件
+     * @param fileExtName 文件扩展名
+     * @return 文件存储路径
+     */
+    public StorePath upload(String groupName, File file, String fileExtName) {
+        if (!file.isFile()) {
+            throw new FastDfsIoException("上传的文件不存在:" + file.getAbsolutePath());
+        }
+        long fileSize = file.length();
+        Journal journal = resume(groupName, file);
+        long offset;
+        if (null != journal) {
+            offset = journal.uploaded;
+        } else {
+            long length = Math.min(chunkSize, fileSize);
+            StorePath storePath = createAppenderFile(groupName, file, length, fileExtName);
+            journal = new Journal(journalFile(groupName, file), file, storePath);
+            offset = length;
+            journal.save(offset);
+        }
+        StorePath storePath = journal.storePath;
+        int failures = 0;
+        // 追加失败后需要先确认存储节点上的文件大小
+        boolean confirmed = true;
+        while (!confirmed || offset < fileSize) {
+            try {
+                if (!confirmed) {
+                    offset = queryUploadedSize(storePath);
+                    if (offset < 0 || offset > fileSize) {
+                        throw new FastDfsException("续传文件[" + storePath + "]大小[" + offset + "]异常");
+                    }
+                    confirmed = true;
+                } else {
+                    long length = Math.min(chunkSize, fileSize - offset);
+                    append(storePath, file, offset, length);
+                    offset += length;
+                    failures = 0;
+                }
+            } catch (FastDfsServerException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                if (++failures > maxRetries) {
+                    throw e;
+                }
+                // 连接中断时追加可能已经完成, 以存储节点上的文件大小为准
+                log.warn("追加分块失败[{}], 位置[{}], 第{}次重试: {}", storePath, offset, failures, e.getMessage());
+                confirmed = false;
+                continue;
+            }
+            journal.save(offset);
+        }
+        journal.delete();
+        Log.debug("分块上传完成[{}], 文件大小[{}]", storePath, fileSize);
+        return storePath;
+    }
+
+    /**
+     * 放弃未完成的上传, 删除存储节点上的续传文件及本地日志文件
+     *
+     * @param groupName 组名称
+     * @param file      本地文件
+     * @return 是否存在未完成的上传
+     */
+    public boolean abort(String groupName, File file) {
+        Journal journal = Journal.load(journalFile(groupName, file));
+        if (null == journal) {
+            return false;
+        }
+        deleteQuietly(journal.storePath);
+        journal.delete();
+        return true;
+    }
+
+    /**
+     * 读取本地日志文件并查询已上传的文件大小, 无法续传时清理之前的上传
+     *
+     * @return 可以续传时返回日志, 否则返回null
+     */
+    private Journal resume(String groupName, File file) {
+        Journal journal = Journal.load(journalFile(groupName, file));
+        if (null == journal) {
+            return null;
+        }
+        if (journal.matches(file)) {
+            long uploaded = queryUploadedSize(journal.storePath);
+            if (uploaded >= 0 && uploaded <= file.length()) {
+                Log.debug("继续上传[{}], 已上传[{}], 文件大小[{}]", journal.storePath, uploaded, file.length());
+                journal.uploaded = uploaded;
+                return journal;
+            }
+        }
+        // 本地文件已修改或续传文件已不存在
+        log.warn("无法继续之前的上传[{}], 重新上传: {}", journal.storePath, file.getAbsolutePath());
+        deleteQuietly(journal.storePath);
+        journal.delete();
+        return null;
+    }
+
+    /**
+     * 以第一个分块创建续传文件
+     */
+    private StorePath createAppenderFile(String groupName, File file, long length, String fileExtName) {
+        StorageNode storageNode = null == groupName ? trackerClient.getStorageNode() : trackerClient.getStorageNode(groupName);
+        if (null == storageNode) {
+            throw new FastDfsException("获取上传存储节点失败 groupName=[" + groupName + "]");
+        }
+        UploadFileCommandAbstract command = new UploadFileCommandAbstract(storageNode.getStoreIndex(), file, 0, fileExtName, length, true);
+        try {
+            return commandExecutor.execute(storageNode.getInetSocketAddress(), command);
+        } catch (FastDfsConnectException | FastDfsServerException e) {
+            trackerClient.invalidateStorageNode(groupName, storageNode);
+            throw e;
+        }
+    }
+
+    /**
+     * 在源存储节点上追加分块
+     */
+    private void append(StorePath storePath, File file, long offset, long length) {
+        StorageNodeInfo storageNodeInfo = trackerClient.getFetchStorageAndUpdate(storePath.getGroup(), storePath.getPath());
+        AppendFileCommandAbstract command = new AppendFileCommandAbstract(file, offset, length, storePath.getPath());
+        try {
+            commandExecutor.execute(storageNodeInfo.getInetSocketAddress(), command);
+        } catch (RuntimeException e) {
+            trackerClient.invalidateFetchStorage(storePath.getGroup(), storePath.getPath());
+            throw e;
+        }
+    }
+
+    /**
+     * 向源存储节点查询已上传的文件大小(其他存储节点可能尚未同步)
+     *
+     * @return 文件大小, 文件不存在时返回-1
+     */
+    private long queryUploadedSize(StorePath storePath) {
+        StorageNodeInfo storageNodeInfo = trackerClient.getFetchStorageAndUpdate(storePath.getGroup(), storePath.getPath());
+        try {
+            return commandExecutor.execute(storageNodeInfo.getInetSocketAddress(),
+                    new QueryFileInfoCommandAbstract(storePath.getGroup(), storePath.getPath())).getFileSize();
+        } catch (FastDfsServerException e) {
+            if (e.getErrorCode() == ErrorCodeConstants.ERR_NO_ENOENT) {
+                return -1;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 删除未完成的续传文件, 失败时只记录日志
+     */
+    private void deleteQuietly(StorePath storePath) {
+        try {
+            StorageNodeInfo storageNodeInfo = trackerClient.getFetchStorageAndUpdate(storePath.getGroup(), storePath.getPath());
+            commandExecutor.execute(storageNodeInfo.getInetSocketAddress(),
+                    new DeleteFileCommandAbstract(storePath.getGroup(), storePath.getPath()));
+        } catch (RuntimeException e) {
+            Log.debug("删除未完成的续传文件失败[{}], {}", storePath, e.getMessage());
+        } finally {
+            trackerClient.invalidateFetchStorage(storePath.getGroup(), storePath.getPath());
+        }
+    }
+
+    /**
+     * 本地文件对应的日志文件, 文件名由组名称及文件的绝对路径计算
+     */
+    public File journalFile(String groupName, File file) {
+        String key = (null == groupName ? "" : groupName) + ':' + file.getAbsolutePath();
+        return new File(journalDir, UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)) + JOURNAL_SUFFIX);
+    }
+
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(long chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("分块大小必须大于0");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public File getJournalDir() {
+        return journalDir;
+    }
+
+    public void setJournalDir(File journalDir) {
+        this.journalDir = journalDir;
+    }
+
+    /**
+     * 上传进度日志, 记录本地文件的状态及续传文件的存储路径
+     */
+    private static final class Journal {
+
+        private static final String SOURCE = "source";
+        private static final String LENGTH = "length";
+        private static final String LAST_MODIFIED = "lastModified";
+        private static final String GROUP = "group";
+        private static final String PATH = "path";
+        private static final String UPLOADED = "uploaded";
+
+        private final File journalFile;
+
+        private final String source;
+
+        private final long length;
+
+        private final long lastModified;
+
+        private final StorePath storePath;
+
+        /**
+         * 已上传的字节数
+         */
+        private long uploaded;
+
+        private Journal(File journalFile, File file, StorePath storePath) {
+            this(journalFile, file.getAbsolutePath(), file.length(), file.lastModified(), storePath, 0);
+        }
+
+        private Journal(File journalFile, String source, long length, long lastModified, StorePath storePath, long uploaded) {
+            this.journalFile = journalFile;
+            this.source = source;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.storePath = storePath;
+            this.uploaded = uploaded;
+        }
+
+        /**
+         * 读取日志文件, 不存在或内容不完整时返回null
+         */
+        private static Journal load(File journalFile) {
+            if (!journalFile.isFile()) {
+                return null;
+            }
+            Properties properties = new Properties();
+            try (InputStream in = new FileInputStream(journalFile)) {
+                properties.load(in);
+                return new Journal(journalFile, properties.getProperty(SOURCE),
+                        Long.parseLong(properties.getProperty(LENGTH)),
+                        Long.parseLong(properties.getProperty(LAST_MODIFIED)),
+                        new StorePath(properties.getProperty(GROUP), properties.getProperty(PATH)),
+                        Long.parseLong(properties.getProperty(UPLOADED)));
+            } catch (IOException | RuntimeException e) {
+                log.warn("读取上传日志失败, 忽略该日志: {}", journalFile, e);
+                if (!journalFile.delete()) {
+                    log.warn("删除上传日志失败: {}", journalFile);
+                }
+                return null;
+            }
+        }
+
+        /**
+         * 本地文件自上次上传后是否未被修改
+         */
+        private boolean matches(File file) {
+            return file.getAbsolutePath().equals(source) && file.length() == length && file.lastModified() == lastModified;
+        }
+
+        /**
+         * 保存上传进度, 先写入临时文件再替换, 避免进程退出时留下不完整的日志
+         */
+        private void save(long uploaded) {
+            this.uploaded = uploaded;
+            Properties properties = new Properties();
+            properties.setProperty(SOURCE, source);
+            properties.setProperty(LENGTH, String.valueOf(length));
+            properties.setProperty(LAST_MODIFIED, String.valueOf(lastModified));
+            properties.setProperty(GROUP, storePath.getGroup());
+            properties.setProperty(PATH, storePath.getPath());
+            properties.setProperty(UPLOADED, String.valueOf(uploaded));
+            File dir = journalFile.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+                throw new FastDfsIoException("创建上传日志目录失败:" + dir);
+            }
+            File tmp = new File(dir, journalFile.getName() + ".tmp");
+            try {
+                try (OutputStream out = new FileOutputStream(tmp)) {
+                    properties.store(out, null);
+                }
+                try {
+                    Files.move(tmp.toPath(), journalFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                throw new FastDfsIoException("写入上传日志异常:" + journalFile, e);
+            }
+        }
+
+        private void delete() {
+            if (journalFile.exists() && !journalFile.delete()) {
+                log.warn("删除上传日志失败: {}", journalFile);
+            }
+        }
+    }
+
+}
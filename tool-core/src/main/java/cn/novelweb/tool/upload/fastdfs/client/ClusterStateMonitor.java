@@ -0,0 +1,289 @@
+package cn.novelweb.tool.upload.fastdfs.client;
+
+import cn.novelweb.tool.upload.fastdfs.metrics.FastDfsMetrics;
+import cn.novelweb.tool.upload.fastdfs.model.ClusterSnapshot;
+import cn.novelweb.tool.upload.fastdfs.model.GroupState;
+import cn.novelweb.tool.upload.fastdfs.model.StorageNode;
+import cn.novelweb.tool.upload.fastdfs.model.StorageNodeSnapshot;
+import cn.novelweb.tool.upload.fastdfs.model.StorageState;
+import cn.novelweb.tool.upload.fastdfs.utils.Log;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>集群容量监控</p>
+ * <p>在后台定时查询Tracker的组状态及存储节点状态, 生成不可变的{@link ClusterSnapshot}(剩余空间、同步延迟、上传/下载计数及速率),
+ * 每次更新后回调{@link FastDfsMetrics#clusterStateUpdated(ClusterSnapshot)}</p>
+ * <p>上传时根据快照选择存储节点: 只使用在线、剩余空间比例不低于阈值、同步延迟不超过阈值的节点, 按剩余空间加权随机选择,
+ * 未指定组时选择可用空间最大的组; 存储路径使用节点当前写入的路径(与Tracker的选择方式一致, 节点状态中没有每个路径的剩余空间)<br/>
+ * 快照过期(连续多次查询失败)或没有可用节点时返回null, 由Tracker选择</p>
+ * <p>2026-10-18 21:30</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+@Slf4j
+public class ClusterStateMonitor implements Closeable {
+
+    /**
+     * 默认剩余空间比例阈值(%)
+     */
+    public static final double DEFAULT_MIN_FREE_PERCENT = 10;
+
+    /**
+     * 默认同步延迟阈值(秒)
+     */
+    public static final long DEFAULT_MAX_SYNC_LAG_SECONDS = 600;
+
+    /**
+     * 超过该数量的查询间隔未更新时快照过期
+     */
+    private static final int STALE_INTERVALS = 3;
+
+    private static final AtomicInteger THREAD_INDEX = new AtomicInteger();
+
+    private final TrackerClient trackerClient;
+
+    /**
+     * 查询间隔(毫秒)
+     */
+    private final long pollMillis;
+
+    private final FastDfsMetrics metrics;
+
+    private final ScheduledExecutorService executor;
+
+    private volatile ClusterSnapshot snapshot = ClusterSnapshot.EMPTY;
+
+    /**
+     * 访问失败的存储节点 -> 恢复使用的时间, 期间不再选择
+     */
+    private final Map<String, Long> unavailable = new ConcurrentHashMap<>();
+
+    private volatile double minFreePercent = DEFAULT_MIN_FREE_PERCENT;
+
+    private volatile long maxSyncLagSeconds = DEFAULT_MAX_SYNC_LAG_SECONDS;
+
+    /**
+     * 查询次数
+     */
+    private final LongAdder pollCount = new LongAdder();
+
+    /**
+     * 查询失败次数
+     */
+    private final LongAdder pollErrorCount = new LongAdder();
+
+    /**
+     * 创建后立即在后台查询一次, 之后按间隔定时查询
+     *
+     * @param trackerClient 查询集群状态的Tracker客户端
+     * @param pollMillis    查询间隔(毫秒)
+     * @param metrics       监控指标, 为null时不记录
+     */
+    public ClusterStateMonitor(TrackerClient trackerClient, long pollMillis, FastDfsMetrics metrics) {
+        if (pollMillis <= 0) {
+            throw new IllegalArgumentException("查询间隔必须大于0");
+        }
+        this.trackerClient = trackerClient;
+        this.pollMillis = pollMillis;
+        this.metrics = null == metrics ? FastDfsMetrics.NOOP : metrics;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "fastdfs-cluster-monitor-" + THREAD_INDEX.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(this::poll, 0, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 查询集群状态, 更新快照
+     */
+    private void poll() {
+        try {
+            refresh();
+        } catch (Throwable e) {
+            pollErrorCount.increment();
+            Log.debug("查询集群状态失败, {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 立即查询集群状态并更新快照(在当前线程中执行)
+     *
+     * @return 新的快照
+     */
+    public synchronized ClusterSnapshot refresh() {
+        pollCount.increment();
+        Map<String, List<StorageState>> states = new LinkedHashMap<>(16);
+        for (GroupState group : trackerClient.getGroupStates()) {
+            states.put(group.getGroupName(), trackerClient.getStorageStates(group.getGroupName()));
+        }
+        ClusterSnapshot previous = snapshot;
+        ClusterSnapshot current = ClusterSnapshot.of(System.currentTimeMillis(),
+                states, previous == ClusterSnapshot.EMPTY ? null : previous);
+        snapshot = current;
+        unavailable.values().removeIf(until -> until <= current.getTime());
+        try {
+            metrics.clusterStateUpdated(current);
+        } catch (Exception e) {
+            log.error("记录监控指标异常", e);
+        }
+        return current;
+    }
+
+    /**
+     * 获取最近一次的集群状态快照, 尚未查询成功时返回{@link ClusterSnapshot#EMPTY}
+     */
+    public ClusterSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * 根据快照选择上传的存储节点
+     *
+     * @param groupName 组名称, 为null时选择可用空间最大的组
+     * @return 存储节点, 快照过期或没有可用节点时返回null
+     */
+    public StorageNode selectStorageNode(String groupName) {
+        ClusterSnapshot current = snapshot;
+        long now = System.currentTimeMillis();
+        if (current == ClusterSnapshot.EMPTY || now - current.getTime() > pollMillis * STALE_INTERVALS) {
+            return null;
+        }
+        String group = null == groupName ? selectGroup(current, now) : groupName;
+        if (null == group) {
+            return null;
+        }
+        List<StorageNodeSnapshot> candidates = writableNodes(current, group, now);
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        // 按剩余空间加权随机选择
+        long total = 0;
+        for (StorageNodeSnapshot node : candidates) {
+            total += Math.max(1, node.getFreeMb());
+        }
+        long r = ThreadLocalRandom.current().nextLong(total);
+        StorageNodeSnapshot selected = candidates.get(candidates.size() - 1);
+        for (StorageNodeSnapshot node : candidates) {
+            r -= Math.max(1, node.getFreeMb());
+            if (r < 0) {
+                selected = node;
+                break;
+            }
+        }
+        StorageNode storageNode = new StorageNode(selected.getIp(), selected.getPort(), (byte) selected.getCurrentWritePath());
+        storageNode.setGroupName(group);
+        return storageNode;
+    }
+
+    /**
+     * 选择有可写节点且可用空间最大的组
+     */
+    private String selectGroup(ClusterSnapshot current, long now) {
+        String selected = null;
+        long selectedFreeMb = -1;
+        for (String group : current.getGroupNames()) {
+            long freeMb = current.getFreeMb(group);
+            if (freeMb > selectedFreeMb && !writableNodes(current, group, now).isEmpty()) {
+                selected = group;
+                selectedFreeMb = freeMb;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 组内可以上传的节点: 在线、未被标记为不可用、剩余空间比例不低于阈值、同步延迟不超过阈值
+     */
+    private List<StorageNodeSnapshot> writableNodes(ClusterSnapshot current, String group, long now) {
+        List<StorageNodeSnapshot> nodes = new ArrayList<>();
+        for (StorageNodeSnapshot node : current.getNodes(group)) {
+            Long until = unavailable.get(node.getKey());
+            if (!node.isActive() || (null != until && until > now)) {
+                continue;
+            }
+            if (node.getTotalMb() > 0 && node.getFreePercent() < minFreePercent) {
+                continue;
+            }
+            if (maxSyncLagSeconds > 0 && node.getSyncLagSeconds() > maxSyncLagSeconds) {
+                continue;
+            }
+            nodes.add(node);
+        }
+        return nodes;
+    }
+
+    /**
+     * 上传到存储节点失败时调用, 在一个查询间隔内不再选择该节点
+     *
+     * @param storageNode 存储节点
+     */
+    public void markUnavailable(StorageNode storageNode) {
+        if (null == storageNode || null == storageNode.getGroupName()) {
+            return;
+        }
+        String key = storageNode.getGroupName() + "/" + storageNode.getIp() + ":" + storageNode.getPort();
+        unavailable.put(key, System.currentTimeMillis() + pollMillis);
+    }
+
+    /**
+     * 停止后台查询
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    public long getPollMillis() {
+        return pollMillis;
+    }
+
+    public double getMinFreePercent() {
+        return minFreePercent;
+    }
+
+    /**
+     * 设置剩余空间比例阈值(%), 低于该比例的节点不再上传
+     */
+    public void setMinFreePercent(double minFreePercent) {
+        this.minFreePercent = minFreePercent;
+    }
+
+    public long getMaxSyncLagSeconds() {
+        return maxSyncLagSeconds;
+    }
+
+    /**
+     * 设置同步延迟阈值(秒), 超过的节点不再上传, 小于等于0时不检查
+     */
+    public void setMaxSyncLagSeconds(long maxSyncLagSeconds) {
+        this.maxSyncLagSeconds = maxSyncLagSeconds;
+    }
+
+    /**
+     * 获取查询次数
+     */
+    public long getPollCount() {
+        return pollCount.sum();
+    }
+
+    /**
+     * 获取查询失败次数
+     */
+    public long getPollErrorCount() {
+        return pollErrorCount.sum();
+    }
+}
@@ -0,0 +1,330 @@
+package cn.novelweb.tool.upload.fastdfs.client;
+
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsChecksumException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsIoException;
+import cn.novelweb.tool.upload.fastdfs.model.FileInfo;
+import cn.novelweb.tool.upload.fastdfs.model.MateData;
+import cn.novelweb.tool.upload.fastdfs.model.StorePath;
+import cn.novelweb.tool.upload.fastdfs.model.UploadItem;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.callback.DownloadCallback;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.response.FastDfsInputStream;
+import cn.novelweb.tool.upload.fastdfs.utils.FileNameUtils;
+import cn.novelweb.tool.upload.fastdfs.utils.Log;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * <p>校验文件内容CRC32的存储服务(Storage)客户端</p>
+ * <p>上传时在发送文件内容的同时计算CRC32, 上传完成后与服务端记录的校验码比较, 不一致时删除上传的文件并抛出{@link FastDfsChecksumException};
+ * 下载整个文件时在读取文件内容的同时计算, 与服务端记录的校验码不一致时抛出异常并重新下载<br/>
+ * 普通文件的文件名中包含文件大小及CRC32(见{@link FileNameUtils}), 直接从文件名中解析, 不增加请求;
+ * 从文件、续传文件、合并存储的文件及文件名中的信息与实际不一致时才向存储节点查询文件信息<br/>
+ * 使用java.util.zip.CRC32(与服务端的算法一致, JVM使用CPU指令加速), 不需要额外读取一遍文件内容;
+ * 本地文件改为通过输入流上传, 不再使用零拷贝</p>
+ * <p>重新下载时会再次调用下载回调接口, 回调接口需要能够重复执行(如写入本地文件、读入字节数组);
+ * 分段下载、批量上传及续传文件不校验</p>
+ * <p>2026-10-18 22:40</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+@Slf4j
+public class CrcVerifyingStorageClient implements StorageClient {
+
+    /**
+     * 默认校验失败时重新下载的次数
+     */
+    public static final int DEFAULT_MAX_RETRIES = 2;
+
+    private final StorageClient storageClient;
+
+    /**
+     * 校验失败时重新下载的次数
+     */
+    private volatile int maxRetries = DEFAULT_MAX_RETRIES;
+
+    /**
+     * 校验的次数
+     */
+    private final LongAdder verifiedCount = new LongAdder();
+
+    /**
+     * 校验失败的次数
+     */
+    private final LongAdder mismatchCount = new LongAdder();
+
+    /**
+     * @param storageClient 实际请求存储节点的客户端
+     */
+    public CrcVerifyingStorageClient(StorageClient storageClient) {
+        this.storageClient = storageClient;
+    }
+
+    @Override
+    public StorePath uploadFile(String groupName, InputStream inputStream, long fileSize, String fileExtName) {
+        CheckedInputStream checkedStream = new CheckedInputStream(inputStream, new CRC32());
+        return verify(storageClient.uploadFile(groupName, checkedStream, fileSize, fileExtName), fileSize, checkedStream, false);
+    }
+
+    @Override
+    public StorePath uploadFile(String groupName, File file, String fileExtName) {
+        long fileSize = file.length();
+        try (CheckedInputStream checkedStream = new CheckedInputStream(new FileInputStream(file), new CRC32())) {
+            return verify(storageClient.uploadFile(groupName, checkedStream, fileSize, fileExtName), fileSize, checkedStream, false);
+        } catch (IOException e) {
+            throw new FastDfsIoException("读取上传文件异常:" + file.getAbsolutePath(), e);
+        }
+    }
+
+    @Override
+    public StorePath uploadFile(InputStream inputStream, long fileSize, String fileExtName, Set<MateData> metaDataSet) {
+        CheckedInputStream checkedStream = new CheckedInputStream(inputStream, new CRC32());
+        return verify(storageClient.uploadFile(checkedStream, fileSize, fileExtName, metaDataSet), fileSize, checkedStream, false);
+    }
+
+    @Override
+    public StorePath uploadSlaveFile(String groupName, String masterFilename, InputStream inputStream, long fileSize, String prefixName, String fileExtName) {
+        CheckedInputStream checkedStream = new CheckedInputStream(inputStream, new CRC32());
+        return verify(storageClient.uploadSlaveFile(groupName, masterFilename, checkedStream, fileSize, prefixName, fileExtName),
+                fileSize, checkedStream, true);
+    }
+
+    /**
+     * 比较上传时计算的校验码与服务端记录的校验码, 不一致时删除上传的文件
+     *
+     * @param slave 是否为从文件(文件名中的信息属于主文件, 需要向存储节点查询)
+     */
+    private StorePath verify(StorePath storePath, long fileSize, CheckedInputStream checkedStream, boolean slave) {
+        if (null == storePath) {
+            return null;
+        }
+        long actual = checkedStream.getChecksum().getValue();
+        FileInfo fileInfo = slave ? null : FileNameUtils.decodeFileInfo(storePath.getPath());
+        if (null == fileInfo || !matches(fileInfo, fileSize, actual)) {
+            // 文件名中没有或与实际不一致时以服务端查询结果为准
+            fileInfo = storageClient.queryFileInfo(storePath.getGroup(), storePath.getPath());
+            if (null == fileInfo) {
+                throw new FastDfsIoException("上传的文件[" + storePath.getFullPath() + "]不存在, 无法校验");
+            }
+        }
+        verifiedCount.increment();
+        long expected = fileInfo.getCrc32() & 0xFFFFFFFFL;
+        if (matches(fileInfo, fileSize, actual)) {
+            return storePath;
+        }
+        mismatchCount.increment();
+        try {
+            storageClient.deleteFile(storePath.getGroup(), storePath.getPath());
+        } catch (FastDfsException e) {
+            log.warn("删除校验失败的文件[{}]失败: {}", storePath.getFullPath(), e.getMessage());
+        }
+        throw new FastDfsChecksumException("上传的文件[" + storePath.getFullPath() + "]校验失败, 文件大小[" + fileSize + "], 服务端文件大小["
+                + fileInfo.getFileSize() + "]", expected, actual);
+    }
+
+    private static boolean matches(FileInfo fileInfo, long fileSize, long crc32) {
+        return fileInfo.getFileSize() == fileSize && (fileInfo.getCrc32() & 0xFFFFFFFFL) == crc32;
+    }
+
+    @Override
+    public <T> T downloadFile(String groupName, String path, DownloadCallback<T> callback) {
+        return downloadFile(groupName, path, 0, 0, callback);
+    }
+
+    @Override
+    public <T> T downloadFile(String groupName, String path, long fileOffset, long fileSize, DownloadCallback<T> callback) {
+        if (fileOffset != 0 || fileSize != 0) {
+            return storageClient.downloadFile(groupName, path, fileOffset, fileSize, callback);
+        }
+        return withRetry(groupName, path, fileInfo -> storageClient.downloadFile(groupName, path, inputStream -> {
+            if (null != fileInfo && inputStream instanceof FastDfsInputStream) {
+                verifyWith(groupName, path, fileInfo, (FastDfsInputStream) inputStream);
+            }
+            return callback.receive(inputStream);
+        }));
+    }
+
+    @Override
+    public FastDfsInputStream openStream(String groupName, String path) {
+        return openStream(groupName, path, 0, 0);
+    }
+
+    @Override
+    public FastDfsInputStream openStream(String groupName, String path, long fileOffset, long fileSize) {
+        if (fileOffset != 0 || fileSize != 0) {
+            return storageClient.openStream(groupName, path, fileOffset, fileSize);
+        }
+        // 输入流由调用方读取, 校验失败时无法重新下载
+        FileInfo fileInfo = expectedFileInfo(groupName, path, false);
+        FastDfsInputStream inputStream = storageClient.openStream(groupName, path);
+        if (null != fileInfo && null != inputStream) {
+            verifyWith(groupName, path, fileInfo, inputStream);
+        }
+        return inputStream;
+    }
+
+    /**
+     * 下载整个文件, 校验失败时向存储节点查询校验码并重新下载
+     */
+    private <T> T withRetry(String groupName, String path, Function<FileInfo, T> download) {
+        for (int attempt = 0; ; attempt++) {
+            FileInfo fileInfo = expectedFileInfo(groupName, path, attempt > 0);
+            try {
+                T result = download.apply(fileInfo);
+                if (null != fileInfo) {
+                    verifiedCount.increment();
+                }
+                return result;
+            } catch (FastDfsChecksumException e) {
+                mismatchCount.increment();
+                if (attempt >= maxRetries) {
+                    throw new FastDfsChecksumException("文件[" + groupName + "/" + path + "]下载" + (attempt + 1) + "次校验均失败",
+                            e.getExpectedCrc32(), e.getActualCrc32());
+                }
+                Log.debug("文件[{}/{}]校验失败, 第{}次重新下载: {}", groupName, path, attempt + 1, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 获取服务端记录的文件信息, 文件不存在时返回null(由下载请求抛出异常)
+     *
+     * @param fromServer 是否向存储节点查询, 为false时先从文件名中解析
+     */
+    private FileInfo expectedFileInfo(String groupName, String path, boolean fromServer) {
+        FileInfo fileInfo = fromServer ? null : FileNameUtils.decodeFileInfo(path);
+        return null == fileInfo ? storageClient.queryFileInfo(groupName, path) : fileInfo;
+    }
+
+    /**
+     * 设置输入流读取完成时校验的校验码, 文件名中的文件大小与下载的大小不一致时(如无法与普通文件区分的从文件)以服务端查询结果为准
+     */
+    private void verifyWith(String groupName, String path, FileInfo fileInfo, FastDfsInputStream inputStream) {
+        FileInfo expected = fileInfo;
+        if (expected.getFileSize() != inputStream.getSize()) {
+            expected = storageClient.queryFileInfo(groupName, path);
+        }
+        if (null != expected) {
+            inputStream.verifyCrc32(expected.getCrc32() & 0xFFFFFFFFL);
+        }
+    }
+
+    @Override
+    public List<StorePath> uploadBatch(String groupName, List<UploadItem> items) {
+        return storageClient.uploadBatch(groupName, items);
+    }
+
+    @Override
+    public Set<MateData> getMetadata(String groupName, String path) {
+        return storageClient.getMetadata(groupName, path);
+    }
+
+    @Override
+    public boolean overwriteMetadata(String groupName, String path, Set<MateData> metaDataSet) {
+        return storageClient.overwriteMetadata(groupName, path, metaDataSet);
+    }
+
+    @Override
+    public boolean mergeMetadata(String groupName, String path, Set<MateData> metaDataSet) {
+        return storageClient.mergeMetadata(groupName, path, metaDataSet);
+    }
+
+    @Override
+    public FileInfo queryFileInfo(String groupName, String path) {
+        return storageClient.queryFileInfo(groupName, path);
+    }
+
+    @Override
+    public boolean deleteFile(String groupName, String path) {
+        return storageClient.deleteFile(groupName, path);
+    }
+
+    @Override
+    public List<Boolean> deleteFiles(Collection<StorePath> storePaths) {
+        return storageClient.deleteFiles(storePaths);
+    }
+
+    @Override
+    public List<Set<MateData>> getMetadata(Collection<StorePath> storePaths) {
+        return storageClient.getMetadata(storePaths);
+    }
+
+    @Override
+    public List<Boolean> mergeMetadata(Map<StorePath, Set<MateData>> metadata) {
+        return storageClient.mergeMetadata(metadata);
+    }
+
+    @Override
+    public List<FileInfo> queryFileInfo(Collection<StorePath> storePaths) {
+        return storageClient.queryFileInfo(storePaths);
+    }
+
+    @Override
+    public StorePath uploadAppenderFile(String groupName, InputStream inputStream, long fileSize, String fileExtName) {
+        return storageClient.uploadAppenderFile(groupName, inputStream, fileSize, fileExtName);
+    }
+
+    @Override
+    public void appendFile(String groupName, String path, InputStream inputStream, long fileSize) {
+        storageClient.appendFile(groupName, path, inputStream, fileSize);
+    }
+
+    @Override
+    public void appendFile(String groupName, String path, File file, long filePosition, long fileSize) {
+        storageClient.appendFile(groupName, path, file, filePosition, fileSize);
+    }
+
+    @Override
+    public void modifyFile(String groupName, String path, InputStream inputStream, long fileSize, long fileOffset) {
+        storageClient.modifyFile(groupName, path, inputStream, fileSize, fileOffset);
+    }
+
+    @Override
+    public void modifyFile(String groupName, String path, File file, long filePosition, long fileSize, long fileOffset) {
+        storageClient.modifyFile(groupName, path, file, filePosition, fileSize, fileOffset);
+    }
+
+    @Override
+    public void truncateFile(String groupName, String path, long truncatedFileSize) {
+        storageClient.truncateFile(groupName, path, truncatedFileSize);
+    }
+
+    @Override
+    public void truncateFile(String groupName, String path) {
+        storageClient.truncateFile(groupName, path);
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * 设置下载校验失败时重新下载的次数
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * 获取校验的次数
+     */
+    public long getVerifiedCount() {
+        return verifiedCount.sum();
+    }
+
+    /**
+     * 获取校验失败的次数
+     */
+    public long getMismatchCount() {
+        return mismatchCount.sum();
+    }
+}
@@ -0,0 +1,420 @@
+package cn.novelweb.tool.upload.fastdfs.client;
+
+import cn.novelweb.tool.upload.fastdfs.dedup.DedupEntry;
+import cn.novelweb.tool.upload.fastdfs.dedup.DedupIndex;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsIoException;
+import cn.novelweb.tool.upload.fastdfs.model.FileInfo;
+import cn.novelweb.tool.upload.fastdfs.model.MateData;
+import cn.novelweb.tool.upload.fastdfs.model.StorePath;
+import cn.novelweb.tool.upload.fastdfs.model.UploadItem;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.callback.DownloadCallback;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.response.FastDfsInputStream;
+import cn.novelweb.tool.upload.fastdfs.utils.ByteBufferPool;
+import cn.novelweb.tool.upload.fastdfs.utils.Log;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>按文件内容去重上传的存储服务(Storage)客户端</p>
+ * <p>上传时计算文件内容的SHA-256摘要, 去重索引({@link DedupIndex})中已有相同内容的文件时直接返回已有文件的存储路径并增加引用计数,
+ * 删除时减少引用计数, 减到0时才删除存储节点上的文件<br/>
+ * 本地文件在上传前顺序读一遍计算摘要, 相同内容不再上传, 需要上传时仍使用零拷贝发送文件内容;
+ * 不超过预先计算大小的输入流先读入内存计算摘要, 相同内容不再上传; 更大的输入流在发送内容的同时计算摘要,
+ * 上传完成后发现相同内容时删除新上传的文件, 只节省存储空间<br/>
+ * 复用已有文件前先查询文件信息确认文件仍然存在且大小一致, 已被其他方式删除时移除索引记录重新上传</p>
+ * <p>共用同一个文件的存储路径修改元数据时会影响所有引用, 带元数据上传、批量上传、从文件及续传文件不去重</p>
+ * <p>2026-10-18 22:10</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+@Slf4j
+public class DedupStorageClient implements StorageClient {
+
+    /**
+     * 默认上传前计算摘要的最大输入流大小(1MB)
+     */
+    public static final int DEFAULT_PRE_HASH_MAX_BYTES = 1024 * 1024;
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final StorageClient storageClient;
+
+    private final DedupIndex index;
+
+    /**
+     * 不超过该大小的输入流先读入内存计算摘要再上传
+     */
+    private volatile int preHashMaxBytes = DEFAULT_PRE_HASH_MAX_BYTES;
+
+    /**
+     * 复用已有文件的次数
+     */
+    private final LongAdder hitCount = new LongAdder();
+
+    /**
+     * 复用已有文件节省的字节数
+     */
+    private final LongAdder savedBytes = new LongAdder();
+
+    /**
+     * @param storageClient 实际请求存储节点的客户端
+     * @param index         去重索引
+     */
+    public DedupStorageClient(StorageClient storageClient, DedupIndex index) {
+        this.storageClient = storageClient;
+        this.index = index;
+    }
+
+    @Override
+    public StorePath uploadFile(String groupName, InputStream inputStream, long fileSize, String fileExtName) {
+        if (fileSize <= preHashMaxBytes) {
+            byte[] content = new byte[(int) fileSize];
+            try {
+                readFully(inputStream, content);
+            } catch (IOException e) {
+                throw new FastDfsIoException("读取上传文件流异常", e);
+            }
+            MessageDigest digest = newDigest();
+            digest.update(content);
+            String hash = hex(digest.digest());
+            StorePath existing = reuse(groupName, hash, fileSize);
+            if (null != existing) {
+                return existing;
+            }
+            StorePath storePath = storageClient.uploadFile(groupName, new ByteArrayInputStream(content), fileSize, fileExtName);
+            return register(groupName, hash, storePath, fileSize);
+        }
+        // 在发送文件内容时计算摘要, 不需要再读一遍
+        MessageDigest digest = newDigest();
+        StorePath storePath = storageClient.uploadFile(groupName, new DigestInputStream(inputStream, digest), fileSize, fileExtName);
+        return register(groupName, hex(digest.digest()), storePath, fileSize);
+    }
+
+    @Override
+    public StorePath uploadFile(String groupName, File file, String fileExtName) {
+        long fileSize = file.length();
+        // 先顺序读一遍本地文件计算摘要, 相同内容不再通过网络上传; 需要上传时仍按文件零拷贝发送, 不在发送时边读边计算摘要
+        String hash;
+        try {
+            hash = hash(file);
+        } catch (IOException e) {
+            throw new FastDfsIoException("读取上传文件异常:" + file.getAbsolutePath(), e);
+        }
+        StorePath existing = reuse(groupName, hash, fileSize);
+        if (null != existing) {
+            return existing;
+        }
+        StorePath storePath = storageClient.uploadFile(groupName, file, fileExtName);
+        return register(groupName, hash, storePath, fileSize);
+    }
+
+    /**
+     * 查找并确认可以复用的文件
+     *
+     * @return 可以复用的文件, 没有时返回null
+     */
+    private StorePath reuse(String groupName, String hash, long fileSize) {
+        DedupEntry entry = index.acquire(hash);
+        if (null == entry) {
+            return null;
+        }
+        StorePath storePath = entry.getStorePath();
+        // 指定了其他组时不复用(如按冷热数据分组)
+        if (null != groupName && !groupName.equals(storePath.getGroup())) {
+            unref(storePath);
+            return null;
+        }
+        if (!exists(entry, fileSize)) {
+            index.remove(hash);
+            return null;
+        }
+        hitCount.increment();
+        savedBytes.add(fileSize);
+        Log.debug("复用相同内容的文件[{}], 引用计数[{}]", storePath.getFullPath(), entry.getRefCount());
+        return storePath;
+    }
+
+    /**
+     * 登记新上传的文件, 上传期间其他线程已经上传了相同内容时删除新上传的文件
+     *
+     * @return 最终使用的文件
+     */
+    private StorePath register(String groupName, String hash, StorePath storePath, long fileSize) {
+        if (null == storePath) {
+            return null;
+        }
+        DedupEntry existing = index.register(hash, storePath, fileSize);
+        if (null == existing) {
+            return storePath;
+        }
+        StorePath existingPath = existing.getStorePath();
+        if (null != groupName && !groupName.equals(existingPath.getGroup())) {
+            // 保留新上传的文件, 不登记到索引中
+            unref(existingPath);
+            return storePath;
+        }
+        if (!exists(existing, fileSize)) {
+            index.remove(hash);
+            return register(groupName, hash, storePath, fileSize);
+        }
+        deleteDuplicate(storePath);
+        hitCount.increment();
+        Log.debug("上传的文件与[{}]内容相同, 删除新上传的文件[{}]", existingPath.getFullPath(), storePath.getFullPath());
+        return existingPath;
+    }
+
+    /**
+     * 确认索引中的文件仍然存在且大小一致
+     */
+    private boolean exists(DedupEntry entry, long fileSize) {
+        if (entry.getFileSize() != fileSize) {
+            return false;
+        }
+        StorePath storePath = entry.getStorePath();
+        FileInfo fileInfo = storageClient.queryFileInfo(storePath.getGroup(), storePath.getPath());
+        if (null == fileInfo || fileInfo.getFileSize() != fileSize) {
+            log.warn("去重索引中的文件[{}]已不存在或大小不一致, 移除索引记录", storePath.getFullPath());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 撤销引用, 引用计数减到0时(期间其他引用已被删除)删除文件
+     */
+    private void unref(StorePath storePath) {
+        if (index.release(storePath) == 0) {
+            deleteDuplicate(storePath);
+        }
+    }
+
+    private void deleteDuplicate(StorePath storePath) {
+        try {
+            storageClient.deleteFile(storePath.getGroup(), storePath.getPath());
+        } catch (FastDfsException e) {
+            log.warn("删除文件[{}]失败: {}", storePath.getFullPath(), e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean deleteFile(String groupName, String path) {
+        // 其他引用仍在使用时只减少引用计数
+        if (index.release(new StorePath(groupName, path)) > 0) {
+            return true;
+        }
+        return storageClient.deleteFile(groupName, path);
+    }
+
+    @Override
+    public List<Boolean> deleteFiles(Collection<StorePath> storePaths) {
+        List<Boolean> results = new ArrayList<>(storePaths.size());
+        List<StorePath> deletes = new ArrayList<>();
+        List<Integer> deleteIndexes = new ArrayList<>();
+        for (StorePath storePath : storePaths) {
+            if (index.release(storePath) <= 0) {
+                deletes.add(storePath);
+                deleteIndexes.add(results.size());
+            }
+            results.add(Boolean.TRUE);
+        }
+        if (!deletes.isEmpty()) {
+            List<Boolean> deleted = storageClient.deleteFiles(deletes);
+            for (int i = 0; i < deletes.size(); i++) {
+                results.set(deleteIndexes.get(i), deleted.get(i));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public List<StorePath> uploadBatch(String groupName, List<UploadItem> items) {
+        return storageClient.uploadBatch(groupName, items);
+    }
+
+    @Override
+    public StorePath uploadSlaveFile(String groupName, String masterFilename, InputStream inputStream, long fileSize, String prefixName, String fileExtName) {
+        return storageClient.uploadSlaveFile(groupName, masterFilename, inputStream, fileSize, prefixName, fileExtName);
+    }
+
+    @Override
+    public Set<MateData> getMetadata(String groupName, String path) {
+        return storageClient.getMetadata(groupName, path);
+    }
+
+    @Override
+    public boolean overwriteMetadata(String groupName, String path, Set<MateData> metaDataSet) {
+        return storageClient.overwriteMetadata(groupName, path, metaDataSet);
+    }
+
+    @Override
+    public boolean mergeMetadata(String groupName, String path, Set<MateData> metaDataSet) {
+        return storageClient.mergeMetadata(groupName, path, metaDataSet);
+    }
+
+    @Override
+    public FileInfo queryFileInfo(String groupName, String path) {
+        return storageClient.queryFileInfo(groupName, path);
+    }
+
+    @Override
+    public List<Set<MateData>> getMetadata(Collection<StorePath> storePaths) {
+        return storageClient.getMetadata(storePaths);
+    }
+
+    @Override
+    public List<Boolean> mergeMetadata(Map<StorePath, Set<MateData>> metadata) {
+        return storageClient.mergeMetadata(metadata);
+    }
+
+    @Override
+    public List<FileInfo> queryFileInfo(Collection<StorePath> storePaths) {
+        return storageClient.queryFileInfo(storePaths);
+    }
+
+    @Override
+    public <T> T downloadFile(String groupName, String path, DownloadCallback<T> callback) {
+        return storageClient.downloadFile(groupName, path, callback);
+    }
+
+    @Override
+    public <T> T downloadFile(String groupName, String path, long fileOffset, long fileSize, DownloadCallback<T> callback) {
+        return storageClient.downloadFile(groupName, path, fileOffset, fileSize, callback);
+    }
+
+    @Override
+    public FastDfsInputStream openStream(String groupName, String path) {
+        return storageClient.openStream(groupName, path);
+    }
+
+    @Override
+    public FastDfsInputStream openStream(String groupName, String path, long fileOffset, long fileSize) {
+        return storageClient.openStream(groupName, path, fileOffset, fileSize);
+    }
+
+    @Override
+    public StorePath uploadFile(InputStream inputStream, long fileSize, String fileExtName, Set<MateData> metaDataSet) {
+        return storageClient.uploadFile(inputStream, fileSize, fileExtName, metaDataSet);
+    }
+
+    @Override
+    public StorePath uploadAppenderFile(String groupName, InputStream inputStream, long fileSize, String fileExtName) {
+        return storageClient.uploadAppenderFile(groupName, inputStream, fileSize, fileExtName);
+    }
+
+    @Override
+    public void appendFile(String groupName, String path, InputStream inputStream, long fileSize) {
+        storageClient.appendFile(groupName, path, inputStream, fileSize);
+    }
+
+    @Override
+    public void appendFile(String groupName, String path, File file, long filePosition, long fileSize) {
+        storageClient.appendFile(groupName, path, file, filePosition, fileSize);
+    }
+
+    @Override
+    public void modifyFile(String groupName, String path, InputStream inputStream, long fileSize, long fileOffset) {
+        storageClient.modifyFile(groupName, path, inputStream, fileSize, fileOffset);
+    }
+
+    @Override
+    public void modifyFile(String groupName, String path, File file, long filePosition, long fileSize, long fileOffset) {
+        storageClient.modifyFile(groupName, path, file, filePosition, fileSize, fileOffset);
+    }
+
+    @Override
+    public void truncateFile(String groupName, String path, long truncatedFileSize) {
+        storageClient.truncateFile(groupName, path, truncatedFileSize);
+    }
+
+    @Override
+    public void truncateFile(String groupName, String path) {
+        storageClient.truncateFile(groupName, path);
+    }
+
+    public DedupIndex getIndex() {
+        return index;
+    }
+
+    public int getPreHashMaxBytes() {
+        return preHashMaxBytes;
+    }
+
+    /**
+     * 设置上传前计算摘要的最大输入流大小(字节), 这部分输入流会先读入内存, 相同内容不再上传; 本地文件不受该大小限制
+     */
+    public void setPreHashMaxBytes(int preHashMaxBytes) {
+        this.preHashMaxBytes = preHashMaxBytes;
+    }
+
+    /**
+     * 获取复用已有文件的次数
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * 获取复用已有文件节省的上传字节数(上传后才发现相同内容的不计算在内)
+     */
+    public long getSavedBytes() {
+        return savedBytes.sum();
+    }
+
+    private static void readFully(InputStream inputStream, byte[] content) throws IOException {
+        int offset = 0;
+        while (offset < content.length) {
+            int bytes = inputStream.read(content, offset, content.length - offset);
+            if (bytes < 0) {
+                throw new IOException("数据流已结束, 不匹配预期的大小");
+            }
+            offset += bytes;
+        }
+    }
+
+    private static String hash(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer = ByteBufferPool.acquire(ByteBufferPool.MAX_POOLED_SIZE);
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        } finally {
+            ByteBufferPool.release(buffer);
+        }
+        return hex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
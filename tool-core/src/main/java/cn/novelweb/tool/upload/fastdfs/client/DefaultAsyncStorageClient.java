@@ -0,0 +1,253 @@
+package cn.novelweb.tool.upload.fastdfs.client;
+
+import cn.novelweb.tool.upload.fastdfs.conn.NioCommandExecutor;
+import cn.novelweb.tool.upload.fastdfs.constant.ErrorCodeConstants;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsServerException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsUnavailableException;
+import cn.novelweb.tool.upload.fastdfs.model.FileInfo;
+import cn.novelweb.tool.upload.fastdfs.model.MateData;
+import cn.novelweb.tool.upload.fastdfs.model.StorePath;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.*;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.callback.DownloadCallback;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.enums.StorageMetadataSetType;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.InputStream;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * 存储服务(Storage)异步客户端接口 默认实现<br/>
+ * 先异步向Tracker查询存储节点, 再在调用方提供的线程池中编码并提交Storage命令, 调用线程不会阻塞在网络IO上<br/>
+ * 同时进行中的请求数超过上限时立即以{@link FastDfsUnavailableException}异常完成(背压)<br/>
+ * <b>注意: 当前类最好使用单例，一个应用只需要一个实例</b>
+ * <p>2026-10-18 11:18</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+@Slf4j
+public class DefaultAsyncStorageClient implements AsyncStorageClient {
+
+    /**
+     * 默认同时进行中的最大请求数
+     */
+    private static final int DEFAULT_MAX_REQUESTS = 10000;
+
+    private final NioCommandExecutor commandExecutor;
+
+    private final AsyncTrackerClient trackerClient;
+
+    /**
+     * 编码Storage命令使用的线程池(编码时会读取上传的文件流)
+     */
+    private final Executor executor;
+
+    /**
+     * 同时进行中的最大请求数
+     */
+    private final int maxRequests;
+
+    private final Semaphore permits;
+
+    /**
+     * 构造函数
+     *
+     * @param commandExecutor 非阻塞命令执行器
+     * @param trackerClient   Tracker异步客户端
+     * @param executor        编码Storage命令使用的线程池
+     * @param maxRequests     同时进行中的最大请求数
+     */
+    public DefaultAsyncStorageClient(NioCommandExecutor commandExecutor, AsyncTrackerClient trackerClient,
+                                     Executor executor, int maxRequests) {
+        this.commandExecutor = commandExecutor;
+        this.trackerClient = trackerClient;
+        this.executor = executor;
+        this.maxRequests = maxRequests;
+        this.permits = new Semaphore(maxRequests);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param commandExecutor 非阻塞命令执行器
+     * @param trackerClient   Tracker异步客户端
+     * @param executor        编码Storage命令使用的线程池
+     */
+    public DefaultAsyncStorageClient(NioCommandExecutor commandExecutor, AsyncTrackerClient trackerClient, Executor executor) {
+        this(commandExecutor, trackerClient, executor, DEFAULT_MAX_REQUESTS);
+    }
+
+    @Override
+    public CompletableFuture<StorePath> uploadFile(String groupName, InputStream inputStream, long fileSize, String fileExtName) {
+        return limit(() -> trackerClient.getStorageNode(groupName).thenComposeAsync(storageNode ->
+                commandExecutor.executeAsync(storageNode.getInetSocketAddress(),
+                        new UploadFileCommandAbstract(storageNode.getStoreIndex(), inputStream, fileExtName, fileSize, false)), executor));
+    }
+
+    @Override
+    public CompletableFuture<StorePath> uploadSlaveFile(String groupName, String masterFilename, InputStream inputStream, long fileSize, String prefixName, String fileExtName) {
+        return limit(() -> trackerClient.getFetchStorageAndUpdate(groupName, masterFilename).thenComposeAsync(storageNodeInfo ->
+                commandExecutor.executeAsync(storageNodeInfo.getInetSocketAddress(),
+                        new UploadSlaveFileCommandAbstract(inputStream, fileSize, masterFilename, prefixName, fileExtName)), executor));
+    }
+
+    @Override
+    public CompletableFuture<Set<MateData>> getMetadata(String groupName, String path) {
+        return limit(() -> trackerClient.getFetchStorage(groupName, path).thenCompose(storageNodeInfo ->
+                commandExecutor.executeAsync(storageNodeInfo.getInetSocketAddress(), new GetMetadataCommandAbstract(groupName, path))));
+    }
+
+    @Override
+    public CompletableFuture<Void> overwriteMetadata(String groupName, String path, Set<MateData> metaDataSet) {
+        return setMetadata(groupName, path, metaDataSet, StorageMetadataSetType.STORAGE_SET_METADATA_FLAG_OVERWRITE);
+    }
+
+    @Override
+    public CompletableFuture<Void> mergeMetadata(String groupName, String path, Set<MateData> metaDataSet) {
+        return setMetadata(groupName, path, metaDataSet, StorageMetadataSetType.STORAGE_SET_METADATA_FLAG_MERGE);
+    }
+
+    private CompletableFuture<Void> setMetadata(String groupName, String path, Set<MateData> metaDataSet, StorageMetadataSetType type) {
+        return limit(() -> trackerClient.getFetchStorageAndUpdate(groupName, path).thenCompose(storageNodeInfo ->
+                commandExecutor.executeAsync(storageNodeInfo.getInetSocketAddress(),
+                        new SetMetadataCommandAbstract(groupName, path, metaDataSet, type))));
+    }
+
+    @Override
+    public CompletableFuture<FileInfo> queryFileInfo(String groupName, String path) {
+        return limit(() -> trackerClient.getFetchStorage(groupName, path).thenCompose(storageNodeInfo ->
+                commandExecutor.executeAsync(storageNodeInfo.getInetSocketAddress(), new QueryFileInfoCommandAbstract(groupName, path))
+        ).handle((fileInfo, e) -> {
+            if (null == e) {
+                return fileInfo;
+            }
+            Throwable cause = unwrap(e);
+            if (cause instanceof FastDfsServerException
+                    && ((FastDfsServerException) cause).getErrorCode() == ErrorCodeConstants.ERR_NO_ENOENT) {
+                log.error("获取文件的信息异常,ErrorCode=[{}], ErrorMessage=[{}]", ErrorCodeConstants.ERR_NO_ENOENT, cause.getMessage());
+                return null;
+            }
+            throw new CompletionException(cause);
+        }));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteFile(String groupName, String path) {
+        return limit(() -> trackerClient.getFetchStorageAndUpdate(groupName, path).thenCompose(storageNodeInfo ->
+                commandExecutor.executeAsync(storageNodeInfo.getInetSocketAddress(), new DeleteFileCommandAbstract(groupName, path))));
+    }
+
+    @Override
+    public <T> CompletableFuture<T> downloadFile(String groupName, String path, DownloadCallback<T> callback) {
+        return downloadFile(groupName, path, 0, 0, callback);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> downloadFile(String groupName, String path, long fileOffset, long fileSize, DownloadCallback<T> callback) {
+        return limit(() -> trackerClient.getFetchStorage(groupName, path).thenCompose(storageNodeInfo ->
+                commandExecutor.executeAsync(storageNodeInfo.getInetSocketAddress(),
+                        new DownloadFileCommandAbstract<T>(groupName, path, fileOffset, fileSize, callback))));
+    }
+
+    // ----------------------------------------------------------------------------------------------------------------------------------------------------
+
+    @Override
+    public CompletableFuture<StorePath> uploadFile(InputStream inputStream, long fileSize, String fileExtName, Set<MateData> metaDataSet) {
+        return limit(() -> trackerClient.getStorageNode().thenComposeAsync(storageNode ->
+                commandExecutor.executeAsync(storageNode.getInetSocketAddress(),
+                        new UploadFileCommandAbstract(storageNode.getStoreIndex(), inputStream, fileExtName, fileSize, false))
+                        .thenCompose(storePath -> {
+                            if (metaDataSet == null || metaDataSet.size() <= 0) {
+                                return CompletableFuture.completedFuture(storePath);
+                            }
+                            SetMetadataCommandAbstract command = new SetMetadataCommandAbstract(storePath.getGroup(), storePath.getPath(),
+                                    metaDataSet, StorageMetadataSetType.STORAGE_SET_METADATA_FLAG_OVERWRITE);
+                            return commandExecutor.executeAsync(storageNode.getInetSocketAddress(), command)
+                                    .thenApply(v -> storePath);
+                        }), executor));
+    }
+
+    @Override
+    public CompletableFuture<StorePath> uploadAppenderFile(String groupName, InputStream inputStream, long fileSize, String fileExtName) {
+        return limit(() -> trackerClient.getStorageNode(groupName).thenComposeAsync(storageNode ->
+                commandExecutor.executeAsync(storageNode.getInetSocketAddress(),
+                        new UploadFileCommandAbstract(storageNode.getStoreIndex(), inputStream, fileExtName, fileSize, true)), executor));
+    }
+
+    @Override
+    public CompletableFuture<Void> appendFile(String groupName, String path, InputStream inputStream, long fileSize) {
+        return limit(() -> trackerClient.getFetchStorageAndUpdate(groupName, path).thenComposeAsync(storageNodeInfo ->
+                commandExecutor.executeAsync(storageNodeInfo.getInetSocketAddress(),
+                        new AppendFileCommandAbstract(inputStream, fileSize, path)), executor));
+    }
+
+    @Override
+    public CompletableFuture<Void> modifyFile(String groupName, String path, InputStream inputStream, long fileSize, long fileOffset) {
+        return limit(() -> trackerClient.getFetchStorageAndUpdate(groupName, path).thenComposeAsync(storageNodeInfo ->
+                commandExecutor.executeAsync(storageNodeInfo.getInetSocketAddress(),
+                        new ModifyCommandAbstract(path, inputStream, fileSize, fileOffset)), executor));
+    }
+
+    @Override
+    public CompletableFuture<Void> truncateFile(String groupName, String path, long truncatedFileSize) {
+        return limit(() -> trackerClient.getFetchStorageAndUpdate(groupName, path).thenCompose(storageNodeInfo ->
+                commandExecutor.executeAsync(storageNodeInfo.getInetSocketAddress(),
+                        new TruncateCommandAbstract(path, truncatedFileSize))));
+    }
+
+    @Override
+    public CompletableFuture<Void> truncateFile(String groupName, String path) {
+        return truncateFile(groupName, path, 0);
+    }
+
+    /**
+     * 获取许可后执行异步操作, 操作完成后释放许可
+     */
+    private <T> CompletableFuture<T> limit(Supplier<CompletableFuture<T>> action) {
+        if (!permits.tryAcquire()) {
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new FastDfsUnavailableException("进行中的异步请求数已达到上限[" + maxRequests + "]"));
+            return rejected;
+        }
+        CompletableFuture<T> future;
+        try {
+            future = action.get();
+        } catch (Throwable e) {
+            permits.release();
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return future.whenComplete((result, e) -> permits.release());
+    }
+
+    /**
+     * 获取CompletionException包装的原始异常
+     */
+    static Throwable unwrap(Throwable e) {
+        while (e instanceof CompletionException && null != e.getCause()) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    /**
+     * 获取当前可用的请求许可数
+     */
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    public NioCommandExecutor getCommandExecutor() {
+        return commandExecutor;
+    }
+
+    public AsyncTrackerClient getTrackerClient() {
+        return trackerClient;
+    }
+
+}
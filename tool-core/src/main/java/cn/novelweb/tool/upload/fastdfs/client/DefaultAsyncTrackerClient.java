@@ -0,0 +1,83 @@
+package cn.novelweb.tool.upload.fastdfs.client;
+
+import cn.novelweb.tool.upload.fastdfs.conn.NioCommandExecutor;
+import cn.novelweb.tool.upload.fastdfs.model.GroupState;
+import cn.novelweb.tool.upload.fastdfs.model.StorageNode;
+import cn.novelweb.tool.upload.fastdfs.model.StorageNodeInfo;
+import cn.novelweb.tool.upload.fastdfs.model.StorageState;
+import cn.novelweb.tool.upload.fastdfs.protocol.tracker.*;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 目录服务(Tracker)异步客户端接口 默认实现<br/>
+ * <b>注意: 当前类最好使用单例，一个应用只需要一个实例</b>
+ * <p>2026-10-18 11:10</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+@Slf4j
+public class DefaultAsyncTrackerClient implements AsyncTrackerClient {
+
+    private final NioCommandExecutor commandExecutor;
+
+    public DefaultAsyncTrackerClient(NioCommandExecutor commandExecutor) {
+        this.commandExecutor = commandExecutor;
+    }
+
+    @Override
+    public CompletableFuture<StorageNode> getStorageNode() {
+        return commandExecutor.executeAsync(new GetStorageNodeCommandAbstract());
+    }
+
+    @Override
+    public CompletableFuture<StorageNode> getStorageNode(String groupName) {
+        return commandExecutor.executeAsync(new GetStorageNodeCommandAbstract(groupName));
+    }
+
+    @Override
+    public CompletableFuture<StorageNodeInfo> getFetchStorage(String groupName, String filename) {
+        return commandExecutor.executeAsync(new GetFetchStorageCommandAbstract(groupName, filename, false));
+    }
+
+    @Override
+    public CompletableFuture<StorageNodeInfo> getFetchStorageAndUpdate(String groupName, String filename) {
+        return commandExecutor.executeAsync(new GetFetchStorageCommandAbstract(groupName, filename, true));
+    }
+
+    @Override
+    public CompletableFuture<List<GroupState>> getGroupStates() {
+        return commandExecutor.executeAsync(new GetGroupListCommandAbstract())
+                .thenApply(result -> result != null ? result : new ArrayList<GroupState>());
+    }
+
+    @Override
+    public CompletableFuture<List<StorageState>> getStorageStates(String groupName) {
+        return commandExecutor.executeAsync(new GetStorageListCommandAbstract(groupName))
+                .thenApply(result -> result != null ? result : new ArrayList<StorageState>());
+    }
+
+    @Override
+    public CompletableFuture<StorageState> getStorageState(String groupName, String storageIp) {
+        return commandExecutor.executeAsync(new GetStorageListCommandAbstract(groupName, storageIp))
+                .thenApply(result -> {
+                    if (result != null && result.size() > 1) {
+                        log.warn("应该返回一条数据, 但是现在返回了{}条, 只取第一条", result.size());
+                    }
+                    return (result != null && result.size() >= 1) ? result.get(0) : null;
+                });
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteStorage(String groupName, String storageIp) {
+        return commandExecutor.executeAsync(new DeleteStorageCommandAbstract(groupName, storageIp));
+    }
+
+    public NioCommandExecutor getCommandExecutor() {
+        return commandExecutor;
+    }
+
+}
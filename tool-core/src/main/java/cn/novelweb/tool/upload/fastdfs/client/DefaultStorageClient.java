@@ -1,17 +1,28 @@
 package cn.novelweb.tool.upload.fastdfs.client;
 
 import cn.novelweb.tool.upload.fastdfs.conn.CommandExecutor;
+import cn.novelweb.tool.upload.fastdfs.conn.Deadline;
+import cn.novelweb.tool.upload.fastdfs.conn.PipelineResult;
 import cn.novelweb.tool.upload.fastdfs.constant.ErrorCodeConstants;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsConnectException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsIoException;
 import cn.novelweb.tool.upload.fastdfs.exception.FastDfsServerException;
 import cn.novelweb.tool.upload.fastdfs.model.*;
 import cn.novelweb.tool.upload.fastdfs.protocol.storage.*;
 import cn.novelweb.tool.upload.fastdfs.protocol.storage.callback.DownloadCallback;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.callback.DownloadInputStream;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.response.FastDfsInputStream;
 import cn.novelweb.tool.upload.fastdfs.protocol.storage.enums.StorageMetadataSetType;
+import cn.novelweb.tool.upload.fastdfs.protocol.tracker.GetFetchStorageCommandAbstract;
+import cn.novelweb.tool.upload.fastdfs.utils.IoUtils;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashSet;
-import java.util.Set;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.function.Function;
 
 /**
  * 存储服务(Storage)客户端接口 默认实现<br/>
@@ -27,6 +38,11 @@ public class DefaultStorageClient implements StorageClient {
 
     private TrackerClient trackerClient;
 
+    /**
+     * 从多个副本读取文件(对冲请求及重试), 为null时只从Tracker选择的存储节点读取
+     */
+    private HedgedReader hedgedReader;
+
     public DefaultStorageClient(CommandExecutor commandExecutor, TrackerClient trackerClient) {
         this.commandExecutor = commandExecutor;
         this.trackerClient = trackerClient;
@@ -36,22 +52,38 @@ public class DefaultStorageClient implements StorageClient {
     public StorePath uploadFile(String groupName, InputStream inputStream, long fileSize, String fileExtName) {
         StorageNode storageNode = trackerClient.getStorageNode(groupName);
         UploadFileCommandAbstract command = new UploadFileCommandAbstract(storageNode.getStoreIndex(), inputStream, fileExtName, fileSize, false);
-        return commandExecutor.execute(storageNode.getInetSocketAddress(), command);
+        return execute(groupName, storageNode, command);
+    }
+
+    @Override
+    public StorePath uploadFile(String groupName, File file, String fileExtName) {
+        StorageNode storageNode = trackerClient.getStorageNode(groupName);
+        UploadFileCommandAbstract command = new UploadFileCommandAbstract(storageNode.getStoreIndex(), file, 0, fileExtName, file.length(), false);
+        return execute(groupName, storageNode, command);
+    }
+
+    @Override
+    public List<StorePath> uploadBatch(String groupName, List<UploadItem> items) {
+        return new BatchUploader(commandExecutor, trackerClient).upload(groupName, items);
     }
 
     @Override
     public StorePath uploadSlaveFile(String groupName, String masterFilename, InputStream inputStream, long fileSize, String prefixName, String fileExtName) {
         StorageNodeInfo storageNodeInfo = trackerClient.getFetchStorageAndUpdate(groupName, masterFilename);
         UploadSlaveFileCommandAbstract command = new UploadSlaveFileCommandAbstract(inputStream, fileSize, masterFilename, prefixName, fileExtName);
-        return commandExecutor.execute(storageNodeInfo.getInetSocketAddress(), command);
+        return execute(groupName, masterFilename, storageNodeInfo, command);
     }
 
     @Override
     public Set<MateData> getMetadata(String groupName, String path) {
         try {
+            if (null != hedgedReader) {
+                return hedgedReader.read(groupName, path, "GetMetadata",
+                        address -> commandExecutor.execute(address, new GetMetadataCommandAbstract(groupName, path)), null);
+            }
             StorageNodeInfo storageNodeInfo = trackerClient.getFetchStorage(groupName, path);
             GetMetadataCommandAbstract command = new GetMetadataCommandAbstract(groupName, path);
-            return commandExecutor.execute(storageNodeInfo.getInetSocketAddress(), command);
+            return execute(groupName, path, storageNodeInfo, command);
         } catch (Throwable e) {
             log.error("获取文件元信息", e);
             return new HashSet<>();
@@ -63,7 +95,7 @@ public class DefaultStorageClient implements StorageClient {
         try {
             StorageNodeInfo storageNodeInfo = trackerClient.getFetchStorageAndUpdate(groupName, path);
             SetMetadataCommandAbstract command = new SetMetadataCommandAbstract(groupName, path, metaDataSet, StorageMetadataSetType.STORAGE_SET_METADATA_FLAG_OVERWRITE);
-            commandExecutor.execute(storageNodeInfo.getInetSocketAddress(), command);
+            execute(groupName, path, storageNodeInfo, command);
         } catch (Throwable e) {
             log.error("修改文件元信息（覆盖）失败", e);
             return false;
@@ -76,7 +108,7 @@ public class DefaultStorageClient implements StorageClient {
         try {
             StorageNodeInfo storageNodeInfo = trackerClient.getFetchStorageAndUpdate(groupName, path);
             SetMetadataCommandAbstract command = new SetMetadataCommandAbstract(groupName, path, metaDataSet, StorageMetadataSetType.STORAGE_SET_METADATA_FLAG_MERGE);
-            commandExecutor.execute(storageNodeInfo.getInetSocketAddress(), command);
+            execute(groupName, path, storageNodeInfo, command);
         } catch (Throwable e) {
             log.error("修改文件元信息（合并）失败", e);
             return false;
@@ -87,10 +119,15 @@ public class DefaultStorageClient implements StorageClient {
     @Override
     public FileInfo queryFileInfo(String groupName, String path) {
         FileInfo fileInfo = null;
-        StorageNodeInfo storageNodeInfo = trackerClient.getFetchStorage(groupName, path);
-        QueryFileInfoCommandAbstract command = new QueryFileInfoCommandAbstract(groupName, path);
+        StorageNodeInfo storageNodeInfo = null == hedgedReader ? trackerClient.getFetchStorage(groupName, path) : null;
         try {
-            fileInfo = commandExecutor.execute(storageNodeInfo.getInetSocketAddress(), command);
+            if (null != hedgedReader) {
+                fileInfo = hedgedReader.read(groupName, path, "QueryFileInfo",
+                        address -> commandExecutor.execute(address, new QueryFileInfoCommandAbstract(groupName, path)), null);
+            } else {
+                QueryFileInfoCommandAbstract command = new QueryFileInfoCommandAbstract(groupName, path);
+                fileInfo = execute(groupName, path, storageNodeInfo, command);
+            }
         } catch (FastDfsServerException e) {
             if (e.getErrorCode() == ErrorCodeConstants.ERR_NO_ENOENT) {
                 log.error("获取文件的信息异常,ErrorCode=[{}], ErrorMessage=[{}]", e.getErrorCode(), e.getMessage());
@@ -106,7 +143,9 @@ public class DefaultStorageClient implements StorageClient {
         try {
             StorageNodeInfo storageNodeInfo = trackerClient.getFetchStorageAndUpdate(groupName, path);
             DeleteFileCommandAbstract command = new DeleteFileCommandAbstract(groupName, path);
-            commandExecutor.execute(storageNodeInfo.getInetSocketAddress(), command);
+            execute(groupName, path, storageNodeInfo, command);
+            // 文件已删除, 不再需要缓存的路由
+            trackerClient.invalidateFetchStorage(groupName, path);
         } catch (Throwable e) {
             log.error("删除文件失败", e);
             return false;
@@ -114,6 +153,118 @@ public class DefaultStorageClient implements StorageClient {
         return true;
     }
 
+    @Override
+    public List<Boolean> deleteFiles(Collection<StorePath> storePaths) {
+        List<PipelineResult<Void>> results = executeBatch(storePaths, true,
+                storePath -> new DeleteFileCommandAbstract(storePath.getGroup(), storePath.getPath()));
+        List<Boolean> deleted = new ArrayList<>(results.size());
+        Iterator<StorePath> iterator = storePaths.iterator();
+        for (PipelineResult<Void> result : results) {
+            StorePath storePath = iterator.next();
+            if (!result.isSuccess()) {
+                log.error("删除文件失败", result.getError());
+            }
+            trackerClient.invalidateFetchStorage(storePath.getGroup(), storePath.getPath());
+            deleted.add(result.isSuccess());
+        }
+        return deleted;
+    }
+
+    @Override
+    public List<Set<MateData>> getMetadata(Collection<StorePath> storePaths) {
+        List<PipelineResult<Set<MateData>>> results = executeBatch(storePaths, false,
+                storePath -> new GetMetadataCommandAbstract(storePath.getGroup(), storePath.getPath()));
+        List<Set<MateData>> metadata = new ArrayList<>(results.size());
+        for (PipelineResult<Set<MateData>> result : results) {
+            if (!result.isSuccess()) {
+                log.error("获取文件元信息", result.getError());
+            }
+            metadata.add(result.isSuccess() && null != result.getValue() ? result.getValue() : new HashSet<>());
+        }
+        return metadata;
+    }
+
+    @Override
+    public List<Boolean> mergeMetadata(Map<StorePath, Set<MateData>> metadata) {
+        List<PipelineResult<Void>> results = executeBatch(metadata.keySet(), true,
+                storePath -> new SetMetadataCommandAbstract(storePath.getGroup(), storePath.getPath(), metadata.get(storePath),
+                        StorageMetadataSetType.STORAGE_SET_METADATA_FLAG_MERGE));
+        List<Boolean> merged = new ArrayList<>(results.size());
+        for (PipelineResult<Void> result : results) {
+            if (!result.isSuccess()) {
+                log.error("修改文件元信息（合并）失败", result.getError());
+            }
+            merged.add(result.isSuccess());
+        }
+        return merged;
+    }
+
+    @Override
+    public List<FileInfo> queryFileInfo(Collection<StorePath> storePaths) {
+        List<PipelineResult<FileInfo>> results = executeBatch(storePaths, false,
+                storePath -> new QueryFileInfoCommandAbstract(storePath.getGroup(), storePath.getPath()));
+        List<FileInfo> fileInfos = new ArrayList<>(results.size());
+        for (PipelineResult<FileInfo> result : results) {
+            RuntimeException e = result.getError();
+            if (e instanceof FastDfsServerException && ((FastDfsServerException) e).getErrorCode() == ErrorCodeConstants.ERR_NO_ENOENT) {
+                log.error("获取文件的信息异常,ErrorCode=[{}], ErrorMessage=[{}]", ErrorCodeConstants.ERR_NO_ENOENT, e.getMessage());
+            } else if (null != e) {
+                log.error("获取文件的信息异常", e);
+            }
+            fileInfos.add(result.getValue());
+        }
+        return fileInfos;
+    }
+
+    /**
+     * 以管道模式批量执行Storage命令<br/>
+     * 1.在一个Tracker连接上批量查询文件所在的存储节点<br/>
+     * 2.按存储节点分组, 每组在一个Storage连接上批量执行命令<br/>
+     *
+     * @param storePaths 文件路径集合
+     * @param toUpdate   是否为修改操作(修改操作需要在源存储节点上执行)
+     * @param factory    根据文件路径创建Storage命令
+     * @return 与storePaths迭代顺序一致的执行结果
+     */
+    private <T> List<PipelineResult<T>> executeBatch(Collection<StorePath> storePaths, boolean toUpdate,
+                                                     Function<StorePath, AbstractStorageCommand<T>> factory) {
+        List<StorePath> paths = new ArrayList<>(storePaths);
+        List<GetFetchStorageCommandAbstract> fetchCommands = new ArrayList<>(paths.size());
+        for (StorePath storePath : paths) {
+            fetchCommands.add(new GetFetchStorageCommandAbstract(storePath.getGroup(), storePath.getPath(), toUpdate));
+        }
+        List<PipelineResult<StorageNodeInfo>> storageNodes = commandExecutor.executePipelined(fetchCommands);
+        List<PipelineResult<T>> results = new ArrayList<>(Collections.nCopies(paths.size(), (PipelineResult<T>) null));
+        // 按存储节点分组
+        Map<InetSocketAddress, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < paths.size(); i++) {
+            PipelineResult<StorageNodeInfo> storageNode = storageNodes.get(i);
+            if (storageNode.isSuccess()) {
+                groups.computeIfAbsent(storageNode.getValue().getInetSocketAddress(), k -> new ArrayList<>()).add(i);
+            } else {
+                results.set(i, PipelineResult.failure(storageNode.getError()));
+            }
+        }
+        for (Map.Entry<InetSocketAddress, List<Integer>> entry : groups.entrySet()) {
+            List<Integer> indexes = entry.getValue();
+            List<AbstractStorageCommand<T>> commands = new ArrayList<>(indexes.size());
+            for (Integer index : indexes) {
+                commands.add(factory.apply(paths.get(index)));
+            }
+            try {
+                List<PipelineResult<T>> groupResults = commandExecutor.executePipelined(entry.getKey(), commands);
+                for (int i = 0; i < indexes.size(); i++) {
+                    results.set(indexes.get(i), groupResults.get(i));
+                }
+            } catch (RuntimeException e) {
+                for (Integer index : indexes) {
+                    results.set(index, PipelineResult.failure(e));
+                }
+            }
+        }
+        return results;
+    }
+
     @Override
     public <T> T downloadFile(String groupName, String path, DownloadCallback<T> callback) {
         long fileOffset = 0;
@@ -123,9 +274,43 @@ public class DefaultStorageClient implements StorageClient {
 
     @Override
     public <T> T downloadFile(String groupName, String path, long fileOffset, long fileSize, DownloadCallback<T> callback) {
+        if (null != hedgedReader) {
+            // 对冲到读取完报文头为止, 文件内容只从先返回的存储节点读取
+            try (FastDfsInputStream inputStream = openStream(groupName, path, fileOffset, fileSize)) {
+                return callback.receive(inputStream);
+            } catch (IOException e) {
+                Deadline deadline = Deadline.current();
+                RuntimeException aborted = null == deadline ? null : deadline.failureIfAborted(groupName + "/" + path, e);
+                throw null == aborted ? new FastDfsIoException("下载文件异常", e) : aborted;
+            }
+        }
         StorageNodeInfo storageNodeInfo = trackerClient.getFetchStorage(groupName, path);
         DownloadFileCommandAbstract<T> command = new DownloadFileCommandAbstract<T>(groupName, path, fileOffset, fileSize, callback);
-        return commandExecutor.execute(storageNodeInfo.getInetSocketAddress(), command);
+        return execute(groupName, path, storageNodeInfo, command);
+    }
+
+    @Override
+    public FastDfsInputStream openStream(String groupName, String path) {
+        return openStream(groupName, path, 0, 0);
+    }
+
+    @Override
+    public FastDfsInputStream openStream(String groupName, String path, long fileOffset, long fileSize) {
+        if (null != hedgedReader) {
+            // 未被使用的输入流关闭时销毁连接
+            return hedgedReader.read(groupName, path, "DownloadFile",
+                    address -> commandExecutor.executeStream(address, new DownloadFileCommandAbstract<>(groupName, path,
+                            fileOffset, fileSize, new DownloadInputStream())), IoUtils::closeQuietly);
+        }
+        StorageNodeInfo storageNodeInfo = trackerClient.getFetchStorage(groupName, path);
+        DownloadFileCommandAbstract<FastDfsInputStream> command = new DownloadFileCommandAbstract<>(groupName, path,
+                fileOffset, fileSize, new DownloadInputStream());
+        try {
+            return commandExecutor.executeStream(storageNodeInfo.getInetSocketAddress(), command);
+        } catch (FastDfsConnectException | FastDfsServerException e) {
+            trackerClient.invalidateFetchStorage(groupName, path);
+            throw e;
+        }
     }
 
     // ----------------------------------------------------------------------------------------------------------------------------------------------------
@@ -134,12 +319,12 @@ public class DefaultStorageClient implements StorageClient {
     public StorePath uploadFile(InputStream inputStream, long fileSize, String fileExtName, Set<MateData> metaDataSet) {
         StorageNode storageNode = trackerClient.getStorageNode();
         UploadFileCommandAbstract command = new UploadFileCommandAbstract(storageNode.getStoreIndex(), inputStream, fileExtName, fileSize, false);
-        StorePath storePath = commandExecutor.execute(storageNode.getInetSocketAddress(), command);
+        StorePath storePath = execute(null, storageNode, command);
         if (metaDataSet == null || metaDataSet.size() <= 0) {
             return storePath;
         }
         SetMetadataCommandAbstract cmd = new SetMetadataCommandAbstract(storePath.getGroup(), storePath.getPath(), metaDataSet, StorageMetadataSetType.STORAGE_SET_METADATA_FLAG_OVERWRITE);
-        commandExecutor.execute(storageNode.getInetSocketAddress(), command);
+        execute(storePath.getGroup(), storePath.getPath(), new StorageNodeInfo(storageNode.getIp(), storageNode.getPort()), cmd);
         return storePath;
     }
 
@@ -147,28 +332,42 @@ public class DefaultStorageClient implements StorageClient {
     public StorePath uploadAppenderFile(String groupName, InputStream inputStream, long fileSize, String fileExtName) {
         StorageNode storageNode = trackerClient.getStorageNode(groupName);
         UploadFileCommandAbstract command = new UploadFileCommandAbstract(storageNode.getStoreIndex(), inputStream, fileExtName, fileSize, true);
-        return commandExecutor.execute(storageNode.getInetSocketAddress(), command);
+        return execute(groupName, storageNode, command);
     }
 
     @Override
     public void appendFile(String groupName, String path, InputStream inputStream, long fileSize) {
         StorageNodeInfo storageNodeInfo = trackerClient.getFetchStorageAndUpdate(groupName, path);
         AppendFileCommandAbstract command = new AppendFileCommandAbstract(inputStream, fileSize, path);
-        commandExecutor.execute(storageNodeInfo.getInetSocketAddress(), command);
+        execute(groupName, path, storageNodeInfo, command);
+    }
+
+    @Override
+    public void appendFile(String groupName, String path, File file, long filePosition, long fileSize) {
+        StorageNodeInfo storageNodeInfo = trackerClient.getFetchStorageAndUpdate(groupName, path);
+        AppendFileCommandAbstract command = new AppendFileCommandAbstract(file, filePosition, fileSize, path);
+        execute(groupName, path, storageNodeInfo, command);
     }
 
     @Override
     public void modifyFile(String groupName, String path, InputStream inputStream, long fileSize, long fileOffset) {
         StorageNodeInfo storageNodeInfo = trackerClient.getFetchStorageAndUpdate(groupName, path);
         ModifyCommandAbstract command = new ModifyCommandAbstract(path, inputStream, fileSize, fileOffset);
-        commandExecutor.execute(storageNodeInfo.getInetSocketAddress(), command);
+        execute(groupName, path, storageNodeInfo, command);
+    }
+
+    @Override
+    public void modifyFile(String groupName, String path, File file, long filePosition, long fileSize, long fileOffset) {
+        StorageNodeInfo storageNodeInfo = trackerClient.getFetchStorageAndUpdate(groupName, path);
+        ModifyCommandAbstract command = new ModifyCommandAbstract(path, file, filePosition, fileSize, fileOffset);
+        execute(groupName, path, storageNodeInfo, command);
     }
 
     @Override
     public void truncateFile(String groupName, String path, long truncatedFileSize) {
         StorageNodeInfo storageNodeInfo = trackerClient.getFetchStorageAndUpdate(groupName, path);
         TruncateCommandAbstract command = new TruncateCommandAbstract(path, truncatedFileSize);
-        commandExecutor.execute(storageNodeInfo.getInetSocketAddress(), command);
+        execute(groupName, path, storageNodeInfo, command);
     }
 
     @Override
@@ -177,6 +376,30 @@ public class DefaultStorageClient implements StorageClient {
         truncateFile(groupName, path, truncatedFileSize);
     }
 
+    /**
+     * 在上传存储节点上执行命令, 访问失败时使缓存的上传路由失效
+     */
+    private <T> T execute(String groupName, StorageNode storageNode, AbstractStorageCommand<T> command) {
+        try {
+            return commandExecutor.execute(storageNode.getInetSocketAddress(), command);
+        } catch (FastDfsConnectException | FastDfsServerException e) {
+            trackerClient.invalidateStorageNode(groupName, storageNode);
+            throw e;
+        }
+    }
+
+    /**
+     * 在文件所在存储节点上执行命令, 访问失败时使缓存的文件路由失效
+     */
+    private <T> T execute(String groupName, String path, StorageNodeInfo storageNodeInfo, AbstractStorageCommand<T> command) {
+        try {
+            return commandExecutor.execute(storageNodeInfo.getInetSocketAddress(), command);
+        } catch (FastDfsConnectException | FastDfsServerException e) {
+            trackerClient.invalidateFetchStorage(groupName, path);
+            throw e;
+        }
+    }
+
     /*--------------------------------------------------------------
      *          getter、setter
      * -------------------------------------------------------------*/
@@ -193,6 +416,17 @@ public class DefaultStorageClient implements StorageClient {
         return trackerClient;
     }
 
+    public HedgedReader getHedgedReader() {
+        return hedgedReader;
+    }
+
+    /**
+     * 设置从多个副本读取文件(对冲请求及重试), 为null时只从Tracker选择的存储节点读取
+     */
+    public void setHedgedReader(HedgedReader hedgedReader) {
+        this.hedgedReader = hedgedReader;
+    }
+
     public void setTrackerClient(TrackerClient trackerClient) {
         this.trackerClient = trackerClient;
     }
@@ -58,6 +58,12 @@ public class DefaultTrackerClient implements TrackerClient {
         return commandExecutor.execute(command);
     }
 
+    @Override
+    public List<StorageNodeInfo> getFetchStorages(String groupName, String filename) {
+        GetFetchAllStorageCommandAbstract command = new GetFetchAllStorageCommandAbstract(groupName, filename);
+        return commandExecutor.execute(command);
+    }
+
     @Override
     public List<GroupState> getGroupStates() {
         GetGroupListCommandAbstract command = new GetGroupListCommandAbstract();
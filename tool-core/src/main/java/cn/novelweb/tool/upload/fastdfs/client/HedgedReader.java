@@ -0,0 +1,499 @@
+package cn.novelweb.tool.upload.fastdfs.client;
+
+import cn.novelweb.tool.upload.fastdfs.conn.Deadline;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsCancelledException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsIoException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsServerException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsTimeoutException;
+import cn.novelweb.tool.upload.fastdfs.metrics.LatencyHistogram;
+import cn.novelweb.tool.upload.fastdfs.model.StorageNodeInfo;
+import cn.novelweb.tool.upload.fastdfs.utils.Log;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * <p>从组内多个副本读取文件(对冲请求及重试)</p>
+ * <p>1.向Tracker查询存有文件的所有存储节点, 先向第一个节点发送请求<br/>
+ * 2.超过同类请求的P95耗时仍未返回时向下一个副本再发送一次请求, 使用先成功返回的结果, 中止另一个请求的连接<br/>
+ * 3.请求失败时立即改用下一个副本, 所有副本都失败时按指数退避重试</p>
+ * <p>只用于可以重复执行的读取请求; 下载文件时对冲到读取完报文头为止, 文件内容只从先返回的存储节点读取</p>
+ * <p>2026-10-18 21:30</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+@Slf4j
+public class HedgedReader {
+
+    /**
+     * 默认对冲延迟(毫秒), 同类请求的耗时样本不足时使用
+     */
+    private static final long DEFAULT_HEDGE_DELAY_MILLIS = 50;
+
+    /**
+     * 默认重试次数
+     */
+    private static final int DEFAULT_MAX_RETRIES = 2;
+
+    /**
+     * 默认首次重试前的等待时间(毫秒), 之后每次翻倍
+     */
+    private static final long DEFAULT_RETRY_BACKOFF_MILLIS = 50;
+
+    /**
+     * 超过该分位耗时后发送对冲请求
+     */
+    private static final double HEDGE_PERCENTILE = 95;
+
+    /**
+     * 按耗时计算对冲延迟需要的最少样本数
+     */
+    private static final int MIN_SAMPLES = 20;
+
+    /**
+     * 耗时统计窗口的样本数, 按最近一个完整窗口计算对冲延迟
+     */
+    private static final int WINDOW_SAMPLES = 1000;
+
+    /**
+     * 每记录多少个样本重新计算一次对冲延迟
+     */
+    private static final int REFRESH_SAMPLES = 64;
+
+    private static final AtomicInteger THREAD_INDEX = new AtomicInteger();
+
+    private final TrackerClient trackerClient;
+
+    /**
+     * 请求类型 -> 成功请求的耗时
+     */
+    private final ConcurrentMap<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * 对冲延迟(毫秒), 同类请求的耗时样本不足时使用
+     */
+    private long hedgeDelayMillis = DEFAULT_HEDGE_DELAY_MILLIS;
+
+    /**
+     * 所有副本都失败后的重试次数
+     */
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+
+    /**
+     * 首次重试前的等待时间(毫秒)
+     */
+    private long retryBackoffMillis = DEFAULT_RETRY_BACKOFF_MILLIS;
+
+    /**
+     * 执行读取请求的线程池, 为null时使用内部共享的线程池
+     */
+    private Executor executor;
+
+    /**
+     * 发送对冲请求的次数
+     */
+    private final LongAdder hedgedCount = new LongAdder();
+
+    /**
+     * 对冲请求先返回的次数
+     */
+    private final LongAdder hedgeWinCount = new LongAdder();
+
+    /**
+     * 重试次数
+     */
+    private final LongAdder retryCount = new LongAdder();
+
+    public HedgedReader(TrackerClient trackerClient) {
+        this.trackerClient = trackerClient;
+    }
+
+    /**
+     * 从文件的副本中读取
+     *
+     * @param groupName 组名称
+     * @param path      文件路径
+     * @param kind      请求类型, 按类型分别统计耗时
+     * @param request   在指定存储节点上执行的读取请求
+     * @param discard   处理未被使用的成功结果(如关闭输入流), 不需要处理时为null
+     * @param <T>       返回数据类型
+     * @return 先成功返回的结果
+     */
+    public <T> T read(String groupName, String path, String kind,
+                      Function<InetSocketAddress, T> request, Consumer<T> discard) {
+        LatencyWindow latency = latencies.computeIfAbsent(kind, k -> new LatencyWindow());
+        List<InetSocketAddress> replicas = getReplicas(groupName, path);
+        RuntimeException lastError = null;
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            if (attempt > 0) {
+                backoff(attempt);
+                retryCount.increment();
+            }
+            try {
+                if (replicas.size() == 1) {
+                    return read(replicas.get(0), latency, request);
+                }
+                return race(replicas, attempt, latency, request, discard);
+            } catch (FastDfsServerException | FastDfsTimeoutException | FastDfsCancelledException e) {
+                // 服务端返回错误状态(如文件不存在)或请求已中止时重试没有意义
+                throw e;
+            } catch (RuntimeException e) {
+                lastError = e;
+                log.warn("读取文件失败[{}/{}], 存储节点{}, 第{}次尝试: {}", groupName, path, replicas, attempt + 1, e.getMessage());
+                // 路由可能已经过期, 重新查询存有文件的存储节点
+                trackerClient.invalidateFetchStorage(groupName, path);
+                try {
+                    replicas = getReplicas(groupName, path);
+                } catch (RuntimeException ignored) {
+                    // Tracker不可用时继续使用之前查询的存储节点
+                }
+            }
+        }
+        throw lastError;
+    }
+
+    /**
+     * 只有一个副本时在调用线程中执行
+     */
+    private <T> T read(InetSocketAddress address, LatencyWindow latency, Function<InetSocketAddress, T> request) {
+        long startTime = System.nanoTime();
+        T result = request.apply(address);
+        latency.record(System.nanoTime() - startTime);
+        return result;
+    }
+
+    /**
+     * 向多个副本发送请求, 返回先成功的结果
+     *
+     * @param replicas 存有文件的存储节点
+     * @param start    第一个请求使用的存储节点序号, 重试时轮换
+     */
+    private <T> T race(List<InetSocketAddress> replicas, int start, LatencyWindow latency,
+                       Function<InetSocketAddress, T> request, Consumer<T> discard) {
+        Race<T> race = new Race<>(null == executor ? ReadExecutor.EXECUTOR : executor, latency, request);
+        int count = replicas.size();
+        int launched = 0;
+        boolean hedged = false;
+        RuntimeException firstError = null;
+        race.launch(replicas.get(start % count));
+        launched++;
+        try {
+            while (true) {
+                Outcome<T> outcome;
+                if (!hedged && launched < count) {
+                    long delayNanos = latency.getHedgeDelayNanos(hedgeDelayMillis);
+                    outcome = race.outcomes.poll(delayNanos, TimeUnit.NANOSECONDS);
+                    if (null == outcome) {
+                        // 超过对冲延迟仍未返回, 向下一个副本再发送一次请求
+                        hedged = true;
+                        hedgedCount.increment();
+                        InetSocketAddress address = replicas.get((start + launched++) % count);
+                        if (Log.isDebugEnabled()) {
+                            log.debug("读取请求超过{}us未返回, 发送对冲请求到存储节点[{}]", delayNanos / 1000, address);
+                        }
+                        race.launch(address);
+                        continue;
+                    }
+                } else {
+                    outcome = race.outcomes.take();
+                }
+                race.pending--;
+                if (null == outcome.error) {
+                    if (hedged && outcome.index > 0) {
+                        hedgeWinCount.increment();
+                    }
+                    race.winner = outcome.index;
+                    return outcome.value;
+                }
+                if (outcome.error instanceof FastDfsTimeoutException || outcome.error instanceof FastDfsCancelledException) {
+                    throw outcome.error;
+                }
+                if (null == firstError) {
+                    firstError = outcome.error;
+                }
+                if (race.pending == 0) {
+                    if (launched >= count) {
+                        throw firstError;
+                    }
+                    // 请求失败, 立即改用下一个副本
+                    race.launch(replicas.get((start + launched++) % count));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FastDfsIoException("读取文件被中断", e);
+        } finally {
+            race.finish(discard);
+        }
+    }
+
+    /**
+     * 获取存有文件的存储节点地址
+     */
+    private List<InetSocketAddress> getReplicas(String groupName, String path) {
+        List<StorageNodeInfo> storageNodes = trackerClient.getFetchStorages(groupName, path);
+        List<InetSocketAddress> addresses = new ArrayList<>(storageNodes.size());
+        for (StorageNodeInfo storageNode : storageNodes) {
+            addresses.add(storageNode.getInetSocketAddress());
+        }
+        if (addresses.isEmpty()) {
+            addresses.add(trackerClient.getFetchStorage(groupName, path).getInetSocketAddress());
+        }
+        return addresses;
+    }
+
+    /**
+     * 重试前等待, 等待时间每次翻倍并加入随机抖动, 避免多个客户端同时重试
+     */
+    private void backoff(int attempt) {
+        long millis = retryBackoffMillis << Math.min(attempt - 1, 10);
+        if (millis <= 0) {
+            return;
+        }
+        millis = millis / 2 + ThreadLocalRandom.current().nextLong(millis / 2 + 1);
+        Deadline deadline = Deadline.current();
+        if (null != deadline) {
+            millis = Math.min(millis, deadline.remaining(TimeUnit.MILLISECONDS));
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FastDfsIoException("读取文件被中断", e);
+        }
+    }
+
+    /**
+     * 获取发送对冲请求的次数
+     */
+    public long getHedgedCount() {
+        return hedgedCount.sum();
+    }
+
+    /**
+     * 获取对冲请求先返回的次数
+     */
+    public long getHedgeWinCount() {
+        return hedgeWinCount.sum();
+    }
+
+    /**
+     * 获取重试次数
+     */
+    public long getRetryCount() {
+        return retryCount.sum();
+    }
+
+    public long getHedgeDelayMillis() {
+        return hedgeDelayMillis;
+    }
+
+    public void setHedgeDelayMillis(long hedgeDelayMillis) {
+        this.hedgeDelayMillis = hedgeDelayMillis;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public long getRetryBackoffMillis() {
+        return retryBackoffMillis;
+    }
+
+    public void setRetryBackoffMillis(long retryBackoffMillis) {
+        this.retryBackoffMillis = retryBackoffMillis;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 一次读取中同时进行的请求<br/>
+     * 每个请求使用单独的截止时间(与调用方的截止时间相同), 结束时取消未被使用的请求
+     */
+    private static final class Race<T> {
+
+        private final Executor executor;
+
+        private final LatencyWindow latency;
+
+        private final Function<InetSocketAddress, T> request;
+
+        /**
+         * 调用方的截止时间, 可以为null
+         */
+        private final Deadline parent = Deadline.current();
+
+        private final List<Deadline> deadlines = new ArrayList<>();
+
+        private final BlockingQueue<Outcome<T>> outcomes = new LinkedBlockingQueue<>();
+
+        /**
+         * 未返回的请求数, 只在调用线程中访问
+         */
+        private int pending;
+
+        /**
+         * 被使用的请求序号, 没有时为-1
+         */
+        private int winner = -1;
+
+        private boolean finished;
+
+        private Consumer<T> discard;
+
+        private Race(Executor executor, LatencyWindow latency, Function<InetSocketAddress, T> request) {
+            this.executor = executor;
+            this.latency = latency;
+            this.request = request;
+        }
+
+        private void launch(InetSocketAddress address) {
+            Deadline deadline = null == parent ? Deadline.cancellable() : parent.fork();
+            int index = deadlines.size();
+            deadlines.add(deadline);
+            pending++;
+            long startTime = System.nanoTime();
+            executor.execute(() -> {
+                Outcome<T> outcome;
+                try {
+                    T value = deadline.call(() -> request.apply(address));
+                    latency.record(System.nanoTime() - startTime);
+                    outcome = new Outcome<>(index, value, null);
+                } catch (RuntimeException e) {
+                    outcome = new Outcome<>(index, null, e);
+                }
+                complete(outcome);
+            });
+        }
+
+        private void complete(Outcome<T> outcome) {
+            Consumer<T> lateDiscard;
+            synchronized (this) {
+                if (!finished) {
+                    outcomes.add(outcome);
+                    return;
+                }
+                lateDiscard = discard;
+            }
+            // 读取已经结束, 处理晚到的成功结果
+            if (null == outcome.error && null != lateDiscard && null != outcome.value) {
+                lateDiscard.accept(outcome.value);
+            }
+        }
+
+        /**
+         * 结束读取, 取消未被使用的请求, 被使用的请求从调用方的截止时间中移除, 并处理已返回但未被使用的结果
+         */
+        private void finish(Consumer<T> discard) {
+            synchronized (this) {
+                finished = true;
+                this.discard = discard;
+            }
+            for (int i = 0; i < deadlines.size(); i++) {
+                if (i == winner) {
+                    // 被使用的请求已经结束, 不再需要随调用方取消
+                    deadlines.get(i).detach();
+                } else {
+                    deadlines.get(i).cancel();
+                }
+            }
+            Outcome<T> outcome;
+            while (null != (outcome = outcomes.poll())) {
+                if (null == outcome.error && null != discard && null != outcome.value) {
+                    discard.accept(outcome.value);
+                }
+            }
+        }
+    }
+
+    /**
+     * 单个请求的结果
+     */
+    private static final class Outcome<T> {
+
+        private final int index;
+
+        private final T value;
+
+        private final RuntimeException error;
+
+        private Outcome(int index, T value, RuntimeException error) {
+            this.index = index;
+            this.value = value;
+            this.error = error;
+        }
+    }
+
+    /**
+     * 同类请求最近的耗时, 每{@link #WINDOW_SAMPLES}个样本换一个窗口
+     */
+    private static final class LatencyWindow {
+
+        private volatile LatencyHistogram current = new LatencyHistogram();
+
+        /**
+         * 上一个完整窗口
+         */
+        private volatile LatencyHistogram previous;
+
+        /**
+         * 按耗时计算的对冲延迟, 样本不足时为-1
+         */
+        private volatile long hedgeDelayNanos = -1;
+
+        private void record(long nanos) {
+            LatencyHistogram histogram = current;
+            histogram.record(nanos);
+            long count = histogram.getCount();
+            if (count % REFRESH_SAMPLES != 0 && count != MIN_SAMPLES) {
+                return;
+            }
+            if (count >= WINDOW_SAMPLES) {
+                synchronized (this) {
+                    if (current == histogram) {
+                        previous = histogram;
+                        current = new LatencyHistogram();
+                    }
+                }
+            }
+            LatencyHistogram window = null == previous ? histogram : previous;
+            if (window.getCount() >= MIN_SAMPLES) {
+                hedgeDelayNanos = Math.max(1, window.getPercentile(HEDGE_PERCENTILE, TimeUnit.NANOSECONDS));
+            }
+        }
+
+        private long getHedgeDelayNanos(long defaultMillis) {
+            long delay = hedgeDelayNanos;
+            return delay < 0 ? TimeUnit.MILLISECONDS.toNanos(defaultMillis) : delay;
+        }
+    }
+
+    /**
+     * 默认共享的读取线程池(守护线程, 空闲60秒后回收)
+     */
+    private static class ReadExecutor {
+
+        private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "fastdfs-read-" + THREAD_INDEX.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
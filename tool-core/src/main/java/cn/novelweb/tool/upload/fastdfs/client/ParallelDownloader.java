@@ -0,0 +1,332 @@
+package cn.novelweb.tool.upload.fastdfs.client;
+
+import cn.novelweb.tool.upload.fastdfs.conn.CommandExecutor;
+import cn.novelweb.tool.upload.fastdfs.conn.Deadline;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsCancelledException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsIoException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsServerException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsTimeoutException;
+import cn.novelweb.tool.upload.fastdfs.model.FileInfo;
+import cn.novelweb.tool.upload.fastdfs.model.StorageNodeInfo;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.DownloadFileCommandAbstract;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.QueryFileInfoCommandAbstract;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.callback.DownloadCallback;
+import cn.novelweb.tool.upload.fastdfs.utils.ByteBufferPool;
+import cn.novelweb.tool.upload.fastdfs.utils.Log;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>分段并行下载大文件</p>
+ * <p>1.向Tracker查询存有文件的所有存储节点, 并查询文件大小<br/>
+ * 2.将文件按{@link #setRangeSize(long)}切分为多个分段, 多个线程各自从连接池获取连接并行下载, 副本分布在多个存储节点时轮流使用不同的节点<br/>
+ * 3.分段按偏移量直接写入预先分配大小的本地文件, 单个分段失败时换一个存储节点重试</p>
+ * <p>2026-10-18 17:30</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+@Slf4j
+public class ParallelDownloader {
+
+    /**
+     * 默认分段大小(8MB)
+     */
+    private static final long DEFAULT_RANGE_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * 默认并行下载线程数
+     */
+    private static final int DEFAULT_PARALLELISM = 4;
+
+    /**
+     * 默认单个分段的重试次数
+     */
+    private static final int DEFAULT_MAX_RETRIES = 3;
+
+    private static final AtomicInteger THREAD_INDEX = new AtomicInteger();
+
+    private final CommandExecutor commandExecutor;
+
+    private final TrackerClient trackerClient;
+
+    /**
+     * 分段大小
+     */
+    private long rangeSize = DEFAULT_RANGE_SIZE;
+
+    /**
+     * 并行下载线程数(包含调用线程)
+     */
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    /**
+     * 单个分段的重试次数
+     */
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+
+    /**
+     * 执行下载任务的线程池, 为null时使用内部共享的线程池
+     */
+    private Executor executor;
+
+    public ParallelDownloader(CommandExecutor commandExecutor, TrackerClient trackerClient) {
+        this.commandExecutor = commandExecutor;
+        this.trackerClient = trackerClient;
+    }
+
+    /**
+     * 下载文件到本地
+     *
+     * @param groupName 组名称
+     * @param path      文件路径
+     * @param localFile 本地文件名称
+     * @return 文件大小
+     */
+    public long download(String groupName, String path, String localFile) {
+        return download(groupName, path, new File(localFile));
+    }
+
+    /**
+     * 下载文件到本地, 下载失败时删除本地文件
+     *
+     * @param groupName 组名称
+     * @param path      文件路径
+     * @param target    本地文件
+     * @return 文件大小
+     */
+    public long download(String groupName, String path, File target) {
+        List<StorageNodeInfo> storageNodes = trackerClient.getFetchStorages(groupName, path);
+        List<InetSocketAddress> addresses = new ArrayList<>(storageNodes.size());
+        for (StorageNodeInfo storageNode : storageNodes) {
+            addresses.add(storageNode.getInetSocketAddress());
+        }
+        FileInfo fileInfo = commandExecutor.execute(addresses.get(0), new QueryFileInfoCommandAbstract(groupName, path));
+        long fileSize = fileInfo.getFileSize();
+        int rangeCount = (int) ((fileSize + rangeSize - 1) / rangeSize);
+        Log.debug("并行下载文件[{}/{}], 大小[{}], 分段数[{}], 存储节点{}", groupName, path, fileSize, rangeCount, addresses);
+        boolean success = false;
+        try (RandomAccessFile file = new RandomAccessFile(target, "rw")) {
+            file.setLength(fileSize);
+            Download download = new Download(groupName, path, addresses, file.getChannel(), fileSize, rangeCount);
+            int workers = Math.max(1, Math.min(parallelism, rangeCount));
+            List<Future<?>> futures = new ArrayList<>(workers - 1);
+            Executor workerExecutor = null == executor ? DownloadExecutor.EXECUTOR : executor;
+            for (int i = 1; i < workers; i++) {
+                // 工作线程使用调用线程的截止时间
+                FutureTask<Void> task = new FutureTask<>(Deadline.wrap(download::work), null);
+                workerExecutor.execute(task);
+                futures.add(task);
+            }
+            // 调用线程也参与下载
+            download.work();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            RuntimeException failure = download.failure.get();
+            if (null != failure) {
+                throw failure;
+            }
+            success = true;
+            Log.debug("并行下载文件完成[{}/{}], 下载字节数[{}]", groupName, path, download.downloaded.get());
+            return fileSize;
+        } catch (IOException e) {
+            throw new FastDfsIoException("写入本地文件异常:" + target, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FastDfsIoException("并行下载被中断", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("并行下载异常", e.getCause());
+        } finally {
+            if (!success && target.exists() && !target.delete()) {
+                log.warn("删除下载失败的本地文件失败: {}", target);
+            }
+        }
+    }
+
+    /**
+     * 一次下载任务的状态
+     */
+    private class Download {
+
+        private final String groupName;
+
+        private final String path;
+
+        private final List<InetSocketAddress> addresses;
+
+        private final FileChannel channel;
+
+        private final long fileSize;
+
+        private final int rangeCount;
+
+        /**
+         * 下一个待下载的分段
+         */
+        private final AtomicInteger nextRange = new AtomicInteger();
+
+        /**
+         * 已下载字节数(包含重试)
+         */
+        private final AtomicLong downloaded = new AtomicLong();
+
+        /**
+         * 第一个重试后仍然失败的分段异常
+         */
+        private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        private Download(String groupName, String path, List<InetSocketAddress> addresses, FileChannel channel,
+                         long fileSize, int rangeCount) {
+            this.groupName = groupName;
+            this.path = path;
+            this.addresses = addresses;
+            this.channel = channel;
+            this.fileSize = fileSize;
+            this.rangeCount = rangeCount;
+        }
+
+        /**
+         * 循环领取分段下载, 直到全部完成或有分段失败
+         */
+        private void work() {
+            int range;
+            while (null == failure.get() && (range = nextRange.getAndIncrement()) < rangeCount) {
+                long offset = range * rangeSize;
+                long length = Math.min(rangeSize, fileSize - offset);
+                try {
+                    downloadRange(range, offset, length);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        }
+
+        /**
+         * 下载一个分段, 失败时换一个存储节点重试
+         */
+        private void downloadRange(int range, long offset, long length) {
+            RuntimeException lastError = null;
+            for (int attempt = 0; attempt <= maxRetries; attempt++) {
+                InetSocketAddress address = addresses.get((range + attempt) % addresses.size());
+                try {
+                    commandExecutor.execute(address, new DownloadFileCommandAbstract<>(groupName, path, offset, length,
+                            new RangeWriter(channel, offset, length, downloaded)));
+                    return;
+                } catch (FastDfsServerException | FastDfsTimeoutException | FastDfsCancelledException e) {
+                    // 服务端返回错误状态(如文件不存在)或请求已中止时重试没有意义
+                    throw e;
+                } catch (RuntimeException e) {
+                    lastError = e;
+                    log.warn("下载分段失败[{}/{}], 分段[{}], 存储节点[{}], 第{}次尝试: {}",
+                            groupName, path, range, address, attempt + 1, e.getMessage());
+                }
+            }
+            throw lastError;
+        }
+    }
+
+    /**
+     * 将分段内容按偏移量写入本地文件
+     */
+    private static class RangeWriter implements DownloadCallback<Long> {
+
+        private final FileChannel channel;
+
+        private final long offset;
+
+        private final long length;
+
+        private final AtomicLong downloaded;
+
+        private RangeWriter(FileChannel channel, long offset, long length, AtomicLong downloaded) {
+            this.channel = channel;
+            this.offset = offset;
+            this.length = length;
+            this.downloaded = downloaded;
+        }
+
+        @Override
+        public Long receive(InputStream inputStream) throws IOException {
+            ByteBuffer buffer = ByteBufferPool.acquire(ByteBufferPool.MAX_POOLED_SIZE);
+            try {
+                byte[] bytes = buffer.array();
+                long position = offset;
+                int read;
+                while ((read = inputStream.read(bytes, 0, bytes.length)) >= 0) {
+                    buffer.clear().limit(read);
+                    while (buffer.hasRemaining()) {
+                        position += channel.write(buffer, position);
+                    }
+                    downloaded.addAndGet(read);
+                }
+                if (position - offset != length) {
+                    throw new IOException("分段下载长度[" + (position - offset) + "]与请求长度[" + length + "]不符");
+                }
+                return position - offset;
+            } finally {
+                ByteBufferPool.release(buffer);
+            }
+        }
+    }
+
+    public long getRangeSize() {
+        return rangeSize;
+    }
+
+    public void setRangeSize(long rangeSize) {
+        if (rangeSize <= 0) {
+            throw new IllegalArgumentException("分段大小必须大于0");
+        }
+        this.rangeSize = rangeSize;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 默认共享的下载线程池(守护线程, 空闲60秒后回收)
+     */
+    private static class DownloadExecutor {
+
+        private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "fastdfs-download-" + THREAD_INDEX.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+}
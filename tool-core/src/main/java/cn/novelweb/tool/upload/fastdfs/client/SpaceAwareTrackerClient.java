@@ -0,0 +1,99 @@
+package cn.novelweb.tool.upload.fastdfs.client;
+
+import cn.novelweb.tool.upload.fastdfs.model.GroupState;
+import cn.novelweb.tool.upload.fastdfs.model.StorageNode;
+import cn.novelweb.tool.upload.fastdfs.model.StorageNodeInfo;
+import cn.novelweb.tool.upload.fastdfs.model.StorageState;
+
+import java.util.List;
+
+/**
+ * <p>按集群容量选择上传存储节点的目录服务(Tracker)客户端</p>
+ * <p>获取上传存储节点时先根据{@link ClusterStateMonitor}的快照选择, 避开剩余空间不足及同步延迟过大的节点,
+ * 快照不可用时由被包装的客户端请求Tracker; 其他方法直接调用被包装的客户端</p>
+ * <p>2026-10-18 21:30</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public class SpaceAwareTrackerClient implements TrackerClient {
+
+    private final TrackerClient trackerClient;
+
+    private final ClusterStateMonitor monitor;
+
+    /**
+     * @param trackerClient 被包装的客户端
+     * @param monitor       集群容量监控
+     */
+    public SpaceAwareTrackerClient(TrackerClient trackerClient, ClusterStateMonitor monitor) {
+        this.trackerClient = trackerClient;
+        this.monitor = monitor;
+    }
+
+    @Override
+    public StorageNode getStorageNode() {
+        StorageNode storageNode = monitor.selectStorageNode(null);
+        return null == storageNode ? trackerClient.getStorageNode() : storageNode;
+    }
+
+    @Override
+    public StorageNode getStorageNode(String groupName) {
+        StorageNode storageNode = monitor.selectStorageNode(groupName);
+        return null == storageNode ? trackerClient.getStorageNode(groupName) : storageNode;
+    }
+
+    @Override
+    public StorageNodeInfo getFetchStorage(String groupName, String filename) {
+        return trackerClient.getFetchStorage(groupName, filename);
+    }
+
+    @Override
+    public StorageNodeInfo getFetchStorageAndUpdate(String groupName, String filename) {
+        return trackerClient.getFetchStorageAndUpdate(groupName, filename);
+    }
+
+    @Override
+    public List<StorageNodeInfo> getFetchStorages(String groupName, String filename) {
+        return trackerClient.getFetchStorages(groupName, filename);
+    }
+
+    @Override
+    public List<GroupState> getGroupStates() {
+        return trackerClient.getGroupStates();
+    }
+
+    @Override
+    public List<StorageState> getStorageStates(String groupName) {
+        return trackerClient.getStorageStates(groupName);
+    }
+
+    @Override
+    public StorageState getStorageState(String groupName, String storageIp) {
+        return trackerClient.getStorageState(groupName, storageIp);
+    }
+
+    @Override
+    public boolean deleteStorage(String groupName, String storageIp) {
+        return trackerClient.deleteStorage(groupName, storageIp);
+    }
+
+    @Override
+    public void invalidateStorageNode(String groupName) {
+        trackerClient.invalidateStorageNode(groupName);
+    }
+
+    @Override
+    public void invalidateStorageNode(String groupName, StorageNode storageNode) {
+        monitor.markUnavailable(storageNode);
+        trackerClient.invalidateStorageNode(groupName, storageNode);
+    }
+
+    @Override
+    public void invalidateFetchStorage(String groupName, String filename) {
+        trackerClient.invalidateFetchStorage(groupName, filename);
+    }
+
+    public ClusterStateMonitor getMonitor() {
+        return monitor;
+    }
+}
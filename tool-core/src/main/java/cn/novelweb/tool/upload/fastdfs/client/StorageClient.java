@@ -3,9 +3,15 @@ package cn.novelweb.tool.upload.fastdfs.client;
 import cn.novelweb.tool.upload.fastdfs.model.FileInfo;
 import cn.novelweb.tool.upload.fastdfs.model.MateData;
 import cn.novelweb.tool.upload.fastdfs.model.StorePath;
+import cn.novelweb.tool.upload.fastdfs.model.UploadItem;
 import cn.novelweb.tool.upload.fastdfs.protocol.storage.callback.DownloadCallback;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.response.FastDfsInputStream;
 
+import java.io.File;
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -27,6 +33,27 @@ public interface StorageClient {
      */
     StorePath uploadFile(String groupName, InputStream inputStream, long fileSize, String fileExtName);
 
+    /**
+     * 上传文件(使用FileChannel.transferTo零拷贝发送)<br/>
+     * 文件上传后不可以修改，如果要修改则删除以后重新上传
+     *
+     * @param groupName   组名称
+     * @param file        文件
+     * @param fileExtName 文件扩展名
+     * @return 文件存储路径
+     */
+    StorePath uploadFile(String groupName, File file, String fileExtName);
+
+    /**
+     * 批量上传文件<br/>
+     * 按剩余空间将文件分散到组内所有可写的存储节点并行上传, 每个存储节点的并发数有上限
+     *
+     * @param groupName 组名称, 为null时使用Tracker选择的组
+     * @param items     上传的文件
+     * @return 与items顺序一致的文件存储路径, 上传失败的为null
+     */
+    List<StorePath> uploadBatch(String groupName, List<UploadItem> items);
+
     /**
      * 上传从文件
      *
@@ -87,6 +114,40 @@ public interface StorageClient {
      */
     boolean deleteFile(String groupName, String path);
 
+    /**
+     * 批量删除文件<br/>
+     * 先在一个Tracker连接上以管道模式查询所有文件的存储节点, 再按存储节点分组, 在每个存储节点的一个连接上以管道模式删除
+     *
+     * @param storePaths 文件路径集合
+     * @return 与storePaths迭代顺序一致的删除结果
+     */
+    List<Boolean> deleteFiles(Collection<StorePath> storePaths);
+
+    /**
+     * 批量获取文件元信息(管道模式)
+     *
+     * @param storePaths 文件路径集合
+     * @return 与storePaths迭代顺序一致的元信息集合，不存在或获取失败的为空集合
+     */
+    List<Set<MateData>> getMetadata(Collection<StorePath> storePaths);
+
+    /**
+     * 批量合并文件元信息(管道模式)<br/>
+     * 先在一个Tracker连接上以管道模式查询所有文件的源存储节点, 再按存储节点分组, 在每个存储节点的一个连接上以管道模式修改
+     *
+     * @param metadata 文件路径 -> 需要合并的元信息
+     * @return 与metadata迭代顺序一致的修改结果
+     */
+    List<Boolean> mergeMetadata(Map<StorePath, Set<MateData>> metadata);
+
+    /**
+     * 批量获取文件的信息(管道模式)
+     *
+     * @param storePaths 文件路径集合
+     * @return 与storePaths迭代顺序一致的文件信息，不存在或获取失败的为null
+     */
+    List<FileInfo> queryFileInfo(Collection<StorePath> storePaths);
+
     /**
      * 下载整个文件
      *
@@ -109,6 +170,28 @@ public interface StorageClient {
      */
     <T> T downloadFile(String groupName, String path, long fileOffset, long fileSize, DownloadCallback<T> callback);
 
+    /**
+     * 以输入流的方式下载整个文件, 文件内容不会整体读入内存(命令执行器不支持流式下载时除外, 见CommandExecutor#executeStream)<br/>
+     * <b>注意: 返回的输入流使用完必须关闭, 关闭前一直占用一个连接</b>
+     *
+     * @param groupName 组名称
+     * @param path      主文件路径
+     * @return 文件内容的输入流
+     */
+    FastDfsInputStream openStream(String groupName, String path);
+
+    /**
+     * 以输入流的方式下载文件片段<br/>
+     * <b>注意: 返回的输入流使用完必须关闭, 关闭前一直占用一个连接</b>
+     *
+     * @param groupName  组名称
+     * @param path       主文件路径
+     * @param fileOffset 开始位置
+     * @param fileSize   读取长度(0表示读取到文件末尾)
+     * @return 文件内容的输入流
+     */
+    FastDfsInputStream openStream(String groupName, String path, long fileOffset, long fileSize);
+
     // ----------------------------------------------------------------------------------------------------------------------------------------------------
 
     /**
@@ -143,6 +226,17 @@ public interface StorageClient {
      */
     void appendFile(String groupName, String path, InputStream inputStream, long fileSize);
 
+    /**
+     * 断点续传文件(使用FileChannel.transferTo零拷贝发送)
+     *
+     * @param groupName    组名称
+     * @param path         文件路径
+     * @param file         文件
+     * @param filePosition 文件开始位置
+     * @param fileSize     发送长度
+     */
+    void appendFile(String groupName, String path, File file, long filePosition, long fileSize);
+
     /**
      * 修改续传文件的内容
      *
@@ -154,6 +248,18 @@ public interface StorageClient {
      */
     void modifyFile(String groupName, String path, InputStream inputStream, long fileSize, long fileOffset);
 
+    /**
+     * 修改续传文件的内容(使用FileChannel.transferTo零拷贝发送)
+     *
+     * @param groupName    组名称
+     * @param path         文件路径
+     * @param file         文件
+     * @param filePosition 文件开始位置
+     * @param fileSize     发送长度
+     * @param fileOffset   开始位置
+     */
+    void modifyFile(String groupName, String path, File file, long filePosition, long fileSize, long fileOffset);
+
     /**
      * 清除续传类型文件的内容
      *
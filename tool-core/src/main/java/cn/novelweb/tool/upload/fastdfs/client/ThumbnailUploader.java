@@ -0,0 +1,350 @@
+package cn.novelweb.tool.upload.fastdfs.client;
+
+import cn.novelweb.tool.upload.fastdfs.conn.CommandExecutor;
+import cn.novelweb.tool.upload.fastdfs.conn.PipelineResult;
+import cn.novelweb.tool.upload.fastdfs.constant.ErrorCodeConstants;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsIoException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsServerException;
+import cn.novelweb.tool.upload.fastdfs.model.ImageUploadResult;
+import cn.novelweb.tool.upload.fastdfs.model.StorageNodeInfo;
+import cn.novelweb.tool.upload.fastdfs.model.StorePath;
+import cn.novelweb.tool.upload.fastdfs.model.ThumbnailSize;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.UploadSlaveFileCommandAbstract;
+import cn.novelweb.tool.upload.fastdfs.utils.Log;
+import lombok.extern.slf4j.Slf4j;
+import net.coobird.thumbnailator.Thumbnails;
+import net.coobird.thumbnailator.geometry.Positions;
+import org.apache.commons.lang.StringUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * <p>上传图片并生成缩略图(从文件)</p>
+ * <p>1.调用线程上传原图的同时, 在线程池中解码一次原图, 再从同一个解码后的图片并行生成所有尺寸的缩略图<br/>
+ * 2.原图上传完成后查询原图所在的源存储节点, 在该节点的一个连接上以管道模式上传全部缩略图(从文件)<br/>
+ * 3.原图无法解码时删除已上传的原图并抛出异常; 单个缩略图上传失败时结果中对应的路径为null</p>
+ * <p>2026-10-18 23:50</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+@Slf4j
+public class ThumbnailUploader {
+
+    /**
+     * 缩略图格式不支持写入时使用的格式
+     */
+    private static final String DEFAULT_FORMAT = "jpg";
+
+    private static final AtomicInteger THREAD_INDEX = new AtomicInteger();
+
+    private final StorageClient storageClient;
+
+    private final CommandExecutor commandExecutor;
+
+    private final TrackerClient trackerClient;
+
+    /**
+     * 默认的缩略图尺寸
+     */
+    private volatile List<ThumbnailSize> sizes = Collections.emptyList();
+
+    /**
+     * 解码及生成缩略图的线程池, 为null时使用内部共享的线程池
+     */
+    private Executor executor;
+
+    /**
+     * @param storageClient   上传原图的客户端
+     * @param commandExecutor 上传缩略图的命令执行器
+     * @param trackerClient   查询原图所在存储节点的客户端
+     */
+    public ThumbnailUploader(StorageClient storageClient, CommandExecutor commandExecutor, TrackerClient trackerClient) {
+        this.storageClient = storageClient;
+        this.commandExecutor = commandExecutor;
+        this.trackerClient = trackerClient;
+    }
+
+    /**
+     * 上传图片并生成默认尺寸的缩略图
+     *
+     * @param groupName   组名称
+     * @param inputStream 图片输入流
+     * @param fileSize    图片大小
+     * @param fileExtName 图片扩展名
+     * @return 原图及缩略图的存储路径
+     */
+    public ImageUploadResult upload(String groupName, InputStream inputStream, long fileSize, String fileExtName) {
+        return upload(groupName, inputStream, fileSize, fileExtName, sizes);
+    }
+
+    /**
+     * 上传图片并生成缩略图, 图片内容读入内存后上传及解码
+     *
+     * @param groupName   组名称
+     * @param inputStream 图片输入流
+     * @param fileSize    图片大小
+     * @param fileExtName 图片扩展名
+     * @param sizes       缩略图尺寸
+     * @return 原图及缩略图的存储路径
+     */
+    public ImageUploadResult upload(String groupName, InputStream inputStream, long fileSize, String fileExtName, List<ThumbnailSize> sizes) {
+        byte[] image = readFully(inputStream, fileSize);
+        return upload(groupName, image, fileExtName, sizes);
+    }
+
+    /**
+     * 上传图片并生成缩略图
+     *
+     * @param groupName   组名称
+     * @param image       图片内容
+     * @param fileExtName 图片扩展名
+     * @param sizes       缩略图尺寸
+     * @return 原图及缩略图的存储路径
+     */
+    public ImageUploadResult upload(String groupName, byte[] image, String fileExtName, List<ThumbnailSize> sizes) {
+        return upload(fileExtName, sizes, () -> ImageIO.read(new ByteArrayInputStream(image)),
+                () -> storageClient.uploadFile(groupName, new ByteArrayInputStream(image), image.length, fileExtName));
+    }
+
+    /**
+     * 上传本地图片并生成默认尺寸的缩略图, 原图通过零拷贝上传
+     *
+     * @param groupName 组名称
+     * @param file      本地图片
+     * @return 原图及缩略图的存储路径
+     */
+    public ImageUploadResult upload(String groupName, File file) {
+        return upload(groupName, file, sizes);
+    }
+
+    /**
+     * 上传本地图片并生成缩略图, 原图通过零拷贝上传
+     *
+     * @param groupName 组名称
+     * @param file      本地图片
+     * @param sizes     缩略图尺寸
+     * @return 原图及缩略图的存储路径
+     */
+    public ImageUploadResult upload(String groupName, File file, List<ThumbnailSize> sizes) {
+        String name = file.getName();
+        String fileExtName = name.lastIndexOf('.') < 0 ? "" : name.substring(name.lastIndexOf('.') + 1);
+        return upload(fileExtName, sizes, () -> ImageIO.read(file), () -> storageClient.uploadFile(groupName, file, fileExtName));
+    }
+
+    private ImageUploadResult upload(String fileExtName, List<ThumbnailSize> sizes, Callable<BufferedImage> decoder,
+                                     Supplier<StorePath> masterUploader) {
+        checkPrefixes(sizes);
+        String format = outputFormat(fileExtName);
+        Executor workerExecutor = null == executor ? ThumbnailExecutor.EXECUTOR : executor;
+        // 解码一次, 所有尺寸从同一个解码后的图片生成
+        CompletableFuture<BufferedImage> decoded = sizes.isEmpty() ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.supplyAsync(() -> decode(decoder), workerExecutor);
+        List<CompletableFuture<byte[]>> thumbnails = new ArrayList<>(sizes.size());
+        for (ThumbnailSize size : sizes) {
+            thumbnails.add(decoded.thenApplyAsync(image -> resize(image, size, format), workerExecutor));
+        }
+        StorePath master;
+        try {
+            // 生成缩略图的同时上传原图
+            master = masterUploader.get();
+        } catch (RuntimeException e) {
+            thumbnails.forEach(thumbnail -> thumbnail.cancel(false));
+            throw e;
+        }
+        if (null == master) {
+            return null;
+        }
+        List<byte[]> contents = new ArrayList<>(thumbnails.size());
+        try {
+            for (CompletableFuture<byte[]> thumbnail : thumbnails) {
+                contents.add(thumbnail.join());
+            }
+        } catch (CompletionException e) {
+            // 原图不是可以解码的图片, 删除已上传的原图
+            storageClient.deleteFile(master.getGroup(), master.getPath());
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new FastDfsException("生成缩略图失败", e.getCause());
+        }
+        return new ImageUploadResult(master, uploadThumbnails(master, sizes, contents, format));
+    }
+
+    /**
+     * 在原图所在的源存储节点的一个连接上以管道模式上传全部缩略图
+     *
+     * @return 缩略图前缀 -> 缩略图的存储路径, 上传失败的为null
+     */
+    private Map<String, StorePath> uploadThumbnails(StorePath master, List<ThumbnailSize> sizes, List<byte[]> contents, String format) {
+        Map<String, StorePath> result = new LinkedHashMap<>(sizes.size() * 2);
+        if (sizes.isEmpty()) {
+            return result;
+        }
+        List<UploadSlaveFileCommandAbstract> commands = new ArrayList<>(sizes.size());
+        for (int i = 0; i < sizes.size(); i++) {
+            byte[] content = contents.get(i);
+            commands.add(new UploadSlaveFileCommandAbstract(new ByteArrayInputStream(content), content.length,
+                    master.getPath(), sizes.get(i).getPrefix(), format));
+        }
+        List<PipelineResult<StorePath>> results;
+        try {
+            StorageNodeInfo storageNodeInfo = trackerClient.getFetchStorageAndUpdate(master.getGroup(), master.getPath());
+            results = commandExecutor.executePipelined(storageNodeInfo.getInetSocketAddress(), commands);
+        } catch (RuntimeException e) {
+            log.error("上传缩略图失败, 原图[{}]", master.getFullPath(), e);
+            trackerClient.invalidateFetchStorage(master.getGroup(), master.getPath());
+            for (ThumbnailSize size : sizes) {
+                result.put(size.getPrefix(), null);
+            }
+            return result;
+        }
+        for (int i = 0; i < sizes.size(); i++) {
+            ThumbnailSize size = sizes.get(i);
+            PipelineResult<StorePath> slave = results.get(i);
+            RuntimeException e = slave.getError();
+            if (null == e) {
+                result.put(size.getPrefix(), slave.getValue());
+            } else if (e instanceof FastDfsServerException && ((FastDfsServerException) e).getErrorCode() == ErrorCodeConstants.ERR_NO_EEXIST) {
+                // 去重上传时原图已存在, 缩略图也已经上传过
+                result.put(size.getPrefix(), slavePath(master, size.getPrefix(), format));
+            } else {
+                log.error("上传缩略图失败, 原图[{}], 缩略图[{}]", master.getFullPath(), size, e);
+                result.put(size.getPrefix(), null);
+            }
+        }
+        Log.debug("上传缩略图完成, 原图[{}], 缩略图{}", master.getFullPath(), result);
+        return result;
+    }
+
+    private static BufferedImage decode(Callable<BufferedImage> decoder) {
+        BufferedImage image;
+        try {
+            image = decoder.call();
+        } catch (IOException e) {
+            throw new FastDfsIoException("读取图片异常", e);
+        } catch (Exception e) {
+            throw new FastDfsException("解码图片异常", e);
+        }
+        if (null == image) {
+            throw new FastDfsException("不支持的图片格式, 无法生成缩略图");
+        }
+        return image;
+    }
+
+    /**
+     * 生成一个尺寸的缩略图
+     */
+    private static byte[] resize(BufferedImage image, ThumbnailSize size, String format) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(8192);
+        try {
+            Thumbnails.Builder<BufferedImage> builder = Thumbnails.of(image).size(size.getWidth(), size.getHeight());
+            if (size.isCrop()) {
+                builder.crop(Positions.CENTER);
+            }
+            if (isJpeg(format)) {
+                // JPEG不支持透明通道
+                builder.imageType(BufferedImage.TYPE_INT_RGB);
+            }
+            builder.outputFormat(format).toOutputStream(outputStream);
+        } catch (IOException e) {
+            throw new FastDfsIoException("生成缩略图异常:" + size, e);
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * 缩略图格式与原图相同, 不支持写入的格式使用jpg
+     */
+    private static String outputFormat(String fileExtName) {
+        if (StringUtils.isNotBlank(fileExtName) && ImageIO.getImageWritersByFormatName(fileExtName).hasNext()) {
+            return fileExtName.toLowerCase();
+        }
+        return DEFAULT_FORMAT;
+    }
+
+    private static boolean isJpeg(String format) {
+        return "jpg".equals(format) || "jpeg".equals(format);
+    }
+
+    private static void checkPrefixes(List<ThumbnailSize> sizes) {
+        Set<String> prefixes = new HashSet<>(sizes.size() * 2);
+        for (ThumbnailSize size : sizes) {
+            if (!prefixes.add(size.getPrefix())) {
+                throw new IllegalArgumentException("缩略图前缀重复: " + size.getPrefix());
+            }
+        }
+    }
+
+    /**
+     * 从文件路径 = 主文件路径(不含扩展名) + 前缀 + 扩展名
+     */
+    private static StorePath slavePath(StorePath master, String prefix, String fileExtName) {
+        String path = master.getPath();
+        int dot = path.lastIndexOf('.');
+        String base = dot > path.lastIndexOf('/') ? path.substring(0, dot) : path;
+        return new StorePath(master.getGroup(), base + prefix + (StringUtils.isEmpty(fileExtName) ? "" : "." + fileExtName));
+    }
+
+    /**
+     * 按文件大小读取输入流
+     */
+    private static byte[] readFully(InputStream inputStream, long fileSize) {
+        if (fileSize < 0 || fileSize > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("图片大小不正确: " + fileSize);
+        }
+        byte[] image = new byte[(int) fileSize];
+        int offset = 0;
+        try {
+            while (offset < image.length) {
+                int read = inputStream.read(image, offset, image.length - offset);
+                if (read < 0) {
+                    throw new FastDfsIoException("图片输入流长度[" + offset + "]小于图片大小[" + fileSize + "]");
+                }
+                offset += read;
+            }
+        } catch (IOException e) {
+            throw new FastDfsIoException("读取图片异常", e);
+        }
+        return image;
+    }
+
+    public List<ThumbnailSize> getSizes() {
+        return sizes;
+    }
+
+    /**
+     * 设置默认的缩略图尺寸
+     */
+    public void setSizes(List<ThumbnailSize> sizes) {
+        checkPrefixes(sizes);
+        this.sizes = Collections.unmodifiableList(new ArrayList<>(sizes));
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 默认共享的缩略图线程池(守护线程, 线程数为CPU核数)
+     */
+    private static class ThumbnailExecutor {
+
+        private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+            Thread thread = new Thread(r, "fastdfs-thumbnail-" + THREAD_INDEX.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+}
@@ -48,6 +48,15 @@ public interface TrackerClient {
      */
     StorageNodeInfo getFetchStorageAndUpdate(String groupName, String filename);
 
+    /**
+     * 获取存有文件的所有存储节点信息(文件在组内有多个副本时返回多个)
+     *
+     * @param groupName 组名称
+     * @param filename  文件路径
+     * @return 存储节点信息集合, 第一个为源存储节点
+     */
+    List<StorageNodeInfo> getFetchStorages(String groupName, String filename);
+
     /**
      * 获取存储组的状态
      *
@@ -81,4 +90,31 @@ public interface TrackerClient {
      */
     boolean deleteStorage(String groupName, String storageIp);
 
+    /**
+     * 上传文件到存储节点失败时调用, 使缓存的上传路由失效(默认实现不缓存路由)
+     *
+     * @param groupName 组名称, 为null时表示未指定组时获取的存储节点
+     */
+    default void invalidateStorageNode(String groupName) {
+    }
+
+    /**
+     * 上传文件到存储节点失败时调用, 使缓存的上传路由失效, 并在一段时间内不再选择该存储节点(默认实现只使路由失效)
+     *
+     * @param groupName   组名称, 为null时表示未指定组时获取的存储节点
+     * @param storageNode 访问失败的存储节点
+     */
+    default void invalidateStorageNode(String groupName, StorageNode storageNode) {
+        invalidateStorageNode(groupName);
+    }
+
+    /**
+     * 访问文件所在的存储节点失败时调用, 使缓存的文件路由失效(默认实现不缓存路由)
+     *
+     * @param groupName 组名称
+     * @param filename  文件路径
+     */
+    default void invalidateFetchStorage(String groupName, String filename) {
+    }
+
 }
@@ -1,6 +1,10 @@
 package cn.novelweb.tool.upload.fastdfs.config;
 
 import cn.novelweb.tool.upload.fastdfs.FastDfsClient;
+import cn.novelweb.tool.upload.fastdfs.dedup.DedupIndex;
+import cn.novelweb.tool.upload.fastdfs.dedup.LocalDedupIndex;
+import cn.novelweb.tool.upload.fastdfs.metrics.FastDfsMetrics;
+import cn.novelweb.tool.upload.fastdfs.metrics.SimpleFastDfsMetrics;
 import cn.novelweb.tool.upload.fastdfs.utils.IniFileReader;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -33,6 +37,34 @@ public class FastDfsConfig {
     private static final String FAST_DFS_MAX_TOTAL_PER_KEY = "fastdfs.maxTotalPerKey";
     private static final String FAST_DFS_MAX_IDLE_PER_KEY = "fastdfs.maxIdlePerKey";
     private static final String FAST_DFS_TRACKERS = "fastdfs.tracker_servers";
+    private static final String FAST_DFS_NIO_MAX_CONNECTIONS_PER_KEY = "fastdfs.nio.maxConnectionsPerKey";
+    private static final String FAST_DFS_NIO_MAX_RESPONSE_MB = "fastdfs.nio.maxResponseMb";
+    private static final String FAST_DFS_ASYNC_MAX_REQUESTS = "fastdfs.async.maxRequests";
+    private static final String FAST_DFS_ASYNC_THREADS = "fastdfs.async.threads";
+    private static final String FAST_DFS_TEST_ON_BORROW = "fastdfs.testOnBorrow";
+    private static final String FAST_DFS_VALIDATE_IDLE_SECONDS = "fastdfs.validateIdleSeconds";
+    private static final String FAST_DFS_ROUTE_CACHE_SECONDS = "fastdfs.route.cacheSeconds";
+    private static final String FAST_DFS_ROUTE_CACHE_MAX_ENTRIES = "fastdfs.route.cacheMaxEntries";
+    private static final String FAST_DFS_ROUTE_CACHE_UPLOAD = "fastdfs.route.cacheUpload";
+    private static final String FAST_DFS_CACHE_MAX_MB = "fastdfs.cache.maxMb";
+    private static final String FAST_DFS_CACHE_MAX_OBJECT_KB = "fastdfs.cache.maxObjectKb";
+    private static final String FAST_DFS_CACHE_OFF_HEAP = "fastdfs.cache.offHeap";
+    private static final String FAST_DFS_CACHE_TTL_SECONDS = "fastdfs.cache.ttlSeconds";
+    private static final String FAST_DFS_METRICS_ENABLED = "fastdfs.metrics.enabled";
+    private static final String FAST_DFS_READ_HEDGE = "fastdfs.read.hedge";
+    private static final String FAST_DFS_READ_HEDGE_DELAY_MS = "fastdfs.read.hedgeDelayMs";
+    private static final String FAST_DFS_READ_MAX_RETRIES = "fastdfs.read.maxRetries";
+    private static final String FAST_DFS_READ_RETRY_BACKOFF_MS = "fastdfs.read.retryBackoffMs";
+    private static final String FAST_DFS_CLUSTER_POLL_SECONDS = "fastdfs.cluster.pollSeconds";
+    private static final String FAST_DFS_CLUSTER_MIN_FREE_PERCENT = "fastdfs.cluster.minFreePercent";
+    private static final String FAST_DFS_CLUSTER_MAX_SYNC_LAG_SECONDS = "fastdfs.cluster.maxSyncLagSeconds";
+    private static final String FAST_DFS_CRC_VERIFY = "fastdfs.crc.verify";
+    private static final String FAST_DFS_CRC_MAX_RETRIES = "fastdfs.crc.maxRetries";
+    private static final String FAST_DFS_DEDUP_ENABLED = "fastdfs.dedup.enabled";
+    private static final String FAST_DFS_DEDUP_INDEX_FILE = "fastdfs.dedup.indexFile";
+    private static final String FAST_DFS_DEDUP_PRE_HASH_MAX_KB = "fastdfs.dedup.preHashMaxKb";
+    private static final String FAST_DFS_THUMBNAIL_SIZES = "fastdfs.thumbnail.sizes";
+    private static final String FAST_DFS_THUMBNAIL_CROP = "fastdfs.thumbnail.crop";
 
     /**
      * 设置debug日志是否显示
@@ -47,16 +79,197 @@ public class FastDfsConfig {
     private static final int DEFAULT_MAX_TOTAL = 200;
     private static final int DEFAULT_MAX_TOTAL_PER_KEY = 200;
     private static final int DEFAULT_MAX_IDLE_PER_KEY = 50;
+    private static final int DEFAULT_NIO_MAX_CONNECTIONS_PER_KEY = 8;
+    private static final int DEFAULT_NIO_MAX_RESPONSE_MB = 64;
+    private static final int DEFAULT_ASYNC_MAX_REQUESTS = 10000;
+    private static final int DEFAULT_VALIDATE_IDLE_SECONDS = 30;
+    private static final int DEFAULT_ROUTE_CACHE_SECONDS = 30;
+    private static final int DEFAULT_ROUTE_CACHE_MAX_ENTRIES = 10000;
+    private static final int DEFAULT_CACHE_MAX_OBJECT_KB = 256;
+    private static final int DEFAULT_CACHE_TTL_SECONDS = 60;
+    private static final int DEFAULT_READ_HEDGE_DELAY_MS = 50;
+    private static final int DEFAULT_READ_MAX_RETRIES = 2;
+    private static final int DEFAULT_READ_RETRY_BACKOFF_MS = 50;
+    private static final int DEFAULT_CLUSTER_MIN_FREE_PERCENT = 10;
+    private static final int DEFAULT_CLUSTER_MAX_SYNC_LAG_SECONDS = 600;
+    private static final int DEFAULT_CRC_MAX_RETRIES = 2;
+    private static final int DEFAULT_DEDUP_PRE_HASH_MAX_KB = 1024;
 
     /**
      * 赋值
      */
+    @Builder.Default
     private int soTimeout = DEFAULT_SO_TIMEOUT;
+    @Builder.Default
     private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    @Builder.Default
     private int maxTotal = DEFAULT_MAX_TOTAL;
+    @Builder.Default
     private int maxTotalPerKey = DEFAULT_MAX_TOTAL_PER_KEY;
+    @Builder.Default
     private int maxIdlePerKey = DEFAULT_MAX_IDLE_PER_KEY;
 
+    /**
+     * 异步客户端(非阻塞连接)每个服务器地址最大连接数
+     */
+    @Builder.Default
+    private int nioMaxConnectionsPerKey = DEFAULT_NIO_MAX_CONNECTIONS_PER_KEY;
+
+    /**
+     * 异步客户端(非阻塞连接)响应报文体最大长度(MB), 超过时请求失败, 不分配整块内存
+     */
+    @Builder.Default
+    private int nioMaxResponseMb = DEFAULT_NIO_MAX_RESPONSE_MB;
+
+    /**
+     * 异步客户端同时进行中的最大请求数
+     */
+    @Builder.Default
+    private int asyncMaxRequests = DEFAULT_ASYNC_MAX_REQUESTS;
+
+    /**
+     * 异步客户端解析响应及阻塞上传大文件的线程数, 小于等于0时为CPU核数
+     */
+    private int asyncThreads;
+
+    /**
+     * 借出连接时是否发送ACTIVE_TEST验证连接
+     */
+    private boolean testOnBorrow;
+
+    /**
+     * 后台验证空闲超过该时间(秒)的连接, 小于等于0时不验证
+     */
+    @Builder.Default
+    private int validateIdleSeconds = DEFAULT_VALIDATE_IDLE_SECONDS;
+
+    /**
+     * Tracker路由缓存有效期(秒), 小于等于0时不缓存
+     */
+    @Builder.Default
+    private int routeCacheSeconds = DEFAULT_ROUTE_CACHE_SECONDS;
+
+    /**
+     * Tracker文件路由最大缓存条目数
+     */
+    @Builder.Default
+    private int routeCacheMaxEntries = DEFAULT_ROUTE_CACHE_MAX_ENTRIES;
+
+    /**
+     * 是否同时缓存上传存储节点, 缓存期间同一个组的上传都发送到同一个存储节点,
+     * 不再经过Tracker的负载均衡及剩余空间检查, 默认不缓存
+     */
+    private boolean routeCacheUpload;
+
+    /**
+     * 本地缓存(小文件内容及元数据)最大占用内存(MB), 小于等于0时不缓存
+     */
+    private int cacheMaxMb;
+
+    /**
+     * 本地缓存文件内容的最大文件大小(KB)
+     */
+    @Builder.Default
+    private int cacheMaxObjectKb = DEFAULT_CACHE_MAX_OBJECT_KB;
+
+    /**
+     * 本地缓存的文件内容是否存放在堆外内存
+     */
+    private boolean cacheOffHeap;
+
+    /**
+     * 本地缓存有效期(秒), 小于等于0时不过期
+     */
+    @Builder.Default
+    private int cacheTtlSeconds = DEFAULT_CACHE_TTL_SECONDS;
+
+    /**
+     * 下载文件及查询文件信息/元数据时是否从多个副本读取(对冲请求及重试)
+     */
+    private boolean readHedge;
+
+    /**
+     * 对冲延迟(毫秒), 同类请求的耗时样本不足时使用, 之后按P95耗时
+     */
+    @Builder.Default
+    private int readHedgeDelayMs = DEFAULT_READ_HEDGE_DELAY_MS;
+
+    /**
+     * 所有副本都读取失败后的重试次数
+     */
+    @Builder.Default
+    private int readMaxRetries = DEFAULT_READ_MAX_RETRIES;
+
+    /**
+     * 首次重试前的等待时间(毫秒), 之后每次翻倍
+     */
+    @Builder.Default
+    private int readRetryBackoffMs = DEFAULT_READ_RETRY_BACKOFF_MS;
+
+    /**
+     * 集群容量监控查询间隔(秒), 大于0时按集群状态快照选择上传存储节点, 小于等于0时不监控
+     */
+    private int clusterPollSeconds;
+
+    /**
+     * 剩余空间比例(%)低于该值的存储节点不再上传
+     */
+    @Builder.Default
+    private int clusterMinFreePercent = DEFAULT_CLUSTER_MIN_FREE_PERCENT;
+
+    /**
+     * 同步延迟(秒)超过该值的存储节点不再上传, 小于等于0时不检查
+     */
+    @Builder.Default
+    private int clusterMaxSyncLagSeconds = DEFAULT_CLUSTER_MAX_SYNC_LAG_SECONDS;
+
+    /**
+     * 上传及下载整个文件时是否校验文件内容的CRC32
+     */
+    private boolean crcVerify;
+
+    /**
+     * 下载的文件校验失败时重新下载的次数
+     */
+    @Builder.Default
+    private int crcMaxRetries = DEFAULT_CRC_MAX_RETRIES;
+
+    /**
+     * 是否按文件内容去重上传(相同内容只保存一份, 删除时按引用计数)
+     */
+    private boolean dedup;
+
+    /**
+     * 本地去重索引的日志文件(只能被一个进程使用), 开启去重且未指定{@link #dedupIndex}时必须配置
+     */
+    private String dedupIndexFile;
+
+    /**
+     * 不超过该大小(KB)的输入流上传前先读入内存计算摘要, 相同内容不再上传(本地文件总是先计算摘要)
+     */
+    @Builder.Default
+    private int dedupPreHashMaxKb = DEFAULT_DEDUP_PRE_HASH_MAX_KB;
+
+    /**
+     * 去重索引, 不为null时开启去重上传; 为null时使用{@link #dedupIndexFile}创建{@link LocalDedupIndex}
+     */
+    private DedupIndex dedupIndex;
+
+    /**
+     * 上传图片时生成的缩略图尺寸, 多个用“,”隔开, 格式为 宽x高 或 前缀:宽x高 (如: 150x150,_big:800x600)
+     */
+    private String thumbnailSizes;
+
+    /**
+     * 缩略图是否居中裁剪为指定宽高, 为false时保持宽高比缩放
+     */
+    private boolean thumbnailCrop;
+
+    /**
+     * 监控指标, 为null时不记录; 配置文件中开启时使用{@link SimpleFastDfsMetrics}
+     */
+    private FastDfsMetrics metrics;
+
     private Boolean debugLog;
     private String trackerServers;
 
@@ -65,18 +278,67 @@ public class FastDfsConfig {
             log.error("配置文件不存在");
             return;
         }
-        IniFileReader iniReader = new IniFileReader(confFileName);
+        read(new IniFileReader(confFileName), DFS_CONFIG);
+        FastDfsClient.init(DFS_CONFIG);
+    }
+
+    /**
+     * 读取配置文件, 返回新的配置对象(不修改{@link #DFS_CONFIG})<br/>
+     * 用于创建连接不同集群的客户端实例({@link cn.novelweb.tool.upload.fastdfs.FastDfsClusterClient})
+     *
+     * @param confFileName 配置文件名称
+     * @return 配置信息
+     */
+    public static FastDfsConfig load(String confFileName) {
+        if (StringUtils.isBlank(confFileName)) {
+            throw new IllegalArgumentException("配置文件不存在");
+        }
+        FastDfsConfig config = new FastDfsConfig();
+        read(new IniFileReader(confFileName), config);
+        return config;
+    }
+
+    private static void read(IniFileReader iniReader, FastDfsConfig config) {
         try {
-            DFS_CONFIG.soTimeout = iniReader.getIntValue(FAST_DFS_SO_TIMEOUT, DEFAULT_SO_TIMEOUT);
-            DFS_CONFIG.connectTimeout = iniReader.getIntValue(FAST_DFS_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT);
-            DFS_CONFIG.maxTotal = iniReader.getIntValue(FAST_DFS_MAX_TOTAL, DEFAULT_MAX_TOTAL);
-            DFS_CONFIG.maxTotalPerKey = iniReader.getIntValue(FAST_DFS_MAX_TOTAL_PER_KEY, DEFAULT_MAX_TOTAL_PER_KEY);
-            DFS_CONFIG.maxIdlePerKey = iniReader.getIntValue(FAST_DFS_MAX_IDLE_PER_KEY, DEFAULT_MAX_IDLE_PER_KEY);
-            DFS_CONFIG.debugLog = iniReader.getBoolValue(FAST_DFS_DEBUG_LOG,true);
-            DFS_CONFIG.trackerServers = iniReader.getStrValue(FAST_DFS_TRACKERS);
+            config.soTimeout = iniReader.getIntValue(FAST_DFS_SO_TIMEOUT, DEFAULT_SO_TIMEOUT);
+            config.connectTimeout = iniReader.getIntValue(FAST_DFS_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT);
+            config.maxTotal = iniReader.getIntValue(FAST_DFS_MAX_TOTAL, DEFAULT_MAX_TOTAL);
+            config.maxTotalPerKey = iniReader.getIntValue(FAST_DFS_MAX_TOTAL_PER_KEY, DEFAULT_MAX_TOTAL_PER_KEY);
+            config.maxIdlePerKey = iniReader.getIntValue(FAST_DFS_MAX_IDLE_PER_KEY, DEFAULT_MAX_IDLE_PER_KEY);
+            config.nioMaxConnectionsPerKey = iniReader.getIntValue(FAST_DFS_NIO_MAX_CONNECTIONS_PER_KEY, DEFAULT_NIO_MAX_CONNECTIONS_PER_KEY);
+            config.nioMaxResponseMb = iniReader.getIntValue(FAST_DFS_NIO_MAX_RESPONSE_MB, DEFAULT_NIO_MAX_RESPONSE_MB);
+            config.asyncMaxRequests = iniReader.getIntValue(FAST_DFS_ASYNC_MAX_REQUESTS, DEFAULT_ASYNC_MAX_REQUESTS);
+            config.asyncThreads = iniReader.getIntValue(FAST_DFS_ASYNC_THREADS, 0);
+            config.testOnBorrow = iniReader.getBoolValue(FAST_DFS_TEST_ON_BORROW, false);
+            config.validateIdleSeconds = iniReader.getIntValue(FAST_DFS_VALIDATE_IDLE_SECONDS, DEFAULT_VALIDATE_IDLE_SECONDS);
+            config.routeCacheSeconds = iniReader.getIntValue(FAST_DFS_ROUTE_CACHE_SECONDS, DEFAULT_ROUTE_CACHE_SECONDS);
+            config.routeCacheMaxEntries = iniReader.getIntValue(FAST_DFS_ROUTE_CACHE_MAX_ENTRIES, DEFAULT_ROUTE_CACHE_MAX_ENTRIES);
+            config.routeCacheUpload = iniReader.getBoolValue(FAST_DFS_ROUTE_CACHE_UPLOAD, false);
+            config.cacheMaxMb = iniReader.getIntValue(FAST_DFS_CACHE_MAX_MB, 0);
+            config.cacheMaxObjectKb = iniReader.getIntValue(FAST_DFS_CACHE_MAX_OBJECT_KB, DEFAULT_CACHE_MAX_OBJECT_KB);
+            config.cacheOffHeap = iniReader.getBoolValue(FAST_DFS_CACHE_OFF_HEAP, false);
+            config.cacheTtlSeconds = iniReader.getIntValue(FAST_DFS_CACHE_TTL_SECONDS, DEFAULT_CACHE_TTL_SECONDS);
+            config.readHedge = iniReader.getBoolValue(FAST_DFS_READ_HEDGE, false);
+            config.readHedgeDelayMs = iniReader.getIntValue(FAST_DFS_READ_HEDGE_DELAY_MS, DEFAULT_READ_HEDGE_DELAY_MS);
+            config.readMaxRetries = iniReader.getIntValue(FAST_DFS_READ_MAX_RETRIES, DEFAULT_READ_MAX_RETRIES);
+            config.readRetryBackoffMs = iniReader.getIntValue(FAST_DFS_READ_RETRY_BACKOFF_MS, DEFAULT_READ_RETRY_BACKOFF_MS);
+            config.clusterPollSeconds = iniReader.getIntValue(FAST_DFS_CLUSTER_POLL_SECONDS, 0);
+            config.clusterMinFreePercent = iniReader.getIntValue(FAST_DFS_CLUSTER_MIN_FREE_PERCENT, DEFAULT_CLUSTER_MIN_FREE_PERCENT);
+            config.clusterMaxSyncLagSeconds = iniReader.getIntValue(FAST_DFS_CLUSTER_MAX_SYNC_LAG_SECONDS, DEFAULT_CLUSTER_MAX_SYNC_LAG_SECONDS);
+            config.crcVerify = iniReader.getBoolValue(FAST_DFS_CRC_VERIFY, false);
+            config.crcMaxRetries = iniReader.getIntValue(FAST_DFS_CRC_MAX_RETRIES, DEFAULT_CRC_MAX_RETRIES);
+            config.dedup = iniReader.getBoolValue(FAST_DFS_DEDUP_ENABLED, false);
+            config.dedupIndexFile = iniReader.getStrValue(FAST_DFS_DEDUP_INDEX_FILE);
+            config.dedupPreHashMaxKb = iniReader.getIntValue(FAST_DFS_DEDUP_PRE_HASH_MAX_KB, DEFAULT_DEDUP_PRE_HASH_MAX_KB);
+            config.thumbnailSizes = iniReader.getStrValue(FAST_DFS_THUMBNAIL_SIZES);
+            config.thumbnailCrop = iniReader.getBoolValue(FAST_DFS_THUMBNAIL_CROP, false);
+            if (iniReader.getBoolValue(FAST_DFS_METRICS_ENABLED, false)) {
+                config.metrics = new SimpleFastDfsMetrics();
+            }
+            config.debugLog = iniReader.getBoolValue(FAST_DFS_DEBUG_LOG,true);
+            config.trackerServers = iniReader.getStrValue(FAST_DFS_TRACKERS);
         } catch (Exception e) {
             e.printStackTrace();
         }
-        FastDfsClient.init(DFS_CONFIG);
     }
 }
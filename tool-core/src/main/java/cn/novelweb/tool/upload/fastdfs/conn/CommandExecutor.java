@@ -1,9 +1,14 @@
 package cn.novelweb.tool.upload.fastdfs.conn;
 
 import cn.novelweb.tool.upload.fastdfs.protocol.storage.AbstractStorageCommand;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.callback.DownloadInputStream;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.response.DownloadFileResponse;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.response.FastDfsInputStream;
 import cn.novelweb.tool.upload.fastdfs.protocol.tracker.AbstractTrackerCommand;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * <p>FastDFS命令执行器</p>
@@ -32,4 +37,62 @@ public interface CommandExecutor {
      */
     <T> T execute(InetSocketAddress address, AbstractStorageCommand<T> command);
 
+    /**
+     * 在Storage Server上执行下载命令, 返回文件内容的输入流<br/>
+     * 默认实现按普通命令执行({@link #execute(InetSocketAddress, AbstractStorageCommand)}), 方法返回前连接已被归还,
+     * 因此先把整个文件内容读入内存, 返回读取内存中文件内容的输入流, 内存占用与文件大小相同;
+     * 阻塞执行器({@link DefaultCommandExecutor})读取完响应报文头后直接返回, 连接由返回的输入流占用,
+     * 输入流读取完毕后关闭时归还连接池, 未读取完毕就关闭时销毁连接<br/>
+     * <b>注意: 返回的输入流使用完必须关闭</b>
+     *
+     * @param address Storage Server地址
+     * @param command 下载命令(使用{@link DownloadInputStream}回调)
+     * @return 文件内容的输入流
+     */
+    default FastDfsInputStream executeStream(InetSocketAddress address, AbstractStorageCommand<FastDfsInputStream> command) {
+        command.response = new DownloadFileResponse<>(new DownloadInputStream(true));
+        return execute(address, command);
+    }
+
+    /**
+     * 在同一个Tracker Server上批量执行命令(管道模式)<br/>
+     * 默认实现逐个执行, 单个命令失败不影响其它命令
+     *
+     * @param commands Tracker Server命令集合
+     * @param <T>      返回数据类型
+     * @return 与命令顺序一致的执行结果
+     */
+    default <T> List<PipelineResult<T>> executePipelined(List<? extends AbstractTrackerCommand<T>> commands) {
+        List<PipelineResult<T>> results = new ArrayList<>(commands.size());
+        for (AbstractTrackerCommand<T> command : commands) {
+            try {
+                results.add(PipelineResult.success(execute(command)));
+            } catch (RuntimeException e) {
+                results.add(PipelineResult.failure(e));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 在同一个Storage Server上批量执行命令(管道模式)<br/>
+     * 默认实现逐个执行, 单个命令失败不影响其它命令
+     *
+     * @param address  Storage Server地址
+     * @param commands Storage Server命令集合
+     * @param <T>      返回数据类型
+     * @return 与命令顺序一致的执行结果
+     */
+    default <T> List<PipelineResult<T>> executePipelined(InetSocketAddress address, List<? extends AbstractStorageCommand<T>> commands) {
+        List<PipelineResult<T>> results = new ArrayList<>(commands.size());
+        for (AbstractStorageCommand<T> command : commands) {
+            try {
+                results.add(PipelineResult.success(execute(address, command)));
+            } catch (RuntimeException e) {
+                results.add(PipelineResult.failure(e));
+            }
+        }
+        return results;
+    }
+
 }
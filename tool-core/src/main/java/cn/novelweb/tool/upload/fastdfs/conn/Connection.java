@@ -4,6 +4,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 
 /**
@@ -20,6 +21,14 @@ public interface Connection extends Closeable {
     @Override
     void close();
 
+    /**
+     * 中止连接, 不发送QUIT报文直接断开, 阻塞中的读写会立即失败<br/>
+     * 可以在其他线程中调用, 用于请求超时或取消
+     */
+    default void abort() {
+        close();
+    }
+
     /**
      * 连接是否关闭
      *
@@ -50,6 +59,16 @@ public interface Connection extends Closeable {
      */
     InputStream getInputStream() throws IOException;
 
+    /**
+     * 获取可写通道, 用于FileChannel.transferTo零拷贝发送文件
+     *
+     * @return 可写通道, 不支持时返回null
+     * @throws IOException 操作异常
+     */
+    default WritableByteChannel getWritableChannel() throws IOException {
+        return null;
+    }
+
     /**
      * 获取字符集
      *
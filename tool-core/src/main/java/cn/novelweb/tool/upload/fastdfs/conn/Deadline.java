@@ -0,0 +1,330 @@
+package cn.novelweb.tool.upload.fastdfs.conn;
+
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsCancelledException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsTimeoutException;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * <p>请求的截止时间与取消控制</p>
+ * <p>socket的soTimeout只限制单次读取的等待时间, 持续缓慢返回数据的下载永远不会超时;
+ * 在{@link #call(Supplier)}中执行的所有命令(包括查询Tracker)共用同一个截止时间,
+ * 到期或调用{@link #cancel()}时直接关闭正在使用的连接中止传输, 连接不会再还回连接池,
+ * 请求抛出{@link FastDfsTimeoutException}或{@link FastDfsCancelledException}</p>
+ * <pre>
+ * Deadline deadline = Deadline.after(30, TimeUnit.SECONDS);
+ * byte[] bytes = deadline.call(() -&gt; storageClient.downloadFile(group, path, new DownloadByteArray()));
+ * // 其他线程中: deadline.cancel();
+ * </pre>
+ * <p>2026-10-18 14:10</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public final class Deadline {
+
+    /**
+     * 当前线程正在使用的截止时间
+     */
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    /**
+     * 截止时间(System.nanoTime), 只能取消的控制对象为Long.MAX_VALUE
+     */
+    private final long deadlineNanos;
+
+    /**
+     * 是否已取消
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * 正在执行命令的连接, 取消时全部中止
+     */
+    private final Set<Watch> watches = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 通过{@link #fork()}创建的子控制对象, 取消时一并取消
+     */
+    private final Set<Deadline> children = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 父控制对象, 不是通过{@link #fork()}创建时为null
+     */
+    private Deadline parent;
+
+    /**
+     * 是否已调用{@link #detach()}, 最后一个连接停止监视时从父控制对象中移除
+     */
+    private volatile boolean detached;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * 创建指定时间后到期的截止时间
+     *
+     * @param timeout 超时时间
+     * @param unit    时间单位
+     * @return 截止时间
+     */
+    public static Deadline after(long timeout, TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("超时时间必须大于0");
+        }
+        return new Deadline(System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * 创建没有截止时间, 只能通过{@link #cancel()}取消的控制对象
+     */
+    public static Deadline cancellable() {
+        return new Deadline(Long.MAX_VALUE);
+    }
+
+    /**
+     * 获取当前线程正在使用的截止时间, 没有时返回null
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 包装任务, 在其他线程中执行时使用当前线程的截止时间(如并行下载的分段任务)
+     *
+     * @param task 任务
+     * @return 包装后的任务, 当前线程没有截止时间时返回原任务
+     */
+    public static Runnable wrap(Runnable task) {
+        Deadline deadline = CURRENT.get();
+        if (null == deadline) {
+            return task;
+        }
+        return () -> deadline.run(task);
+    }
+
+    /**
+     * 创建截止时间相同的子控制对象, 取消当前对象时子对象一并取消, 单独取消子对象不影响当前对象<br/>
+     * 用于同时向多个存储节点发送同一个请求时取消未被使用的请求, 子对象取消或调用{@link #detach()}后不再被当前对象引用
+     *
+     * @return 子控制对象
+     */
+    public Deadline fork() {
+        Deadline child = new Deadline(deadlineNanos);
+        child.parent = this;
+        children.add(child);
+        // 添加前已经取消时cancel()看不到子对象
+        if (cancelled) {
+            child.cancel();
+        }
+        return child;
+    }
+
+    /**
+     * 在截止时间内执行请求
+     *
+     * @param supplier 请求(调用客户端方法)
+     * @param <T>      返回数据类型
+     * @return 请求结果
+     */
+    public <T> T call(Supplier<T> supplier) {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return supplier.get();
+        } finally {
+            if (null == previous) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 在截止时间内执行请求
+     *
+     * @param task 请求(调用客户端方法)
+     */
+    public void run(Runnable task) {
+        call(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * 取消请求, 中止所有正在传输的连接, 之后执行的命令直接失败
+     */
+    public void cancel() {
+        cancelled = true;
+        for (Watch watch : watches) {
+            watch.fire();
+        }
+        for (Deadline child : children) {
+            child.cancel();
+        }
+        if (null != parent) {
+            parent.children.remove(this);
+        }
+    }
+
+    /**
+     * 从父控制对象中移除但不取消, 子对象的请求已经正常结束时调用, 避免长期使用的父对象一直引用已结束的子对象<br/>
+     * 仍有连接正在使用时(如流式下载返回的输入流)在连接停止监视后才移除, 在此之前取消父对象仍会中止该连接;
+     * 不是通过{@link #fork()}创建时不做处理
+     */
+    public void detach() {
+        if (null == parent) {
+            return;
+        }
+        detached = true;
+        if (watches.isEmpty()) {
+            parent.children.remove(this);
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 是否已到期
+     */
+    public boolean isExpired() {
+        return deadlineNanos != Long.MAX_VALUE && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * 获取剩余时间
+     *
+     * @param unit 时间单位
+     * @return 剩余时间, 已到期时为0, 没有截止时间时为Long.MAX_VALUE
+     */
+    public long remaining(TimeUnit unit) {
+        if (deadlineNanos == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        return unit.convert(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 执行命令前检查, 已取消或已到期时抛出异常
+     *
+     * @param address 服务器地址(用于异常信息)
+     */
+    void check(Object address) {
+        if (cancelled || isExpired()) {
+            throw failure(address, null);
+        }
+    }
+
+    /**
+     * 已取消或已到期时返回对应的异常, 否则返回null<br/>
+     * 用于转换读取流式下载的输入流时因连接被中止抛出的IOException
+     *
+     * @param address 服务器地址(用于异常信息)
+     * @param cause   执行时的异常
+     * @return {@link FastDfsTimeoutException}或{@link FastDfsCancelledException}, 未中止时返回null
+     */
+    public RuntimeException failureIfAborted(Object address, Throwable cause) {
+        return cancelled || isExpired() ? failure(address, cause) : null;
+    }
+
+    private RuntimeException failure(Object address, Throwable cause) {
+        if (cancelled) {
+            return new FastDfsCancelledException("请求已取消, 服务器地址[" + address + "]", cause);
+        }
+        return new FastDfsTimeoutException("请求超过截止时间, 服务器地址[" + address + "]", cause);
+    }
+
+    /**
+     * 开始在连接上执行命令, 到期时中止连接
+     *
+     * @param conn 连接
+     * @return 监视对象, 命令执行完毕必须调用{@link Watch#disarm()}
+     */
+    Watch arm(Connection conn) {
+        Watch watch = new Watch(conn);
+        watches.add(watch);
+        if (deadlineNanos != Long.MAX_VALUE) {
+            watch.timeout = Timer.EXECUTOR.schedule(watch::fire, deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+        // 注册前已经取消时cancel()看不到当前连接
+        if (cancelled) {
+            watch.fire();
+        }
+        return watch;
+    }
+
+    /**
+     * 对一个连接的监视
+     */
+    final class Watch {
+
+        private final Connection conn;
+
+        private volatile ScheduledFuture<?> timeout;
+
+        /**
+         * 中止与停止监视只有一个生效, 保证中止的连接不会还回连接池
+         */
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private Watch(Connection conn) {
+            this.conn = conn;
+        }
+
+        private void fire() {
+            if (finished.compareAndSet(false, true)) {
+                conn.abort();
+            }
+        }
+
+        /**
+         * 命令执行完毕, 停止监视
+         *
+         * @return 连接是否已被中止(中止后不能还回连接池)
+         */
+        boolean disarm() {
+            watches.remove(this);
+            if (detached && watches.isEmpty()) {
+                parent.children.remove(Deadline.this);
+            }
+            if (!finished.compareAndSet(false, true)) {
+                return true;
+            }
+            ScheduledFuture<?> future = timeout;
+            if (null != future) {
+                future.cancel(false);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 共享的到期检查线程(守护线程)
+     */
+    private static class Timer {
+
+        private static final AtomicInteger THREAD_INDEX = new AtomicInteger();
+
+        private static final ScheduledThreadPoolExecutor EXECUTOR = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "fastdfs-deadline-" + THREAD_INDEX.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        static {
+            // 命令大多在到期前完成, 取消的任务立即移出队列
+            EXECUTOR.setRemoveOnCancelPolicy(true);
+        }
+    }
+}
@@ -1,23 +1,33 @@
 package cn.novelweb.tool.upload.fastdfs.conn;
 
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsCancelledException;
 import cn.novelweb.tool.upload.fastdfs.exception.FastDfsConnectException;
 import cn.novelweb.tool.upload.fastdfs.exception.FastDfsException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsServerException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsTimeoutException;
+import cn.novelweb.tool.upload.fastdfs.metrics.FastDfsMetrics;
 import cn.novelweb.tool.upload.fastdfs.pool.ConnectionPool;
+import cn.novelweb.tool.upload.fastdfs.pool.IdleConnectionValidator;
 import cn.novelweb.tool.upload.fastdfs.pool.TrackerLocator;
 import cn.novelweb.tool.upload.fastdfs.protocol.AbstractCommand;
 import cn.novelweb.tool.upload.fastdfs.protocol.storage.AbstractStorageCommand;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.response.FastDfsInputStream;
 import cn.novelweb.tool.upload.fastdfs.protocol.tracker.AbstractTrackerCommand;
 import cn.novelweb.tool.upload.fastdfs.utils.Log;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 连接池管理<br/>
  * 负责借出连接，在连接上执行业务逻辑，然后归还连<br/>
+ * 在{@link Deadline#call}中执行时, 到期或取消会中止正在使用的连接, 连接被销毁而不是还回连接池<br/>
  * <b>注意: 当前类最好使用单例，一个应用只需要一个实例</b>
  * <p>2020-02-03 16:39</p>
  *
@@ -26,6 +36,11 @@ import java.util.Set;
 @Slf4j
 public class DefaultCommandExecutor implements CommandExecutor {
 
+    /**
+     * 管道模式下连续发送的最大请求数, 发送后先读完对应的反馈再发送下一批, 避免双方的socket缓冲区写满相互等待
+     */
+    private static final int PIPELINE_WINDOW = 64;
+
     /**
      * Tracker定位
      */
@@ -36,6 +51,16 @@ public class DefaultCommandExecutor implements CommandExecutor {
      */
     private ConnectionPool pool;
 
+    /**
+     * 监控指标
+     */
+    private volatile FastDfsMetrics metrics = FastDfsMetrics.NOOP;
+
+    /**
+     * 是否输出debug日志, 默认使用全局设置
+     */
+    private volatile boolean debugLog = Log.debugLog;
+
     /**
   * 构造函数
      *
@@ -76,15 +101,30 @@ public class DefaultCommandExecutor implements CommandExecutor {
         Connection conn;
         InetSocketAddress address;
         try {
-            // 获取Tracker服务器地址(使用轮询)
+            // 获取Tracker服务器地址(按负载选择)
             address = trackerLocator.getTrackerAddress();
             // 从连接池中获取连接
             conn = getConnection(address);
+        } catch (FastDfsConnectException | FastDfsTimeoutException | FastDfsCancelledException e) {
+            // 保留连接及超时异常类型, 调用方据此判断服务器不可用或请求已中止
+            throw e;
         } catch (Throwable e) {
             throw new RuntimeException("获取Tracker服务器地址失败", e);
         }
-        Log.debug("获取到Tracker连接地址{}", address);
-        return executeCmd(address, conn, command);
+        Log.debug(debugLog, "获取到Tracker连接地址{}", address);
+        long startTime = trackerLocator.requestStarted(address);
+        boolean success = false;
+        try {
+            T result = executeCmd(address, conn, command);
+            success = true;
+            return result;
+        } catch (FastDfsServerException | FastDfsCancelledException e) {
+            // 服务端返回错误状态或调用方取消请求, Tracker本身是正常的
+            success = true;
+            throw e;
+        } finally {
+            trackerLocator.requestCompleted(address, startTime, success);
+        }
     }
 
     @Override
@@ -93,13 +133,109 @@ public class DefaultCommandExecutor implements CommandExecutor {
         try {
             // 从连接池中获取连接
             conn = getConnection(address);
+        } catch (FastDfsConnectException | FastDfsTimeoutException | FastDfsCancelledException e) {
+            // 保留连接及超时异常类型, 调用方据此判断服务器不可用或请求已中止
+            throw e;
         } catch (Throwable e) {
             throw new RuntimeException("获取Storage服务器地址失败", e);
         }
-        Log.debug("获取到Storage连接地址{}", address);
+        Log.debug(debugLog, "获取到Storage连接地址{}", address);
         return executeCmd(address, conn, command);
     }
 
+    @Override
+    public FastDfsInputStream executeStream(InetSocketAddress address, AbstractStorageCommand<FastDfsInputStream> command) {
+        Connection conn;
+        try {
+            // 从连接池中获取连接
+            conn = getConnection(address);
+        } catch (FastDfsConnectException | FastDfsTimeoutException | FastDfsCancelledException e) {
+            // 保留连接及超时异常类型, 调用方据此判断服务器不可用或请求已中止
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException("获取Storage服务器地址失败", e);
+        }
+        Log.debug(debugLog, "发送流式下载请求, 服务器地址[{}]", address);
+        long startTime = System.nanoTime();
+        FastDfsInputStream inputStream;
+        command.setDebugLog(debugLog);
+        // 截止时间覆盖到输入流关闭为止
+        Deadline deadline = Deadline.current();
+        Deadline.Watch watch = null == deadline ? null : deadline.arm(conn);
+        try {
+            inputStream = command.execute(conn);
+        } catch (FastDfsServerException e) {
+            release(address, conn, null != watch && watch.disarm());
+            commandCompleted(address, command, startTime, e);
+            throw e;
+        } catch (Exception e) {
+            if (null != watch) {
+                watch.disarm();
+            }
+            release(address, conn, true);
+            RuntimeException failure = failure(deadline, address, e);
+            commandCompleted(address, command, startTime, failure);
+            throw failure;
+        }
+        // 文件内容未读完时连接上还有剩余报文, 不能再使用
+        inputStream.setCloseHandler(stream -> {
+            boolean aborted = null != watch && watch.disarm();
+            release(address, conn, aborted || !stream.isReadCompleted());
+            commandCompleted(address, command, startTime, aborted && !stream.isReadCompleted()
+                    ? deadline.failureIfAborted(address, null) : null);
+        });
+        return inputStream;
+    }
+
+    @Override
+    public <T> List<PipelineResult<T>> executePipelined(List<? extends AbstractTrackerCommand<T>> commands) {
+        if (commands.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Connection conn;
+        InetSocketAddress address;
+        try {
+            // 获取Tracker服务器地址(按负载选择)
+            address = trackerLocator.getTrackerAddress();
+            // 从连接池中获取连接
+            conn = getConnection(address);
+        } catch (FastDfsConnectException | FastDfsTimeoutException | FastDfsCancelledException e) {
+            // 保留连接及超时异常类型, 调用方据此判断服务器不可用或请求已中止
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException("获取Tracker服务器地址失败", e);
+        }
+        long startTime = trackerLocator.requestStarted(address);
+        boolean success = false;
+        try {
+            List<PipelineResult<T>> results = executePipelined(address, conn, commands);
+            // 连接异常时剩余命令全部失败, 只需检查最后一个结果
+            RuntimeException error = results.get(results.size() - 1).getError();
+            success = null == error || error instanceof FastDfsServerException;
+            return results;
+        } finally {
+            trackerLocator.requestCompleted(address, startTime, success);
+        }
+    }
+
+    @Override
+    public <T> List<PipelineResult<T>> executePipelined(InetSocketAddress address, List<? extends AbstractStorageCommand<T>> commands) {
+        if (commands.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Connection conn;
+        try {
+            // 从连接池中获取连接
+            conn = getConnection(address);
+        } catch (FastDfsConnectException | FastDfsTimeoutException | FastDfsCancelledException e) {
+            // 保留连接及超时异常类型, 调用方据此判断服务器不可用或请求已中止
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException("获取Storage服务器地址失败", e);
+        }
+        return executePipelined(address, conn, commands);
+    }
+
     /**
      * 从连接池里获取连接<br/>
      * <b>注意: 返回的连接使用完必须还回给连接池, 调用pool.returnObject</b>
@@ -109,15 +245,33 @@ public class DefaultCommandExecutor implements CommandExecutor {
      */
     private Connection getConnection(InetSocketAddress address) {
         Connection conn;
+        long startTime = System.nanoTime();
+        Deadline deadline = Deadline.current();
         try {
-            // 从连接池中获取连接
-            conn = pool.borrowObject(address);
+            if (null == deadline) {
+                // 从连接池中获取连接
+                conn = pool.borrowObject(address);
+            } else {
+                // 等待空闲连接的时间不超过截止时间
+                deadline.check(address);
+                long maxWait = pool.getMaxWaitMillis();
+                long remaining = Math.max(1, deadline.remaining(TimeUnit.MILLISECONDS));
+                conn = pool.borrowObject(address, maxWait < 0 ? remaining : Math.min(maxWait, remaining));
+            }
             trackerLocator.setActive(address, true);
         } catch (FastDfsConnectException e) {
             trackerLocator.setActive(address, false);
             throw e;
+        } catch (FastDfsTimeoutException | FastDfsCancelledException e) {
+            throw e;
         } catch (Throwable e) {
+            RuntimeException aborted = null == deadline ? null : deadline.failureIfAborted(address, e);
+            if (null != aborted) {
+                throw aborted;
+            }
             throw new RuntimeException("从连接池中获取连接异常", e);
+        } finally {
+            metrics.connectionBorrowed(address, System.nanoTime() - startTime);
         }
         return conn;
     }
@@ -131,22 +285,139 @@ public class DefaultCommandExecutor implements CommandExecutor {
      * @return 返回请求响应对象
      */
     private <T> T executeCmd(InetSocketAddress address, Connection conn, AbstractCommand<T> command) {
+        // 服务端返回错误状态时报文已读完, 连接可以继续使用; 其他异常后连接上的报文不再同步, 需要销毁
+        boolean broken = true;
+        long startTime = System.nanoTime();
+        Throwable error = null;
+        Deadline deadline = Deadline.current();
+        Deadline.Watch watch = null == deadline ? null : deadline.arm(conn);
         // 发送请求
         try {
-            Log.debug("发送请求, 服务器地址[{}], 请求类型[{}]", address, command.getClass().getSimpleName());
-            return command.execute(conn);
-        } catch (FastDfsException e) {
+            if (Log.isDebugEnabled(debugLog)) {
+                log.debug("发送请求, 服务器地址[{}], 请求类型[{}]", address, command.getClass().getSimpleName());
+            }
+            command.setDebugLog(debugLog);
+            T result = command.execute(conn);
+            broken = false;
+            return result;
+        } catch (FastDfsServerException e) {
+            broken = false;
+            error = e;
             throw e;
         } catch (Exception e) {
-            throw new RuntimeException("发送FastDFS请求异常", e);
+            RuntimeException failure = failure(deadline, address, e);
+            error = failure;
+            throw failure;
         } finally {
-            try {
-                if (null != conn) {
-                    pool.returnObject(address, conn);
+            // 到期时中止的连接即使命令已经完成也不能再使用
+            if (null != watch && watch.disarm()) {
+                broken = true;
+            }
+            if (null != conn) {
+                release(address, conn, broken);
+            }
+            commandCompleted(address, command, startTime, error);
+        }
+    }
+
+    /**
+     * 转换命令执行异常, 连接因截止时间到期或取消被中止时返回对应的超时或取消异常
+     *
+     * @param deadline 当前线程的截止时间, 可以为null
+     * @param address  服务器地址
+     * @param e        命令执行异常
+     * @return 需要抛出的异常
+     */
+    private static RuntimeException failure(Deadline deadline, InetSocketAddress address, Exception e) {
+        RuntimeException aborted = null == deadline ? null : deadline.failureIfAborted(address, e);
+        if (null != aborted) {
+            return aborted;
+        }
+        return e instanceof FastDfsException ? (FastDfsException) e : new RuntimeException("发送FastDFS请求异常", e);
+    }
+
+    /**
+     * 在同一连接上以管道模式执行命令: 每批连续发送{@link #PIPELINE_WINDOW}个请求, 再按顺序读取反馈<br/>
+     * 服务端返回的错误状态只影响对应的命令; 发生IO等异常后连接上的报文不再同步, 剩余命令全部失败并销毁连接
+     *
+     * @param address  连接池 资源KEY
+     * @param conn     连接池连接资源
+     * @param commands Server命令对象集合
+     * @return 与命令顺序一致的执行结果
+     */
+    private <T> List<PipelineResult<T>> executePipelined(InetSocketAddress address, Connection conn,
+                                                         List<? extends AbstractCommand<T>> commands) {
+        if (Log.isDebugEnabled(debugLog)) {
+            log.debug("管道发送请求, 服务器地址[{}], 请求数量[{}]", address, commands.size());
+        }
+        List<PipelineResult<T>> results = new ArrayList<>(commands.size());
+        boolean broken = false;
+        Deadline deadline = Deadline.current();
+        Deadline.Watch watch = null == deadline ? null : deadline.arm(conn);
+        try {
+            for (int start = 0; start < commands.size(); start += PIPELINE_WINDOW) {
+                int end = Math.min(start + PIPELINE_WINDOW, commands.size());
+                // 同一批命令的耗时从发送第一个请求开始计算
+                long startTime = System.nanoTime();
+                for (int i = start; i < end; i++) {
+                    commands.get(i).setDebugLog(debugLog);
+                    commands.get(i).sendRequest(conn);
                 }
-            } catch (Exception e) {
-                log.error("归还连接到连接池失败", e);
+                for (int i = start; i < end; i++) {
+                    try {
+                        results.add(PipelineResult.success(commands.get(i).receiveResponse(conn)));
+                        commandCompleted(address, commands.get(i), startTime, null);
+                    } catch (FastDfsServerException e) {
+                        results.add(PipelineResult.failure(e));
+                        commandCompleted(address, commands.get(i), startTime, e);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            broken = true;
+            RuntimeException error = failure(deadline, address, e);
+            long now = System.nanoTime();
+            while (results.size() < commands.size()) {
+                commandCompleted(address, commands.get(results.size()), now, error);
+                results.add(PipelineResult.failure(error));
+            }
+        } finally {
+            if (null != watch && watch.disarm()) {
+                broken = true;
             }
+            release(address, conn, broken);
+        }
+        return results;
+    }
+
+    /**
+     * 归还连接, 连接上的报文不再同步时销毁连接
+     *
+     * @param address 连接池 资源KEY
+     * @param conn    连接池连接资源
+     * @param broken  是否需要销毁
+     */
+    private void release(InetSocketAddress address, Connection conn, boolean broken) {
+        try {
+            if (broken) {
+                pool.invalidateObject(address, conn);
+            } else {
+                pool.returnObject(address, conn);
+            }
+        } catch (Exception e) {
+            log.error("归还连接到连接池失败", e);
+        }
+    }
+
+    /**
+     * 记录请求完成的监控指标, 监控实现异常不影响请求结果
+     */
+    private void commandCompleted(InetSocketAddress address, AbstractCommand<?> command, long startTime, Throwable error) {
+        try {
+            metrics.commandCompleted(command.getCommandName(), address, System.nanoTime() - startTime,
+                    command.getBytesSent(), command.getBytesReceived(), error);
+        } catch (RuntimeException e) {
+            log.error("记录监控指标异常", e);
         }
     }
 
@@ -154,7 +425,7 @@ public class DefaultCommandExecutor implements CommandExecutor {
      * 获取连接池信息
      */
     public void dumpPoolInfo() {
-        if (log.isDebugEnabled()) {
+        if (Log.isDebugEnabled(debugLog)) {
             String tmp = "\r\n" +
                     "#=======================================================================================================================#\r\n" +
                     "# ------Dump Pool Info------\r\n" +
@@ -167,11 +438,21 @@ public class DefaultCommandExecutor implements CommandExecutor {
                     "#\t 连接销毁总数统计：" + pool.getDestroyedCount() + "\r\n" +
                     "#\t 连接销毁(因为连接不可用)总数统计：" + pool.getDestroyedByBorrowValidationCount() + "\r\n" +
                     "#\t 连接销毁(因为连接被回收)总数统计：" + pool.getDestroyedByEvictorCount() + "\r\n" +
-                    "#=======================================================================================================================#\r\n";
-            Log.debug(tmp);
+                    "#\t 借出连接时验证(testOnBorrow)：" + pool.getTestOnBorrow() + "\r\n";
+            IdleConnectionValidator validator = pool.getIdleConnectionValidator();
+            if (null != validator) {
+                tmp += "#\t 后台验证空闲连接(空闲超过" + validator.getIdleMillis() + "ms)总数统计：" + validator.getValidatedCount() + "\r\n" +
+                        "#\t 连接销毁(因为后台验证失败)总数统计：" + validator.getFailedCount() + "\r\n";
+            }
+            tmp += "#=======================================================================================================================#\r\n";
+            log.debug(tmp);
         }
     }
 
+    public TrackerLocator getTrackerLocator() {
+        return trackerLocator;
+    }
+
     public ConnectionPool getPool() {
         return pool;
     }
@@ -180,4 +461,26 @@ public class DefaultCommandExecutor implements CommandExecutor {
         this.pool = pool;
     }
 
+    public boolean isDebugLog() {
+        return debugLog;
+    }
+
+    /**
+     * 设置当前客户端是否输出debug日志, 不影响全局设置{@link Log#debugLog}
+     */
+    public void setDebugLog(boolean debugLog) {
+        this.debugLog = debugLog;
+    }
+
+    public FastDfsMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 设置监控指标, 为null时不记录
+     */
+    public void setMetrics(FastDfsMetrics metrics) {
+        this.metrics = null == metrics ? FastDfsMetrics.NOOP : metrics;
+    }
+
 }
@@ -0,0 +1,573 @@
+package cn.novelweb.tool.upload.fastdfs.conn;
+
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsConnectException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsIoException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsServerException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsTimeoutException;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsUnavailableException;
+import cn.novelweb.tool.upload.fastdfs.metrics.FastDfsMetrics;
+import cn.novelweb.tool.upload.fastdfs.pool.TrackerLocator;
+import cn.novelweb.tool.upload.fastdfs.protocol.AbstractCommand;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.AbstractStorageCommand;
+import cn.novelweb.tool.upload.fastdfs.protocol.tracker.AbstractTrackerCommand;
+import cn.novelweb.tool.upload.fastdfs.utils.ExecutorUtils;
+import cn.novelweb.tool.upload.fastdfs.utils.IoUtils;
+import cn.novelweb.tool.upload.fastdfs.utils.Log;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 基于SocketChannel + Selector的非阻塞命令执行器<br/>
+ * 所有连接由一个Selector线程驱动, 调用方通过{@link #executeAsync}提交命令, 不需要为每个请求占用一个线程<br/>
+ * 请求报文(含文件内容)与响应报文都会整体放在内存中, 适合大量并发的小文件上传及元数据操作, 大文件请使用{@link DefaultCommandExecutor};
+ * 响应报文体超过{@link #setMaxResponseSize(int)}时以异常完成请求, 不分配缓冲区<br/>
+ * <b>注意: 当前类最好使用单例，一个应用只需要一个实例</b>
+ * <p>2026-10-18 10:20</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+@Slf4j
+public class NioCommandExecutor implements CommandExecutor, Closeable {
+
+    /**
+     * 每个服务器地址默认最大连接数
+     */
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_KEY = 8;
+
+    /**
+     * Selector单次等待时间(同时也是超时检查周期)
+     */
+    private static final long SELECT_TIMEOUT_MILLIS = 100;
+
+    /**
+     * 默认响应报文体最大长度(64MB)
+     */
+    public static final int DEFAULT_MAX_RESPONSE_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * 内部线程池的等待队列长度
+     */
+    private static final int CALLBACK_QUEUE_CAPACITY = 10000;
+
+    /**
+     * Tracker定位
+     */
+    private final TrackerLocator trackerLocator;
+
+    /**
+     * 读取时间
+     */
+    private final int soTimeout;
+
+    /**
+     * 连接超时时间
+     */
+    private final int connectTimeout;
+
+    /**
+     * 每个服务器地址最大连接数
+     */
+    private final int maxConnectionsPerKey;
+
+    /**
+     * 字符集
+     */
+    private final Charset charset;
+
+    /**
+     * 解析响应及回调使用的线程池
+     */
+    private final Executor callbackExecutor;
+
+    /**
+     * 未指定线程池时内部创建的线程池, 关闭执行器时关闭
+     */
+    private final ExecutorService ownedExecutor;
+
+    /**
+     * 响应报文体最大长度(字节)
+     */
+    private volatile int maxResponseSize = DEFAULT_MAX_RESPONSE_SIZE;
+
+    private final Selector selector;
+
+    private final Thread selectorThread;
+
+    /**
+     * 提交给Selector线程执行的任务
+     */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 各服务器地址的连接状态(只在Selector线程中访问)
+     */
+    private final Map<InetSocketAddress, AddressChannels> channels = new HashMap<>();
+
+    private volatile boolean running = true;
+
+    /**
+     * 监控指标
+     */
+    private volatile FastDfsMetrics metrics = FastDfsMetrics.NOOP;
+
+    /**
+     * 是否输出debug日志, 默认使用全局设置
+     */
+    private volatile boolean debugLog = Log.debugLog;
+
+    /**
+     * 构造函数
+     *
+     * @param trackerSet           Tracker Server服务器IP地址集合
+     * @param soTimeout            读取超时时间(毫秒)
+     * @param connectTimeout       连接超时时间(毫秒)
+     * @param maxConnectionsPerKey 每个服务器地址最大连接数
+     * @param charset              字符集
+     * @param callbackExecutor     解析响应及回调使用的线程池, 为null时使用内部创建的线程池(线程数为CPU核数)
+     */
+    public NioCommandExecutor(Set<String> trackerSet, int soTimeout, int connectTimeout,
+                              int maxConnectionsPerKey, Charset charset, Executor callbackExecutor) {
+        Log.debug("初始化Tracker Server连接 {}", trackerSet);
+        this.trackerLocator = new TrackerLocator(trackerSet);
+        this.soTimeout = soTimeout;
+        this.connectTimeout = connectTimeout;
+        this.maxConnectionsPerKey = maxConnectionsPerKey;
+        this.charset = charset;
+        if (null == callbackExecutor) {
+            this.ownedExecutor = ExecutorUtils.newBoundedExecutor("fastdfs-nio-callback-",
+                    Runtime.getRuntime().availableProcessors(), CALLBACK_QUEUE_CAPACITY);
+            this.callbackExecutor = ownedExecutor;
+        } else {
+            this.ownedExecutor = null;
+            this.callbackExecutor = callbackExecutor;
+        }
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new FastDfsIoException("打开Selector失败", e);
+        }
+        this.selectorThread = new Thread(this::loop, "fastdfs-nio-selector");
+        this.selectorThread.setDaemon(true);
+        this.selectorThread.start();
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param trackerSet     Tracker Server服务器IP地址集合
+     * @param soTimeout      读取超时时间(毫秒)
+     * @param connectTimeout 连接超时时间(毫秒)
+     */
+    public NioCommandExecutor(Set<String> trackerSet, int soTimeout, int connectTimeout) {
+        this(trackerSet, soTimeout, connectTimeout, DEFAULT_MAX_CONNECTIONS_PER_KEY, StandardCharsets.UTF_8, null);
+    }
+
+    @Override
+    public <T> T execute(AbstractTrackerCommand<T> command) {
+        return await(executeAsync(command));
+    }
+
+    @Override
+    public <T> T execute(InetSocketAddress address, AbstractStorageCommand<T> command) {
+        return await(executeAsync(address, command));
+    }
+
+    /**
+     * 在Tracker Server上异步执行命令
+     *
+     * @param command Tracker Server命令
+     * @param <T>     返回数据类型
+     * @return 异步返回数据
+     */
+    public <T> CompletableFuture<T> executeAsync(AbstractTrackerCommand<T> command) {
+        InetSocketAddress address;
+        try {
+            // 获取Tracker服务器地址(按负载选择)
+            address = trackerLocator.getTrackerAddress();
+        } catch (Throwable e) {
+            return failed(e);
+        }
+        Log.debug(debugLog, "获取到Tracker连接地址{}", address);
+        long startTime = trackerLocator.requestStarted(address);
+        CompletableFuture<T> future = submit(address, command);
+        // 服务端返回错误状态, Tracker本身是正常的
+        future.whenComplete((result, e) -> trackerLocator.requestCompleted(address, startTime,
+                null == e || e instanceof FastDfsServerException));
+        return future;
+    }
+
+    /**
+     * 在Storage Server上异步执行命令
+     *
+     * @param address Storage Server地址
+     * @param command Storage Server命令
+     * @param <T>     返回数据类型
+     * @return 异步返回数据
+     */
+    public <T> CompletableFuture<T> executeAsync(InetSocketAddress address, AbstractStorageCommand<T> command) {
+        return submit(address, command);
+    }
+
+    /**
+     * 编码请求并提交给Selector线程
+     */
+    private <T> CompletableFuture<T> submit(InetSocketAddress address, AbstractCommand<T> command) {
+        if (!running) {
+            return failed(new FastDfsUnavailableException("非阻塞命令执行器已关闭"));
+        }
+        ByteBuffer request;
+        command.setDebugLog(debugLog);
+        try {
+            request = command.encode(charset);
+        } catch (IOException e) {
+            return failed(new FastDfsIoException("Socket IO异常 编码请求报文异常", e));
+        } catch (Throwable e) {
+            return failed(e);
+        }
+        if (Log.isDebugEnabled(debugLog)) {
+            log.debug("发送请求, 服务器地址[{}], 请求类型[{}]", address, command.getClass().getSimpleName());
+        }
+        NioExchange<T> exchange = new NioExchange<>(address, command, request);
+        long startTime = System.nanoTime();
+        exchange.getFuture().whenComplete((result, e) -> {
+            try {
+                metrics.commandCompleted(command.getCommandName(), address, System.nanoTime() - startTime,
+                        command.getBytesSent(), command.getBytesReceived(), e);
+            } catch (RuntimeException ex) {
+                log.error("记录监控指标异常", ex);
+            }
+        });
+        Runnable task = () -> dispatch(exchange);
+        tasks.add(task);
+        // 检查running之后执行器被关闭时, Selector线程可能已经处理完队列, 仍在队列中的请求直接失败
+        if (!running && tasks.remove(task)) {
+            exchange.fail(new FastDfsUnavailableException("非阻塞命令执行器已关闭"));
+        }
+        selector.wakeup();
+        return exchange.getFuture();
+    }
+
+    /**
+     * Selector事件循环
+     */
+    private void loop() {
+        while (running) {
+            try {
+                selector.select(SELECT_TIMEOUT_MILLIS);
+                runTasks();
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    handle(key);
+                }
+                checkTimeout();
+            } catch (Throwable e) {
+                log.error("FastDFS非阻塞Selector线程异常", e);
+            }
+        }
+        closeAll();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * 为请求分配连接: 优先使用空闲连接, 其次新建连接, 都不行则排队等待
+     */
+    private void dispatch(NioExchange<?> exchange) {
+        if (!running) {
+            exchange.fail(new FastDfsUnavailableException("非阻塞命令执行器已关闭"));
+            return;
+        }
+        AddressChannels state = channels.computeIfAbsent(exchange.getAddress(), k -> new AddressChannels());
+        NioConnection conn;
+        while ((conn = state.idle.pollFirst()) != null) {
+            if (conn.isOpen()) {
+                conn.bind(exchange);
+                return;
+            }
+            state.total--;
+        }
+        if (state.total < maxConnectionsPerKey) {
+            open(state, exchange);
+        } else {
+            state.waiting.add(exchange);
+        }
+    }
+
+    /**
+     * 新建非阻塞连接
+     */
+    private void open(AddressChannels state, NioExchange<?> exchange) {
+        InetSocketAddress address = exchange.getAddress();
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Log.debug("开始连接到服务器 {} soTimeout={} connectTimeout={}", address, soTimeout, connectTimeout);
+            boolean connected = channel.connect(address);
+            NioConnection conn = new NioConnection(address, channel);
+            conn.setKey(channel.register(selector, connected ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT, conn));
+            conn.attach(exchange);
+            state.total++;
+            metrics.connectionCreated(address);
+            if (connected) {
+                trackerLocator.setActive(address, true);
+                conn.bind(exchange);
+            }
+        } catch (IOException e) {
+            IoUtils.closeQuietly(channel);
+            trackerLocator.setActive(address, false);
+            exchange.fail(new FastDfsConnectException("不能连接到服务器:" + address, e));
+        }
+    }
+
+    /**
+     * 处理Selector事件
+     */
+    private void handle(SelectionKey key) {
+        NioConnection conn = (NioConnection) key.attachment();
+        if (!key.isValid()) {
+            return;
+        }
+        try {
+            if (key.isConnectable()) {
+                try {
+                    conn.getChannel().finishConnect();
+                } catch (IOException e) {
+                    trackerLocator.setActive(conn.getAddress(), false);
+                    throw new FastDfsConnectException("不能连接到服务器:" + conn.getAddress(), e);
+                }
+                trackerLocator.setActive(conn.getAddress(), true);
+                Log.debug("成功连接到服务器:{}", conn.getAddress());
+                conn.bind(conn.getExchange());
+            } else if (key.isWritable()) {
+                conn.write();
+            } else if (key.isReadable()) {
+                NioExchange<?> exchange = conn.getExchange();
+                if (null == exchange) {
+                    // 空闲连接可读说明服务端已关闭连接
+                    destroy(conn, false);
+                    return;
+                }
+                if (conn.read(maxResponseSize)) {
+                    conn.unbind();
+                    exchange.complete(charset, callbackExecutor);
+                    release(conn);
+                }
+            }
+        } catch (Throwable e) {
+            fail(conn, e);
+        }
+    }
+
+    /**
+     * 请求处理完毕, 连接交给下一个等待的请求或放回空闲队列
+     */
+    private void release(NioConnection conn) {
+        AddressChannels state = channels.get(conn.getAddress());
+        NioExchange<?> next = state.waiting.poll();
+        if (null != next) {
+            conn.bind(next);
+        } else {
+            state.idle.push(conn);
+        }
+    }
+
+    /**
+     * 连接出现异常, 销毁连接并以异常完成当前请求
+     */
+    private void fail(NioConnection conn, Throwable e) {
+        NioExchange<?> exchange = conn.getExchange();
+        destroy(conn, false);
+        if (null == exchange) {
+            log.error("FastDFS非阻塞连接异常", e);
+            return;
+        }
+        if (e instanceof FastDfsException) {
+            exchange.fail(e);
+        } else if (e instanceof IOException) {
+            exchange.fail(new FastDfsIoException("Socket IO异常 非阻塞连接读写异常", e));
+        } else {
+            exchange.fail(new RuntimeException("发送FastDFS请求异常", e));
+        }
+    }
+
+    /**
+     * 销毁连接, 并为排队中的请求补充新连接
+     */
+    private void destroy(NioConnection conn, boolean quit) {
+        conn.close(quit);
+        AddressChannels state = channels.get(conn.getAddress());
+        state.idle.remove(conn);
+        state.total--;
+        metrics.connectionDestroyed(conn.getAddress());
+        NioExchange<?> next = state.waiting.poll();
+        if (null != next) {
+            dispatch(next);
+        }
+    }
+
+    /**
+     * 检查连接及读写超时
+     */
+    private void checkTimeout() {
+        long now = System.currentTimeMillis();
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            NioConnection conn = (NioConnection) key.attachment();
+            if (null == conn || null == conn.getExchange() || !key.isValid()) {
+                continue;
+            }
+            long idle = now - conn.getLastActiveTime();
+            if (!conn.isConnected() && idle > connectTimeout) {
+                trackerLocator.setActive(conn.getAddress(), false);
+                fail(conn, new FastDfsConnectException("连接服务器超时:" + conn.getAddress(),
+                        new SocketTimeoutException("connect timed out")));
+            } else if (conn.isConnected() && idle > soTimeout) {
+                fail(conn, new FastDfsIoException("Socket IO异常 读写超时",
+                        new SocketTimeoutException("read timed out")));
+            }
+        }
+    }
+
+    /**
+     * 关闭所有连接并以异常完成所有未完成的请求
+     */
+    private void closeAll() {
+        runTasks();
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            NioConnection conn = (NioConnection) key.attachment();
+            if (null == conn) {
+                continue;
+            }
+            if (null != conn.getExchange()) {
+                conn.getExchange().fail(new FastDfsUnavailableException("非阻塞命令执行器已关闭"));
+            }
+            conn.close(true);
+        }
+        for (AddressChannels state : channels.values()) {
+            NioExchange<?> exchange;
+            while ((exchange = state.waiting.poll()) != null) {
+                exchange.fail(new FastDfsUnavailableException("非阻塞命令执行器已关闭"));
+            }
+        }
+        channels.clear();
+        IoUtils.closeQuietly(selector);
+        if (null != ownedExecutor) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    /**
+     * 关闭执行器, 关闭所有连接
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * 同步等待异步结果, 最多等待 soTimeout + connectTimeout<br/>
+     * 读写及连接超时由Selector线程检查, 等待时间上限只用于防止请求因异常未被完成时调用线程一直阻塞
+     */
+    private <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get((long) soTimeout + connectTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            FastDfsTimeoutException timeout = new FastDfsTimeoutException("等待服务端响应超时(" + ((long) soTimeout + connectTimeout) + "ms)", e);
+            future.completeExceptionally(timeout);
+            throw timeout;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FastDfsIoException("等待服务端响应时线程被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof FastDfsException) {
+                throw (FastDfsException) cause;
+            }
+            throw new RuntimeException("发送FastDFS请求异常", cause);
+        }
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    /**
+     * 设置当前客户端是否输出debug日志, 不影响全局设置{@link Log#debugLog}
+     */
+    public void setDebugLog(boolean debugLog) {
+        this.debugLog = debugLog;
+    }
+
+    public int getMaxResponseSize() {
+        return maxResponseSize;
+    }
+
+    /**
+     * 设置响应报文体最大长度(字节), 超过时以异常完成请求并关闭连接, 避免为大文件分配整块堆内存
+     */
+    public void setMaxResponseSize(int maxResponseSize) {
+        if (maxResponseSize <= 0) {
+            throw new IllegalArgumentException("响应报文体最大长度必须大于0");
+        }
+        this.maxResponseSize = maxResponseSize;
+    }
+
+    /**
+     * 设置监控指标, 为null时不记录
+     */
+    public void setMetrics(FastDfsMetrics metrics) {
+        this.metrics = null == metrics ? FastDfsMetrics.NOOP : metrics;
+    }
+
+    public TrackerLocator getTrackerLocator() {
+        return trackerLocator;
+    }
+
+    /**
+     * 单个服务器地址的连接状态
+     */
+    private static class AddressChannels {
+
+        /**
+         * 空闲连接(后进先出, 优先使用最近使用过的连接)
+         */
+        private final Deque<NioConnection> idle = new ArrayDeque<>();
+
+        /**
+         * 等待连接的请求
+         */
+        private final Queue<NioExchange<?>> waiting = new ArrayDeque<>();
+
+        /**
+         * 当前连接总数
+         */
+        private int total;
+
+    }
+
+}
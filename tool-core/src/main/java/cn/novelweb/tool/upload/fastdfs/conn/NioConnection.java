@@ -0,0 +1,196 @@
+package cn.novelweb.tool.upload.fastdfs.conn;
+
+import cn.novelweb.tool.upload.fastdfs.constant.CmdConstants;
+import cn.novelweb.tool.upload.fastdfs.constant.OtherConstants;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsIoException;
+import cn.novelweb.tool.upload.fastdfs.utils.BytesUtil;
+import cn.novelweb.tool.upload.fastdfs.utils.IoUtils;
+import cn.novelweb.tool.upload.fastdfs.utils.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * 基于SocketChannel的非阻塞连接<br/>
+ * 同一时刻只处理一个请求, 所有状态只允许在{@link NioCommandExecutor}的Selector线程中读写
+ * <p>2026-10-18 10:12</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+class NioConnection {
+
+    /**
+     * 报文头长度
+     */
+    static final int HEAD_LENGTH = OtherConstants.DFS_PROTO_PKG_LEN_SIZE + 2;
+
+    /**
+     * 连接地址
+     */
+    private final InetSocketAddress address;
+
+    /**
+     * 封装SocketChannel
+     */
+    private final SocketChannel channel;
+
+    /**
+     * 注册到Selector后的Key
+     */
+    private SelectionKey key;
+
+    /**
+     * 当前正在处理的请求
+     */
+    private NioExchange<?> exchange;
+
+    /**
+     * 开始连接或最近一次读写的时间
+     */
+    private long lastActiveTime;
+
+    NioConnection(InetSocketAddress address, SocketChannel channel) {
+        this.address = address;
+        this.channel = channel;
+        this.lastActiveTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 连接建立之前暂存请求
+     */
+    void attach(NioExchange<?> exchange) {
+        this.exchange = exchange;
+    }
+
+    /**
+     * 开始处理请求
+     */
+    void bind(NioExchange<?> exchange) {
+        this.exchange = exchange;
+        this.lastActiveTime = System.currentTimeMillis();
+        key.interestOps(SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * 请求处理完毕, 连接进入空闲状态(保持读监听用于发现服务端关闭连接)
+     */
+    void unbind() {
+        this.exchange = null;
+        this.lastActiveTime = System.currentTimeMillis();
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * 尽量写出请求报文
+     *
+     * @return 返回true表示请求报文已全部写出
+     * @throws IOException 写出异常
+     */
+    boolean write() throws IOException {
+        ByteBuffer request = exchange.getRequest();
+        if (channel.write(request) > 0) {
+            lastActiveTime = System.currentTimeMillis();
+        }
+        if (request.hasRemaining()) {
+            return false;
+        }
+        key.interestOps(SelectionKey.OP_READ);
+        return true;
+    }
+
+    /**
+     * 尽量读取响应报文
+     *
+     * @param maxBodySize 响应报文体最大长度, 超过时不分配缓冲区直接抛出{@link FastDfsIoException}(连接随后被关闭)
+     * @return 返回true表示响应报文已全部读取
+     * @throws IOException 读取异常或服务端关闭连接
+     */
+    boolean read(int maxBodySize) throws IOException {
+        ByteBuffer header = exchange.getHeader();
+        if (header.hasRemaining()) {
+            fill(header);
+            if (header.hasRemaining()) {
+                return false;
+            }
+            long contentLength = BytesUtil.buff2long(header.array(), 0);
+            if (contentLength < 0 || contentLength > Integer.MAX_VALUE) {
+                throw new IOException("接收内容长度无效: " + contentLength);
+            }
+            if (contentLength > maxBodySize) {
+                throw new FastDfsIoException("接收内容长度[" + contentLength + "]超过非阻塞连接的限制[" + maxBodySize + "], 大文件请使用阻塞连接下载");
+            }
+            exchange.setBody(ByteBuffer.allocate((int) contentLength));
+        }
+        ByteBuffer body = exchange.getBody();
+        if (body.hasRemaining()) {
+            fill(body);
+        }
+        return !body.hasRemaining();
+    }
+
+    private void fill(ByteBuffer buffer) throws IOException {
+        int bytes = channel.read(buffer);
+        if (bytes < 0) {
+            throw new IOException("服务端已关闭连接:" + address);
+        }
+        if (bytes > 0) {
+            lastActiveTime = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 关闭连接, 尽力发送QUIT报文(不等待写出完成)
+     *
+     * @param quit 是否发送QUIT报文
+     */
+    void close(boolean quit) {
+        Log.debug("断开连接, 服务器地址:{}", address);
+        if (quit && channel.isConnected()) {
+            byte[] header = new byte[HEAD_LENGTH];
+            byte[] hexLen = BytesUtil.long2buff(0);
+            System.arraycopy(hexLen, 0, header, 0, hexLen.length);
+            header[OtherConstants.PROTO_HEADER_CMD_INDEX] = CmdConstants.DFS_PROTO_CMD_QUIT;
+            try {
+                channel.write(ByteBuffer.wrap(header));
+            } catch (IOException e) {
+                Log.debug("发送QUIT报文失败", e);
+            }
+        }
+        if (null != key) {
+            key.cancel();
+        }
+        IoUtils.closeQuietly(channel);
+    }
+
+    boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    boolean isConnected() {
+        return channel.isConnected();
+    }
+
+    InetSocketAddress getAddress() {
+        return address;
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    NioExchange<?> getExchange() {
+        return exchange;
+    }
+
+    long getLastActiveTime() {
+        return lastActiveTime;
+    }
+
+}
@@ -0,0 +1,110 @@
+package cn.novelweb.tool.upload.fastdfs.conn;
+
+import cn.novelweb.tool.upload.fastdfs.protocol.AbstractCommand;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * 非阻塞连接上的一次请求/响应交换
+ * <p>2026-10-18 10:15</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+class NioExchange<T> {
+
+    /**
+     * 服务器地址
+     */
+    private final InetSocketAddress address;
+
+    /**
+     * 命令
+     */
+    private final AbstractCommand<T> command;
+
+    /**
+     * 已编码的请求报文
+     */
+    private final ByteBuffer request;
+
+    /**
+     * 响应报文头
+     */
+    private final ByteBuffer header = ByteBuffer.allocate(NioConnection.HEAD_LENGTH);
+
+    /**
+     * 响应报文内容
+     */
+    private ByteBuffer body;
+
+    /**
+     * 异步结果
+     */
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+
+    NioExchange(InetSocketAddress address, AbstractCommand<T> command, ByteBuffer request) {
+        this.address = address;
+        this.command = command;
+        this.request = request;
+    }
+
+    /**
+     * 在回调线程池中解析响应报文并完成异步结果
+     *
+     * @param charset  字符集
+     * @param executor 回调线程池
+     */
+    void complete(Charset charset, Executor executor) {
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(command.decode(header.array(), body.array(), charset));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 以异常完成异步结果
+     */
+    void fail(Throwable e) {
+        future.completeExceptionally(e);
+    }
+
+    InetSocketAddress getAddress() {
+        return address;
+    }
+
+    AbstractCommand<T> getCommand() {
+        return command;
+    }
+
+    ByteBuffer getRequest() {
+        return request;
+    }
+
+    ByteBuffer getHeader() {
+        return header;
+    }
+
+    ByteBuffer getBody() {
+        return body;
+    }
+
+    void setBody(ByteBuffer body) {
+        this.body = body;
+    }
+
+    CompletableFuture<T> getFuture() {
+        return future;
+    }
+
+}
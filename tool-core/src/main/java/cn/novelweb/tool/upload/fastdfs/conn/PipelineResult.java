@@ -0,0 +1,60 @@
+package cn.novelweb.tool.upload.fastdfs.conn;
+
+/**
+ * <p>管道模式下单个命令的执行结果(成功时为响应数据, 失败时为异常)</p>
+ * <p>2026-10-18 15:30</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public class PipelineResult<T> {
+
+    /**
+     * 响应数据
+     */
+    private final T value;
+
+    /**
+     * 执行异常
+     */
+    private final RuntimeException error;
+
+    private PipelineResult(T value, RuntimeException error) {
+        this.value = value;
+        this.error = error;
+    }
+
+    /**
+     * 执行成功
+     */
+    public static <T> PipelineResult<T> success(T value) {
+        return new PipelineResult<>(value, null);
+    }
+
+    /**
+     * 执行失败
+     */
+    public static <T> PipelineResult<T> failure(RuntimeException error) {
+        return new PipelineResult<>(null, error);
+    }
+
+    /**
+     * 是否执行成功
+     */
+    public boolean isSuccess() {
+        return null == error;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public RuntimeException getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return isSuccess() ? "PipelineResult{value=" + value + '}' : "PipelineResult{error=" + error + '}';
+    }
+
+}
@@ -13,6 +13,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 
@@ -44,8 +46,11 @@ public class SocketConnection implements Connection {
      */
     public SocketConnection(InetSocketAddress address, int soTimeout, int connectTimeout, Charset charset) {
         try {
-            socket = new Socket();
+            // 通过SocketChannel创建socket, 发送文件时可以使用FileChannel.transferTo零拷贝
+            socket = SocketChannel.open().socket();
             socket.setSoTimeout(soTimeout);
+            // 报文头与文件内容分开写出, 关闭Nagle算法避免小文件等待服务端的延迟确认
+            socket.setTcpNoDelay(true);
             Log.debug("开始连接到服务器 {} soTimeout={} connectTimeout={}", address, soTimeout, connectTimeout);
             this.charset = charset;
             socket.connect(address, connectTimeout);
@@ -71,12 +76,22 @@ public class SocketConnection implements Connection {
             socket.getOutputStream().write(header);
             socket.close();
         } catch (IOException e) {
-            log.error("关闭连接失败", e);
+            // 连接已经断开时无法发送QUIT报文, 直接关闭socket即可
+            Log.debug("关闭连接时发送QUIT报文失败 {}, {}", socket, e.getMessage());
         } finally {
             IoUtils.closeQuietly(socket);
         }
     }
 
+    /**
+     * 中止连接, 直接关闭socket
+     */
+    @Override
+    public void abort() {
+        Log.debug("中止连接, 服务器地址:{}", socket);
+        IoUtils.closeQuietly(socket);
+    }
+
     /**
      * 连接是否关闭
      */
@@ -127,6 +142,14 @@ public class SocketConnection implements Connection {
         return socket.getInputStream();
     }
 
+    /**
+     * 获取可写通道
+     */
+    @Override
+    public WritableByteChannel getWritableChannel() {
+        return socket.getChannel();
+    }
+
     /**
      * 获取字符集
      */
@@ -12,6 +12,7 @@ public class ErrorCodeConstants {
     public static final byte ERR_NO_ENOENT = 2;
     public static final byte ERR_NO_EIO = 5;
     public static final byte ERR_NO_EBUSY = 16;
+    public static final byte ERR_NO_EEXIST = 17;
     public static final byte ERR_NO_EINVAL = 22;
     public static final byte ERR_NO_ENOSPC = 28;
     public static final byte ERR_NO_CONNREFUSED = 61;
@@ -44,8 +44,8 @@ public class OtherConstants {
 
     public static final byte DFS_FILE_EXT_NAME_MAX_LEN = 6;
     public static final byte DFS_FILE_PREFIX_MAX_LEN = 16;
-    private static final byte DFS_FILE_PATH_LEN = 10;
-    private static final byte DFS_FILENAME_BASE64_LENGTH = 27;
+    public static final byte DFS_FILE_PATH_LEN = 10;
+    public static final byte DFS_FILENAME_BASE64_LENGTH = 27;
     private static final byte DFS_TRUNK_FILE_INFO_LEN = 16;
 
     private static final long INFINITE_FILE_SIZE = 256 * 1024L * 1024 * 1024 * 1024 * 1024L;
@@ -0,0 +1,69 @@
+package cn.novelweb.tool.upload.fastdfs.dedup;
+
+import cn.novelweb.tool.upload.fastdfs.model.StorePath;
+
+/**
+ * <p>去重索引中的一个文件(不可变)</p>
+ * <p>2026-10-18 22:10</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public final class DedupEntry {
+
+    /**
+     * 文件内容摘要(SHA-256十六进制)
+     */
+    private final String hash;
+
+    private final StorePath storePath;
+
+    private final long fileSize;
+
+    /**
+     * 引用计数(上传相同内容的次数减去删除的次数)
+     */
+    private final long refCount;
+
+    public DedupEntry(String hash, StorePath storePath, long fileSize, long refCount) {
+        this.hash = hash;
+        this.storePath = storePath;
+        this.fileSize = fileSize;
+        this.refCount = refCount;
+    }
+
+    /**
+     * 返回引用计数改变后的新对象
+     *
+     * @param delta 引用计数的变化
+     * @return 新对象
+     */
+    public DedupEntry withRefCount(long delta) {
+        return new DedupEntry(hash, storePath, fileSize, refCount + delta);
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public StorePath getStorePath() {
+        return storePath;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public long getRefCount() {
+        return refCount;
+    }
+
+    @Override
+    public String toString() {
+        return "DedupEntry{" +
+                "hash='" + hash + '\'' +
+                ", storePath=" + storePath.getFullPath() +
+                ", fileSize=" + fileSize +
+                ", refCount=" + refCount +
+                '}';
+    }
+}
@@ -0,0 +1,52 @@
+package cn.novelweb.tool.upload.fastdfs.dedup;
+
+import cn.novelweb.tool.upload.fastdfs.model.StorePath;
+
+/**
+ * <p>文件内容摘要 -> 文件存储路径的去重索引</p>
+ * <p>每个方法必须是原子操作: 引用计数减到0移除记录后, 之后的{@link #acquire(String)}不能再返回该文件,
+ * 多个客户端实例共用索引(如存放在Redis中)时由实现类保证原子性, 默认实现见{@link LocalDedupIndex}</p>
+ * <p>2026-10-18 22:10</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public interface DedupIndex {
+
+    /**
+     * 查找相同内容的文件, 存在时引用计数加1
+     *
+     * @param hash 文件内容摘要
+     * @return 引用计数加1后的记录, 不存在返回null
+     */
+    DedupEntry acquire(String hash);
+
+    /**
+     * 登记新上传的文件, 已存在相同内容的文件时不登记, 已存在的文件引用计数加1
+     *
+     * @param hash      文件内容摘要
+     * @param storePath 新上传的文件
+     * @param fileSize  文件大小
+     * @return 已存在相同内容时返回引用计数加1后的已存在记录(调用方应删除新上传的文件), 登记成功返回null
+     */
+    DedupEntry register(String hash, StorePath storePath, long fileSize);
+
+    /**
+     * 删除文件时引用计数减1, 减到0时移除记录
+     *
+     * @param storePath 文件存储路径
+     * @return 剩余的引用计数, 为0时调用方应删除文件; 文件不在索引中时返回-1
+     */
+    long release(StorePath storePath);
+
+    /**
+     * 移除记录(文件已经通过其他方式删除时)
+     *
+     * @param hash 文件内容摘要
+     */
+    void remove(String hash);
+
+    /**
+     * 获取记录的文件数
+     */
+    int size();
+}
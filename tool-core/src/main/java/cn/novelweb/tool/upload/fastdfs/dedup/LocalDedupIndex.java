@@ -0,0 +1,247 @@
+package cn.novelweb.tool.upload.fastdfs.dedup;
+
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsIoException;
+import cn.novelweb.tool.upload.fastdfs.model.StorePath;
+import cn.novelweb.tool.upload.fastdfs.utils.IoUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>本地去重索引</p>
+ * <p>索引保存在内存中, 每次修改追加一行记录到日志文件, 创建时重放日志恢复索引,
+ * 日志记录数远大于索引条目数时重写日志文件(先写入临时文件再替换)<br/>
+ * 只适用于单个进程: 多个进程(或多个客户端实例)使用同一个日志文件时各自的引用计数不一致, 删除文件时会误删其他引用仍在使用的文件,
+ * 多个进程共用索引时需要实现{@link DedupIndex}将索引存放在共享存储中</p>
+ * <p>2026-10-18 22:10</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+@Slf4j
+public class LocalDedupIndex implements DedupIndex, Closeable {
+
+    /**
+     * 日志记录字段分隔符
+     */
+    private static final char SEPARATOR = '\t';
+
+    /**
+     * 日志记录数超过 条目数*该倍数+最小记录数 时重写日志
+     */
+    private static final int COMPACT_RATIO = 2;
+
+    private static final int COMPACT_MIN_RECORDS = 1024;
+
+    /**
+     * 文件内容摘要 -> 记录
+     */
+    private final Map<String, DedupEntry> entries = new HashMap<>(256);
+
+    /**
+     * 文件完整路径 -> 文件内容摘要
+     */
+    private final Map<String, String> hashes = new HashMap<>(256);
+
+    /**
+     * 日志文件
+     */
+    private final File journalFile;
+
+    private Writer journal;
+
+    /**
+     * 日志文件中的记录数
+     */
+    private int journalRecords;
+
+    /**
+     * 不提供只保存在内存中的索引: 重启后引用计数丢失, 删除共用的文件时会误删其他引用仍在使用的文件
+     *
+     * @param journalFile 日志文件, 不能为null, 同一时间只能被一个进程使用
+     */
+    public LocalDedupIndex(File journalFile) {
+        if (null == journalFile) {
+            throw new IllegalArgumentException("本地去重索引必须指定日志文件");
+        }
+        this.journalFile = journalFile;
+        load();
+        compact();
+    }
+
+    @Override
+    public synchronized DedupEntry acquire(String hash) {
+        DedupEntry entry = entries.get(hash);
+        if (null == entry) {
+            return null;
+        }
+        return put(entry.withRefCount(1));
+    }
+
+    @Override
+    public synchronized DedupEntry register(String hash, StorePath storePath, long fileSize) {
+        DedupEntry entry = entries.get(hash);
+        if (null != entry) {
+            return put(entry.withRefCount(1));
+        }
+        put(new DedupEntry(hash, storePath, fileSize, 1));
+        return null;
+    }
+
+    @Override
+    public synchronized long release(StorePath storePath) {
+        String hash = hashes.get(storePath.getFullPath());
+        if (null == hash) {
+            return -1;
+        }
+        DedupEntry entry = entries.get(hash);
+        if (entry.getRefCount() <= 1) {
+            remove(hash);
+            return 0;
+        }
+        return put(entry.withRefCount(-1)).getRefCount();
+    }
+
+    @Override
+    public synchronized void remove(String hash) {
+        DedupEntry entry = entries.remove(hash);
+        if (null != entry) {
+            hashes.remove(entry.getStorePath().getFullPath());
+            append(entry.withRefCount(-entry.getRefCount()));
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 获取文件内容对应的记录, 不改变引用计数
+     *
+     * @param hash 文件内容摘要
+     * @return 记录, 不存在返回null
+     */
+    public synchronized DedupEntry get(String hash) {
+        return entries.get(hash);
+    }
+
+    /**
+     * 关闭日志文件
+     */
+    @Override
+    public synchronized void close() {
+        IoUtils.closeQuietly(journal);
+        journal = null;
+    }
+
+    private DedupEntry put(DedupEntry entry) {
+        entries.put(entry.getHash(), entry);
+        hashes.put(entry.getStorePath().getFullPath(), entry.getHash());
+        append(entry);
+        return entry;
+    }
+
+    /**
+     * 追加一行记录到日志文件, 引用计数为0表示移除
+     */
+    private void append(DedupEntry entry) {
+        if (journalRecords > entries.size() * COMPACT_RATIO + COMPACT_MIN_RECORDS) {
+            compact();
+            return;
+        }
+        try {
+            if (null == journal) {
+                journal = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true), StandardCharsets.UTF_8));
+            }
+            writeRecord(journal, entry);
+            journal.flush();
+            journalRecords++;
+        } catch (IOException e) {
+            throw new FastDfsIoException("写入去重索引日志异常:" + journalFile, e);
+        }
+    }
+
+    private static void writeRecord(Writer writer, DedupEntry entry) throws IOException {
+        writer.write(entry.getHash());
+        writer.write(SEPARATOR);
+        writer.write(entry.getStorePath().getGroup());
+        writer.write(SEPARATOR);
+        writer.write(entry.getStorePath().getPath());
+        writer.write(SEPARATOR);
+        writer.write(String.valueOf(entry.getFileSize()));
+        writer.write(SEPARATOR);
+        writer.write(String.valueOf(entry.getRefCount()));
+        writer.write('\n');
+    }
+
+    /**
+     * 重放日志文件恢复索引, 忽略格式不正确的记录(如进程退出时未写完的最后一行)
+     */
+    private void load() {
+        if (!journalFile.isFile()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8))) {
+            String line;
+            while (null != (line = reader.readLine())) {
+                String[] fields = line.split(String.valueOf(SEPARATOR));
+                if (fields.length != 5) {
+                    log.warn("忽略格式不正确的去重索引记录: {}", line);
+                    continue;
+                }
+                DedupEntry entry;
+                try {
+                    entry = new DedupEntry(fields[0], new StorePath(fields[1], fields[2]),
+                            Long.parseLong(fields[3]), Long.parseLong(fields[4]));
+                } catch (NumberFormatException e) {
+                    log.warn("忽略格式不正确的去重索引记录: {}", line);
+                    continue;
+                }
+                DedupEntry previous = entries.remove(entry.getHash());
+                if (null != previous) {
+                    hashes.remove(previous.getStorePath().getFullPath());
+                }
+                if (entry.getRefCount() > 0) {
+                    entries.put(entry.getHash(), entry);
+                    hashes.put(entry.getStorePath().getFullPath(), entry.getHash());
+                }
+            }
+        } catch (IOException e) {
+            throw new FastDfsIoException("读取去重索引日志异常:" + journalFile, e);
+        }
+    }
+
+    /**
+     * 只保留当前的记录重写日志文件, 先写入临时文件再替换
+     */
+    private void compact() {
+        IoUtils.closeQuietly(journal);
+        journal = null;
+        File dir = journalFile.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new FastDfsIoException("创建去重索引目录失败:" + dir);
+        }
+        File tmp = new File(dir, journalFile.getName() + ".tmp");
+        try {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+                for (DedupEntry entry : entries.values()) {
+                    writeRecord(writer, entry);
+                }
+            }
+            try {
+                Files.move(tmp.toPath(), journalFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new FastDfsIoException("写入去重索引日志异常:" + journalFile, e);
+        }
+        journalRecords = entries.size();
+    }
+}
@@ -0,0 +1,16 @@
+package cn.novelweb.tool.upload.fastdfs.exception;
+
+/**
+ * <p>请求被取消({@link cn.novelweb.tool.upload.fastdfs.conn.Deadline#cancel()})时抛出的异常，正在使用的连接已被中止</p>
+ * <p>2026-10-18 14:10</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public class FastDfsCancelledException extends FastDfsException {
+    public FastDfsCancelledException(String message) {
+        super(message);
+    }
+    public FastDfsCancelledException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
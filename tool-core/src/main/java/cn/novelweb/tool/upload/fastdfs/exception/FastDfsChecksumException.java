@@ -0,0 +1,34 @@
+package cn.novelweb.tool.upload.fastdfs.exception;
+
+/**
+ * <p>传输的文件内容与服务端记录的CRC32校验码不一致时抛出的异常</p>
+ * <p>2026-10-18 22:40</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public class FastDfsChecksumException extends FastDfsIoException {
+
+    /**
+     * 服务端记录的校验码
+     */
+    private final long expectedCrc32;
+
+    /**
+     * 客户端计算的校验码
+     */
+    private final long actualCrc32;
+
+    public FastDfsChecksumException(String message, long expectedCrc32, long actualCrc32) {
+        super(message + ", 期望CRC32[" + Long.toHexString(expectedCrc32) + "], 实际CRC32[" + Long.toHexString(actualCrc32) + "]");
+        this.expectedCrc32 = expectedCrc32;
+        this.actualCrc32 = actualCrc32;
+    }
+
+    public long getExpectedCrc32() {
+        return expectedCrc32;
+    }
+
+    public long getActualCrc32() {
+        return actualCrc32;
+    }
+}
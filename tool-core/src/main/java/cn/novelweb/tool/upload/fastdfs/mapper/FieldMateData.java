@@ -5,15 +5,20 @@ import cn.novelweb.tool.upload.fastdfs.exception.FastDfsColumnMapException;
 import cn.novelweb.tool.upload.fastdfs.model.MateData;
 import cn.novelweb.tool.upload.fastdfs.utils.BytesUtil;
 import cn.novelweb.tool.upload.fastdfs.utils.MetadataMapperUtils;
-import cn.novelweb.tool.upload.fastdfs.utils.ReflectionsUtils;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.sql.Date;
 import java.util.Set;
 
 /**
  * <p>属性映射MateData定义</p>
+ * <p>创建时将属性的读写编译为类型确定的MethodHandle, 编码/解码时不再通过反射按属性名查找, 基本类型也不再装箱</p>
  * <p>2016/11/20 1:48</p>
  *
  * @author LiZW
@@ -50,6 +55,26 @@ public class FieldMateData {
      */
     private DynamicFieldType dynamicFieldType;
 
+    /**
+     * 列类型
+     */
+    private final ColumnType columnType;
+
+    /**
+     * 是否动态属性
+     */
+    private final boolean dynamicField;
+
+    /**
+     * 属性读取句柄, 类型为(Object)属性类型
+     */
+    private final MethodHandle getter;
+
+    /**
+     * 属性写入句柄, 类型为(Object, 属性类型)void, final属性为null
+     */
+    private final MethodHandle setter;
+
     /**
      * 构造函数
      */
@@ -58,58 +83,123 @@ public class FieldMateData {
         this.field = mateField;
         this.index = column.index();
         this.max = column.max();
+        this.columnType = ColumnType.of(field);
         this.size = getFieldSize(field);
         this.offSize = offSize;
         this.dynamicFieldType = column.dynamicField();
+        this.dynamicField = !DynamicFieldType.NULL.equals(dynamicFieldType);
         // 如果强制设置了最大值，以最大值为准
         if (this.max > 0 && this.size > this.max) {
             this.size = this.max;
         }
+        try {
+            field.setAccessible(true);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            this.getter = lookup.unreflectGetter(field)
+                    .asType(MethodType.methodType(field.getType(), Object.class));
+            this.setter = Modifier.isFinal(field.getModifiers()) ? null : lookup.unreflectSetter(field)
+                    .asType(MethodType.methodType(void.class, Object.class, field.getType()));
+        } catch (IllegalAccessException e) {
+            throw new FastDfsColumnMapException(e);
+        }
     }
 
     /**
      * 获取Field大小
      */
     private int getFieldSize(Field field) {
-        if (String.class == field.getType()) {
-            return this.max;
-        } else if (long.class == field.getType()) {
-            return OtherConstants.DFS_PROTO_PKG_LEN_SIZE;
-        } else if (int.class == field.getType()) {
-            return OtherConstants.DFS_PROTO_PKG_LEN_SIZE;
-        } else if (java.util.Date.class == field.getType()) {
-            return OtherConstants.DFS_PROTO_PKG_LEN_SIZE;
-        } else if (byte.class == field.getType()) {
-            return 1;
-        } else if (boolean.class == field.getType()) {
-            return 1;
-        } else if (Set.class == field.getType()) {
-            return 0;
+        switch (columnType) {
+            case STRING:
+                return this.max;
+            case LONG:
+            case INT:
+            case DATE:
+                return OtherConstants.DFS_PROTO_PKG_LEN_SIZE;
+            case BYTE:
+            case BOOLEAN:
+                return 1;
+            case SET:
+                return 0;
+            default:
+                throw new FastDfsColumnMapException(field.getName() + "获取Field大小时未识别的FastDFSColumn类型" + field.getType());
         }
-        throw new FastDfsColumnMapException(field.getName() + "获取Field大小时未识别的FastDFSColumn类型" + field.getType());
     }
 
     /**
      * 获取值
      */
     public Object getValue(byte[] bs, Charset charset) {
-        if (String.class == field.getType()) {
-            if (isDynamicField()) {
-                return (new String(bs, offSize, bs.length - offSize, charset)).trim();
+        return getValue(bs, bs.length, charset);
+    }
+
+    /**
+     * 获取值(只解析bs的前length位, bs可以是缓冲池中的缓冲区)
+     */
+    public Object getValue(byte[] bs, int length, Charset charset) {
+        switch (columnType) {
+            case STRING:
+                if (dynamicField) {
+                    return (new String(bs, offSize, length - offSize, charset)).trim();
+                }
+                return (new String(bs, offSize, size, charset)).trim();
+            case LONG:
+                return BytesUtil.buff2long(bs, offSize);
+            case INT:
+                return (int) BytesUtil.buff2long(bs, offSize);
+            case DATE:
+                return new Date(BytesUtil.buff2long(bs, offSize) * 1000);
+            case BYTE:
+                return bs[offSize];
+            case BOOLEAN:
+                return bs[offSize] != 0;
+            default:
+                throw new FastDfsColumnMapException(field.getName() + "获取值时未识别的FdfsColumn类型" + field.getType());
+        }
+    }
+
+    /**
+     * 从bs的offset位置开始解析属性值并直接设置到对象中(基本类型不装箱)
+     *
+     * @param bean    对象
+     * @param bs      报文
+     * @param offset  对象在报文中的开始位置
+     * @param length  对象在报文中的长度
+     * @param charset 字符集
+     */
+    public void setValue(Object bean, byte[] bs, int offset, int length, Charset charset) {
+        if (null == setter) {
+            throw new FastDfsColumnMapException(field.getName() + "是final属性, 不能设置值");
+        }
+        int position = offset + offSize;
+        try {
+            switch (columnType) {
+                case STRING:
+                    int stringLength = dynamicField ? length - offSize : size;
+                    setter.invokeExact(bean, new String(bs, position, stringLength, charset).trim());
+                    break;
+                case LONG:
+                    setter.invokeExact(bean, BytesUtil.buff2long(bs, position));
+                    break;
+                case INT:
+                    setter.invokeExact(bean, (int) BytesUtil.buff2long(bs, position));
+                    break;
+                case DATE:
+                    setter.invokeExact(bean, (java.util.Date) new Date(BytesUtil.buff2long(bs, position) * 1000));
+                    break;
+                case BYTE:
+                    setter.invokeExact(bean, bs[position]);
+                    break;
+                case BOOLEAN:
+                    setter.invokeExact(bean, bs[position] != 0);
+                    break;
+                default:
+                    throw new FastDfsColumnMapException(field.getName() + "获取值时未识别的FdfsColumn类型" + field.getType());
             }
-            return (new String(bs, offSize, size, charset)).trim();
-        } else if (long.class == field.getType()) {
-            return BytesUtil.buff2long(bs, offSize);
-        } else if (int.class == field.getType()) {
-            return (int) BytesUtil.buff2long(bs, offSize);
-        } else if (java.util.Date.class == field.getType()) {
-            return new Date(BytesUtil.buff2long(bs, offSize) * 1000);
-        } else if (byte.class == field.getType()) {
-            return bs[offSize];
-        } else if (boolean.class == field.getType()) {
-            return bs[offSize] != 0;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new FastDfsColumnMapException(e);
         }
-        throw new FastDfsColumnMapException(field.getName() + "获取值时未识别的FdfsColumn类型" + field.getType());
     }
 
     /**
@@ -117,7 +207,7 @@ public class FieldMateData {
      */
     int getRealSize() {
         // 如果是动态属性
-        if (isDynamicField()) {
+        if (dynamicField) {
             return 0;
         }
         return size;
@@ -127,26 +217,68 @@ public class FieldMateData {
      * 将属性值转换为byte
      */
     public byte[] toByte(Object bean, Charset charset) {
-        Object value = this.getFieldValue(bean);
-        if (isDynamicField()) {
-            return getDynamicFieldByteValue(value, charset);
-        } else if (String.class.equals(field.getType())) {
-            // 如果是动态属性
-            return BytesUtil.objString2Byte((String) value, max, charset);
-        } else if (long.class.equals(field.getType())) {
-            return BytesUtil.long2buff((Long) value);
-        } else if (int.class.equals(field.getType())) {
-            return BytesUtil.long2buff((Integer) value);
-        } else if (Date.class.equals(field.getType())) {
-            throw new FastDfsColumnMapException("Date 还不支持");
-        } else if (byte.class.equals(field.getType())) {
-            byte[] result = new byte[1];
-            result[0] = (Byte) value;
-            return result;
-        } else if (boolean.class.equals(field.getType())) {
-            throw new FastDfsColumnMapException("boolean 还不支持");
+        if (dynamicField) {
+            return getDynamicFieldByteValue(getFieldValue(bean), charset);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        writeTo(bean, charset, buffer);
+        return buffer.array();
+    }
+
+    /**
+     * 将属性值直接写入缓冲区(与{@link #toByte(Object, Charset)}结果一致, 不分配中间byte[])
+     */
+    @SuppressWarnings("unchecked")
+    public void writeTo(Object bean, Charset charset, ByteBuffer buffer) {
+        if (dynamicField) {
+            Object fieldValue = getFieldValue(bean);
+            if (dynamicFieldType == DynamicFieldType.mateData) {
+                // 元数据直接编码到缓冲区
+                MetadataMapperUtils.write((Set<MateData>) fieldValue, charset, buffer);
+                return;
+            }
+            byte[] bytes = getDynamicFieldByteValue(fieldValue, charset);
+            if (null != bytes) {
+                buffer.put(bytes);
+            }
+            return;
+        }
+        try {
+            switch (columnType) {
+                case STRING:
+                    String value = (String) getter.invokeExact(bean);
+                    int length = 0;
+                    if (null != value) {
+                        byte[] realContent = value.getBytes(charset);
+                        length = Math.min(realContent.length, max);
+                        buffer.put(realContent, 0, length);
+                    }
+                    // 不足部分填充0
+                    for (; length < max; length++) {
+                        buffer.put((byte) 0);
+                    }
+                    break;
+                case LONG:
+                    buffer.putLong((long) getter.invokeExact(bean));
+                    break;
+                case INT:
+                    buffer.putLong((int) getter.invokeExact(bean));
+                    break;
+                case BYTE:
+                    buffer.put((byte) getter.invokeExact(bean));
+                    break;
+                case DATE:
+                    throw new FastDfsColumnMapException("Date 还不支持");
+                case BOOLEAN:
+                    throw new FastDfsColumnMapException("boolean 还不支持");
+                default:
+                    throw new FastDfsColumnMapException("将属性值转换为byte时未识别的FdfsColumn类型" + field.getName());
+            }
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new FastDfsColumnMapException(e);
         }
-        throw new FastDfsColumnMapException("将属性值转换为byte时未识别的FdfsColumn类型" + field.getName());
     }
 
     /**
@@ -174,7 +306,13 @@ public class FieldMateData {
      * 获取单元对应值
      */
     private Object getFieldValue(Object bean) {
-        return ReflectionsUtils.getFieldValue(bean, field.getName());
+        try {
+            return getter.invoke(bean);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new FastDfsColumnMapException(e);
+        }
     }
 
     /**
@@ -182,7 +320,7 @@ public class FieldMateData {
      */
     @SuppressWarnings("unchecked")
     int getDynamicFieldByteSize(Object bean, Charset charset) {
-        Object value = ReflectionsUtils.getFieldValue(bean, field.getName());
+        Object value = getFieldValue(bean);
         if (null == value) {
             return 0;
         }
@@ -192,7 +330,7 @@ public class FieldMateData {
                 return ((String) value).getBytes(charset).length;
             // 如果是文件mateData
             case mateData:
-                return MetadataMapperUtils.toByte((Set<MateData>) value, charset).length;
+                return MetadataMapperUtils.byteSize((Set<MateData>) value, charset);
             default:
                 return getFieldSize(field);
         }
@@ -202,7 +340,7 @@ public class FieldMateData {
      * 是否动态属性
      */
     public boolean isDynamicField() {
-        return (!DynamicFieldType.NULL.equals(dynamicFieldType));
+        return dynamicField;
     }
 
     public String getFieldName() {
@@ -244,4 +382,32 @@ public class FieldMateData {
                 ", dynamicFieldType=" + dynamicFieldType +
                 '}';
     }
+
+    /**
+     * 列类型, 创建时根据属性类型确定
+     */
+    private enum ColumnType {
+
+        STRING, LONG, INT, DATE, BYTE, BOOLEAN, SET, UNKNOWN;
+
+        static ColumnType of(Field field) {
+            Class<?> type = field.getType();
+            if (String.class == type) {
+                return STRING;
+            } else if (long.class == type) {
+                return LONG;
+            } else if (int.class == type) {
+                return INT;
+            } else if (java.util.Date.class == type) {
+                return DATE;
+            } else if (byte.class == type) {
+                return BYTE;
+            } else if (boolean.class == type) {
+                return BOOLEAN;
+            } else if (Set.class == type) {
+                return SET;
+            }
+            return UNKNOWN;
+        }
+    }
 }
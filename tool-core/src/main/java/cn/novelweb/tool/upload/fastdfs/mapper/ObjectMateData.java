@@ -3,7 +3,12 @@ package cn.novelweb.tool.upload.fastdfs.mapper;
 import cn.novelweb.tool.upload.fastdfs.exception.FastDfsColumnMapException;
 import lombok.extern.slf4j.Slf4j;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -11,6 +16,7 @@ import java.util.List;
 
 /**
  * <p>映射对象元数据,映射对象元数据必须由{@code @FastDfsColumn}注解</p>
+ * <p>创建时编译好属性数组及无参构造函数句柄, 编码/解码时直接按数组顺序读写属性</p>
  * <p>2020-02-03 15:19</p>
  *
  * @author LiZW
@@ -38,6 +44,21 @@ public class ObjectMateData {
      */
     private int fieldsTotalSize = 0;
 
+    /**
+     * 映射列数组(编码/解码时遍历, 避免迭代器分配)
+     */
+    private final FieldMateData[] fields;
+
+    /**
+     * 是否有动态数据列
+     */
+    private final boolean dynamic;
+
+    /**
+     * 无参构造函数句柄, 类型为()Object, 没有无参构造函数时为null
+     */
+    private final MethodHandle constructor;
+
     /**
      * 映射对象元数据构造函数
      */
@@ -45,10 +66,28 @@ public class ObjectMateData {
         // 获得对象类名
         this.className = genericType.getName();
         this.fieldList = praseFieldList(genericType);
+        this.fields = fieldList.toArray(new FieldMateData[0]);
+        this.dynamic = !dynamicFieldList.isEmpty();
+        this.constructor = findConstructor(genericType);
         // 校验映射定义
         validateFieldListDefine();
     }
 
+    /**
+     * 获取无参构造函数句柄
+     */
+    private static MethodHandle findConstructor(Class<?> genericType) {
+        try {
+            Constructor<?> declared = genericType.getDeclaredConstructor();
+            declared.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(declared)
+                    .asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            // 请求对象没有无参构造函数, 只能编码不能解码
+            return null;
+        }
+    }
+
     /**
      * 解析映射对象数据映射情况
      */
@@ -103,12 +142,7 @@ public class ObjectMateData {
      * 是否有动态数据列
      */
     private boolean hasDynamicField() {
-        for (FieldMateData field : fieldList) {
-            if (field.isDynamicField()) {
-                return true;
-            }
-        }
-        return false;
+        return dynamic;
     }
 
     /**
@@ -116,12 +150,55 @@ public class ObjectMateData {
      */
     private int getDynamicFieldSize(Object obj, Charset charset) {
         int size = 0;
-        for (FieldMateData field : dynamicFieldList) {
-            size = size + field.getDynamicFieldByteSize(obj, charset);
+        for (FieldMateData field : fields) {
+            if (field.isDynamicField()) {
+                size = size + field.getDynamicFieldByteSize(obj, charset);
+            }
         }
         return size;
     }
 
+    /**
+     * 将bs中offset开始的length位解码为对象
+     *
+     * @param bs      报文
+     * @param offset  开始位置
+     * @param length  长度
+     * @param charset 字符集
+     * @return 映射对象
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T decode(byte[] bs, int offset, int length, Charset charset) {
+        if (null == constructor) {
+            throw new FastDfsColumnMapException(className + "没有无参构造函数, 不能解码");
+        }
+        Object obj;
+        try {
+            obj = (Object) constructor.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new FastDfsColumnMapException(e);
+        }
+        for (FieldMateData field : fields) {
+            field.setValue(obj, bs, offset, length, charset);
+        }
+        return (T) obj;
+    }
+
+    /**
+     * 将对象编码到缓冲区, 缓冲区剩余空间需不小于{@link #getFieldsSendTotalByteSize(Object, Charset)}
+     *
+     * @param bean    对象
+     * @param charset 字符集
+     * @param buffer  缓冲区
+     */
+    public void encode(Object bean, Charset charset, ByteBuffer buffer) {
+        for (FieldMateData field : fields) {
+            field.writeTo(bean, charset, buffer);
+        }
+    }
+
     /**
      * 获取固定参数对象总长度
      */
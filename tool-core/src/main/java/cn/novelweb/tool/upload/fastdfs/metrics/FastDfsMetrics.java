@@ -0,0 +1,72 @@
+package cn.novelweb.tool.upload.fastdfs.metrics;
+
+import cn.novelweb.tool.upload.fastdfs.model.ClusterSnapshot;
+
+import java.net.InetSocketAddress;
+
+/**
+ * <p>FastDFS客户端监控指标</p>
+ * <p>命令执行器及连接池在请求完成、借出连接、创建/销毁连接时回调, 实现类可以将数据记录到Micrometer等监控系统<br/>
+ * 回调在请求线程(非阻塞执行器为回调线程)中同步执行, 实现类必须线程安全且不能阻塞<br/>
+ * 所有方法默认不做任何事情, {@link #NOOP}为默认实现, 内置实现见{@link SimpleFastDfsMetrics}</p>
+ * <p>2026-10-18 20:10</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public interface FastDfsMetrics {
+
+    /**
+     * 不记录任何指标
+     */
+    FastDfsMetrics NOOP = new FastDfsMetrics() {
+    };
+
+    /**
+     * 一次请求完成(包括失败)
+     *
+     * @param command       命令类型, 如UploadFile、DownloadFile、GetStorageNode
+     * @param address       服务器地址
+     * @param durationNanos 请求耗时(纳秒), 流式下载包括读取文件内容的时间
+     * @param bytesSent     发送的字节数(报文头+参数+文件内容)
+     * @param bytesReceived 接收的字节数(报文头+报文内容)
+     * @param error         请求失败的异常, 成功时为null;
+     *                      服务端返回错误状态时为{@link cn.novelweb.tool.upload.fastdfs.exception.FastDfsServerException}, 可以通过getErrorCode获取错误码
+     */
+    default void commandCompleted(String command, InetSocketAddress address, long durationNanos,
+                                  long bytesSent, long bytesReceived, Throwable error) {
+    }
+
+    /**
+     * 从连接池借出连接(包括失败)
+     *
+     * @param address   服务器地址
+     * @param waitNanos 等待耗时(纳秒), 包括创建新连接的时间
+     */
+    default void connectionBorrowed(InetSocketAddress address, long waitNanos) {
+    }
+
+    /**
+     * 创建了新连接
+     *
+     * @param address 服务器地址
+     */
+    default void connectionCreated(InetSocketAddress address) {
+    }
+
+    /**
+     * 销毁了连接
+     *
+     * @param address 服务器地址
+     */
+    default void connectionDestroyed(InetSocketAddress address) {
+    }
+
+    /**
+     * 集群状态快照更新(开启集群容量监控时在监控线程中定时回调)
+     *
+     * @param snapshot 新的快照, 包括每个存储节点的剩余空间、同步延迟及上传/下载速率
+     */
+    default void clusterStateUpdated(ClusterSnapshot snapshot) {
+    }
+
+}
@@ -0,0 +1,204 @@
+package cn.novelweb.tool.upload.fastdfs.metrics;
+
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsServerException;
+import cn.novelweb.tool.upload.fastdfs.model.ClusterSnapshot;
+import cn.novelweb.tool.upload.fastdfs.model.StorageNodeSnapshot;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>在内存中统计的监控指标</p>
+ * <p>按命令类型+服务器地址统计耗时直方图、失败次数、收发字节数, 按错误码统计服务端错误次数,
+ * 以及借出连接的等待耗时和连接创建/销毁次数, 开启集群容量监控时保存最近一次的集群状态快照<br/>
+ * 计数均为累计值, 定时采集时用两次的差值计算速率</p>
+ * <p>2026-10-18 20:10</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public class SimpleFastDfsMetrics implements FastDfsMetrics {
+
+    /**
+     * 命令类型+服务器地址 -> 统计
+     */
+    private final Map<String, CommandStats> commandStats = new ConcurrentHashMap<>();
+
+    /**
+     * 服务端错误码 -> 次数
+     */
+    private final Map<Integer, LongAdder> serverErrors = new ConcurrentHashMap<>();
+
+    /**
+     * 借出连接的等待耗时
+     */
+    private final LatencyHistogram poolWait = new LatencyHistogram();
+
+    private final LongAdder connectionsCreated = new LongAdder();
+
+    private final LongAdder connectionsDestroyed = new LongAdder();
+
+    /**
+     * 最近一次的集群状态快照
+     */
+    private volatile ClusterSnapshot clusterSnapshot = ClusterSnapshot.EMPTY;
+
+    @Override
+    public void commandCompleted(String command, InetSocketAddress address, long durationNanos,
+                                 long bytesSent, long bytesReceived, Throwable error) {
+        String key = command + "@" + address;
+        CommandStats stats = commandStats.get(key);
+        if (null == stats) {
+            stats = commandStats.computeIfAbsent(key, k -> new CommandStats(command, address));
+        }
+        stats.latency.record(durationNanos);
+        stats.bytesSent.add(bytesSent);
+        stats.bytesReceived.add(bytesReceived);
+        if (null != error) {
+            stats.errors.increment();
+            if (error instanceof FastDfsServerException) {
+                serverErrors.computeIfAbsent(((FastDfsServerException) error).getErrorCode(), k -> new LongAdder()).increment();
+            }
+        }
+    }
+
+    @Override
+    public void connectionBorrowed(InetSocketAddress address, long waitNanos) {
+        poolWait.record(waitNanos);
+    }
+
+    @Override
+    public void connectionCreated(InetSocketAddress address) {
+        connectionsCreated.increment();
+    }
+
+    @Override
+    public void connectionDestroyed(InetSocketAddress address) {
+        connectionsDestroyed.increment();
+    }
+
+    @Override
+    public void clusterStateUpdated(ClusterSnapshot snapshot) {
+        clusterSnapshot = snapshot;
+    }
+
+    /**
+     * 获取按命令类型+服务器地址统计的数据
+     */
+    public Map<String, CommandStats> getCommandStats() {
+        return Collections.unmodifiableMap(new TreeMap<>(commandStats));
+    }
+
+    /**
+     * 获取按错误码统计的服务端错误次数
+     */
+    public Map<Integer, Long> getServerErrors() {
+        Map<Integer, Long> errors = new TreeMap<>();
+        serverErrors.forEach((code, count) -> errors.put(code, count.sum()));
+        return errors;
+    }
+
+    public LatencyHistogram getPoolWait() {
+        return poolWait;
+    }
+
+    public long getConnectionsCreated() {
+        return connectionsCreated.sum();
+    }
+
+    public long getConnectionsDestroyed() {
+        return connectionsDestroyed.sum();
+    }
+
+    /**
+     * 获取最近一次的集群状态快照(每个存储节点的剩余空间及上传/下载速率), 未开启集群容量监控时为{@link ClusterSnapshot#EMPTY}
+     */
+    public ClusterSnapshot getClusterSnapshot() {
+        return clusterSnapshot;
+    }
+
+    /**
+     * 输出统计报表
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("FastDFS Metrics\r\n");
+        for (CommandStats stats : getCommandStats().values()) {
+            sb.append('\t').append(stats).append("\r\n");
+        }
+        sb.append("\tserverErrors=").append(getServerErrors())
+                .append(", poolWait(p99=").append(poolWait.getPercentile(99, TimeUnit.MICROSECONDS))
+                .append("us, max=").append(poolWait.getMax(TimeUnit.MICROSECONDS))
+                .append("us), connectionsCreated=").append(getConnectionsCreated())
+                .append(", connectionsDestroyed=").append(getConnectionsDestroyed());
+        for (StorageNodeSnapshot node : clusterSnapshot.getNodes()) {
+            sb.append("\r\n\t").append(node);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 单个命令类型+服务器地址的统计
+     */
+    public static class CommandStats {
+
+        private final String command;
+
+        private final InetSocketAddress address;
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private final LongAdder errors = new LongAdder();
+
+        private final LongAdder bytesSent = new LongAdder();
+
+        private final LongAdder bytesReceived = new LongAdder();
+
+        private CommandStats(String command, InetSocketAddress address) {
+            this.command = command;
+            this.address = address;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        public InetSocketAddress getAddress() {
+            return address;
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public long getBytesSent() {
+            return bytesSent.sum();
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived.sum();
+        }
+
+        @Override
+        public String toString() {
+            return command + "@" + address +
+                    " count=" + latency.getCount() +
+                    ", errors=" + getErrors() +
+                    ", p50=" + latency.getPercentile(50, TimeUnit.MICROSECONDS) + "us" +
+                    ", p99=" + latency.getPercentile(99, TimeUnit.MICROSECONDS) + "us" +
+                    ", p999=" + latency.getPercentile(99.9, TimeUnit.MICROSECONDS) + "us" +
+                    ", max=" + latency.getMax(TimeUnit.MICROSECONDS) + "us" +
+                    ", bytesSent=" + getBytesSent() +
+                    ", bytesReceived=" + getBytesReceived();
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+package cn.novelweb.tool.upload.fastdfs.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>FastDFS集群状态快照(不可变)</p>
+ * <p>由{@link cn.novelweb.tool.upload.fastdfs.client.ClusterStateMonitor}定时查询Tracker生成,
+ * 包含每个组每个存储节点的剩余空间、同步延迟、上传/下载累计计数及两次快照之间的速率</p>
+ * <p>2026-10-18 21:30</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public final class ClusterSnapshot {
+
+    /**
+     * 空快照
+     */
+    public static final ClusterSnapshot EMPTY = new ClusterSnapshot(0, Collections.emptyMap());
+
+    /**
+     * 快照时间(毫秒)
+     */
+    private final long time;
+
+    /**
+     * 组名称 -> 存储节点
+     */
+    private final Map<String, List<StorageNodeSnapshot>> groups;
+
+    private ClusterSnapshot(long time, Map<String, List<StorageNodeSnapshot>> groups) {
+        this.time = time;
+        this.groups = groups;
+    }
+
+    /**
+     * 根据Tracker返回的状态创建快照
+     *
+     * @param time     快照时间(毫秒)
+     * @param states   组名称 -> 存储节点状态
+     * @param previous 上一次快照, 用于计算速率, 没有时为null
+     * @return 快照
+     */
+    public static ClusterSnapshot of(long time, Map<String, List<StorageState>> states, ClusterSnapshot previous) {
+        Map<String, StorageNodeSnapshot> previousNodes = new HashMap<>(16);
+        long elapsedMillis = 0;
+        if (null != previous) {
+            for (List<StorageNodeSnapshot> nodes : previous.groups.values()) {
+                for (StorageNodeSnapshot node : nodes) {
+                    previousNodes.put(node.getKey(), node);
+                }
+            }
+            elapsedMillis = time - previous.time;
+        }
+        Map<String, List<StorageNodeSnapshot>> groups = new LinkedHashMap<>(states.size() * 2);
+        for (Map.Entry<String, List<StorageState>> entry : states.entrySet()) {
+            String groupName = entry.getKey();
+            List<StorageState> storages = entry.getValue();
+            List<StorageNodeSnapshot> nodes = new ArrayList<>(storages.size());
+            for (StorageState state : storages) {
+                nodes.add(new StorageNodeSnapshot(groupName, state, syncLagSeconds(state, storages),
+                        previousNodes.get(StorageNodeSnapshot.key(groupName, state.getIpAddr(), state.getStoragePort())),
+                        elapsedMillis));
+            }
+            groups.put(groupName, Collections.unmodifiableList(nodes));
+        }
+        return new ClusterSnapshot(time, Collections.unmodifiableMap(groups));
+    }
+
+    /**
+     * 计算同步延迟: 组内其他节点最后一次写入源文件的时间与本节点已同步到的时间之差<br/>
+     * 只与其他节点比较, 只有本节点接收上传时不会因为没有可同步的文件被当作延迟
+     */
+    private static long syncLagSeconds(StorageState state, List<StorageState> storages) {
+        long synced = seconds(state.getLastSyncedTimestamp());
+        long lag = 0;
+        for (StorageState other : storages) {
+            if (other == state) {
+                continue;
+            }
+            long sourceUpdate = seconds(other.getLastSourceUpdate());
+            if (sourceUpdate > synced) {
+                lag = Math.max(lag, sourceUpdate - synced);
+            }
+        }
+        return lag;
+    }
+
+    private static long seconds(Date date) {
+        return null == date ? 0 : date.getTime() / 1000;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public Set<String> getGroupNames() {
+        return groups.keySet();
+    }
+
+    /**
+     * 获取组内的存储节点
+     *
+     * @param groupName 组名称
+     * @return 存储节点, 组不存在时返回空集合
+     */
+    public List<StorageNodeSnapshot> getNodes(String groupName) {
+        List<StorageNodeSnapshot> nodes = groups.get(groupName);
+        return null == nodes ? Collections.emptyList() : nodes;
+    }
+
+    /**
+     * 获取所有存储节点
+     */
+    public List<StorageNodeSnapshot> getNodes() {
+        List<StorageNodeSnapshot> nodes = new ArrayList<>();
+        for (List<StorageNodeSnapshot> groupNodes : groups.values()) {
+            nodes.addAll(groupNodes);
+        }
+        return nodes;
+    }
+
+    /**
+     * 组的可用空间(MB): 文件会同步到组内所有节点, 取在线节点中剩余空间最小的
+     *
+     * @param groupName 组名称
+     * @return 可用空间, 没有在线节点时为0
+     */
+    public long getFreeMb(String groupName) {
+        long freeMb = -1;
+        for (StorageNodeSnapshot node : getNodes(groupName)) {
+            if (node.isActive() && (freeMb < 0 || node.getFreeMb() < freeMb)) {
+                freeMb = node.getFreeMb();
+            }
+        }
+        return Math.max(0, freeMb);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("ClusterSnapshot@").append(time);
+        for (List<StorageNodeSnapshot> nodes : groups.values()) {
+            for (StorageNodeSnapshot node : nodes) {
+                sb.append("\r\n\t").append(node);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,55 @@
+package cn.novelweb.tool.upload.fastdfs.model;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>上传图片及缩略图的结果</p>
+ * <p>2026-10-18 23:50</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public class ImageUploadResult {
+
+    /**
+     * 原图(主文件)的存储路径
+     */
+    private final StorePath master;
+
+    /**
+     * 缩略图前缀 -> 缩略图(从文件)的存储路径, 上传失败的为null
+     */
+    private final Map<String, StorePath> thumbnails;
+
+    public ImageUploadResult(StorePath master, Map<String, StorePath> thumbnails) {
+        this.master = master;
+        this.thumbnails = Collections.unmodifiableMap(new LinkedHashMap<>(thumbnails));
+    }
+
+    public StorePath getMaster() {
+        return master;
+    }
+
+    /**
+     * 获取全部缩略图, 按缩略图尺寸的配置顺序排列
+     */
+    public Map<String, StorePath> getThumbnails() {
+        return thumbnails;
+    }
+
+    /**
+     * 获取指定前缀的缩略图
+     *
+     * @param prefix 从文件前缀
+     * @return 缩略图的存储路径, 不存在或上传失败返回null
+     */
+    public StorePath getThumbnail(String prefix) {
+        return thumbnails.get(prefix);
+    }
+
+    @Override
+    public String toString() {
+        return "ImageUploadResult{master=" + master + ", thumbnails=" + thumbnails + '}';
+    }
+}
@@ -0,0 +1,207 @@
+package cn.novelweb.tool.upload.fastdfs.model;
+
+import cn.novelweb.tool.upload.fastdfs.constant.StatusConstants;
+
+import java.net.InetSocketAddress;
+
+/**
+ * <p>集群状态快照中的单个存储节点(不可变)</p>
+ * <p>速率为与上一次快照中同一节点累计计数的差值除以间隔时间, 没有上一次快照或节点重启(计数变小)时为0</p>
+ * <p>2026-10-18 21:30</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public final class StorageNodeSnapshot {
+
+    private final String groupName;
+
+    private final String ip;
+
+    private final int port;
+
+    /**
+     * 存储节点状态, 见{@link StatusConstants}
+     */
+    private final byte status;
+
+    private final long totalMb;
+
+    private final long freeMb;
+
+    private final int uploadPriority;
+
+    private final int storePathCount;
+
+    /**
+     * 当前写入的存储路径索引
+     */
+    private final int currentWritePath;
+
+    /**
+     * 同步延迟(秒): 组内其他节点最后一次写入源文件的时间与本节点已同步到的时间之差
+     */
+    private final long syncLagSeconds;
+
+    private final long successUploadCount;
+
+    private final long successDownloadCount;
+
+    private final long successUploadBytes;
+
+    private final long successDownloadBytes;
+
+    private final double uploadBytesPerSecond;
+
+    private final double downloadBytesPerSecond;
+
+    private final double uploadsPerSecond;
+
+    private final double downloadsPerSecond;
+
+    /**
+     * 创建节点快照
+     *
+     * @param groupName      组名称
+     * @param state          Tracker返回的存储节点状态
+     * @param syncLagSeconds 同步延迟(秒)
+     * @param previous       上一次快照中的同一节点, 没有时为null
+     * @param elapsedMillis  与上一次快照的间隔(毫秒)
+     */
+    public StorageNodeSnapshot(String groupName, StorageState state, long syncLagSeconds,
+                               StorageNodeSnapshot previous, long elapsedMillis) {
+        this.groupName = groupName;
+        this.ip = state.getIpAddr();
+        this.port = state.getStoragePort();
+        this.status = state.getStatus();
+        this.totalMb = state.getToTalMb();
+        this.freeMb = state.getFreeMb();
+        this.uploadPriority = state.getUploadPriority();
+        this.storePathCount = state.getStorePathCount();
+        this.currentWritePath = state.getCurrentWritePath();
+        this.syncLagSeconds = syncLagSeconds;
+        this.successUploadCount = state.getSuccessUploadCount();
+        this.successDownloadCount = state.getSuccessDownloadCount();
+        this.successUploadBytes = state.getSuccessUploadBytes();
+        this.successDownloadBytes = state.getSuccessDownloadBytes();
+        boolean hasPrevious = null != previous && elapsedMillis > 0;
+        this.uploadBytesPerSecond = hasPrevious ? rate(successUploadBytes, previous.successUploadBytes, elapsedMillis) : 0;
+        this.downloadBytesPerSecond = hasPrevious ? rate(successDownloadBytes, previous.successDownloadBytes, elapsedMillis) : 0;
+        this.uploadsPerSecond = hasPrevious ? rate(successUploadCount, previous.successUploadCount, elapsedMillis) : 0;
+        this.downloadsPerSecond = hasPrevious ? rate(successDownloadCount, previous.successDownloadCount, elapsedMillis) : 0;
+    }
+
+    private static double rate(long current, long previous, long elapsedMillis) {
+        return current < previous ? 0 : (current - previous) * 1000.0 / elapsedMillis;
+    }
+
+    /**
+     * 节点标识(组名称/IP:端口)
+     */
+    public String getKey() {
+        return key(groupName, ip, port);
+    }
+
+    static String key(String groupName, String ip, int port) {
+        return groupName + "/" + ip + ":" + port;
+    }
+
+    public InetSocketAddress getInetSocketAddress() {
+        return new InetSocketAddress(ip, port);
+    }
+
+    /**
+     * 是否为在线状态
+     */
+    public boolean isActive() {
+        return status == StatusConstants.DFS_STORAGE_STATUS_ACTIVE;
+    }
+
+    /**
+     * 剩余空间百分比, 总空间未知时为0
+     */
+    public double getFreePercent() {
+        return totalMb <= 0 ? 0 : freeMb * 100.0 / totalMb;
+    }
+
+    public String getGroupName() {
+        return groupName;
+    }
+
+    public String getIp() {
+        return ip;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public byte getStatus() {
+        return status;
+    }
+
+    public long getTotalMb() {
+        return totalMb;
+    }
+
+    public long getFreeMb() {
+        return freeMb;
+    }
+
+    public int getUploadPriority() {
+        return uploadPriority;
+    }
+
+    public int getStorePathCount() {
+        return storePathCount;
+    }
+
+    public int getCurrentWritePath() {
+        return currentWritePath;
+    }
+
+    public long getSyncLagSeconds() {
+        return syncLagSeconds;
+    }
+
+    public long getSuccessUploadCount() {
+        return successUploadCount;
+    }
+
+    public long getSuccessDownloadCount() {
+        return successDownloadCount;
+    }
+
+    public long getSuccessUploadBytes() {
+        return successUploadBytes;
+    }
+
+    public long getSuccessDownloadBytes() {
+        return successDownloadBytes;
+    }
+
+    public double getUploadBytesPerSecond() {
+        return uploadBytesPerSecond;
+    }
+
+    public double getDownloadBytesPerSecond() {
+        return downloadBytesPerSecond;
+    }
+
+    public double getUploadsPerSecond() {
+        return uploadsPerSecond;
+    }
+
+    public double getDownloadsPerSecond() {
+        return downloadsPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return getKey() +
+                " status=" + status +
+                ", freeMb=" + freeMb + "/" + totalMb +
+                ", syncLag=" + syncLagSeconds + "s" +
+                ", upload=" + String.format("%.1f/s %.0fB/s", uploadsPerSecond, uploadBytesPerSecond) +
+                ", download=" + String.format("%.1f/s %.0fB/s", downloadsPerSecond, downloadBytesPerSecond);
+    }
+}
@@ -0,0 +1,119 @@
+package cn.novelweb.tool.upload.fastdfs.model;
+
+import cn.novelweb.tool.upload.fastdfs.constant.OtherConstants;
+import org.apache.commons.lang.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>缩略图尺寸(不可变)</p>
+ * <p>缩略图作为原图的从文件上传, 从文件名 = 原图文件名 + 前缀 + 扩展名, 同一原图的缩略图前缀不能重复</p>
+ * <p>2026-10-18 23:50</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public final class ThumbnailSize {
+
+    /**
+     * 从文件前缀(如: _150x150)
+     */
+    private final String prefix;
+
+    private final int width;
+
+    private final int height;
+
+    /**
+     * 是否居中裁剪为指定宽高, 为false时保持宽高比缩放到不超过指定宽高
+     */
+    private final boolean crop;
+
+    /**
+     * 保持宽高比缩放, 前缀为 _宽x高
+     *
+     * @param width  最大宽度
+     * @param height 最大高度
+     */
+    public ThumbnailSize(int width, int height) {
+        this("_" + width + "x" + height, width, height, false);
+    }
+
+    /**
+     * @param prefix 从文件前缀(不超过16个字节)
+     * @param width  宽度
+     * @param height 高度
+     * @param crop   是否居中裁剪为指定宽高
+     */
+    public ThumbnailSize(String prefix, int width, int height, boolean crop) {
+        if (StringUtils.isBlank(prefix) || prefix.getBytes(StandardCharsets.UTF_8).length > OtherConstants.DFS_FILE_PREFIX_MAX_LEN) {
+            throw new IllegalArgumentException("缩略图前缀不能为空且不能超过" + OtherConstants.DFS_FILE_PREFIX_MAX_LEN + "个字节: " + prefix);
+        }
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("缩略图宽高必须大于0: " + width + "x" + height);
+        }
+        this.prefix = prefix;
+        this.width = width;
+        this.height = height;
+        this.crop = crop;
+    }
+
+    /**
+     * 解析缩略图尺寸配置, 多个用“,”隔开, 格式为 宽x高 或 前缀:宽x高 (如: 150x150,_big:800x600)
+     *
+     * @param sizes 缩略图尺寸配置
+     * @param crop  是否居中裁剪为指定宽高
+     * @return 缩略图尺寸
+     */
+    public static List<ThumbnailSize> parse(String sizes, boolean crop) {
+        List<ThumbnailSize> list = new ArrayList<>();
+        if (StringUtils.isBlank(sizes)) {
+            return list;
+        }
+        for (String size : StringUtils.split(sizes, ",")) {
+            if (StringUtils.isBlank(size)) {
+                continue;
+            }
+            String spec = size.trim();
+            int colon = spec.indexOf(':');
+            String dimension = colon < 0 ? spec : spec.substring(colon + 1).trim();
+            int x = dimension.toLowerCase().indexOf('x');
+            if (x <= 0) {
+                throw new IllegalArgumentException("缩略图尺寸格式不正确: " + spec);
+            }
+            int width;
+            int height;
+            try {
+                width = Integer.parseInt(dimension.substring(0, x).trim());
+                height = Integer.parseInt(dimension.substring(x + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("缩略图尺寸格式不正确: " + spec);
+            }
+            String prefix = colon < 0 ? "_" + width + "x" + height : spec.substring(0, colon).trim();
+            list.add(new ThumbnailSize(prefix, width, height, crop));
+        }
+        return list;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean isCrop() {
+        return crop;
+    }
+
+    @Override
+    public String toString() {
+        return prefix + "(" + width + "x" + height + (crop ? ", crop" : "") + ")";
+    }
+}
@@ -0,0 +1,101 @@
+package cn.novelweb.tool.upload.fastdfs.model;
+
+import java.io.File;
+import java.io.InputStream;
+
+/**
+ * <p>批量上传的单个文件</p>
+ * <p>本地文件通过FileChannel.transferTo零拷贝发送, 输入流在上传时按文件大小读取</p>
+ * <p>2026-10-18 19:00</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public class UploadItem {
+
+    /**
+     * 本地文件
+     */
+    private final File file;
+
+    /**
+     * 文件输入流
+     */
+    private final InputStream inputStream;
+
+    /**
+     * 文件大小
+     */
+    private final long fileSize;
+
+    /**
+     * 文件扩展名
+     */
+    private final String fileExtName;
+
+    /**
+     * 上传本地文件, 扩展名取自文件名称
+     *
+     * @param file 本地文件
+     */
+    public UploadItem(File file) {
+        this(file, extName(file.getName()));
+    }
+
+    /**
+     * 上传本地文件
+     *
+     * @param file        本地文件
+     * @param fileExtName 文件扩展名
+     */
+    public UploadItem(File file, String fileExtName) {
+        this.file = file;
+        this.inputStream = null;
+        this.fileSize = file.length();
+        this.fileExtName = fileExtName;
+    }
+
+    /**
+     * 上传输入流
+     *
+     * @param inputStream 文件输入流
+     * @param fileSize    文件大小
+     * @param fileExtName 文件扩展名
+     */
+    public UploadItem(InputStream inputStream, long fileSize, String fileExtName) {
+        this.file = null;
+        this.inputStream = inputStream;
+        this.fileSize = fileSize;
+        this.fileExtName = fileExtName;
+    }
+
+    private static String extName(String fileName) {
+        int index = fileName.lastIndexOf('.');
+        return index < 0 ? "" : fileName.substring(index + 1);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public String getFileExtName() {
+        return fileExtName;
+    }
+
+    @Override
+    public String toString() {
+        return "UploadItem{" +
+                "file=" + file +
+                ", fileSize=" + fileSize +
+                ", fileExtName='" + fileExtName + '\'' +
+                '}';
+    }
+
+}
@@ -15,6 +15,17 @@ import java.net.InetSocketAddress;
  * @author LiZW
  **/
 public class ConnectionPool extends GenericKeyedObjectPool<InetSocketAddress, Connection> {
+
+    /**
+     * 默认并行验证空闲连接的线程数
+     */
+    private static final int DEFAULT_VALIDATE_PARALLELISM = 4;
+
+    /**
+     * 后台验证空闲连接
+     */
+    private volatile IdleConnectionValidator idleConnectionValidator;
+
     /**
      * 默认构造函数
      */
@@ -28,4 +39,47 @@ public class ConnectionPool extends GenericKeyedObjectPool<InetSocketAddress, Co
     public ConnectionPool(KeyedPooledObjectFactory<InetSocketAddress, Connection> factory) {
         super(factory);
     }
-}
\ No newline at end of file
+
+    /**
+     * 开始在后台验证空闲超过指定时间的连接
+     *
+     * @param idleMillis 空闲超过该时间(毫秒)的连接需要验证, 小于等于0时停止验证
+     */
+    public void startIdleValidation(long idleMillis) {
+        startIdleValidation(idleMillis, DEFAULT_VALIDATE_PARALLELISM);
+    }
+
+    /**
+     * 开始在后台验证空闲超过指定时间的连接
+     *
+     * @param idleMillis  空闲超过该时间(毫秒)的连接需要验证, 小于等于0时停止验证
+     * @param parallelism 并行验证的线程数
+     */
+    public synchronized void startIdleValidation(long idleMillis, int parallelism) {
+        if (null != idleConnectionValidator) {
+            idleConnectionValidator.close();
+            idleConnectionValidator = null;
+        }
+        if (idleMillis > 0) {
+            idleConnectionValidator = new IdleConnectionValidator(this, idleMillis, parallelism);
+        }
+    }
+
+    /**
+     * 获取后台验证空闲连接对象, 未开启时返回null
+     */
+    public IdleConnectionValidator getIdleConnectionValidator() {
+        return idleConnectionValidator;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (null != idleConnectionValidator) {
+                idleConnectionValidator.close();
+                idleConnectionValidator = null;
+            }
+        }
+        super.close();
+    }
+}
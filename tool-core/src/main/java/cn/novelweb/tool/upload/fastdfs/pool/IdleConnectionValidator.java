@@ -0,0 +1,179 @@
+package cn.novelweb.tool.upload.fastdfs.pool;
+
+import cn.novelweb.tool.upload.fastdfs.conn.Connection;
+import cn.novelweb.tool.upload.fastdfs.utils.Log;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectState;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>后台验证空闲连接</p>
+ * <p>定时扫描连接池, 只对空闲时间超过阈值且距上次验证也超过阈值的连接发送ACTIVE_TEST, 多个连接在独立的线程池中并行验证,
+ * 某个存储节点无响应时不会拖慢其他连接及其他连接池的验证; 验证失败的连接直接从连接池中移除, 借出连接时不再需要验证(testOnBorrow)</p>
+ * <p>验证期间连接处于连接池的回收检测状态(EVICTION), 借出线程直接使用其他空闲连接或新建连接, 不需要等待验证完成</p>
+ * <p>2026-10-18 16:50</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+@Slf4j
+public class IdleConnectionValidator implements Closeable {
+
+    private static final AtomicInteger THREAD_INDEX = new AtomicInteger();
+
+    private final ConnectionPool pool;
+
+    private final PooledConnectionFactory factory;
+
+    /**
+     * 空闲超过该时间(毫秒)的连接需要验证
+     */
+    private final long idleMillis;
+
+    /**
+     * 扫描及验证线程
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * 连接最后一次验证通过的时间
+     */
+    private final Map<PooledObject<Connection>, Long> lastValidatedTime = new ConcurrentHashMap<>();
+
+    /**
+     * 已提交验证的连接
+     */
+    private final Set<PooledObject<Connection>> validating = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 验证次数
+     */
+    private final LongAdder validatedCount = new LongAdder();
+
+    /**
+     * 验证失败被移除的连接数
+     */
+    private final LongAdder failedCount = new LongAdder();
+
+    /**
+     * @param pool        连接池
+     * @param idleMillis  空闲超过该时间(毫秒)的连接需要验证
+     * @param parallelism 并行验证的线程数
+     */
+    public IdleConnectionValidator(ConnectionPool pool, long idleMillis, int parallelism) {
+        if (!(pool.getFactory() instanceof PooledConnectionFactory)) {
+            throw new IllegalArgumentException("连接池必须使用PooledConnectionFactory创建连接");
+        }
+        if (idleMillis <= 0) {
+            throw new IllegalArgumentException("空闲时间必须大于0");
+        }
+        this.pool = pool;
+        this.factory = (PooledConnectionFactory) pool.getFactory();
+        this.idleMillis = idleMillis;
+        this.executor = Executors.newScheduledThreadPool(Math.max(1, parallelism), r -> {
+            Thread thread = new Thread(r, "fastdfs-idle-validator-" + THREAD_INDEX.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1000, idleMillis / 2);
+        this.executor.scheduleWithFixedDelay(this::scan, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 扫描空闲时间超过阈值的连接, 提交到线程池并行验证
+     */
+    private void scan() {
+        try {
+            long now = System.currentTimeMillis();
+            Map<PooledObject<Connection>, InetSocketAddress> pooledObjects = factory.getPooledObjects();
+            for (Map.Entry<PooledObject<Connection>, InetSocketAddress> entry : pooledObjects.entrySet()) {
+                PooledObject<Connection> p = entry.getKey();
+                if (p.getState() != PooledObjectState.IDLE || p.getIdleTimeMillis() < idleMillis
+                        || now - lastValidatedTime.getOrDefault(p, 0L) < idleMillis || !validating.add(p)) {
+                    continue;
+                }
+                try {
+                    executor.execute(() -> validate(entry.getValue(), p));
+                } catch (RejectedExecutionException e) {
+                    validating.remove(p);
+                    return;
+                }
+            }
+            // 清理已经销毁的连接
+            lastValidatedTime.keySet().retainAll(pooledObjects.keySet());
+        } catch (Throwable e) {
+            log.error("扫描空闲连接异常", e);
+        }
+    }
+
+    /**
+     * 验证连接, 验证失败时从连接池中移除
+     */
+    private void validate(InetSocketAddress key, PooledObject<Connection> p) {
+        try {
+            // 扫描后已被借出或正在被连接池的回收线程检测
+            if (!p.startEvictionTest()) {
+                return;
+            }
+            boolean valid = p.getObject().isValid();
+            validatedCount.increment();
+            if (!valid) {
+                failedCount.increment();
+                lastValidatedTime.remove(p);
+                Log.debug("空闲连接验证失败, 从连接池中移除[{}]", key);
+                pool.invalidateObject(key, p.getObject());
+                return;
+            }
+            lastValidatedTime.put(p, System.currentTimeMillis());
+            Deque<PooledObject<Connection>> returned = new ArrayDeque<>(1);
+            // 验证期间有线程尝试借出该连接时, 连接已从空闲队列中取出, 需要重新归还到连接池
+            if (!p.endEvictionTest(returned) && !returned.isEmpty() && p.allocate()) {
+                pool.returnObject(key, p.getObject());
+            }
+        } catch (Exception e) {
+            Log.debug("验证空闲连接失败[{}], {}", key, e.getMessage());
+        } finally {
+            validating.remove(p);
+        }
+    }
+
+    /**
+     * 停止后台验证
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    public long getIdleMillis() {
+        return idleMillis;
+    }
+
+    /**
+     * 获取验证次数
+     */
+    public long getValidatedCount() {
+        return validatedCount.sum();
+    }
+
+    /**
+     * 获取验证失败被移除的连接数
+     */
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+}
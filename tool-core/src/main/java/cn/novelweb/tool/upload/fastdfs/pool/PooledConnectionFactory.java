@@ -2,6 +2,8 @@ package cn.novelweb.tool.upload.fastdfs.pool;
 
 import cn.novelweb.tool.upload.fastdfs.conn.Connection;
 import cn.novelweb.tool.upload.fastdfs.conn.SocketConnection;
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsUnavailableException;
+import cn.novelweb.tool.upload.fastdfs.metrics.FastDfsMetrics;
 import cn.novelweb.tool.upload.fastdfs.utils.Log;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.pool2.BaseKeyedPooledObjectFactory;
@@ -10,6 +12,9 @@ import org.apache.commons.pool2.impl.DefaultPooledObject;
 
 import java.net.InetSocketAddress;
 import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 定义了被池化的对象的创建，初始化，激活，钝化以及销毁功能<br/>
@@ -45,6 +50,16 @@ public class PooledConnectionFactory extends BaseKeyedPooledObjectFactory<InetSo
      */
     private Charset charset;
 
+    /**
+     * 当前连接池中的所有连接及其对应的Key
+     */
+    private final Map<PooledObject<Connection>, InetSocketAddress> pooledObjects = new ConcurrentHashMap<>();
+
+    /**
+     * 监控指标
+     */
+    private volatile FastDfsMetrics metrics = FastDfsMetrics.NOOP;
+
     public PooledConnectionFactory(int soTimeout, int connectTimeout, Charset charset) {
         this.soTimeout = soTimeout;
         this.connectTimeout = connectTimeout;
@@ -66,6 +81,7 @@ public class PooledConnectionFactory extends BaseKeyedPooledObjectFactory<InetSo
         }
         SocketConnection connection = new SocketConnection(address, soTimeout, connectTimeout, charset);
         Log.debug("新建连接[{}]", address);
+        metrics.connectionCreated(address);
         return connection;
     }
 
@@ -77,9 +93,38 @@ public class PooledConnectionFactory extends BaseKeyedPooledObjectFactory<InetSo
         return new DefaultPooledObject<Connection>(conn);
     }
 
+    /**
+     * 创建池化对象, 并记录对象对应的Key供后台验证空闲连接使用
+     */
+    @Override
+    public PooledObject<Connection> makeObject(InetSocketAddress key) throws Exception {
+        PooledObject<Connection> p = super.makeObject(key);
+        pooledObjects.put(p, key);
+        return p;
+    }
+
+    /**
+     * 借出连接前激活, 连接已被关闭则借出失败(连接池会销毁该连接并重新获取)
+     */
+    @Override
+    public void activateObject(InetSocketAddress key, PooledObject<Connection> p) throws Exception {
+        if (p.getObject().isClosed()) {
+            throw new FastDfsUnavailableException("连接已关闭:" + key);
+        }
+    }
+
+    /**
+     * 销毁连接
+     */
     @Override
     public void destroyObject(InetSocketAddress key, PooledObject<Connection> p) throws Exception {
-        p.getObject().close();
+        pooledObjects.remove(p);
+        metrics.connectionDestroyed(key);
+        Connection conn = p.getObject();
+        if (conn.isClosed()) {
+            return;
+        }
+        conn.close();
         Log.debug("关闭连接[{}]", key);
     }
 
@@ -96,6 +141,20 @@ public class PooledConnectionFactory extends BaseKeyedPooledObjectFactory<InetSo
         return flag;
     }
 
+    /**
+     * 获取当前连接池中的所有连接及其对应的Key
+     */
+    public Map<PooledObject<Connection>, InetSocketAddress> getPooledObjects() {
+        return Collections.unmodifiableMap(pooledObjects);
+    }
+
+    /**
+     * 设置监控指标, 为null时不记录
+     */
+    public void setMetrics(FastDfsMetrics metrics) {
+        this.metrics = null == metrics ? FastDfsMetrics.NOOP : metrics;
+    }
+
     public int getSoTimeout() {
         return soTimeout;
     }
@@ -1,29 +1,70 @@
 package cn.novelweb.tool.upload.fastdfs.pool;
 
 import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>管理TrackerAddress当前状态</p>
+ * <p>记录请求耗时与错误率的指数加权移动平均(EWMA)以及进行中的请求数, 用于选择负载最低的地址,
+ * 所有字段都可以被多个线程无锁并发读写</p>
  * <p>2020-02-03 17:26</p>
  *
  * @author LiZW
  **/
 public class TrackerAddressState {
 
+    /**
+     * EWMA平滑系数, 越大越偏向最近的请求
+     */
+    private static final double EWMA_ALPHA = 0.2;
+
+    /**
+     * 错误率上限, 避免错误率为1时代价无穷大
+     */
+    private static final double MAX_ERROR_RATE = 0.95;
+
     /**
      * 连接地址
      */
-    private InetSocketAddress address;
+    private final InetSocketAddress address;
 
     /**
      * 当前是否有效 默认有效
      */
-    private boolean available;
+    private volatile boolean available;
 
     /**
      * 上次无效时间
      */
-    private long lastUnavailableTime;
+    private volatile long lastUnavailableTime;
+
+    /**
+     * 请求耗时EWMA(纳秒, 以double的bit形式保存)
+     */
+    private final AtomicLong latencyBits = new AtomicLong(Double.doubleToRawLongBits(0));
+
+    /**
+     * 错误率EWMA(以double的bit形式保存)
+     */
+    private final AtomicLong errorRateBits = new AtomicLong(Double.doubleToRawLongBits(0));
+
+    /**
+     * 上次完成请求的时间(纳秒)
+     */
+    private volatile long lastCompletedTime = System.nanoTime();
+
+    /**
+     * 进行中的请求数
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * 是否正在主动探测
+     */
+    private final AtomicBoolean probing = new AtomicBoolean();
 
     /**
      * 构造函数
@@ -42,19 +83,84 @@ public class TrackerAddressState {
      * @param retryAfterSecond n秒后可以重试
      */
     public boolean canTryToConnect(int retryAfterSecond) {
-        return available || (System.currentTimeMillis() - lastUnavailableTime) > (retryAfterSecond * 1000);
+        return available || (System.currentTimeMillis() - lastUnavailableTime) > (retryAfterSecond * 1000L);
     }
 
     /**
      * 设置连接是否有效
      *
      * @param available true有效，false无效
+     * @return 状态是否由有效变为无效
      */
-    public void setAvailable(boolean available) {
-        this.available = available;
+    public boolean setAvailable(boolean available) {
+        boolean becameUnavailable = !available && this.available;
         if (!available) {
             this.lastUnavailableTime = System.currentTimeMillis();
         }
+        this.available = available;
+        return becameUnavailable;
+    }
+
+    /**
+     * 开始一次请求
+     */
+    public void requestStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * 完成一次请求
+     *
+     * @param elapsedNanos 请求耗时(纳秒)
+     * @param success      是否成功(服务端返回错误状态也视为成功, 只有连接/IO异常视为失败)
+     */
+    public void requestCompleted(long elapsedNanos, boolean success) {
+        inFlight.decrementAndGet();
+        lastCompletedTime = System.nanoTime();
+        update(latencyBits, elapsedNanos);
+        update(errorRateBits, success ? 0 : 1);
+    }
+
+    /**
+     * 选择地址时的代价, 越小越优先<br/>
+     * 代价 = 平均耗时 * 衰减系数 * (进行中的请求数 + 1) / (1 - 错误率)<br/>
+     * 衰减时间常数与不可用地址的重试间隔相同: 长时间未被选中的慢地址代价逐渐降低, 负载变化后有机会重新被选中,
+     * 而不会因为短暂空闲几秒就丢失耗时统计
+     *
+     * @param retryAfterSecond 不可用地址的重试间隔(秒), 作为耗时统计的衰减时间常数
+     */
+    public double getCost(int retryAfterSecond) {
+        double decayNanos = TimeUnit.SECONDS.toNanos(Math.max(1, retryAfterSecond));
+        double decay = Math.exp(-(System.nanoTime() - lastCompletedTime) / decayNanos);
+        double errorRate = Math.min(getErrorRate(), MAX_ERROR_RATE);
+        return (getLatencyNanos() * decay + 1) * (inFlight.get() + 1) / (1 - errorRate);
+    }
+
+    /**
+     * 按EWMA更新统计值
+     */
+    private static void update(AtomicLong bits, double sample) {
+        long prev;
+        long next;
+        do {
+            prev = bits.get();
+            double value = Double.longBitsToDouble(prev);
+            next = Double.doubleToRawLongBits(value + EWMA_ALPHA * (sample - value));
+        } while (!bits.compareAndSet(prev, next));
+    }
+
+    /**
+     * 开始主动探测, 已经在探测中返回false
+     */
+    boolean startProbing() {
+        return probing.compareAndSet(false, true);
+    }
+
+    /**
+     * 结束主动探测
+     */
+    void stopProbing() {
+        probing.set(false);
     }
 
     public boolean isAvailable() {
@@ -69,12 +175,27 @@ public class TrackerAddressState {
         return lastUnavailableTime;
     }
 
+    public double getLatencyNanos() {
+        return Double.longBitsToDouble(latencyBits.get());
+    }
+
+    public double getErrorRate() {
+        return Double.longBitsToDouble(errorRateBits.get());
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
     @Override
     public String toString() {
         return "TrackerAddressState{" +
                 "address=" + address +
                 ", available=" + available +
                 ", lastUnavailableTime=" + lastUnavailableTime +
+                ", latencyMillis=" + String.format("%.2f", getLatencyNanos() / 1000000) +
+                ", errorRate=" + String.format("%.3f", getErrorRate()) +
+                ", inFlight=" + inFlight.get() +
                 '}';
     }
 
@@ -1,18 +1,22 @@
 package cn.novelweb.tool.upload.fastdfs.pool;
 
+import cn.novelweb.tool.upload.fastdfs.conn.SocketConnection;
 import cn.novelweb.tool.upload.fastdfs.exception.FastDfsUnavailableException;
 import cn.novelweb.tool.upload.fastdfs.utils.Log;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
 
 import java.net.InetSocketAddress;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 表示Tracker服务器位置<br/>
- * 支持负载均衡对IP轮询<br/>
+ * 按"两次随机选择"(power of two choices)负载均衡: 随机取两个可用地址, 选择耗时/错误率/进行中请求数综合代价较小的一个<br/>
+ * 地址不可用后由后台线程定时发送ACTIVE_TEST主动探测, 恢复后立即重新参与选择<br/>
  * <p>2020-02-03 17:27</p>
  *
  * @author LiZW
@@ -21,24 +25,44 @@ import java.util.Set;
 public class TrackerLocator {
 
     /**
-     * 连接不可经过10分钟以后重试连接
+     * 连接不可用且没有主动探测恢复时, 经过30秒以后重试连接
      */
-    private static final int DEFAULT_RETRY_AFTER_SECOND = 10 * 60;
+    private static final int DEFAULT_RETRY_AFTER_SECOND = 30;
+
+    /**
+     * 默认主动探测间隔(毫秒)
+     */
+    private static final int DEFAULT_PROBE_INTERVAL_MILLIS = 2000;
+
+    /**
+     * 默认主动探测超时时间(毫秒)
+     */
+    private static final int DEFAULT_PROBE_TIMEOUT_MILLIS = 3000;
 
     /**
      * 连接中断以后经过N秒后可以重试
      */
-    private int retryAfterSecond = DEFAULT_RETRY_AFTER_SECOND;
+    private volatile int retryAfterSecond = DEFAULT_RETRY_AFTER_SECOND;
+
+    /**
+     * 主动探测间隔(毫秒), 小于等于0时不探测
+     */
+    private volatile int probeIntervalMillis = DEFAULT_PROBE_INTERVAL_MILLIS;
 
     /**
-     * 方便随意快速读取
+     * 主动探测的连接/读取超时时间(毫秒)
      */
-    private Map<String, TrackerAddressState> trackerAddressMap = new HashMap<String, TrackerAddressState>();
+    private volatile int probeTimeoutMillis = DEFAULT_PROBE_TIMEOUT_MILLIS;
 
     /**
-     * 轮询圈(用户轮询获取连接地址)
+     * 方便随意快速读取(初始化后不再修改)
      */
-    private CircularList<TrackerAddressState> trackerAddressCircular = new CircularList<TrackerAddressState>();
+    private final Map<String, TrackerAddressState> trackerAddressMap = new HashMap<String, TrackerAddressState>();
+
+    /**
+     * 所有地址(初始化后不再修改)
+     */
+    private final TrackerAddressState[] trackerAddresses;
 
     /**
      * 初始化Tracker服务器地址
@@ -46,6 +70,7 @@ public class TrackerLocator {
      */
     public TrackerLocator(Set<String> trackerSet) {
         Log.debug("开始初始化Tracker Server地址:{}", trackerSet);
+        List<TrackerAddressState> addresses = new ArrayList<TrackerAddressState>();
         for (String addressStr : trackerSet) {
             if (StringUtils.isBlank(addressStr)) {
                 continue;
@@ -62,40 +87,65 @@ public class TrackerLocator {
                 log.warn("创建InetSocketAddress失败, Tracker Server地址[{}], 跳过此配置", addressStr);
                 continue;
             }
-            if (trackerAddressMap.get(addressStr) == null) {
+            if (trackerAddressMap.get(address.toString()) == null) {
                 TrackerAddressState holder = new TrackerAddressState(address);
-                trackerAddressCircular.add(holder);
+                addresses.add(holder);
                 trackerAddressMap.put(address.toString(), holder);
             }
         }
+        trackerAddresses = addresses.toArray(new TrackerAddressState[0]);
         if (log.isDebugEnabled()) {
             String tmp = "\r\n" +
                     "#=======================================================================================================================#\r\n" +
                     "# 初始化Tracker Server地址完毕\r\n" +
                     "#\t trackerAddressMap#keySet: " + trackerAddressMap.keySet() + "\r\n" +
-                    "#\t trackerAddressCircular: " + trackerAddressCircular + "\r\n" +
+                    "#\t trackerAddresses: " + Arrays.toString(trackerAddresses) + "\r\n" +
                     "#=======================================================================================================================#\r\n";
             Log.debug(tmp);
         }
     }
 
     /**
-     * 获取Tracker服务器地址(使用轮询)
+     * 获取Tracker服务器地址(两次随机选择, 取代价较小的可用地址)
      */
     public InetSocketAddress getTrackerAddress() {
-        TrackerAddressState holder;
-        // 遍历连接地址,抓取当前有效的地址
-        for (int i = 0; i < trackerAddressCircular.size(); i++) {
-            holder = trackerAddressCircular.next();
-            if (holder.canTryToConnect(retryAfterSecond)) {
-                return holder.getAddress();
+        TrackerAddressState[] addresses = trackerAddresses;
+        int size = addresses.length;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = nextAvailable(addresses, random.nextInt(size), -1);
+        if (first < 0) {
+            throw new FastDfsUnavailableException("找不到可用的 Tracker Server - {}" + trackerAddressMap.keySet());
+        }
+        int second = size > 1 ? nextAvailable(addresses, random.nextInt(size), first) : -1;
+        if (second < 0) {
+            return addresses[first].getAddress();
+        }
+        TrackerAddressState a = addresses[first];
+        TrackerAddressState b = addresses[second];
+        int decaySecond = retryAfterSecond;
+        return a.getCost(decaySecond) <= b.getCost(decaySecond) ? a.getAddress() : b.getAddress();
+    }
+
+    /**
+     * 从指定位置开始循环查找可用的地址
+     *
+     * @param addresses 所有地址
+     * @param from      开始位置
+     * @param exclude   需要排除的位置
+     * @return 可用地址的位置, 没有可用地址返回-1
+     */
+    private int nextAvailable(TrackerAddressState[] addresses, int from, int exclude) {
+        for (int i = 0; i < addresses.length; i++) {
+            int index = (from + i) % addresses.length;
+            if (index != exclude && addresses[index].canTryToConnect(retryAfterSecond)) {
+                return index;
             }
         }
-        throw new FastDfsUnavailableException("找不到可用的 Tracker Server - {}" + trackerAddressMap.keySet());
+        return -1;
     }
 
     /**
-     * 设置连接是否有效
+     * 设置连接是否有效, 由有效变为无效时开始主动探测
      *
      * @param address   连接地址
      * @param available true有效，false无效
@@ -106,11 +156,115 @@ public class TrackerLocator {
             Log.debug("TrackerAddressMap获取TrackerAddressState为null, key={}, 设置连接是否有效失败[{}]", address, available);
             return;
         }
-        holder.setAvailable(available);
+        if (holder.setAvailable(available)) {
+            log.warn("Tracker Server不可用: {}", address);
+            scheduleProbe(holder);
+        }
+    }
+
+    /**
+     * 开始一次请求
+     *
+     * @param address 连接地址
+     * @return 请求开始时间(纳秒), 传给{@link #requestCompleted(InetSocketAddress, long, boolean)}
+     */
+    public long requestStarted(InetSocketAddress address) {
+        TrackerAddressState holder = trackerAddressMap.get(address.toString());
+        if (holder != null) {
+            holder.requestStarted();
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * 完成一次请求, 更新耗时与错误率
+     *
+     * @param address   连接地址
+     * @param startTime 请求开始时间(纳秒)
+     * @param success   是否成功(服务端返回错误状态也视为成功, 只有连接/IO异常视为失败)
+     */
+    public void requestCompleted(InetSocketAddress address, long startTime, boolean success) {
+        TrackerAddressState holder = trackerAddressMap.get(address.toString());
+        if (holder != null) {
+            holder.requestCompleted(System.nanoTime() - startTime, success);
+        }
+    }
+
+    /**
+     * 定时探测不可用的地址, 直到恢复
+     */
+    private void scheduleProbe(TrackerAddressState holder) {
+        int interval = probeIntervalMillis;
+        if (interval <= 0 || !holder.startProbing()) {
+            return;
+        }
+        ProbeScheduler.EXECUTOR.schedule(() -> probe(holder), interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 新建连接发送ACTIVE_TEST, 成功则标记为有效, 失败则继续定时探测
+     */
+    private void probe(TrackerAddressState holder) {
+        if (holder.isAvailable()) {
+            holder.stopProbing();
+            return;
+        }
+        boolean active = false;
+        SocketConnection conn = null;
+        try {
+            conn = new SocketConnection(holder.getAddress(), probeTimeoutMillis, probeTimeoutMillis, null);
+            active = conn.isValid();
+        } catch (Throwable e) {
+            Log.debug("探测Tracker Server失败: {}, {}", holder.getAddress(), e.getMessage());
+        } finally {
+            if (conn != null) {
+                conn.close();
+            }
+        }
+        if (active) {
+            holder.setAvailable(true);
+            holder.stopProbing();
+            log.info("Tracker Server已恢复: {}", holder.getAddress());
+            return;
+        }
+        holder.setAvailable(false);
+        int interval = probeIntervalMillis;
+        if (interval <= 0) {
+            holder.stopProbing();
+            return;
+        }
+        ProbeScheduler.EXECUTOR.schedule(() -> probe(holder), interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 获取所有地址的当前状态
+     */
+    public List<TrackerAddressState> getTrackerAddressStates() {
+        return Collections.unmodifiableList(Arrays.asList(trackerAddresses));
     }
 
     public void setRetryAfterSecond(int retryAfterSecond) {
         this.retryAfterSecond = retryAfterSecond;
     }
 
+    public void setProbeIntervalMillis(int probeIntervalMillis) {
+        this.probeIntervalMillis = probeIntervalMillis;
+    }
+
+    public void setProbeTimeoutMillis(int probeTimeoutMillis) {
+        this.probeTimeoutMillis = probeTimeoutMillis;
+    }
+
+    /**
+     * 所有TrackerLocator共用的主动探测线程(守护线程, 只在有地址不可用时才有任务)
+     */
+    private static class ProbeScheduler {
+
+        private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "fastdfs-tracker-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
 }
@@ -2,12 +2,15 @@ package cn.novelweb.tool.upload.fastdfs.protocol;
 
 import cn.novelweb.tool.upload.fastdfs.conn.Connection;
 import cn.novelweb.tool.upload.fastdfs.exception.FastDfsIoException;
+import cn.novelweb.tool.upload.fastdfs.utils.ByteBufferPool;
 import cn.novelweb.tool.upload.fastdfs.utils.Log;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 
 /**
@@ -29,17 +32,54 @@ public abstract class AbstractCommand<T> implements BaseCommand<T> {
      */
     public BaseResponse<T> response;
 
+    /**
+     * 发送的字节数(报文头+请求参数+文件内容)
+     */
+    private long bytesSent;
+
+    /**
+     * 接收的字节数(报文头+报文内容)
+     */
+    private long bytesReceived;
+
+    /**
+     * 是否输出debug日志, 由命令执行器按客户端设置
+     */
+    private boolean debugLog = Log.debugLog;
+
     /**
      * 对服务端发出请求然后接收反馈
      */
     @Override
     public T execute(Connection conn) {
         // 封装socket交易 send
+        sendRequest(conn);
+        return receiveResponse(conn);
+    }
+
+    /**
+     * 只发送请求不接收反馈<br/>
+     * 管道模式下在同一连接上连续发送多个请求, 再按发送顺序调用{@link #receiveResponse(Connection)}接收反馈
+     *
+     * @param conn 连接
+     */
+    public void sendRequest(Connection conn) {
         try {
-            send(conn.getOutputStream(), conn.getCharset());
+            send(conn);
         } catch (IOException e) {
             throw new FastDfsIoException("Socket IO异常 发送消息异常", e);
         }
+    }
+
+    /**
+     * 接收反馈<br/>
+     * 服务端返回错误状态时会先读完报文体再抛出{@link cn.novelweb.tool.upload.fastdfs.exception.FastDfsServerException},
+     * 连接上的后续反馈仍然可以继续读取
+     *
+     * @param conn 连接
+     * @return 响应数据
+     */
+    public T receiveResponse(Connection conn) {
         try {
             return receive(conn.getInputStream(), conn.getCharset());
         } catch (IOException e) {
@@ -47,31 +87,132 @@ public abstract class AbstractCommand<T> implements BaseCommand<T> {
         }
     }
 
+    /**
+     * 将完整的请求报文编码为ByteBuffer(报文头+请求参数+文件内容)<br/>
+     * 供非阻塞连接使用, 文件内容会被整体读入内存, 只适合小文件
+     *
+     * @param charset 字符集
+     * @return 已经flip的请求报文
+     * @throws IOException 读取文件流异常
+     */
+    public ByteBuffer encode(Charset charset) throws IOException {
+        int paramLength = request.prepare(charset);
+        InputStream inputFile = request.getInputFile();
+        File file = request.getFile();
+        long fileSize = null == inputFile && null == file ? 0 : request.getFileSize();
+        long totalSize = ProtocolHead.HEAD_LENGTH + paramLength + fileSize;
+        if (totalSize > Integer.MAX_VALUE) {
+            throw new FastDfsIoException("请求报文长度[" + totalSize + "]过大, 无法整体编码");
+        }
+        if (Log.isDebugEnabled(debugLog)) {
+            log.debug("编码请求 - 报文头[{}], 报文长度[{}]", request.getHead(), totalSize);
+        }
+        bytesSent = totalSize;
+        ByteBuffer buffer = ByteBuffer.allocate((int) totalSize);
+        request.writeTo(buffer, charset);
+        if (null != inputFile) {
+            int offset = buffer.position();
+            int remainBytes = (int) fileSize;
+            int bytes;
+            while (remainBytes > 0) {
+                if ((bytes = inputFile.read(buffer.array(), offset, remainBytes)) < 0) {
+                    throw new IOException("数据流已结束, 不匹配预期的大小");
+                }
+                offset += bytes;
+                remainBytes -= bytes;
+            }
+            buffer.position(offset);
+        } else if (null != file) {
+            try (FileChannel fileChannel = new FileInputStream(file).getChannel()) {
+                long position = request.getFilePosition();
+                while (buffer.hasRemaining()) {
+                    int bytes = fileChannel.read(buffer, position);
+                    if (bytes < 0) {
+                        throw new IOException("文件已结束, 不匹配预期的大小");
+                    }
+                    position += bytes;
+                }
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 解析非阻塞连接已完整读取的响应报文
+     *
+     * @param header  报文头字节
+     * @param body    报文内容字节
+     * @param charset 字符集
+     * @return 响应数据
+     * @throws IOException 报文解析异常
+     */
+    public T decode(byte[] header, byte[] body, Charset charset) throws IOException {
+        ProtocolHead head = ProtocolHead.createFromByte(header);
+        Log.debug(debugLog, "服务端返回报文头{}", head);
+        bytesReceived = header.length + body.length;
+        // 校验报文头
+        head.validateResponseHead();
+        // 解析报文体
+        return response.decode(head, new ByteArrayInputStream(body), charset);
+    }
+
     /**
      * 将报文输出规范为模板方法<br/>
      * 1.输出报文头<br/>
      * 2.输出报文参数<br/>
      * 3.输出文件内容<br/>
      */
-    private void send(OutputStream out, Charset charset) throws IOException {
+    private void send(Connection conn) throws IOException {
+        OutputStream out = conn.getOutputStream();
+        Charset charset = conn.getCharset();
         // 报文分为三个部分
-        // 报文头
-        byte[] head = request.getHeadByte(charset);
-        // 请求参数
-        byte[] param = request.encodeParam(charset);
+        // 报文头+请求参数 编码到缓冲池的缓冲区中一次输出
+        int paramLength = request.prepare(charset);
+        ByteBuffer buffer = ByteBufferPool.acquire(ProtocolHead.HEAD_LENGTH + paramLength);
+        try {
+            request.writeTo(buffer, charset);
+            if (Log.isDebugEnabled(debugLog)) {
+                log.debug("发出请求 - 报文头[{}], 请求参数长度[{}]", request.getHead(), paramLength);
+            }
+            out.write(buffer.array(), 0, buffer.position());
+            bytesSent = buffer.position();
+        } finally {
+            ByteBufferPool.release(buffer);
+        }
         // 交易文件流
         InputStream inputFile = request.getInputFile();
+        File file = request.getFile();
         long fileSize = request.getFileSize();
-        Log.debug("发出请求 - 报文头[{}], 请求参数[{}]", request.getHead(), param);
-        // 输出报文头
-        out.write(head);
-        // 输出交易参数
-        if (null != param) {
-            out.write(param);
-        }
         // 输出文件流
         if (null != inputFile) {
             sendFileContent(inputFile, fileSize, out);
+            bytesSent += fileSize;
+        } else if (null != file) {
+            out.flush();
+            sendFileContent(file, request.getFilePosition(), fileSize, conn.getWritableChannel(), out);
+            bytesSent += fileSize;
+        }
+    }
+
+    /**
+     * 使用FileChannel.transferTo发送文件, 目标为SocketChannel时由内核直接发送(sendfile)
+     */
+    private void sendFileContent(File file, long position, long size, WritableByteChannel channel, OutputStream ous) throws IOException {
+        if (Log.isDebugEnabled(debugLog)) {
+            log.debug("开始零拷贝上传文件[{}], 大小为[{}]", file, size);
+        }
+        WritableByteChannel target = null == channel ? Channels.newChannel(ous) : channel;
+        try (FileChannel fileChannel = new FileInputStream(file).getChannel()) {
+            long remainBytes = size;
+            while (remainBytes > 0) {
+                long bytes = fileChannel.transferTo(position, remainBytes, target);
+                if (bytes <= 0 && position >= fileChannel.size()) {
+                    throw new IOException("文件已结束, 不匹配预期的大小");
+                }
+                position += bytes;
+                remainBytes -= bytes;
+            }
         }
     }
 
@@ -79,17 +220,23 @@ public abstract class AbstractCommand<T> implements BaseCommand<T> {
      * 发送文件
      */
     private void sendFileContent(InputStream ins, long size, OutputStream ous) throws IOException {
-        Log.debug("开始上传文件流, 大小为[{}]", size);
+        if (Log.isDebugEnabled(debugLog)) {
+            log.debug("开始上传文件流, 大小为[{}]", size);
+        }
         long remainBytes = size;
-        byte[] buff = new byte[256 * 1024];
-        int bytes;
-        while (remainBytes > 0) {
-            if ((bytes = ins.read(buff, 0, remainBytes > buff.length ? buff.length : (int) remainBytes)) < 0) {
-                throw new IOException("数据流已结束, 不匹配预期的大小");
+        ByteBuffer buffer = ByteBufferPool.acquire(ByteBufferPool.MAX_POOLED_SIZE);
+        try {
+            byte[] buff = buffer.array();
+            int bytes;
+            while (remainBytes > 0) {
+                if ((bytes = ins.read(buff, 0, remainBytes > buff.length ? buff.length : (int) remainBytes)) < 0) {
+                    throw new IOException("数据流已结束, 不匹配预期的大小");
+                }
+                ous.write(buff, 0, bytes);
+                remainBytes -= bytes;
             }
-            ous.write(buff, 0, bytes);
-            remainBytes -= bytes;
-            Log.debug("剩余上传数据量[{}]", remainBytes);
+        } finally {
+            ByteBufferPool.release(buffer);
         }
     }
 
@@ -100,10 +247,63 @@ public abstract class AbstractCommand<T> implements BaseCommand<T> {
     private T receive(InputStream in, Charset charset) throws IOException {
         // 解析报文头
         ProtocolHead head = ProtocolHead.createFromInputStream(in);
-        Log.debug("服务端返回报文头{}", head);
+        Log.debug(debugLog, "服务端返回报文头{}", head);
+        // 流式下载时报文内容由调用方读取, 按报文头中的长度计算
+        bytesReceived = ProtocolHead.HEAD_LENGTH + head.getContentLength();
+        // 错误反馈如果带有报文体, 先跳过报文体保证连接上的报文同步
+        if (head.getStatus() != 0 && head.getContentLength() > 0) {
+            skipContent(in, head.getContentLength());
+        }
         // 校验报文头
         head.validateResponseHead();
         // 解析报文体
         return response.decode(head, in, charset);
     }
+
+    /**
+     * 跳过指定长度的报文内容
+     */
+    private void skipContent(InputStream in, long length) throws IOException {
+        long remain = length;
+        while (remain > 0) {
+            long skipped = in.skip(remain);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new IOException("数据流已结束, 不匹配预期的大小");
+                }
+                skipped = 1;
+            }
+            remain -= skipped;
+        }
+    }
+
+    /**
+     * 获取命令类型名称(类名去掉Command后缀), 用于监控指标
+     */
+    public String getCommandName() {
+        String name = getClass().getSimpleName();
+        int index = name.indexOf("Command");
+        return index > 0 ? name.substring(0, index) : name;
+    }
+
+    /**
+     * 设置是否输出debug日志
+     */
+    public void setDebugLog(boolean debugLog) {
+        this.debugLog = debugLog;
+    }
+
+    /**
+     * 获取发送的字节数, 发送失败时为已确定发送的部分
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * 获取接收的字节数
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
 }
@@ -1,9 +1,10 @@
 package cn.novelweb.tool.upload.fastdfs.protocol;
 
-import cn.novelweb.tool.upload.fastdfs.mapper.ObjectMateData;
 import cn.novelweb.tool.upload.fastdfs.utils.FastDfsParamMapperUtils;
 
+import java.io.File;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 /**
@@ -24,6 +25,16 @@ public abstract class BaseRequest {
      */
     protected InputStream inputFile;
 
+    /**
+     * 发送文件(文件方式发送时使用FileChannel.transferTo零拷贝发送)
+     */
+    protected File file;
+
+    /**
+     * 发送文件的开始位置
+     */
+    protected long filePosition;
+
     /**
      * 获取报文头(包内可见)
      */
@@ -32,34 +43,51 @@ public abstract class BaseRequest {
     }
 
     /**
-     * 获取报文头
+     * 打包参数
      */
-    byte[] getHeadByte(Charset charset) {
-        // 设置报文长度
-        head.setContentLength(getBodyLength(charset));
-        // 返回报文byte
-        return head.toByte();
+    protected byte[] encodeParam(Charset charset) {
+        prepareParam(charset);
+        return FastDfsParamMapperUtils.toByte(this, charset);
     }
 
     /**
-     * 打包参数
+     * 计算运行时参数(如路径的字节长度), 在编码参数之前调用
      */
-    protected byte[] encodeParam(Charset charset) {
-        return FastDfsParamMapperUtils.toByte(this, charset);
+    protected void prepareParam(Charset charset) {
+    }
+
+    /**
+     * 计算运行时参数并设置报文长度
+     *
+     * @return 参数域长度
+     */
+    int prepare(Charset charset) {
+        prepareParam(charset);
+        int paramLength = FastDfsParamMapperUtils.getObjectMap(this.getClass()).getFieldsSendTotalByteSize(this, charset);
+        head.setContentLength(paramLength + getFileSize());
+        return paramLength;
     }
 
     /**
-     * 获取参数域长度
+     * 将报文头及参数写入缓冲区, 写入前需调用{@link #prepare(Charset)}
      */
-    private long getBodyLength(Charset charset) {
-        ObjectMateData objectMateData = FastDfsParamMapperUtils.getObjectMap(this.getClass());
-        return objectMateData.getFieldsSendTotalByteSize(this, charset) + getFileSize();
+    void writeTo(ByteBuffer buffer, Charset charset) {
+        head.writeTo(buffer);
+        FastDfsParamMapperUtils.toByte(this, charset, buffer);
     }
 
     InputStream getInputFile() {
         return inputFile;
     }
 
+    File getFile() {
+        return file;
+    }
+
+    long getFilePosition() {
+        return filePosition;
+    }
+
     public long getFileSize() {
         return 0;
     }
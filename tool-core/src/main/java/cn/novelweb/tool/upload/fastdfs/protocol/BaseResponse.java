@@ -1,10 +1,12 @@
 package cn.novelweb.tool.upload.fastdfs.protocol;
 
+import cn.novelweb.tool.upload.fastdfs.utils.ByteBufferPool;
 import cn.novelweb.tool.upload.fastdfs.utils.FastDfsParamMapperUtils;
 import cn.novelweb.tool.upload.fastdfs.utils.ReflectionsUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 /**
@@ -53,13 +55,24 @@ public abstract class BaseResponse<T> {
     public T decodeContent(InputStream in, Charset charset) throws IOException {
         // 如果有内容
         if (getContentLength() > 0) {
-            byte[] bytes = new byte[(int) getContentLength()];
-            int contentSize = in.read(bytes);
-            // 获取数据
-            if (contentSize != getContentLength()) {
-                throw new IOException("读取到的数据长度与协议长度不符");
+            int length = (int) getContentLength();
+            // 报文内容使用缓冲池的缓冲区接收, 映射为对象后立即归还
+            ByteBuffer buffer = ByteBufferPool.acquire(length);
+            try {
+                byte[] bytes = buffer.array();
+                int contentSize = 0;
+                int read;
+                while (contentSize < length && (read = in.read(bytes, contentSize, length - contentSize)) >= 0) {
+                    contentSize += read;
+                }
+                // 获取数据
+                if (contentSize != length) {
+                    throw new IOException("读取到的数据长度与协议长度不符");
+                }
+                return FastDfsParamMapperUtils.map(bytes, length, genericType, charset);
+            } finally {
+                ByteBufferPool.release(buffer);
             }
-            return FastDfsParamMapperUtils.map(bytes, genericType, charset);
         }
         return null;
     }
@@ -3,11 +3,12 @@ package cn.novelweb.tool.upload.fastdfs.protocol;
 import cn.novelweb.tool.upload.fastdfs.constant.CmdConstants;
 import cn.novelweb.tool.upload.fastdfs.constant.OtherConstants;
 import cn.novelweb.tool.upload.fastdfs.exception.FastDfsServerException;
+import cn.novelweb.tool.upload.fastdfs.utils.ByteBufferPool;
 import cn.novelweb.tool.upload.fastdfs.utils.BytesUtil;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 
 /**
  * <p>FastDFS 协议头(协议头一共10位) 用于解析报文头</p>
@@ -20,7 +21,7 @@ public class ProtocolHead {
     /**
      * 报文长度
      */
-    private static final int HEAD_LENGTH = OtherConstants.DFS_PROTO_PKG_LEN_SIZE + 2;
+    static final int HEAD_LENGTH = OtherConstants.DFS_PROTO_PKG_LEN_SIZE + 2;
 
     /**
      * 报文内容长度1-7位
@@ -65,15 +66,45 @@ public class ProtocolHead {
      * @throws IOException 操作异常
      */
     static ProtocolHead createFromInputStream(InputStream ins) throws IOException {
-        byte[] header = new byte[HEAD_LENGTH];
-        int bytes;
-        // 读取HEAD_LENGTH长度的输入流
-        if ((bytes = ins.read(header)) != header.length) {
-            throw new IOException("接收数据包大小不等于请求头中指定的大小 " + bytes + " != " + header.length);
+        ByteBuffer buffer = ByteBufferPool.acquire(HEAD_LENGTH);
+        try {
+            byte[] header = buffer.array();
+            int offset = 0;
+            int bytes;
+            // 读取HEAD_LENGTH长度的输入流
+            while (offset < HEAD_LENGTH) {
+                if ((bytes = ins.read(header, offset, HEAD_LENGTH - offset)) < 0) {
+                    throw new IOException("接收数据包大小不等于请求头中指定的大小 " + offset + " != " + HEAD_LENGTH);
+                }
+                offset += bytes;
+            }
+            return createFromByte(header, 0);
+        } finally {
+            ByteBufferPool.release(buffer);
         }
-        long returnContentLength = BytesUtil.buff2long(header, 0);
-        byte returnCmd = header[OtherConstants.PROTO_HEADER_CMD_INDEX];
-        byte returnStatus = header[OtherConstants.PROTO_HEADER_STATUS_INDEX];
+    }
+
+    /**
+     * 根据已读取的报文头字节创建报文头(解析报文头信息)
+     *
+     * @param header 报文头字节(长度必须为10位)
+     * @return FastDFS报文头
+     * @throws IOException 操作异常
+     */
+    static ProtocolHead createFromByte(byte[] header) throws IOException {
+        if (header.length != HEAD_LENGTH) {
+            throw new IOException("接收数据包大小不等于请求头中指定的大小 " + header.length + " != " + HEAD_LENGTH);
+        }
+        return createFromByte(header, 0);
+    }
+
+    /**
+     * 从offset位置开始解析报文头
+     */
+    private static ProtocolHead createFromByte(byte[] header, int offset) {
+        long returnContentLength = BytesUtil.buff2long(header, offset);
+        byte returnCmd = header[offset + OtherConstants.PROTO_HEADER_CMD_INDEX];
+        byte returnStatus = header[offset + OtherConstants.PROTO_HEADER_STATUS_INDEX];
         // 返回解析出来的ProtoHead
         return new ProtocolHead(returnContentLength, returnCmd, returnStatus);
     }
@@ -82,15 +113,20 @@ public class ProtocolHead {
      * toByte
      */
     byte[] toByte() {
-        byte[] header;
-        byte[] hexLen;
-        header = new byte[HEAD_LENGTH];
-        Arrays.fill(header, (byte) 0);
-        hexLen = BytesUtil.long2buff(contentLength);
-        System.arraycopy(hexLen, 0, header, 0, hexLen.length);
-        header[OtherConstants.PROTO_HEADER_CMD_INDEX] = cmd;
-        header[OtherConstants.PROTO_HEADER_STATUS_INDEX] = status;
-        return header;
+        ByteBuffer header = ByteBuffer.allocate(HEAD_LENGTH);
+        writeTo(header);
+        return header.array();
+    }
+
+    /**
+     * 将报文头写入缓冲区(大端序, 共10位)
+     *
+     * @param buffer 缓冲区
+     */
+    void writeTo(ByteBuffer buffer) {
+        buffer.putLong(contentLength);
+        buffer.put(cmd);
+        buffer.put(status);
     }
 
     /**
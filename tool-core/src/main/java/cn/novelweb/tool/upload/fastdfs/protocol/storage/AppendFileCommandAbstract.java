@@ -3,6 +3,7 @@ package cn.novelweb.tool.upload.fastdfs.protocol.storage;
 import cn.novelweb.tool.upload.fastdfs.protocol.BaseResponse;
 import cn.novelweb.tool.upload.fastdfs.protocol.storage.request.AppendFileRequest;
 
+import java.io.File;
 import java.io.InputStream;
 
 /**
@@ -20,4 +21,19 @@ public class AppendFileCommandAbstract extends AbstractStorageCommand<Void> {
         };
     }
 
+    /**
+     * 添加文件命令(使用FileChannel.transferTo零拷贝发送文件)
+     *
+     * @param file         文件
+     * @param filePosition 文件开始位置
+     * @param fileSize     发送长度
+     * @param path         文件路径
+     */
+    public AppendFileCommandAbstract(File file, long filePosition, long fileSize, String path) {
+        this.request = new AppendFileRequest(file, filePosition, fileSize, path);
+        // 输出响应
+        this.response = new BaseResponse<Void>() {
+        };
+    }
+
 }
@@ -3,6 +3,7 @@ package cn.novelweb.tool.upload.fastdfs.protocol.storage;
 import cn.novelweb.tool.upload.fastdfs.protocol.BaseResponse;
 import cn.novelweb.tool.upload.fastdfs.protocol.storage.request.ModifyRequest;
 
+import java.io.File;
 import java.io.InputStream;
 
 /**
@@ -28,4 +29,21 @@ public class ModifyCommandAbstract extends AbstractStorageCommand<Void> {
         this.response = new BaseResponse<Void>() {
         };
     }
+
+    /**
+     * 文件修改命令(使用FileChannel.transferTo零拷贝发送文件)
+     *
+     * @param path         文件路径
+     * @param file         文件
+     * @param filePosition 文件开始位置
+     * @param fileSize     发送长度
+     * @param fileOffset   开始位置
+     */
+    public ModifyCommandAbstract(String path, File file, long filePosition, long fileSize, long fileOffset) {
+        super();
+        this.request = new ModifyRequest(file, filePosition, fileSize, path, fileOffset);
+        // 输出响应
+        this.response = new BaseResponse<Void>() {
+        };
+    }
 }
@@ -4,6 +4,7 @@ import cn.novelweb.tool.upload.fastdfs.model.StorePath;
 import cn.novelweb.tool.upload.fastdfs.protocol.BaseResponse;
 import cn.novelweb.tool.upload.fastdfs.protocol.storage.request.UploadFileRequest;
 
+import java.io.File;
 import java.io.InputStream;
 
 /**
@@ -30,4 +31,22 @@ public class UploadFileCommandAbstract extends AbstractStorageCommand<StorePath>
         this.response = new BaseResponse<StorePath>() {
         };
     }
+
+    /**
+     * 文件上传命令(使用FileChannel.transferTo零拷贝发送文件)
+     *
+     * @param storeIndex     存储节点
+     * @param file           文件
+     * @param filePosition   文件开始位置
+     * @param fileExtName    文件扩展名
+     * @param fileSize       发送长度
+     * @param isAppenderFile 是否支持断点续传
+     */
+    public UploadFileCommandAbstract(byte storeIndex, File file, long filePosition, String fileExtName, long fileSize, boolean isAppenderFile) {
+        super();
+        this.request = new UploadFileRequest(storeIndex, file, filePosition, fileExtName, fileSize, isAppenderFile);
+        // 输出响应
+        this.response = new BaseResponse<StorePath>() {
+        };
+    }
 }
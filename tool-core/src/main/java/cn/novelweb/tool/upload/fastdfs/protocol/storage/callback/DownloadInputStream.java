@@ -0,0 +1,45 @@
+package cn.novelweb.tool.upload.fastdfs.protocol.storage.callback;
+
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.response.FastDfsInputStream;
+import cn.novelweb.tool.upload.fastdfs.utils.IoUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <p>返回文件内容的输入流</p>
+ * <p>只能配合{@link cn.novelweb.tool.upload.fastdfs.conn.CommandExecutor#executeStream}使用:
+ * 默认不读取任何数据, 由执行器在输入流关闭后归还连接; 执行器在方法返回前归还连接时(如按普通命令执行)需要先把文件内容读入内存,
+ * 否则返回的输入流不可用</p>
+ * <p>2026-10-18 18:40</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public class DownloadInputStream implements DownloadCallback<FastDfsInputStream> {
+
+    /**
+     * 是否先把文件内容读入内存
+     */
+    private final boolean buffered;
+
+    public DownloadInputStream() {
+        this(false);
+    }
+
+    /**
+     * @param buffered 是否先把文件内容读入内存, 返回读取内存中文件内容的输入流
+     */
+    public DownloadInputStream(boolean buffered) {
+        this.buffered = buffered;
+    }
+
+    @Override
+    public FastDfsInputStream receive(InputStream inputStream) throws IOException {
+        FastDfsInputStream input = (FastDfsInputStream) inputStream;
+        if (!buffered) {
+            return input;
+        }
+        return new FastDfsInputStream(new ByteArrayInputStream(IoUtils.toByteArray(input)), input.getSize());
+    }
+}
@@ -6,6 +6,7 @@ import cn.novelweb.tool.upload.fastdfs.mapper.FastDfsColumn;
 import cn.novelweb.tool.upload.fastdfs.protocol.BaseRequest;
 import cn.novelweb.tool.upload.fastdfs.protocol.ProtocolHead;
 
+import java.io.File;
 import java.io.InputStream;
 import java.nio.charset.Charset;
 
@@ -51,13 +52,26 @@ public class AppendFileRequest extends BaseRequest {
     }
 
     /**
-     * 打包参数
+     * 构造函数(文件方式发送, 使用FileChannel.transferTo零拷贝)
+     *
+     * @param file         文件
+     * @param filePosition 文件开始位置
+     * @param fileSize     发送长度
+     * @param path         文件路径
+     */
+    public AppendFileRequest(File file, long filePosition, long fileSize, String path) {
+        this((InputStream) null, fileSize, path);
+        this.file = file;
+        this.filePosition = filePosition;
+    }
+
+    /**
+     * 计算运行时参数
      */
     @Override
-    public byte[] encodeParam(Charset charset) {
+    protected void prepareParam(Charset charset) {
         // 运行时参数在此计算值
         this.pathSize = path.getBytes(charset).length;
-        return super.encodeParam(charset);
     }
 
     public long getPathSize() {
@@ -65,8 +65,10 @@ public class DownloadFileRequest extends BaseRequest {
         return path;
     }
 
-    @Override
-    public long getFileSize() {
+    /**
+     * 读取文件长度(不能覆盖{@link BaseRequest#getFileSize()}, 否则会被计入请求报文长度)
+     */
+    public long getDownloadSize() {
         return fileSize;
     }
 
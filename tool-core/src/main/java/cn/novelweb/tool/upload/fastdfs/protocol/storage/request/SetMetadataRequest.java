@@ -80,21 +80,20 @@ public class SetMetadataRequest extends BaseRequest {
     }
 
     /**
-     * 打包参数
+     * 计算运行时参数
      */
     @Override
-    public byte[] encodeParam(Charset charset) {
+    protected void prepareParam(Charset charset) {
         // 运行时参数在此计算值
         this.fileNameByteLength = path.getBytes(charset).length;
         this.mataDataByteLength = getMetaDataSetByteSize(charset);
-        return super.encodeParam(charset);
     }
 
     /**
      * 获取metaDataSet长度
      */
     private int getMetaDataSetByteSize(Charset charset) {
-        return MetadataMapperUtils.toByte(metaDataSet, charset).length;
+        return MetadataMapperUtils.byteSize(metaDataSet, charset);
     }
 
     public String getGroupName() {
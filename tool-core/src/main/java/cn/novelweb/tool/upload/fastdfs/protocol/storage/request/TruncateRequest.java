@@ -46,13 +46,12 @@ public class TruncateRequest extends BaseRequest {
     }
 
     /**
-     * 打包参数
+     * 计算运行时参数
      */
     @Override
-    public byte[] encodeParam(Charset charset) {
+    protected void prepareParam(Charset charset) {
         // 运行时参数在此计算值
         this.pathSize = path.getBytes(charset).length;
-        return super.encodeParam(charset);
     }
 
     public long getPathSize() {
@@ -75,8 +74,10 @@ public class TruncateRequest extends BaseRequest {
         this.fileSize = fileSize;
     }
 
-    @Override
-    public long getFileSize() {
+    /**
+     * 截取文件长度(不能覆盖{@link BaseRequest#getFileSize()}, 否则会被计入请求报文长度)
+     */
+    public long getTruncatedFileSize() {
         return fileSize;
     }
 
@@ -6,6 +6,7 @@ import cn.novelweb.tool.upload.fastdfs.mapper.FastDfsColumn;
 import cn.novelweb.tool.upload.fastdfs.protocol.BaseRequest;
 import cn.novelweb.tool.upload.fastdfs.protocol.ProtocolHead;
 
+import java.io.File;
 import java.io.InputStream;
 
 /**
@@ -56,6 +57,22 @@ public class UploadFileRequest extends BaseRequest {
         }
     }
 
+    /**
+     * 构造函数(文件方式发送, 使用FileChannel.transferTo零拷贝)
+     *
+     * @param storeIndex     存储节点
+     * @param file           文件
+     * @param filePosition   文件开始位置
+     * @param fileExtName    文件扩展名
+     * @param fileSize       发送长度
+     * @param isAppenderFile 是否支持断点续传
+     */
+    public UploadFileRequest(byte storeIndex, File file, long filePosition, String fileExtName, long fileSize, boolean isAppenderFile) {
+        this(storeIndex, (InputStream) null, fileExtName, fileSize, isAppenderFile);
+        this.file = file;
+        this.filePosition = filePosition;
+    }
+
     public byte getStoreIndex() {
         return storeIndex;
     }
@@ -8,6 +8,7 @@ import cn.novelweb.tool.upload.fastdfs.protocol.BaseRequest;
 import cn.novelweb.tool.upload.fastdfs.protocol.ProtocolHead;
 
 import java.io.InputStream;
+import java.nio.charset.Charset;
 
 /**
  * <p>从文件上传命令</p>
@@ -60,13 +61,21 @@ public class UploadSlaveFileRequest extends BaseRequest {
         super();
         this.inputFile = inputStream;
         this.fileSize = fileSize;
-        this.masterFileNameSize = masterFilename.length();
         this.masterFilename = masterFilename;
         this.fileExtName = fileExtName;
         this.prefixName = prefixName;
         head = new ProtocolHead(CmdConstants.STORAGE_PROTO_CMD_UPLOAD_SLAVE_FILE);
     }
 
+    /**
+     * 计算运行时参数
+     */
+    @Override
+    protected void prepareParam(Charset charset) {
+        // 主文件名长度为编码后的字节数(与发送的主文件名一致)
+        this.masterFileNameSize = masterFilename.getBytes(charset).length;
+    }
+
     public long getMasterFileNameSize() {
         return masterFileNameSize;
     }
@@ -1,10 +1,18 @@
 package cn.novelweb.tool.upload.fastdfs.protocol.storage.response;
 
+import cn.novelweb.tool.upload.fastdfs.exception.FastDfsChecksumException;
+import cn.novelweb.tool.upload.fastdfs.utils.ByteBufferPool;
+
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
 
 /**
  * <p>封装FastDFS数据流</p>
+ * <p>只能读取报文中的文件内容部分, 不会读取到连接上后续的报文</p>
  * <p>2020-02-03 17:01</p>
  *
  * @author Dai Yuanchuan
@@ -14,6 +22,22 @@ public class FastDfsInputStream extends InputStream {
     private final InputStream inputStream;
     private final long size;
     private long remainByteSize;
+    private boolean closed;
+
+    /**
+     * 读取时计算的CRC32, 未开启校验时为null
+     */
+    private CRC32 checksum;
+
+    /**
+     * 服务端记录的CRC32
+     */
+    private long expectedCrc32;
+
+    /**
+     * 关闭时的回调, 流式下载时用于归还或销毁连接
+     */
+    private Consumer<FastDfsInputStream> closeHandler;
 
     public FastDfsInputStream(InputStream ins, long size) {
         this.inputStream = ins;
@@ -23,7 +47,19 @@ public class FastDfsInputStream extends InputStream {
 
     @Override
     public int read() throws IOException {
-        return inputStream.read();
+        if (remainByteSize == 0) {
+            return -1;
+        }
+        int b = inputStream.read();
+        if (b < 0) {
+            throw new IOException("协议长度" + size + "与实际长度不符");
+        }
+        remainByteSize--;
+        if (null != checksum) {
+            checksum.update(b);
+            verifyIfCompleted();
+        }
+        return b;
     }
 
     @Override
@@ -31,16 +67,91 @@ public class FastDfsInputStream extends InputStream {
         if (remainByteSize == 0) {
             return -1;
         }
-        int byteSize = inputStream.read(args, off, len);
-        if (remainByteSize < byteSize) {
+        int byteSize = inputStream.read(args, off, (int) Math.min(len, remainByteSize));
+        if (byteSize < 0) {
             throw new IOException("协议长度" + size + "与实际长度不符");
         }
         remainByteSize -= byteSize;
+        if (null != checksum) {
+            checksum.update(args, off, byteSize);
+            verifyIfCompleted();
+        }
         return byteSize;
     }
 
+    @Override
+    public long skip(long n) throws IOException {
+        // 跳过的内容无法校验
+        checksum = null;
+        long skipped = inputStream.skip(Math.min(Math.max(n, 0), remainByteSize));
+        remainByteSize -= skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(inputStream.available(), remainByteSize);
+    }
+
+    /**
+     * 将剩余的文件内容写入通道, 使用缓冲池中固定大小的缓冲区, 内存占用与文件大小无关
+     *
+     * @param channel 目标通道(如Channels.newChannel(response.getOutputStream()))
+     * @return 写入的字节数
+     * @throws IOException 读取或写入异常
+     */
+    public long transferTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBufferPool.acquire(ByteBufferPool.MAX_POOLED_SIZE);
+        try {
+            byte[] bytes = buffer.array();
+            long transferred = 0;
+            int read;
+            while ((read = read(bytes, 0, bytes.length)) >= 0) {
+                buffer.clear().limit(read);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                transferred += read;
+            }
+            return transferred;
+        } finally {
+            ByteBufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * 开启CRC32校验, 在读取文件内容时同时计算, 读取完最后一个字节时与服务端记录的校验码比较,
+     * 不一致时抛出{@link FastDfsChecksumException}<br/>
+     * 必须在开始读取前调用, 只适用于下载整个文件
+     *
+     * @param expectedCrc32 服务端记录的校验码({@link cn.novelweb.tool.upload.fastdfs.model.FileInfo#getCrc32()})
+     */
+    public void verifyCrc32(long expectedCrc32) {
+        if (remainByteSize != size) {
+            throw new IllegalStateException("已经开始读取文件内容, 无法校验");
+        }
+        this.checksum = new CRC32();
+        this.expectedCrc32 = expectedCrc32 & 0xFFFFFFFFL;
+    }
+
+    private void verifyIfCompleted() {
+        if (remainByteSize == 0 && checksum.getValue() != expectedCrc32) {
+            throw new FastDfsChecksumException("下载的文件内容校验失败, 文件大小[" + size + "]", expectedCrc32, checksum.getValue());
+        }
+    }
+
+    /**
+     * 关闭数据流, 不会关闭底层连接的输入流
+     */
     @Override
     public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (null != closeHandler) {
+            closeHandler.accept(this);
+        }
     }
 
     /**
@@ -50,4 +161,15 @@ public class FastDfsInputStream extends InputStream {
         return remainByteSize == 0;
     }
 
+    /**
+     * 获取文件内容长度
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public void setCloseHandler(Consumer<FastDfsInputStream> closeHandler) {
+        this.closeHandler = closeHandler;
+    }
+
 }
@@ -0,0 +1,28 @@
+package cn.novelweb.tool.upload.fastdfs.protocol.tracker;
+
+import cn.novelweb.tool.upload.fastdfs.constant.CmdConstants;
+import cn.novelweb.tool.upload.fastdfs.model.StorageNodeInfo;
+import cn.novelweb.tool.upload.fastdfs.protocol.tracker.request.GetFetchStorageRequest;
+import cn.novelweb.tool.upload.fastdfs.protocol.tracker.response.GetFetchAllStorageResponse;
+
+import java.util.List;
+
+/**
+ * <p>获取存有文件的所有存储服务器</p>
+ * <p>2026-10-18 17:20</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public class GetFetchAllStorageCommandAbstract extends AbstractTrackerCommand<List<StorageNodeInfo>> {
+
+    /**
+     * 获取存有文件的所有存储服务器
+     *
+     * @param groupName 组名称
+     * @param path      路径
+     */
+    public GetFetchAllStorageCommandAbstract(String groupName, String path) {
+        super.request = new GetFetchStorageRequest(groupName, path, CmdConstants.TRACKER_PROTO_CMD_SERVICE_QUERY_FETCH_ALL);
+        super.response = new GetFetchAllStorageResponse();
+    }
+}
@@ -49,6 +49,21 @@ public class GetFetchStorageRequest extends BaseRequest {
         }
     }
 
+    /**
+     * 按指定命令查询文件所在存储服务器
+     *
+     * @param groupName 组名称
+     * @param path      路径
+     * @param cmd       查询命令(如{@link CmdConstants#TRACKER_PROTO_CMD_SERVICE_QUERY_FETCH_ALL})
+     */
+    public GetFetchStorageRequest(String groupName, String path, byte cmd) {
+        Validate.notBlank(groupName, "分组不能为空");
+        Validate.notBlank(path, "文件路径不能为空");
+        this.groupName = groupName;
+        this.path = path;
+        head = new ProtocolHead(cmd);
+    }
+
     public String getGroupName() {
         return groupName;
     }
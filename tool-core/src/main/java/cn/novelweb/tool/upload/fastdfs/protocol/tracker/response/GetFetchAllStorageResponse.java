@@ -0,0 +1,59 @@
+package cn.novelweb.tool.upload.fastdfs.protocol.tracker.response;
+
+import cn.novelweb.tool.upload.fastdfs.constant.OtherConstants;
+import cn.novelweb.tool.upload.fastdfs.model.StorageNodeInfo;
+import cn.novelweb.tool.upload.fastdfs.protocol.BaseResponse;
+import cn.novelweb.tool.upload.fastdfs.utils.FastDfsParamMapperUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>获取存有文件的所有存储服务器响应</p>
+ * <p>报文格式: 组名 + 第一个存储服务器IP + 端口 + 其余存储服务器IP(端口相同)</p>
+ * <p>2026-10-18 17:20</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public class GetFetchAllStorageResponse extends BaseResponse<List<StorageNodeInfo>> {
+
+    /**
+     * 每个其余存储服务器IP的长度
+     */
+    private static final int IP_ADDR_LENGTH = OtherConstants.DFS_IP_ADDR_SIZE - 1;
+
+    /**
+     * 解析反馈内容
+     */
+    @Override
+    public List<StorageNodeInfo> decodeContent(InputStream in, Charset charset) throws IOException {
+        int length = (int) getContentLength();
+        int fixLength = OtherConstants.TRACKER_QUERY_STORAGE_FETCH_BODY_LEN;
+        if (length < fixLength || (length - fixLength) % IP_ADDR_LENGTH != 0) {
+            throw new IOException("读取到的数据长度与协议长度不符, 数据长度=" + length);
+        }
+        byte[] bytes = new byte[length];
+        int contentSize = 0;
+        int read;
+        while (contentSize < length && (read = in.read(bytes, contentSize, length - contentSize)) >= 0) {
+            contentSize += read;
+        }
+        if (contentSize != length) {
+            throw new IOException("读取到的数据长度与协议长度不符");
+        }
+        StorageNodeInfo first = FastDfsParamMapperUtils.map(bytes, 0, fixLength, StorageNodeInfo.class, charset);
+        List<StorageNodeInfo> results = new ArrayList<>(1 + (length - fixLength) / IP_ADDR_LENGTH);
+        results.add(first);
+        for (int offset = fixLength; offset < length; offset += IP_ADDR_LENGTH) {
+            String ip = new String(bytes, offset, IP_ADDR_LENGTH, charset).trim();
+            StorageNodeInfo storageNodeInfo = new StorageNodeInfo(ip, first.getPort());
+            storageNodeInfo.setGroupName(first.getGroupName());
+            results.add(storageNodeInfo);
+        }
+        return results;
+    }
+
+}
@@ -54,9 +54,7 @@ public class GetGroupListResponse extends BaseResponse<List<GroupState>> {
         int offset = 0;
         List<GroupState> results = new ArrayList<GroupState>(count);
         for (int i = 0; i < count; i++) {
-            byte[] one = new byte[fixFieldsTotalSize];
-            System.arraycopy(bs, offset, one, 0, fixFieldsTotalSize);
-            results.add(FastDfsParamMapperUtils.map(one, GroupState.class, charset));
+            results.add(FastDfsParamMapperUtils.map(bs, offset, fixFieldsTotalSize, GroupState.class, charset));
             offset += fixFieldsTotalSize;
         }
         return results;
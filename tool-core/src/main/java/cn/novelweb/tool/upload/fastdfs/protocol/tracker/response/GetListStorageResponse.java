@@ -48,9 +48,7 @@ public class GetListStorageResponse extends BaseResponse<List<StorageState>> {
         int offset = 0;
         List<StorageState> results = new ArrayList<StorageState>(count);
         for (int i = 0; i < count; i++) {
-            byte[] one = new byte[fixFieldsTotalSize];
-            System.arraycopy(bs, offset, one, 0, fixFieldsTotalSize);
-            results.add(FastDfsParamMapperUtils.map(one, StorageState.class, charset));
+            results.add(FastDfsParamMapperUtils.map(bs, offset, fixFieldsTotalSize, StorageState.class, charset));
             offset += fixFieldsTotalSize;
         }
         return results;
@@ -0,0 +1,173 @@
+package cn.novelweb.tool.upload.fastdfs.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>按大小分级的ByteBuffer缓冲池</p>
+ * <p>用于FastDFS报文编码/解码, 避免每次请求都分配短生命周期的byte[]</p>
+ * <p>缓冲区按2的幂分级(512B ~ 256KB): 不超过16KB的级别缓存在线程本地, 每个线程每个级别最多缓存{@link #CACHE_PER_CLASS}个(每个线程最多约63KB);
+ * 更大的级别放在所有线程共用的有界缓冲池中, 每个级别最多缓存4MB(共16MB), 线程数量很多时占用的内存也不会随之增长;
+ * 超过最大级别的申请直接分配且不回收</p>
+ * <p>返回的是堆内缓冲区, 阻塞连接通过OutputStream发送时可以直接使用{@link ByteBuffer#array()}</p>
+ * <p>2026-10-18 14:20</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public class ByteBufferPool {
+
+    /**
+     * 最小级别的缓冲区大小(2^9 = 512B)
+     */
+    private static final int MIN_SHIFT = 9;
+
+    /**
+     * 最大级别的缓冲区大小(2^18 = 256KB, 与文件发送缓冲区大小一致)
+     */
+    private static final int MAX_SHIFT = 18;
+
+    /**
+     * 线程本地缓存的最大级别(2^14 = 16KB), 更大的级别使用共用缓冲池
+     */
+    private static final int MAX_LOCAL_SHIFT = 14;
+
+    /**
+     * 共用缓冲池每个级别最多缓存的字节数
+     */
+    private static final int SHARED_BYTES_PER_CLASS = 4 * 1024 * 1024;
+
+    /**
+     * 最大可缓存的缓冲区大小
+     */
+    public static final int MAX_POOLED_SIZE = 1 << MAX_SHIFT;
+
+    /**
+     * 每个线程每个级别最多缓存的缓冲区数量
+     */
+    private static final int CACHE_PER_CLASS = 2;
+
+    private static final ThreadLocal<ByteBuffer[][]> CACHE = ThreadLocal.withInitial(
+            () -> new ByteBuffer[MAX_LOCAL_SHIFT - MIN_SHIFT + 1][CACHE_PER_CLASS]);
+
+    /**
+     * 所有线程共用的大缓冲区(32KB ~ 256KB), 按级别分别限制数量
+     */
+    private static final BlockingQueue<ByteBuffer>[] SHARED = newSharedQueues();
+
+    /**
+     * 命中缓存次数
+     */
+    private static final LongAdder HIT_COUNT = new LongAdder();
+
+    /**
+     * 未命中缓存(新分配)次数
+     */
+    private static final LongAdder MISS_COUNT = new LongAdder();
+
+    private ByteBufferPool() {
+    }
+
+    /**
+     * 获取容量不小于size的缓冲区(position=0, limit=size)<br/>
+     * 使用完成后需要调用{@link #release(ByteBuffer)}归还
+     *
+     * @param size 需要的大小
+     * @return 缓冲区
+     */
+    public static ByteBuffer acquire(int size) {
+        int index = indexOf(size);
+        if (index < 0) {
+            MISS_COUNT.increment();
+            return ByteBuffer.allocate(size);
+        }
+        if (index > MAX_LOCAL_SHIFT - MIN_SHIFT) {
+            ByteBuffer buffer = SHARED[index - (MAX_LOCAL_SHIFT - MIN_SHIFT + 1)].poll();
+            if (null != buffer) {
+                HIT_COUNT.increment();
+                buffer.clear().limit(size);
+                return buffer;
+            }
+        } else {
+            ByteBuffer[] cached = CACHE.get()[index];
+            for (int i = 0; i < cached.length; i++) {
+                ByteBuffer buffer = cached[i];
+                if (null != buffer) {
+                    cached[i] = null;
+                    HIT_COUNT.increment();
+                    buffer.clear().limit(size);
+                    return buffer;
+                }
+            }
+        }
+        MISS_COUNT.increment();
+        ByteBuffer buffer = ByteBuffer.allocate(1 << (index + MIN_SHIFT));
+        buffer.limit(size);
+        return buffer;
+    }
+
+    /**
+     * 归还缓冲区到当前线程的缓存或共用缓冲池(非本缓冲池分配的缓冲区及共用缓冲池已满时直接丢弃)
+     *
+     * @param buffer 缓冲区
+     */
+    public static void release(ByteBuffer buffer) {
+        if (null == buffer || !buffer.hasArray() || buffer.isReadOnly()) {
+            return;
+        }
+        int capacity = buffer.capacity();
+        int index = indexOf(capacity);
+        if (index < 0 || capacity != 1 << (index + MIN_SHIFT)) {
+            return;
+        }
+        if (index > MAX_LOCAL_SHIFT - MIN_SHIFT) {
+            SHARED[index - (MAX_LOCAL_SHIFT - MIN_SHIFT + 1)].offer(buffer);
+            return;
+        }
+        ByteBuffer[] cached = CACHE.get()[index];
+        for (int i = 0; i < cached.length; i++) {
+            if (null == cached[i]) {
+                cached[i] = buffer;
+                return;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BlockingQueue<ByteBuffer>[] newSharedQueues() {
+        BlockingQueue<ByteBuffer>[] queues = new BlockingQueue[MAX_SHIFT - MAX_LOCAL_SHIFT];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ArrayBlockingQueue<>(SHARED_BYTES_PER_CLASS >> (MAX_LOCAL_SHIFT + 1 + i));
+        }
+        return queues;
+    }
+
+    /**
+     * 获取大小对应的级别, 超过最大级别返回-1
+     */
+    private static int indexOf(int size) {
+        if (size > MAX_POOLED_SIZE) {
+            return -1;
+        }
+        if (size <= 1 << MIN_SHIFT) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+
+    /**
+     * 获取命中缓存次数
+     */
+    public static long getHitCount() {
+        return HIT_COUNT.sum();
+    }
+
+    /**
+     * 获取未命中缓存(新分配)次数
+     */
+    public static long getMissCount() {
+        return MISS_COUNT.sum();
+    }
+
+}
@@ -0,0 +1,38 @@
+package cn.novelweb.tool.upload.fastdfs.utils;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>客户端内部使用的线程池</p>
+ * <p>2026-10-18 10:20</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public class ExecutorUtils {
+
+    private ExecutorUtils() {
+    }
+
+    /**
+     * 创建线程数及队列长度都有上限的线程池(守护线程, 空闲60秒后回收), 队列已满时由提交任务的线程执行(反压)
+     *
+     * @param namePrefix    线程名前缀(如: fastdfs-async-)
+     * @param threads       最大线程数
+     * @param queueCapacity 等待队列长度
+     * @return 线程池, 不再使用时需要关闭
+     */
+    public static ThreadPoolExecutor newBoundedExecutor(String namePrefix, int threads, int queueCapacity) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, namePrefix + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
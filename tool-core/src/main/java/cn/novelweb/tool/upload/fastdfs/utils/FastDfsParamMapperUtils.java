@@ -1,15 +1,13 @@
 package cn.novelweb.tool.upload.fastdfs.utils;
 
-import cn.novelweb.tool.upload.fastdfs.exception.FastDfsColumnMapException;
-import cn.novelweb.tool.upload.fastdfs.mapper.FieldMateData;
 import cn.novelweb.tool.upload.fastdfs.mapper.ObjectMateData;
+import cn.novelweb.tool.upload.fastdfs.model.*;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.request.*;
+import cn.novelweb.tool.upload.fastdfs.protocol.tracker.request.*;
 import lombok.extern.slf4j.Slf4j;
 
-import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 /**
  * <p>Param对象与byte映射器 工具</p>
@@ -24,59 +22,71 @@ public class FastDfsParamMapperUtils {
     }
 
     /**
-     * 对象映射缓存
+     * 对象映射缓存(ClassValue读取无锁, 并发首次访问时也只会发布一个实例)
      */
-    private static Map<String, ObjectMateData> mapCache = new HashMap<>();
+    private static final ClassValue<ObjectMateData> MAP_CACHE = new ClassValue<ObjectMateData>() {
+        @Override
+        protected ObjectMateData computeValue(Class<?> type) {
+            return new ObjectMateData(type);
+        }
+    };
+
+    /**
+     * 协议中所有的请求/响应映射对象
+     */
+    private static final Class<?>[] PROTOCOL_TYPES = {
+            // Storage请求
+            AppendFileRequest.class, DeleteFileRequest.class, DownloadFileRequest.class, GetMetadataRequest.class,
+            ModifyRequest.class, QueryFileInfoRequest.class, SetMetadataRequest.class, TruncateRequest.class,
+            UploadFileRequest.class, UploadSlaveFileRequest.class,
+            // Tracker请求
+            DeleteStorageRequest.class, GetFetchStorageRequest.class, GetGroupListRequest.class,
+            GetListStorageRequest.class, GetStorageNodeByGroupNameRequest.class, GetStorageNodeRequest.class,
+            // 响应对象
+            FileInfo.class, GroupState.class, StorageNode.class, StorageNodeInfo.class, StorageState.class, StorePath.class
+    };
 
     /**
      * 将byte解码为对象
      */
     public static <T> T map(byte[] content, Class<T> genericType, Charset charset) {
+        return map(content, 0, content.length, genericType, charset);
+    }
+
+    /**
+     * 将byte的前length位解码为对象(content可以是缓冲池中的缓冲区)
+     */
+    public static <T> T map(byte[] content, int length, Class<T> genericType, Charset charset) {
+        return map(content, 0, length, genericType, charset);
+    }
+
+    /**
+     * 将byte中offset开始的length位解码为对象
+     */
+    public static <T> T map(byte[] content, int offset, int length, Class<T> genericType, Charset charset) {
         // 获取映射对象
         ObjectMateData objectMap = getObjectMap(genericType);
         if (log.isDebugEnabled()) {
             objectMap.dumpObjectMateData();
         }
-        try {
-            return mapByIndex(content, genericType, objectMap, charset);
-        } catch (InstantiationException ie) {
-            Log.debug("Cannot instantiate: ", ie);
-            throw new FastDfsColumnMapException(ie);
-        } catch (IllegalAccessException iae) {
-            Log.debug("Illegal access: ", iae);
-            throw new FastDfsColumnMapException(iae);
-        } catch (InvocationTargetException ite) {
-            Log.debug("Cannot invoke method: ", ite);
-            throw new FastDfsColumnMapException(ite);
-        }
+        return objectMap.decode(content, offset, length, charset);
     }
 
     /**
      * 获取对象映射定义
      */
     public static <T> ObjectMateData getObjectMap(Class<T> genericType) {
-        if (null == mapCache.get(genericType.getName())) {
-            // 还未缓存过
-            mapCache.put(genericType.getName(), new ObjectMateData(genericType));
-        }
-        return mapCache.get(genericType.getName());
+        return MAP_CACHE.get(genericType);
     }
 
     /**
-     * 按列顺序映射
+     * 预先解析协议中所有请求/响应对象的映射定义, 避免首批请求时才解析注解及创建属性句柄
      */
-    private static <T> T mapByIndex(byte[] content, Class<T> genericType, ObjectMateData objectMap, Charset charset)
-            throws InstantiationException, IllegalAccessException, InvocationTargetException {
-        List<FieldMateData> mappingFields = objectMap.getFieldList();
-        T obj = genericType.newInstance();
-        for (FieldMateData field : mappingFields) {
-            // 设置属性值
-            if (log.isTraceEnabled()) {
-                log.trace("设置值是 " + field + field.getValue(content, charset));
-            }
-            ReflectionsUtils.setFieldValue(obj, field.getFieldName(), field.getValue(content, charset));
+    public static void warmUp() {
+        for (Class<?> type : PROTOCOL_TYPES) {
+            getObjectMap(type);
         }
-        return obj;
+        Log.debug("已预先解析{}个协议映射对象", PROTOCOL_TYPES.length);
     }
 
     /**
@@ -84,38 +94,17 @@ public class FastDfsParamMapperUtils {
      */
     public static byte[] toByte(Object object, Charset charset) {
         ObjectMateData objectMap = getObjectMap(object.getClass());
-        try {
-            return convertFieldToByte(objectMap, object, charset);
-        } catch (NoSuchMethodException ie) {
-            Log.debug("Cannot invoke get methed: ", ie);
-            throw new FastDfsColumnMapException(ie);
-        } catch (IllegalAccessException iae) {
-            Log.debug("Illegal access: ", iae);
-            throw new FastDfsColumnMapException(iae);
-        } catch (InvocationTargetException ite) {
-            Log.debug("Cannot invoke method: ", ite);
-            throw new FastDfsColumnMapException(ite);
-        }
+        // 获取报文长度 (固定长度+动态长度)
+        ByteBuffer buffer = ByteBuffer.allocate(objectMap.getFieldsSendTotalByteSize(object, charset));
+        objectMap.encode(object, charset, buffer);
+        return buffer.array();
     }
 
     /**
-     * 将属性转换为byte
+     * 序列化到缓冲区, 缓冲区剩余空间需不小于{@link ObjectMateData#getFieldsSendTotalByteSize(Object, Charset)}
      */
-    private static byte[] convertFieldToByte(ObjectMateData objectMap, Object object, Charset charset)
-            throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
-        List<FieldMateData> mappingFields = objectMap.getFieldList();
-        // 获取报文长度 (固定长度+动态长度)
-        int size = objectMap.getFieldsSendTotalByteSize(object, charset);
-        byte[] result = new byte[size];
-        int offSize = 0;
-        for (FieldMateData field : mappingFields) {
-            byte[] fieldByte = field.toByte(object, charset);
-            if (null != fieldByte) {
-                System.arraycopy(fieldByte, 0, result, offSize, fieldByte.length);
-                offSize += fieldByte.length;
-            }
-        }
-        return result;
+    public static void toByte(Object object, Charset charset, ByteBuffer buffer) {
+        getObjectMap(object.getClass()).encode(object, charset, buffer);
     }
 
 }
@@ -0,0 +1,98 @@
+package cn.novelweb.tool.upload.fastdfs.utils;
+
+import cn.novelweb.tool.upload.fastdfs.constant.OtherConstants;
+import cn.novelweb.tool.upload.fastdfs.model.FileInfo;
+
+import java.util.Arrays;
+
+/**
+ * <p>解析存储服务生成的文件名</p>
+ * <p>文件名格式: M00/00/00/ + 27个字符的base64(字母表中62、63为'-'、'_') + .扩展名,
+ * base64解码后的20个字节依次为: 源存储节点IP(4) + 创建时间(4) + 文件大小(8) + CRC32(4)<br/>
+ * 文件大小的高位为标记: {@link OtherConstants#APPENDER_FILE_SIZE}表示续传文件(大小及校验码会变化),
+ * {@link OtherConstants#TRUNK_FILE_MARK_SIZE}表示合并存储的文件, 最高位为1时低32位为文件大小(其余为随机数)<br/>
+ * 从文件的文件名由主文件名 + 前缀 + 扩展名组成, 文件名中的信息属于主文件</p>
+ * <p>2026-10-18 22:40</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public class FileNameUtils {
+
+    private static final int DECODED_LENGTH = 20;
+
+    /**
+     * base64字符 -> 6位值, 不是base64字符的为-1
+     */
+    private static final byte[] BASE64_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(BASE64_VALUES, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_VALUES[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private FileNameUtils() {
+    }
+
+    /**
+     * 从普通文件的文件名中解析文件信息, 不请求存储节点
+     *
+     * @param path 文件路径(如: M00/00/00/wKgBZ1xxxxAAAAAAAAAAAA1234.jpg)
+     * @return 文件信息, 不是普通文件(续传文件、从文件、合并存储的文件)或格式不正确时返回null, 需要向存储节点查询
+     */
+    public static FileInfo decodeFileInfo(String path) {
+        int base64End = OtherConstants.DFS_FILE_PATH_LEN + OtherConstants.DFS_FILENAME_BASE64_LENGTH;
+        if (null == path || path.length() < base64End || !isStorePath(path) || !isNormalSuffix(path, base64End)) {
+            return null;
+        }
+        byte[] buff = new byte[DECODED_LENGTH];
+        int bits = 0;
+        int bitCount = 0;
+        int length = 0;
+        for (int i = OtherConstants.DFS_FILE_PATH_LEN; i < base64End && length < DECODED_LENGTH; i++) {
+            char c = path.charAt(i);
+            int value = c < BASE64_VALUES.length ? BASE64_VALUES[c] : -1;
+            if (value < 0) {
+                return null;
+            }
+            bits = (bits << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                buff[length++] = (byte) (bits >> bitCount);
+            }
+        }
+        long fileSize = BytesUtil.buff2long(buff, 8);
+        if ((fileSize & (OtherConstants.APPENDER_FILE_SIZE | OtherConstants.TRUNK_FILE_MARK_SIZE)) != 0) {
+            return null;
+        }
+        if (fileSize < 0) {
+            fileSize &= 0xFFFFFFFFL;
+        }
+        String ip = (buff[0] & 0xFF) + "." + (buff[1] & 0xFF) + "." + (buff[2] & 0xFF) + "." + (buff[3] & 0xFF);
+        return new FileInfo(ip, fileSize, BytesUtil.buff2int(buff, 4), BytesUtil.buff2int(buff, 16));
+    }
+
+    /**
+     * 存储路径及两级目录: M00/00/00/
+     */
+    private static boolean isStorePath(String path) {
+        return path.charAt(0) == 'M' && path.charAt(3) == '/' && path.charAt(6) == '/' && path.charAt(9) == '/';
+    }
+
+    /**
+     * base64之后只能是空或 .扩展名, 否则为从文件(带前缀)或合并存储的文件(带16个字符的位置信息)
+     */
+    private static boolean isNormalSuffix(String path, int base64End) {
+        int suffixLength = path.length() - base64End;
+        if (suffixLength == 0) {
+            return true;
+        }
+        if (suffixLength > OtherConstants.DFS_FILE_EXT_NAME_MAX_LEN + 1 || path.charAt(base64End) != '.') {
+            return false;
+        }
+        return path.indexOf('.', base64End + 1) < 0 && path.indexOf('/', base64End) < 0;
+    }
+}
@@ -3,7 +3,10 @@ package cn.novelweb.tool.upload.fastdfs.utils;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * <p></p>
+ * <p>FastDFS客户端debug日志</p>
+ * <p>{@link #debugLog}为全局默认开关, 命令执行器可以按客户端单独设置(见DefaultCommandExecutor#setDebugLog)<br/>
+ * 所有方法都先判断开关及slf4j的debug级别, 1~3个参数使用固定参数的方法, 日志关闭时不会创建可变参数数组;
+ * 参数需要计算或装箱的调用应先判断{@link #isDebugEnabled(boolean)}</p>
  * <p>2020-02-03 23:27</p>
  *
  * @author Dai Yuanchuan
@@ -11,59 +14,108 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class Log {
 
-    public static Boolean debugLog = true;
+    /**
+     * 全局默认开关, 未单独设置的客户端使用该值
+     */
+    public static volatile boolean debugLog = true;
+
+    /**
+     * 按全局开关判断是否输出debug日志
+     */
+    public static boolean isDebugEnabled() {
+        return debugLog && log.isDebugEnabled();
+    }
+
+    /**
+     * 按客户端的开关判断是否输出debug日志
+     *
+     * @param clientDebugLog 客户端单独设置的开关
+     */
+    public static boolean isDebugEnabled(boolean clientDebugLog) {
+        return clientDebugLog && log.isDebugEnabled();
+    }
+
+    public static void debug(String s) {
+        if (isDebugEnabled()) {
+            log.debug(s);
+        }
+    }
+
+    public static void debug(String s, Object o) {
+        if (isDebugEnabled()) {
+            log.debug(s, o);
+        }
+    }
 
     public static void debug(String s, Object o, Object o1) {
-        if (debugLog) {
+        if (isDebugEnabled()) {
             log.debug(s, o, o1);
         }
     }
 
+    public static void debug(String s, Object o, Object o1, Object o2) {
+        if (isDebugEnabled()) {
+            log.debug(s, o, o1, o2);
+        }
+    }
+
     public static void debug(String s, Object... objects) {
-        if (debugLog) {
+        if (isDebugEnabled()) {
             log.debug(s, objects);
         }
     }
 
     public static void debug(String s, Throwable throwable) {
-        if (debugLog) {
+        if (isDebugEnabled()) {
             log.debug(s, throwable);
         }
     }
 
-    public static void debug(String s, Object o) {
-        if (debugLog) {
-            log.debug(s, o);
-        }
-    }
-
     public static void debug(org.slf4j.Marker marker, String s) {
-        if (debugLog) {
+        if (debugLog && log.isDebugEnabled(marker)) {
             log.debug(marker, s);
         }
     }
 
     public static void debug(org.slf4j.Marker marker, String s, Object o) {
-        if (debugLog) {
+        if (debugLog && log.isDebugEnabled(marker)) {
             log.debug(marker, s, o);
         }
     }
 
     public static void debug(org.slf4j.Marker marker, String s, Object o, Object o1) {
-        if (debugLog) {
+        if (debugLog && log.isDebugEnabled(marker)) {
             log.debug(marker, s, o, o1);
         }
     }
 
     public static void debug(org.slf4j.Marker marker, String s, Object... objects) {
-        if (debugLog) {
+        if (debugLog && log.isDebugEnabled(marker)) {
             log.debug(marker, s, objects);
         }
     }
 
     public static void debug(org.slf4j.Marker marker, String s, Throwable throwable) {
-        if (debugLog) {
+        if (debugLog && log.isDebugEnabled(marker)) {
             log.debug(marker, s, throwable);
         }
     }
+
+    /**
+     * 客户端单独设置开关时输出debug日志
+     */
+    public static void debug(boolean clientDebugLog, String s, Object o) {
+        if (isDebugEnabled(clientDebugLog)) {
+            log.debug(s, o);
+        }
+    }
+
+    /**
+     * 客户端单独设置开关时输出debug日志
+     */
+    public static void debug(boolean clientDebugLog, String s, Object o, Object o1) {
+        if (isDebugEnabled(clientDebugLog)) {
+            log.debug(s, o, o1);
+        }
+    }
 }
@@ -3,18 +3,33 @@ package cn.novelweb.tool.upload.fastdfs.utils;
 import cn.novelweb.tool.upload.fastdfs.constant.OtherConstants;
 import cn.novelweb.tool.upload.fastdfs.model.MateData;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * <p>文件标签（元数据）映射对象</p>
+ * <p>编码格式: name\u0002value\u0001name\u0002value, UTF-8时直接计算字节长度并逐字符写入缓冲区, 不生成中间字符串及byte[];
+ * 解码时直接在byte[]中查找分隔符, 只为名称和值创建字符串</p>
  * <p>2020-02-03 15:36</p>
  *
  * @author LiZW
  **/
 public class MetadataMapperUtils {
 
+    private static final byte RECORD_SEPARATOR = OtherConstants.DFS_RECORD_SEPARATOR.getBytes(StandardCharsets.US_ASCII)[0];
+
+    private static final byte FIELD_SEPARATOR = OtherConstants.DFS_FIELD_SEPARATOR.getBytes(StandardCharsets.US_ASCII)[0];
+
+    /**
+     * 字符集编码后分隔符是否仍为单个字节(兼容ASCII), 不兼容时按字符串解码
+     */
+    private static final Map<Charset, Boolean> ASCII_COMPATIBLE = new ConcurrentHashMap<>(4);
+
     private MetadataMapperUtils() {
     }
 
@@ -22,30 +37,125 @@ public class MetadataMapperUtils {
      * 将元数据映射为byte
      */
     public static byte[] toByte(Set<MateData> metadataSet, Charset charset) {
+        ByteBuffer buffer = ByteBuffer.allocate(byteSize(metadataSet, charset));
+        write(metadataSet, charset, buffer);
+        return buffer.array();
+    }
+
+    /**
+     * 计算元数据编码后的字节长度(UTF-8时不进行编码)
+     *
+     * @param metadataSet 元数据集合
+     * @param charset     字符集
+     * @return 字节长度
+     */
+    public static int byteSize(Set<MateData> metadataSet, Charset charset) {
         if (null == metadataSet || metadataSet.isEmpty()) {
-            return new byte[0];
+            return 0;
         }
-        StringBuilder sb = new StringBuilder(32 * metadataSet.size());
+        if (!isAsciiCompatible(charset)) {
+            return toString(metadataSet).getBytes(charset).length;
+        }
+        boolean utf8 = StandardCharsets.UTF_8.equals(charset);
+        // 每条记录一个字段分隔符, 记录之间一个记录分隔符
+        int size = metadataSet.size() * 2 - 1;
         for (MateData md : metadataSet) {
-            sb.append(md.getName()).append(OtherConstants.DFS_FIELD_SEPARATOR).append(md.getValue());
-            sb.append(OtherConstants.DFS_RECORD_SEPARATOR);
+            String name = String.valueOf(md.getName());
+            String value = String.valueOf(md.getValue());
+            size += utf8 ? utf8Length(name) + utf8Length(value) : name.getBytes(charset).length + value.getBytes(charset).length;
+        }
+        return size;
+    }
+
+    /**
+     * 将元数据直接写入缓冲区, 缓冲区剩余空间需不小于{@link #byteSize(Set, Charset)}
+     *
+     * @param metadataSet 元数据集合
+     * @param charset     字符集
+     * @param buffer      缓冲区
+     */
+    public static void write(Set<MateData> metadataSet, Charset charset, ByteBuffer buffer) {
+        if (null == metadataSet || metadataSet.isEmpty()) {
+            return;
+        }
+        if (!isAsciiCompatible(charset)) {
+            buffer.put(toString(metadataSet).getBytes(charset));
+            return;
+        }
+        boolean utf8 = StandardCharsets.UTF_8.equals(charset);
+        boolean first = true;
+        for (MateData md : metadataSet) {
+            if (!first) {
+                buffer.put(RECORD_SEPARATOR);
+            }
+            first = false;
+            String name = String.valueOf(md.getName());
+            String value = String.valueOf(md.getValue());
+            if (utf8) {
+                putUtf8(name, buffer);
+                buffer.put(FIELD_SEPARATOR);
+                putUtf8(value, buffer);
+            } else {
+                buffer.put(name.getBytes(charset));
+                buffer.put(FIELD_SEPARATOR);
+                buffer.put(value.getBytes(charset));
+            }
         }
-        // 去除最后一个分隔符
-        sb.delete(sb.length() - OtherConstants.DFS_RECORD_SEPARATOR.length(), sb.length());
-        return sb.toString().getBytes(charset);
     }
 
     /**
      * 将byte映射为对象
      */
     public static Set<MateData> fromByte(byte[] content, Charset charset) {
-        Set<MateData> mdSet = new HashSet<>();
         if (null == content) {
+            return new HashSet<>();
+        }
+        return fromByte(content, 0, content.length, charset);
+    }
+
+    /**
+     * 将byte中offset开始的length位映射为对象, 忽略空记录
+     */
+    public static Set<MateData> fromByte(byte[] content, int offset, int length, Charset charset) {
+        Set<MateData> mdSet = new HashSet<>();
+        if (null == content || length <= 0) {
             return mdSet;
         }
-        String metaBuff = new String(content, charset);
-        String[] rows = metaBuff.split(OtherConstants.DFS_RECORD_SEPARATOR);
-        for (String row : rows) {
+        if (!isAsciiCompatible(charset)) {
+            return fromString(new String(content, offset, length, charset));
+        }
+        int end = offset + length;
+        int start = offset;
+        for (int i = offset; i <= end; i++) {
+            if (i < end && content[i] != RECORD_SEPARATOR) {
+                continue;
+            }
+            if (i > start) {
+                mdSet.add(decodeRecord(content, start, i, charset));
+            }
+            start = i + 1;
+        }
+        return mdSet;
+    }
+
+    /**
+     * 解码一条记录, 以第一个字段分隔符区分名称和值
+     */
+    private static MateData decodeRecord(byte[] content, int start, int end, Charset charset) {
+        for (int i = start; i < end; i++) {
+            if (content[i] == FIELD_SEPARATOR) {
+                return new MateData(new String(content, start, i - start, charset), new String(content, i + 1, end - i - 1, charset));
+            }
+        }
+        return new MateData(new String(content, start, end - start, charset));
+    }
+
+    private static Set<MateData> fromString(String metaBuff) {
+        Set<MateData> mdSet = new HashSet<>();
+        for (String row : metaBuff.split(OtherConstants.DFS_RECORD_SEPARATOR)) {
+            if (row.isEmpty()) {
+                continue;
+            }
             String[] cols = row.split(OtherConstants.DFS_FIELD_SEPARATOR, 2);
             MateData md = new MateData(cols[0]);
             if (cols.length == 2) {
@@ -56,4 +166,79 @@ public class MetadataMapperUtils {
         return mdSet;
     }
 
+    /**
+     * 字符集不兼容ASCII(如UTF-16)时整体编码, 避免每个字段单独编码产生多个BOM
+     */
+    private static String toString(Set<MateData> metadataSet) {
+        StringBuilder sb = new StringBuilder(32 * metadataSet.size());
+        for (MateData md : metadataSet) {
+            if (sb.length() > 0) {
+                sb.append(OtherConstants.DFS_RECORD_SEPARATOR);
+            }
+            sb.append(md.getName()).append(OtherConstants.DFS_FIELD_SEPARATOR).append(md.getValue());
+        }
+        return sb.toString();
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+        return StandardCharsets.UTF_8.equals(charset) || ASCII_COMPATIBLE.computeIfAbsent(charset, MetadataMapperUtils::separatorsSingleByte);
+    }
+
+    private static boolean separatorsSingleByte(Charset charset) {
+        byte[] separators = (OtherConstants.DFS_RECORD_SEPARATOR + OtherConstants.DFS_FIELD_SEPARATOR).getBytes(charset);
+        return separators.length == 2 && separators[0] == RECORD_SEPARATOR && separators[1] == FIELD_SEPARATOR;
+    }
+
+    /**
+     * 计算字符串UTF-8编码后的字节长度, 与{@link String#getBytes(Charset)}一致(不成对的代理字符编码为'?')
+     */
+    private static int utf8Length(String s) {
+        int length = s.length();
+        int size = length;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                size += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                // 4个字节对应2个字符
+                size += 2;
+                i++;
+            } else if (!Character.isSurrogate(c)) {
+                size += 2;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 将字符串按UTF-8编码写入缓冲区, 与{@link String#getBytes(Charset)}一致
+     */
+    private static void putUtf8(String s, ByteBuffer buffer) {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
 }
@@ -0,0 +1,185 @@
+package cn.novelweb.tool.upload.fastdfs.benchmark;
+
+import cn.novelweb.tool.upload.fastdfs.conn.Connection;
+import cn.novelweb.tool.upload.fastdfs.protocol.AbstractCommand;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.DeleteFileCommandAbstract;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.UploadFileCommandAbstract;
+import cn.novelweb.tool.upload.fastdfs.utils.ByteBufferPool;
+import cn.novelweb.tool.upload.fastdfs.utils.BytesUtil;
+import cn.novelweb.tool.upload.fastdfs.utils.Log;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+/**
+ * <p>报文编码/解码的内存分配基准测试</p>
+ * <p>不需要FastDFS集群, 使用内存连接执行命令, 不随单元测试运行:<br/>
+ * java cn.novelweb.tool.upload.fastdfs.benchmark.AllocationBenchmark [每轮次数, 默认100000]<br/>
+ * 输出上传1KB文件及删除文件时每次请求在当前线程分配的字节数(需要HotSpot的ThreadMXBean),
+ * 分别测量debug_log关闭, 以及debug_log开启但slf4j的debug级别关闭(生产环境的常见配置)两种情况</p>
+ * <p>2026-10-18 14:40</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public class AllocationBenchmark {
+
+    private static final int ROUNDS = 4;
+
+    public static void main(String[] args) {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)
+                || !((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            System.err.println("当前JVM不支持统计线程分配的内存");
+            return;
+        }
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+        byte[] content = new byte[1024];
+        MemoryConnection uploadConn = new MemoryConnection(response("group1", "M00/00/00/wKgAAF8AAAAAAAAAAAAAAA.jpg"));
+        MemoryConnection deleteConn = new MemoryConnection(response(null, null));
+        Supplier<AbstractCommand<?>> uploadCommand = () ->
+                new UploadFileCommandAbstract((byte) 0, new ByteArrayInputStream(content), "jpg", content.length, false);
+        Supplier<AbstractCommand<?>> deleteCommand = () ->
+                new DeleteFileCommandAbstract("group1", "M00/00/00/wKgAAF8AAAAAAAAAAAAAAA.jpg");
+        // 关闭slf4j的debug级别, 避免日志输出的分配计入结果, debug_log开启时只测量判断开关及参数的开销
+        boolean slf4jDebugOff = disableSlf4jDebug();
+        if (!slf4jDebugOff) {
+            System.err.println("无法关闭slf4j的debug级别(不是logback), 只测量debug_log关闭的情况");
+        }
+        boolean debugLog = Log.debugLog;
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                Log.debugLog = false;
+                long upload = allocatedBytesPerOp(threadBean, uploadConn, iterations, uploadCommand);
+                long delete = allocatedBytesPerOp(threadBean, deleteConn, iterations, deleteCommand);
+                System.out.printf("round %d%s debug_log=false: upload(1KB) %d bytes/op, delete %d bytes/op, pool hit/miss %d/%d%n",
+                        round, round == 0 ? "(warm-up)" : "", upload, delete,
+                        ByteBufferPool.getHitCount(), ByteBufferPool.getMissCount());
+                if (!slf4jDebugOff) {
+                    continue;
+                }
+                Log.debugLog = true;
+                upload = allocatedBytesPerOp(threadBean, uploadConn, iterations, uploadCommand);
+                delete = allocatedBytesPerOp(threadBean, deleteConn, iterations, deleteCommand);
+                System.out.printf("round %d%s debug_log=true, slf4j debug off: upload(1KB) %d bytes/op, delete %d bytes/op%n",
+                        round, round == 0 ? "(warm-up)" : "", upload, delete);
+            }
+        } finally {
+            Log.debugLog = debugLog;
+        }
+    }
+
+    /**
+     * 关闭客户端日志的slf4j debug级别, 已经关闭时不修改
+     * 只支持logback(通过反射设置, 不依赖logback的类), 其他日志实现需要在配置文件中关闭
+     *
+     * @return slf4j的debug级别是否已关闭
+     */
+    private static boolean disableSlf4jDebug() {
+        Logger logger = LoggerFactory.getLogger(Log.class);
+        if (!logger.isDebugEnabled()) {
+            return true;
+        }
+        Logger parent = LoggerFactory.getLogger("cn.novelweb.tool.upload.fastdfs");
+        try {
+            Class<?> level = Class.forName("ch.qos.logback.classic.Level");
+            parent.getClass().getMethod("setLevel", level).invoke(parent, level.getField("INFO").get(null));
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+        return !logger.isDebugEnabled();
+    }
+
+    /**
+     * @return 每次请求在当前线程分配的平均字节数
+     */
+    private static long allocatedBytesPerOp(com.sun.management.ThreadMXBean threadBean, MemoryConnection conn,
+                                            int iterations, Supplier<AbstractCommand<?>> command) {
+        long threadId = Thread.currentThread().getId();
+        long start = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            conn.reset();
+            command.get().execute(conn);
+        }
+        return (threadBean.getThreadAllocatedBytes(threadId) - start) / iterations;
+    }
+
+    /**
+     * 构造响应报文
+     */
+    private static byte[] response(String group, String path) {
+        int length = null == path ? 0 : 16 + path.length();
+        ByteBuffer buffer = ByteBuffer.allocate(10 + length);
+        buffer.putLong(length).put((byte) 100).put((byte) 0);
+        if (null != path) {
+            buffer.put(BytesUtil.objString2Byte(group, 16, StandardCharsets.UTF_8));
+            buffer.put(path.getBytes(StandardCharsets.UTF_8));
+        }
+        return buffer.array();
+    }
+
+    /**
+     * 内存连接, 丢弃请求报文并返回固定的响应报文
+     */
+    private static class MemoryConnection implements Connection {
+
+        private final ByteArrayInputStream in;
+
+        private final OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+
+        MemoryConnection(byte[] response) {
+            this.in = new ByteArrayInputStream(response);
+        }
+
+        void reset() {
+            in.reset();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+        @Override
+        public boolean isValid() {
+            return true;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return out;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return in;
+        }
+
+        @Override
+        public Charset getCharset() {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+package cn.novelweb.tool.upload.fastdfs.benchmark;
+
+import cn.novelweb.tool.upload.fastdfs.FastDfsClusterClient;
+import cn.novelweb.tool.upload.fastdfs.model.StorePath;
+import cn.novelweb.tool.upload.fastdfs.protocol.storage.callback.DownloadByteArray;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <p>上传及下载时校验CRC32的开销基准测试</p>
+ * <p>需要可用的FastDFS集群, 不随单元测试运行:<br/>
+ * java cn.novelweb.tool.upload.fastdfs.benchmark.CrcVerifyBenchmark Tracker地址(如: 127.0.0.1:22122) [文件大小KB, 默认64] [每轮次数, 默认1000]<br/>
+ * 交替运行不校验与校验的客户端, 第一轮为预热, 输出每次上传/下载的平均耗时</p>
+ * <p>2026-10-18 22:40</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public class CrcVerifyBenchmark {
+
+    private static final int ROUNDS = 4;
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("usage: CrcVerifyBenchmark <trackerServers> [fileSizeKb] [iterations]");
+            return;
+        }
+        int fileSizeKb = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        byte[] content = new byte[fileSizeKb * 1024];
+        new Random(1).nextBytes(content);
+
+        try (FastDfsClusterClient plain = FastDfsClusterClient.builder().trackerServers(args[0]).debugLog(false).build();
+             FastDfsClusterClient verifying = FastDfsClusterClient.builder().trackerServers(args[0]).crcVerify(true).debugLog(false).build()) {
+            for (int round = 0; round < ROUNDS; round++) {
+                double[] off = run(plain, content, iterations);
+                double[] on = run(verifying, content, iterations);
+                System.out.printf("round %d%s: upload %.1f -> %.1f us/op (%+.1f%%), download %.1f -> %.1f us/op (%+.1f%%)%n",
+                        round, round == 0 ? "(warm-up)" : "", off[0], on[0], (on[0] / off[0] - 1) * 100,
+                        off[1], on[1], (on[1] / off[1] - 1) * 100);
+            }
+        }
+    }
+
+    /**
+     * @return 每次上传、下载的平均耗时(微秒)
+     */
+    private static double[] run(FastDfsClusterClient client, byte[] content, int iterations) {
+        List<StorePath> paths = new ArrayList<>(iterations);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            paths.add(client.uploader(new ByteArrayInputStream(content), content.length, "bin"));
+        }
+        long uploaded = System.nanoTime();
+        for (StorePath path : paths) {
+            client.getStorageClient().downloadFile(path.getGroup(), path.getPath(), new DownloadByteArray());
+        }
+        long downloaded = System.nanoTime();
+        for (StorePath path : paths) {
+            client.delete(path.getGroup(), path.getPath());
+        }
+        return new double[]{(uploaded - start) / 1000.0 / iterations, (downloaded - uploaded) / 1000.0 / iterations};
+    }
+}
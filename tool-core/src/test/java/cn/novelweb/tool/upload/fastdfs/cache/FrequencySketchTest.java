@@ -0,0 +1,48 @@
+package cn.novelweb.tool.upload.fastdfs.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>FrequencySketch 访问频率估计测试</p>
+ * <p>2026-10-18 19:30</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public class FrequencySketchTest {
+
+    /**
+     * 频率随访问次数增加, 最大为15
+     */
+    @Test
+    public void incrementUpToMax() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        Assert.assertEquals(0, sketch.frequency("a"));
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("a");
+        }
+        Assert.assertEquals(5, sketch.frequency("a"));
+        for (int i = 0; i < 20; i++) {
+            sketch.increment("a");
+        }
+        Assert.assertEquals(15, sketch.frequency("a"));
+        Assert.assertEquals(0, sketch.frequency("b"));
+    }
+
+    /**
+     * 记录次数达到表大小的10倍时所有计数器减半
+     */
+    @Test
+    public void halveOnReset() {
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 15; i++) {
+            sketch.increment("hot");
+        }
+        Assert.assertEquals(15, sketch.frequency("hot"));
+        for (int i = 0; i < 1000 && sketch.frequency("hot") == 15; i++) {
+            sketch.increment("key" + i);
+        }
+        Assert.assertEquals(7, sketch.frequency("hot"));
+    }
+
+}
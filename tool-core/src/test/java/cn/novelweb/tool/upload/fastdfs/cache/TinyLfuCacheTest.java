@@ -0,0 +1,119 @@
+package cn.novelweb.tool.upload.fastdfs.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * <p>TinyLfuCache 接纳、容量及有效期测试</p>
+ * <p>2026-10-18 19:30</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public class TinyLfuCacheTest {
+
+    /**
+     * 总容量10000, 窗口区100, 主区9900
+     */
+    private static final long MAX_WEIGHT = 10000;
+
+    /**
+     * 候选需要淘汰多个数据时, 只要其中有访问频率不低于候选的数据就不淘汰任何数据
+     */
+    @Test
+    public void rejectWithoutPartialEviction() {
+        TinyLfuCache<String, Integer> cache = fillMain();
+        // 候选访问频率为3, 需要淘汰c0(频率1)和h1(频率5)
+        cache.get("candidate");
+        cache.get("candidate");
+        cache.put("candidate", 200);
+
+        Assert.assertNull(cache.get("candidate"));
+        Assert.assertNotNull(cache.get("c0"));
+        for (int i = 1; i < 99; i++) {
+            Assert.assertNotNull(cache.get("h" + i));
+        }
+        Assert.assertTrue(cache.weight() <= MAX_WEIGHT);
+    }
+
+    /**
+     * 候选访问频率高于全部被选出的数据时一次淘汰多个数据
+     */
+    @Test
+    public void admitByEvictingSeveralVictims() {
+        TinyLfuCache<String, Integer> cache = fillMain();
+        for (int i = 0; i < 8; i++) {
+            cache.get("candidate");
+        }
+        long evictions = cache.getEvictionCount();
+        cache.put("candidate", 200);
+
+        Assert.assertEquals(200, (long) cache.get("candidate"));
+        // 窗口区中的x未被接纳, c0和h1被淘汰
+        Assert.assertEquals(evictions + 3, cache.getEvictionCount());
+        Assert.assertNull(cache.get("c0"));
+        Assert.assertNull(cache.get("h1"));
+        Assert.assertNotNull(cache.get("h2"));
+        Assert.assertEquals(MAX_WEIGHT - 100, cache.weight());
+    }
+
+    /**
+     * 占用的容量不超过最大容量, 超过主区容量的数据不缓存
+     */
+    @Test
+    public void weightBound() {
+        TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>(MAX_WEIGHT, 1024, 0, v -> v);
+        Random random = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(500);
+            if (random.nextBoolean()) {
+                cache.put(key, 1 + random.nextInt(400));
+            } else {
+                cache.get(key);
+            }
+            Assert.assertTrue(cache.weight() <= MAX_WEIGHT);
+        }
+        cache.put(-1, (int) MAX_WEIGHT);
+        Assert.assertNull(cache.get(-1));
+        Assert.assertTrue(cache.weight() <= MAX_WEIGHT);
+
+        cache.invalidateAll();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.weight());
+    }
+
+    /**
+     * 过期数据读取时移除, 不再计入容量
+     */
+    @Test
+    public void expireAfterTtl() throws InterruptedException {
+        TinyLfuCache<String, Integer> cache = new TinyLfuCache<>(MAX_WEIGHT, 16, 50, v -> v);
+        cache.put("a", 10);
+        Assert.assertEquals(10, (long) cache.get("a"));
+        Thread.sleep(100);
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.weight());
+    }
+
+    /**
+     * 主区按访问顺序依次为: c0(频率1), h1-h98(频率5), 窗口区为x(频率1)
+     */
+    private static TinyLfuCache<String, Integer> fillMain() {
+        TinyLfuCache<String, Integer> cache = new TinyLfuCache<>(MAX_WEIGHT, 1024, 0, v -> v);
+        cache.put("c0", 100);
+        for (int i = 1; i < 99; i++) {
+            cache.put("h" + i, 100);
+        }
+        cache.put("x", 100);
+        for (int round = 0; round < 4; round++) {
+            for (int i = 1; i < 99; i++) {
+                cache.get("h" + i);
+            }
+        }
+        Assert.assertEquals(MAX_WEIGHT, cache.weight());
+        return cache;
+    }
+
+}
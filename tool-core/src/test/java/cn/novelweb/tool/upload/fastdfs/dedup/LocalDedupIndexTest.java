@@ -0,0 +1,146 @@
+package cn.novelweb.tool.upload.fastdfs.dedup;
+
+import cn.novelweb.tool.upload.fastdfs.model.StorePath;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * <p>LocalDedupIndex 引用计数、日志重放及日志重写测试</p>
+ * <p>2026-10-18 23:40</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public class LocalDedupIndexTest {
+
+    private static final StorePath PATH_A = new StorePath("group1", "M00/00/00/a.jpg");
+
+    private static final StorePath PATH_B = new StorePath("group1", "M00/00/00/b.jpg");
+
+    /**
+     * 登记及复用时增加引用计数, 撤销引用减到0时移除记录
+     */
+    @Test
+    public void refCountDownToZero() throws IOException {
+        File journal = newJournal();
+        try (LocalDedupIndex index = new LocalDedupIndex(journal)) {
+            Assert.assertNull(index.acquire("a"));
+            Assert.assertNull(index.register("a", PATH_A, 10));
+            // 上传期间其他线程已登记相同内容时返回已有记录
+            DedupEntry existing = index.register("a", PATH_B, 10);
+            Assert.assertEquals(PATH_A.getFullPath(), existing.getStorePath().getFullPath());
+            Assert.assertEquals(2, existing.getRefCount());
+            Assert.assertEquals(3, index.acquire("a").getRefCount());
+            Assert.assertEquals(1, index.size());
+
+            Assert.assertEquals(2, index.release(PATH_A));
+            Assert.assertEquals(1, index.release(PATH_A));
+            Assert.assertEquals(0, index.release(PATH_A));
+            Assert.assertNull(index.get("a"));
+            Assert.assertNull(index.acquire("a"));
+            Assert.assertEquals(0, index.size());
+            // 不在索引中的文件
+            Assert.assertEquals(-1, index.release(PATH_A));
+            Assert.assertEquals(-1, index.release(PATH_B));
+        } finally {
+            delete(journal);
+        }
+    }
+
+    /**
+     * 重启后重放日志恢复引用计数, 忽略未写完的最后一行, 引用计数为0的记录表示已移除
+     */
+    @Test
+    public void reloadAfterRestart() throws IOException {
+        File journal = newJournal();
+        try {
+            try (LocalDedupIndex index = new LocalDedupIndex(journal)) {
+                index.register("a", PATH_A, 10);
+                index.acquire("a");
+                index.register("b", PATH_B, 20);
+                Assert.assertEquals(0, index.release(PATH_B));
+            }
+            // 进程退出时最后一行只写了一半
+            try (OutputStream out = new FileOutputStream(journal, true)) {
+                out.write("c\tgroup1\tM00/00/00/c.jpg\t3".getBytes(StandardCharsets.UTF_8));
+            }
+
+            try (LocalDedupIndex index = new LocalDedupIndex(journal)) {
+                Assert.assertEquals(1, index.size());
+                DedupEntry a = index.get("a");
+                Assert.assertEquals(PATH_A.getFullPath(), a.getStorePath().getFullPath());
+                Assert.assertEquals(10, a.getFileSize());
+                Assert.assertEquals(2, a.getRefCount());
+                Assert.assertNull(index.get("b"));
+                Assert.assertNull(index.get("c"));
+                Assert.assertEquals(-1, index.release(PATH_B));
+                // 启动时重写日志, 只保留当前的记录
+                Assert.assertEquals(1, Files.readAllLines(journal.toPath()).size());
+                Assert.assertEquals(1, index.release(PATH_A));
+            }
+
+            try (LocalDedupIndex index = new LocalDedupIndex(journal)) {
+                Assert.assertEquals(1, index.get("a").getRefCount());
+                Assert.assertEquals(0, index.release(PATH_A));
+            }
+            try (LocalDedupIndex index = new LocalDedupIndex(journal)) {
+                Assert.assertEquals(0, index.size());
+            }
+        } finally {
+            delete(journal);
+        }
+    }
+
+    /**
+     * 日志记录数远大于条目数时重写日志, 重写后的日志可以恢复相同的索引
+     */
+    @Test
+    public void compactJournal() throws IOException {
+        File journal = newJournal();
+        try {
+            try (LocalDedupIndex index = new LocalDedupIndex(journal)) {
+                index.register("a", PATH_A, 10);
+                index.register("b", PATH_B, 20);
+                for (int i = 0; i < 5000; i++) {
+                    index.acquire("a");
+                    index.release(PATH_A);
+                    index.acquire("b");
+                }
+                Assert.assertEquals(1, index.get("a").getRefCount());
+                Assert.assertEquals(5001, index.get("b").getRefCount());
+                // 记录数不超过 条目数*2+1024 再加上重写后新追加的记录
+                Assert.assertTrue(Files.readAllLines(journal.toPath()).size() <= 2 * 2 + 1024 + 1);
+                Assert.assertFalse(new File(journal.getPath() + ".tmp").exists());
+            }
+            try (LocalDedupIndex index = new LocalDedupIndex(journal)) {
+                Assert.assertEquals(2, index.size());
+                Assert.assertEquals(1, index.get("a").getRefCount());
+                Assert.assertEquals(5001, index.get("b").getRefCount());
+                Assert.assertEquals(2, Files.readAllLines(journal.toPath()).size());
+            }
+        } finally {
+            delete(journal);
+        }
+    }
+
+    /**
+     * 创建临时日志文件路径, 文件本身由索引创建
+     */
+    private static File newJournal() throws IOException {
+        File journal = File.createTempFile("dedup", ".log");
+        Assert.assertTrue(journal.delete());
+        return journal;
+    }
+
+    private static void delete(File journal) {
+        journal.delete();
+        new File(journal.getPath() + ".tmp").delete();
+    }
+
+}
@@ -0,0 +1,48 @@
+package cn.novelweb.tool.upload.fastdfs.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>ByteBufferPool 缓冲池测试, 报文编码/解码的分配率见{@link cn.novelweb.tool.upload.fastdfs.benchmark.AllocationBenchmark}</p>
+ * <p>2026-10-18 14:40</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public class ByteBufferPoolTest {
+
+    /**
+     * 缓冲区按级别复用
+     */
+    @Test
+    public void acquireAndRelease() {
+        ByteBuffer buffer = ByteBufferPool.acquire(100);
+        Assert.assertEquals(512, buffer.capacity());
+        Assert.assertEquals(100, buffer.limit());
+        ByteBufferPool.release(buffer);
+        Assert.assertSame(buffer, ByteBufferPool.acquire(300));
+        ByteBufferPool.release(buffer);
+
+        ByteBuffer large = ByteBufferPool.acquire(ByteBufferPool.MAX_POOLED_SIZE + 1);
+        ByteBufferPool.release(large);
+        Assert.assertNotSame(large, ByteBufferPool.acquire(ByteBufferPool.MAX_POOLED_SIZE + 1));
+    }
+
+    /**
+     * 大于16KB的缓冲区放在共用缓冲池中, 其他线程归还的缓冲区可以被当前线程使用
+     */
+    @Test
+    public void shareLargeBuffers() throws InterruptedException {
+        Thread thread = new Thread(() -> ByteBufferPool.release(ByteBufferPool.acquire(ByteBufferPool.MAX_POOLED_SIZE)));
+        thread.start();
+        thread.join();
+        long hitCount = ByteBufferPool.getHitCount();
+        ByteBuffer buffer = ByteBufferPool.acquire(ByteBufferPool.MAX_POOLED_SIZE - 1);
+        Assert.assertEquals(hitCount + 1, ByteBufferPool.getHitCount());
+        Assert.assertEquals(ByteBufferPool.MAX_POOLED_SIZE, buffer.capacity());
+        ByteBufferPool.release(buffer);
+    }
+
+}
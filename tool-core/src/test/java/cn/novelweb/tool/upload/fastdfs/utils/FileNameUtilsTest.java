@@ -0,0 +1,67 @@
+package cn.novelweb.tool.upload.fastdfs.utils;
+
+import cn.novelweb.tool.upload.fastdfs.constant.OtherConstants;
+import cn.novelweb.tool.upload.fastdfs.model.FileInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * <p>FileNameUtils 文件名解析测试</p>
+ * <p>2026-10-18 22:40</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public class FileNameUtilsTest {
+
+    private static final int CRC32 = 0xF29BB013;
+
+    /**
+     * 小于4GB的文件大小高32位为随机数(最高位为1)
+     */
+    @Test
+    public void decodeNormalFile() {
+        long maskedSize = ((long) (0x123456 | 0x80000000) << 32) | 300000;
+        FileInfo fileInfo = FileNameUtils.decodeFileInfo(name(maskedSize) + ".jpg");
+        Assert.assertNotNull(fileInfo);
+        Assert.assertEquals(300000, fileInfo.getFileSize());
+        Assert.assertEquals(CRC32, fileInfo.getCrc32());
+        Assert.assertEquals(1600000000, fileInfo.getCreateTime());
+        Assert.assertEquals("192.168.1.103", fileInfo.getSourceIpAddr());
+
+        FileInfo large = FileNameUtils.decodeFileInfo(name(5L * 1024 * 1024 * 1024));
+        Assert.assertNotNull(large);
+        Assert.assertEquals(5L * 1024 * 1024 * 1024, large.getFileSize());
+    }
+
+    /**
+     * 续传文件、合并存储的文件及从文件需要向存储节点查询
+     */
+    @Test
+    public void rejectNonNormalFile() {
+        Assert.assertNull(FileNameUtils.decodeFileInfo(name(OtherConstants.APPENDER_FILE_SIZE) + ".log"));
+        Assert.assertNull(FileNameUtils.decodeFileInfo(name(OtherConstants.TRUNK_FILE_MARK_SIZE | 100) + ".jpg"));
+        Assert.assertNull(FileNameUtils.decodeFileInfo(name(100) + "AAAAAAAAAAAAAAAA.jpg"));
+        Assert.assertNull(FileNameUtils.decodeFileInfo(name(100) + "_150x150.jpg"));
+        Assert.assertNull(FileNameUtils.decodeFileInfo(name(100) + ".tar.gz"));
+    }
+
+    @Test
+    public void rejectMalformedName() {
+        Assert.assertNull(FileNameUtils.decodeFileInfo(null));
+        Assert.assertNull(FileNameUtils.decodeFileInfo("M00/00/00/short.jpg"));
+        Assert.assertNull(FileNameUtils.decodeFileInfo("group1/M00/00/" + name(100).substring(10)));
+        Assert.assertNull(FileNameUtils.decodeFileInfo(name(100).substring(0, 20) + "+" + name(100).substring(21)));
+    }
+
+    /**
+     * 按存储节点的格式生成文件名: IP + 创建时间 + 文件大小 + CRC32, base64字母表中62、63为'-'、'_'
+     */
+    private static String name(long fileSize) {
+        ByteBuffer buffer = ByteBuffer.allocate(20);
+        buffer.put(new byte[]{(byte) 192, (byte) 168, 1, 103}).putInt(1600000000).putLong(fileSize).putInt(CRC32);
+        return "M00/00/00/" + Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+}
@@ -0,0 +1,120 @@
+package cn.novelweb.tool.upload.fastdfs.utils;
+
+import cn.novelweb.tool.upload.fastdfs.constant.OtherConstants;
+import cn.novelweb.tool.upload.fastdfs.model.MateData;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * <p>MetadataMapperUtils 元数据编码/解码测试</p>
+ * <p>2026-10-18 21:30</p>
+ *
+ * @author Dai Yuanchuan
+ **/
+public class MetadataMapperUtilsTest {
+
+    private static final Charset[] CHARSETS = {StandardCharsets.UTF_8, Charset.forName("GBK"),
+            StandardCharsets.ISO_8859_1, StandardCharsets.UTF_16};
+
+    /**
+     * 编码结果与拼接字符串后{@link String#getBytes(Charset)}一致, 包括不成对的代理字符及字符集不支持的字符('?')
+     */
+    @Test
+    public void sameBytesAsStringEncoding() {
+        Set<MateData> metadataSet = new LinkedHashSet<>();
+        metadataSet.add(new MateData("width", "1920"));
+        metadataSet.add(new MateData("作者", "戴元川"));
+        metadataSet.add(new MateData("café", "naïve ü"));
+        metadataSet.add(new MateData("emoji", "😀 ok"));
+        metadataSet.add(new MateData("lone", "a\uD800b\uDC00c\uD83D"));
+        metadataSet.add(new MateData("empty", ""));
+        metadataSet.add(new MateData("novalue"));
+        for (Charset charset : CHARSETS) {
+            byte[] expected = legacyToByte(metadataSet, charset);
+            Assert.assertArrayEquals(expected, MetadataMapperUtils.toByte(metadataSet, charset));
+            Assert.assertEquals(expected.length, MetadataMapperUtils.byteSize(metadataSet, charset));
+
+            // 直接写入缓冲区时从当前位置开始写入
+            ByteBuffer buffer = ByteBuffer.allocateDirect(expected.length + 3);
+            buffer.put((byte) 1);
+            MetadataMapperUtils.write(metadataSet, charset, buffer);
+            Assert.assertEquals(expected.length + 1, buffer.position());
+            byte[] written = new byte[expected.length];
+            buffer.position(1);
+            buffer.get(written);
+            Assert.assertArrayEquals(expected, written);
+        }
+    }
+
+    /**
+     * 编码后解码得到相同的元数据, 值为null时按"null"编码
+     */
+    @Test
+    public void roundTrip() {
+        Set<MateData> metadataSet = new HashSet<>();
+        metadataSet.add(new MateData("width", "1920"));
+        metadataSet.add(new MateData("type", "image/jpeg"));
+        metadataSet.add(new MateData("name", "a=b;c"));
+        metadataSet.add(new MateData("empty", ""));
+        for (Charset charset : CHARSETS) {
+            Assert.assertEquals(metadataSet, MetadataMapperUtils.fromByte(MetadataMapperUtils.toByte(metadataSet, charset), charset));
+        }
+
+        Set<MateData> chinese = Collections.singleton(new MateData("作者", "戴元川😀"));
+        Assert.assertEquals(chinese, MetadataMapperUtils.fromByte(MetadataMapperUtils.toByte(chinese, StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+        Assert.assertEquals(chinese, MetadataMapperUtils.fromByte(MetadataMapperUtils.toByte(chinese, StandardCharsets.UTF_16), StandardCharsets.UTF_16));
+
+        // 只解码offset开始的length个字节
+        byte[] content = MetadataMapperUtils.toByte(metadataSet, StandardCharsets.UTF_8);
+        byte[] padded = new byte[content.length + 4];
+        System.arraycopy(content, 0, padded, 2, content.length);
+        Assert.assertEquals(metadataSet, MetadataMapperUtils.fromByte(padded, 2, content.length, StandardCharsets.UTF_8));
+
+        Set<MateData> nullValue = Collections.singleton(new MateData("novalue"));
+        for (Charset charset : CHARSETS) {
+            Assert.assertEquals(Collections.singleton(new MateData("novalue", "null")),
+                    MetadataMapperUtils.fromByte(MetadataMapperUtils.toByte(nullValue, charset), charset));
+        }
+    }
+
+    /**
+     * 空集合及null编码为空数组, 空数组及null解码为空集合
+     */
+    @Test
+    public void emptyAndNull() {
+        for (Charset charset : CHARSETS) {
+            Assert.assertEquals(0, MetadataMapperUtils.toByte(null, charset).length);
+            Assert.assertEquals(0, MetadataMapperUtils.toByte(new HashSet<>(), charset).length);
+            Assert.assertEquals(0, MetadataMapperUtils.byteSize(null, charset));
+            Assert.assertEquals(0, MetadataMapperUtils.byteSize(new HashSet<>(), charset));
+            Assert.assertTrue(MetadataMapperUtils.fromByte(null, charset).isEmpty());
+            Assert.assertTrue(MetadataMapperUtils.fromByte(new byte[0], charset).isEmpty());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        MetadataMapperUtils.write(null, StandardCharsets.UTF_8, buffer);
+        Assert.assertEquals(0, buffer.position());
+    }
+
+    /**
+     * 原实现: 拼接为 name\u0002value\u0001name\u0002value 后整体编码
+     */
+    private static byte[] legacyToByte(Set<MateData> metadataSet, Charset charset) {
+        StringBuilder sb = new StringBuilder();
+        for (MateData md : metadataSet) {
+            if (sb.length() > 0) {
+                sb.append(OtherConstants.DFS_RECORD_SEPARATOR);
+            }
+            sb.append(md.getName()).append(OtherConstants.DFS_FIELD_SEPARATOR).append(md.getValue());
+        }
+        return sb.toString().getBytes(charset);
+    }
+
+}